@@ -0,0 +1,119 @@
+package com.github.koosty.gatling.tcp;
+
+import com.github.koosty.gatling.tcp.javaapi.TcpValidators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the search of markers at the end of large responses by the {@link TcpValidators},
+ * against the naive search they used to run.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.args="BytePatternBenchmark"}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BytePatternBenchmark {
+
+    /** Size of the searched response. */
+    @Param({"65536", "2097152"})
+    public int responseSize;
+
+    /** Length of the markers. */
+    @Param({"8", "32", "64"})
+    public int markerLength;
+
+    private byte[] response;
+    private byte[] marker;
+    private Function<byte[], Boolean> containsBytes;
+    private Function<byte[], Boolean> containsAllBytes;
+    private byte[][] markers;
+    private List<Function<byte[], Boolean>> containsEachBytes;
+
+    @Setup
+    public void setUp() {
+        // Text-like content, so that the last byte of the marker is frequent in the response
+        Random random = new Random(42);
+        response = new byte[responseSize];
+        for (int i = 0; i < responseSize; i++) {
+            response[i] = (byte) ('a' + random.nextInt(16));
+        }
+        markers = new byte[4][markerLength];
+        for (int m = 0; m < markers.length; m++) {
+            for (int i = 0; i < markerLength; i++) {
+                markers[m][i] = (byte) ('a' + random.nextInt(16));
+            }
+            System.arraycopy(markers[m], 0, response, responseSize - (m + 1) * markerLength, markerLength);
+        }
+        marker = markers[markers.length - 1];
+        containsBytes = TcpValidators.containsBytes(marker);
+        containsAllBytes = TcpValidators.containsAllBytes(markers);
+        containsEachBytes = Arrays.stream(markers).map(TcpValidators::containsBytes).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public boolean naive() {
+        return naiveContains(response, marker);
+    }
+
+    @Benchmark
+    public boolean containsBytes() {
+        return containsBytes.apply(response);
+    }
+
+    @Benchmark
+    public boolean naiveFourMarkers() {
+        for (byte[] m : markers) {
+            if (!naiveContains(response, m)) return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean containsBytesFourMarkers() {
+        for (Function<byte[], Boolean> validator : containsEachBytes) {
+            if (!validator.apply(response)) return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean containsAllBytesFourMarkers() {
+        return containsAllBytes.apply(response);
+    }
+
+    /** The search {@link TcpValidators#containsBytes} used to run. */
+    private static boolean naiveContains(byte[] response, byte[] expectedBytes) {
+        for (int i = 0; i <= response.length - expectedBytes.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < expectedBytes.length; j++) {
+                if (response[i + j] != expectedBytes[j]) {
+                    found = false;
+                    break;
+                }
+            }
+            if (found) return true;
+        }
+        return false;
+    }
+}
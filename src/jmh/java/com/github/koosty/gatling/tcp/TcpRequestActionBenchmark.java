@@ -0,0 +1,101 @@
+package com.github.koosty.gatling.tcp;
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder;
+import io.gatling.core.session.Session;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.koosty.gatling.tcp.javaapi.TcpDsl.tcp;
+
+/**
+ * Measures the throughput of {@link TcpRequestAction#execute} against a local {@link TcpTestServer}.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec}; the GC profiler reports the allocation
+ * rate per request. Other JMH options can be passed with {@code -Djmh.args="..."}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class TcpRequestActionBenchmark {
+
+    /** Whether requests have a length header, unframed responses being complete at the expected length. */
+    @Param({"true", "false"})
+    public boolean framed;
+
+    /** Whether requests reuse the connection kept in the session, or open one each. */
+    @Param({"true", "false"})
+    public boolean reuseConnection;
+
+    /** Whether requests run on the non-blocking engine. */
+    @Param({"false", "true"})
+    public boolean nonBlocking;
+
+    /** Size of the request payload, echoed back by the server. */
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    private TcpTestServer server;
+    private MultiThreadIoEventLoopGroup eventLoopGroup;
+    private TcpRequestAction action;
+    private BenchmarkFixture.Completion completion;
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new TcpTestServer(0);
+        eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        TcpRequestActionBuilder request = tcp("benchmark", payload).withReuseConnection(reuseConnection);
+        request = framed
+                ? request.withLengthHeader(TcpRequestActionBuilder.LengthHeaderType.FOUR_BYTE_BIG_ENDIAN)
+                : request.withResponseCompletion(ResponseCompletion.expectedLength(payloadSize));
+        TcpProtocol protocol = TcpProtocolBuilder.tcp()
+                .port(server.port())
+                .nonBlocking(nonBlocking)
+                .protocol();
+
+        completion = new BenchmarkFixture.Completion();
+        action = BenchmarkFixture.action(request.asScala(), protocol, completion);
+        session = BenchmarkFixture.session(eventLoopGroup.next());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixture.close(action);
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        server.stop();
+    }
+
+    @Benchmark
+    public Session execute() {
+        Session result = completion.run(action, session);
+        if (result.isFailed()) {
+            throw new IllegalStateException("Request failed");
+        }
+        // Keep the connection stored in the session for the next request
+        session = result;
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.koosty.gatling.tcp;
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder;
+import io.gatling.core.session.Session;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.koosty.gatling.tcp.javaapi.TcpDsl.tcp;
+
+/**
+ * Compares the connect rate and the requests per second of the blocking engine, and of the
+ * non-blocking engine on NIO and on the native transports, against a local {@link TcpTestServer}.
+ * <p>
+ * Without connection reuse, each request opens and closes a connection, so the throughput is the
+ * connect rate. Native transports fall back to NIO on hosts without them, which the log reports.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class TcpTransportBenchmark {
+
+    /** The engine and transport of the requests: blocking sockets, or channels on NIO, epoll or io_uring. */
+    @Param({"blocking", "nio", "epoll", "ioUring"})
+    public String transport;
+
+    /** Whether requests reuse the connection kept in the session, or open one each. */
+    @Param({"true", "false"})
+    public boolean reuseConnection;
+
+    private TcpTestServer server;
+    private MultiThreadIoEventLoopGroup eventLoopGroup;
+    private TcpRequestAction action;
+    private BenchmarkFixture.Completion completion;
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new TcpTestServer(0);
+        eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+
+        TcpRequestActionBuilder request = tcp("benchmark", new byte[64])
+                .withLengthHeader(TcpRequestActionBuilder.LengthHeaderType.FOUR_BYTE_BIG_ENDIAN)
+                .withReuseConnection(reuseConnection);
+        TcpProtocolBuilder protocol = TcpProtocolBuilder.tcp()
+                .port(server.port())
+                .nonBlocking(!transport.equals("blocking"));
+        if (transport.equals("epoll")) {
+            protocol = protocol.transport(TcpTransport.epoll());
+        } else if (transport.equals("ioUring")) {
+            protocol = protocol.transport(TcpTransport.ioUring());
+        }
+
+        completion = new BenchmarkFixture.Completion();
+        action = BenchmarkFixture.action(request.asScala(), protocol.protocol(), completion);
+        session = BenchmarkFixture.session(eventLoopGroup.next());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixture.close(action);
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        server.stop();
+    }
+
+    @Benchmark
+    public Session execute() {
+        Session result = completion.run(action, session);
+        if (result.isFailed()) {
+            throw new IllegalStateException("Request failed");
+        }
+        // Keep the connection stored in the session for the next request
+        session = result;
+        return result;
+    }
+}
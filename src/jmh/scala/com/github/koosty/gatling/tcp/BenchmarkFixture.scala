@@ -0,0 +1,60 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.DefaultClock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.netty.channel.EventLoop
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Runs request actions outside of a simulation, for the benchmarks.
+ */
+object BenchmarkFixture {
+
+  /**
+   * Action ending the benchmarked request, completing the future of the current invocation with
+   * the session passed by the request.
+   */
+  final class Completion extends Action {
+    @volatile private var future: CompletableFuture[Session] = _
+
+    override def name: String = "completion"
+
+    override def execute(session: Session): Unit = future.complete(session)
+
+    /**
+     * Runs a request and waits for it to pass its session to this action.
+     *
+     * @return The session passed by the request.
+     */
+    def run(action: Action, session: Session): Session = {
+      future = new CompletableFuture[Session]
+      action ! session
+      future.get()
+    }
+  }
+
+  /**
+   * Creates the action of a request, as the builder would in a scenario.
+   *
+   * @param builder The request builder.
+   * @param protocol The protocol of the simulation.
+   * @param next The action receiving the session once the request is over.
+   */
+  def action(builder: TcpRequestActionBuilder, protocol: TcpProtocol, next: Action): TcpRequestAction =
+    builder.newAction(TcpComponents(protocol), new DiscardingStatsEngine, new DefaultClock, next)
+
+  /**
+   * Creates the session of a virtual user.
+   *
+   * @param eventLoop The event loop of the virtual user, used by the non-blocking engine.
+   */
+  def session(eventLoop: EventLoop): Session = Session(scenario = "benchmark", userId = 1, eventLoop = eventLoop)
+
+  /** Closes the connections kept open by the requests of an action, and the event loops of a native transport. */
+  def close(action: TcpRequestAction): Unit = {
+    action.components.connections.closeAll()
+    if (action.components.protocol.nonBlocking) action.components.nettyClient.close()
+  }
+}
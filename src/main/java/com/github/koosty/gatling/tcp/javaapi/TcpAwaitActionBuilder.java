@@ -0,0 +1,121 @@
+package com.github.koosty.gatling.tcp.javaapi;
+
+import com.github.koosty.gatling.tcp.FrameCodec;
+import com.github.koosty.gatling.tcp.TcpCheck;
+import io.gatling.javaapi.core.ActionBuilder;
+
+import java.util.function.Function;
+
+/**
+ * Builder class for actions receiving a frame pushed by the server in Gatling simulations.
+ * Frames must be split by a length header or a frame codec.
+ */
+public class TcpAwaitActionBuilder implements ActionBuilder {
+    private final com.github.koosty.gatling.tcp.TcpAwaitActionBuilder wrapped;
+
+    public TcpAwaitActionBuilder(com.github.koosty.gatling.tcp.TcpAwaitActionBuilder wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Adds a validator function to check the frame.
+     *
+     * @param validator A function that takes a byte array (frame) and returns a boolean indicating validation success.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withCheck(Function<byte[], Boolean> validator) {
+        this.wrapped.validators().add(validator);
+        return new TcpAwaitActionBuilder(this.wrapped);
+    }
+
+    /**
+     * Adds checks of the frame, built with {@link TcpCheck}, which may capture values from it
+     * into the session with {@code saveAs}. Checks run in order after the validators, and
+     * stop at the first failure.
+     *
+     * @param checks The checks of the frame.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder check(TcpCheck... checks) {
+        return new TcpAwaitActionBuilder(this.wrapped.check(checks));
+    }
+
+    /**
+     * Splits frames with a 2-byte big-endian length header.
+     *
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withLengthHeader() {
+        return withLengthHeader(TcpRequestActionBuilder.LengthHeaderType.TWO_BYTE_BIG_ENDIAN);
+    }
+
+    /**
+     * Splits frames with a length header of the specified format.
+     *
+     * @param lengthHeaderType The format of the length header.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withLengthHeader(TcpRequestActionBuilder.LengthHeaderType lengthHeaderType) {
+        return new TcpAwaitActionBuilder(this.wrapped.addLengthHeader(true).lengthHeaderType(lengthHeaderType));
+    }
+
+    /**
+     * Splits frames with a custom codec. See {@link FrameCodec} for the built-in codecs.
+     *
+     * @param frameCodec The codec splitting frames.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withFrameCodec(FrameCodec frameCodec) {
+        return new TcpAwaitActionBuilder(this.wrapped.frameCodec(frameCodec));
+    }
+
+    /**
+     * Sets the key of the connection to receive from, kept in the session by an earlier request.
+     *
+     * @param connectionKey A string representing the connection key.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withConnectionKey(String connectionKey) {
+        return new TcpAwaitActionBuilder(this.wrapped.connectionKey(connectionKey));
+    }
+
+    /**
+     * Sets how long to wait for the frame, instead of the protocol read timeout.
+     *
+     * @param timeout The timeout in milliseconds.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withTimeout(int timeout) {
+        return new TcpAwaitActionBuilder(this.wrapped.timeout(timeout));
+    }
+
+    /**
+     * Sets the largest frame accepted, overriding the protocol limit.
+     *
+     * @param maxResponseSize The maximum size in bytes.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withMaxResponseSize(int maxResponseSize) {
+        return new TcpAwaitActionBuilder(this.wrapped.maxResponseSize(maxResponseSize));
+    }
+
+    /**
+     * Controls whether the frame is stored in the session.
+     *
+     * @param storeResponse Whether to store the frame in the session.
+     * @return This TcpAwaitActionBuilder instance for method chaining.
+     */
+    public TcpAwaitActionBuilder withStoreResponse(boolean storeResponse) {
+        return new TcpAwaitActionBuilder(this.wrapped.storeResponse(storeResponse));
+    }
+
+    /**
+     * Converts this Java-based builder into a Scala-based action builder.
+     *
+     * @return A Scala-compatible ActionBuilder instance configured with the current settings.
+     */
+    @Override
+    public com.github.koosty.gatling.tcp.TcpAwaitActionBuilder asScala() {
+        return wrapped;
+    }
+}
@@ -1,6 +1,14 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.TcpPayloadCorpus;
+import com.github.koosty.gatling.tcp.TcpPayloadSource;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.core.internal.Expressions;
+
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * TcpDsl provides a Java DSL for building TCP protocol and request objects
@@ -38,6 +46,92 @@ public class TcpDsl {
         return new TcpRequestActionBuilder(com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request(requestName, message));
     }
 
+    /**
+     * Initializes a TCP request builder whose message is computed from the session of each virtual user.
+     *
+     * @param requestName the name of the TCP request
+     * @param message a function resolving the message to send
+     * @return a TcpRequestActionBuilder instance for further configuration
+     */
+    public static TcpRequestActionBuilder tcp(String requestName, Function<Session, byte[]> message) {
+        Objects.requireNonNull(requestName, "Request name must not be null");
+        Objects.requireNonNull(message, "Message function must not be null");
+        return new TcpRequestActionBuilder(com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request(requestName, Expressions.javaFunctionToExpression(message)));
+    }
+
+    /**
+     * Initializes a TCP request builder whose message is a template of fixed segments and session-substituted slots.
+     *
+     * @param requestName the name of the TCP request
+     * @param template the message template
+     * @return a TcpRequestActionBuilder instance for further configuration
+     */
+    public static TcpRequestActionBuilder tcp(String requestName, TcpMessageTemplate template) {
+        Objects.requireNonNull(requestName, "Request name must not be null");
+        Objects.requireNonNull(template, "Message template must not be null");
+        return new TcpRequestActionBuilder(com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request(requestName, template.asScala()));
+    }
+
+    /**
+     * Initializes a TCP request builder whose message is drawn from a memory-mapped corpus for each request.
+     *
+     * @param requestName the name of the TCP request
+     * @param source the source of the payloads, from {@link TcpPayloadCorpus}
+     * @return a TcpRequestActionBuilder instance for further configuration
+     */
+    public static TcpRequestActionBuilder tcp(String requestName, TcpPayloadSource source) {
+        Objects.requireNonNull(requestName, "Request name must not be null");
+        Objects.requireNonNull(source, "Payload source must not be null");
+        return new TcpRequestActionBuilder(com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request(requestName, source));
+    }
+
+    /**
+     * Creates a feeder putting the next payload of a source in the session, to be written by a
+     * template {@code attribute} slot.
+     *
+     * @param source the source of the payloads, from {@link TcpPayloadCorpus}
+     * @param attributeName the name of the session attribute
+     * @return a feeder for {@code feed}
+     */
+    public static Iterator<Map<String, Object>> feeder(TcpPayloadSource source, String attributeName) {
+        Objects.requireNonNull(source, "Payload source must not be null");
+        Objects.requireNonNull(attributeName, "Attribute name must not be null");
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                return Map.of(attributeName, source.next());
+            }
+        };
+    }
+
+    /**
+     * Initializes a TCP action receiving the frames the server pushes, on a connection kept in the
+     * session by an earlier request.
+     *
+     * @param requestName the name of the action
+     * @return a TcpInboundBuilder instance to choose between awaiting a frame and subscribing to them
+     */
+    public static TcpInboundBuilder tcp(String requestName) {
+        Objects.requireNonNull(requestName, "Request name must not be null");
+        return new TcpInboundBuilder(requestName);
+    }
+
+    /**
+     * Creates an empty message template, to be completed with fixed segments and session-substituted slots.
+     *
+     * @return a new TcpMessageTemplate instance
+     */
+    public static TcpMessageTemplate template() {
+        return new TcpMessageTemplate(
+                com.github.koosty.gatling.tcp.TcpMessageTemplate.template()
+        );
+    }
+
     /**
      * Prepends a length header to the given message using the default
      * {@link TcpRequestActionBuilder.LengthHeaderType#TWO_BYTE_BIG_ENDIAN} format.
@@ -58,46 +152,6 @@ public class TcpDsl {
      * @return the message with a length header prepended
      */
     public static byte[] withLengthHeader(byte[] message, TcpRequestActionBuilder.LengthHeaderType headerType) {
-        int headerSize = (headerType == TcpRequestActionBuilder.LengthHeaderType.TWO_BYTE_BIG_ENDIAN ||
-                headerType == TcpRequestActionBuilder.LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN) ? 2 : 4;
-
-        byte[] result = new byte[message.length + headerSize];
-
-        byte[] lengthHeader = createLengthHeaderBytes(message.length, headerType);
-        System.arraycopy(lengthHeader, 0, result, 0, headerSize);
-        System.arraycopy(message, 0, result, headerSize, message.length);
-
-        return result;
-    }
-
-    private static byte[] createLengthHeaderBytes(int length, TcpRequestActionBuilder.LengthHeaderType headerType) {
-        switch (headerType) {
-            case TWO_BYTE_BIG_ENDIAN:
-                return new byte[]{
-                        (byte) ((length >> 8) & 0xFF),
-                        (byte) (length & 0xFF)
-                };
-            case TWO_BYTE_LITTLE_ENDIAN:
-                return new byte[]{
-                        (byte) (length & 0xFF),
-                        (byte) ((length >> 8) & 0xFF)
-                };
-            case FOUR_BYTE_BIG_ENDIAN:
-                return new byte[]{
-                        (byte) ((length >> 24) & 0xFF),
-                        (byte) ((length >> 16) & 0xFF),
-                        (byte) ((length >> 8) & 0xFF),
-                        (byte) (length & 0xFF)
-                };
-            case FOUR_BYTE_LITTLE_ENDIAN:
-                return new byte[]{
-                        (byte) (length & 0xFF),
-                        (byte) ((length >> 8) & 0xFF),
-                        (byte) ((length >> 16) & 0xFF),
-                        (byte) ((length >> 24) & 0xFF)
-                };
-            default:
-                throw new IllegalArgumentException("Unsupported header type: " + headerType);
-        }
+        return headerType.codec().encode(message);
     }
 }
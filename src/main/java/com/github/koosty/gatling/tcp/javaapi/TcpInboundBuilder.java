@@ -0,0 +1,47 @@
+package com.github.koosty.gatling.tcp.javaapi;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * First step of the actions receiving the frames the server pushes, such as heartbeats or market
+ * ticks, on the connection a request kept in the session. Both require the non-blocking engine.
+ */
+public class TcpInboundBuilder {
+    private final String requestName;
+
+    TcpInboundBuilder(String requestName) {
+        this.requestName = requestName;
+    }
+
+    /**
+     * Awaits the next frame pushed by the server, whatever it is.
+     *
+     * @return a TcpAwaitActionBuilder instance for further configuration
+     */
+    public TcpAwaitActionBuilder await() {
+        return await(frame -> true);
+    }
+
+    /**
+     * Awaits the next frame pushed by the server that matches. Frames pushed before the action runs
+     * are queued on the connection, and the first of them that matches completes it at once.
+     *
+     * @param matcher a function telling whether a frame is the awaited one
+     * @return a TcpAwaitActionBuilder instance for further configuration
+     */
+    public TcpAwaitActionBuilder await(Function<byte[], Boolean> matcher) {
+        Objects.requireNonNull(matcher, "Matcher must not be null");
+        return new TcpAwaitActionBuilder(com.github.koosty.gatling.tcp.TcpAwaitActionBuilder.await(requestName, matcher));
+    }
+
+    /**
+     * Subscribes to the frames pushed by the server: the virtual user moves on at once, and each
+     * frame is reported in the background under the name of this action until the connection is closed.
+     *
+     * @return a TcpSubscribeActionBuilder instance for further configuration
+     */
+    public TcpSubscribeActionBuilder subscribe() {
+        return new TcpSubscribeActionBuilder(com.github.koosty.gatling.tcp.TcpSubscribeActionBuilder.subscribe(requestName));
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.koosty.gatling.tcp.javaapi;
+
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.core.internal.Expressions;
+
+import java.util.function.Function;
+
+/**
+ * TcpMessageTemplate is a Java API wrapper for the underlying Scala TcpMessageTemplate.
+ * <p>
+ * A template is made of fixed byte segments and slots substituted from the session of each
+ * virtual user, typically with attributes fed by a feeder. Segments are written one after the
+ * other, without being copied into a single array.
+ * Each method returns a new instance with the appended segment.
+ * </p>
+ */
+public class TcpMessageTemplate {
+
+    /**
+     * The wrapped Scala TcpMessageTemplate instance.
+     */
+    private final com.github.koosty.gatling.tcp.TcpMessageTemplate wrapped;
+
+    /**
+     * Constructs a TcpMessageTemplate wrapping the given Scala template.
+     *
+     * @param wrapped the underlying Scala TcpMessageTemplate
+     */
+    public TcpMessageTemplate(com.github.koosty.gatling.tcp.TcpMessageTemplate wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Appends fixed bytes.
+     * @param bytes the bytes to append
+     * @return a new TcpMessageTemplate with the bytes appended
+     */
+    public TcpMessageTemplate bytes(byte[] bytes) {
+        return new TcpMessageTemplate(wrapped.bytes(bytes));
+    }
+
+    /**
+     * Appends fixed text, encoded in UTF-8.
+     * @param text the text to append
+     * @return a new TcpMessageTemplate with the text appended
+     */
+    public TcpMessageTemplate text(String text) {
+        return new TcpMessageTemplate(wrapped.text(text));
+    }
+
+    /**
+     * Appends the value of a session attribute. Byte arrays are written as is, buffers, such as
+     * the payloads fed by a {@link com.github.koosty.gatling.tcp.TcpPayloadSource}, from their position to their limit without
+     * being copied, other values as their UTF-8 encoded string representation.
+     * @param name the name of the session attribute
+     * @return a new TcpMessageTemplate with the attribute slot appended
+     */
+    public TcpMessageTemplate attribute(String name) {
+        return new TcpMessageTemplate(wrapped.attribute(name));
+    }
+
+    /**
+     * Appends a slot computed from the session.
+     * @param slot a function resolving the bytes of the slot
+     * @return a new TcpMessageTemplate with the slot appended
+     */
+    public TcpMessageTemplate slot(Function<Session, byte[]> slot) {
+        return new TcpMessageTemplate(wrapped.slot(Expressions.javaFunctionToExpression(slot)));
+    }
+
+    /**
+     * Returns the underlying Scala TcpMessageTemplate.
+     * @return the Scala TcpMessageTemplate
+     */
+    public com.github.koosty.gatling.tcp.TcpMessageTemplate asScala() {
+        return wrapped;
+    }
+}
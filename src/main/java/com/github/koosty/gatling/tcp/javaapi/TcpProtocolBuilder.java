@@ -1,6 +1,8 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.TcpBalancing;
 import com.github.koosty.gatling.tcp.TcpProtocol;
+import com.github.koosty.gatling.tcp.TcpTransport;
 import io.gatling.core.protocol.Protocol;
 import io.gatling.javaapi.core.ProtocolBuilder;
 
@@ -45,6 +47,15 @@ public class TcpProtocolBuilder implements ProtocolBuilder {
     public TcpProtocolBuilder port(int port) {
         return new TcpProtocolBuilder(wrapped.port(port));
     }
+
+    /**
+     * Connects to a Unix domain socket instead of the host and port, on Java 16 and later.
+     * @param path the path of the socket file
+     * @return a new TcpProtocolBuilder with the Unix socket set
+     */
+    public TcpProtocolBuilder unixSocket(String path) {
+        return new TcpProtocolBuilder(wrapped.unixSocket(path));
+    }
     /**
      * Sets the TCP connection timeout in milliseconds.
      * @param connectTimeout timeout in ms
@@ -78,6 +89,362 @@ public class TcpProtocolBuilder implements ProtocolBuilder {
         return new TcpProtocolBuilder(wrapped.reuseConnections(reuseConnections));
     }
 
+    /**
+     * Enables or disables the non-blocking engine.
+     * When enabled, responses are awaited on Netty event loops instead of blocking a thread per request.
+     * @param nonBlocking true to enable, false to use blocking sockets
+     * @return a new TcpProtocolBuilder with the engine set
+     */
+    public TcpProtocolBuilder nonBlocking(boolean nonBlocking) {
+        return new TcpProtocolBuilder(wrapped.nonBlocking(nonBlocking));
+    }
+
+    /**
+     * Sets the transport of the non-blocking engine's channels, such as {@link TcpTransport#epoll()}.
+     * Native transports fall back to Gatling's on hosts without their library.
+     * @param transport the transport of the channels
+     * @return a new TcpProtocolBuilder with the transport set
+     */
+    public TcpProtocolBuilder transport(TcpTransport transport) {
+        return new TcpProtocolBuilder(wrapped.transport(transport));
+    }
+
+    /**
+     * Enables or disables the connection pool shared by all virtual users.
+     * When enabled, requests borrow a pooled connection instead of owning one in their session.
+     * @param enabled true to enable, false to disable
+     * @return a new TcpProtocolBuilder with the connection pool set
+     */
+    public TcpProtocolBuilder connectionPool(boolean enabled) {
+        return new TcpProtocolBuilder(wrapped.connectionPool(enabled));
+    }
+
+    /**
+     * Sets the maximum number of pooled connections opened to a single host.
+     * @param maxConnectionsPerHost the maximum number of connections
+     * @return a new TcpProtocolBuilder with the limit set
+     */
+    public TcpProtocolBuilder maxConnectionsPerHost(int maxConnectionsPerHost) {
+        return new TcpProtocolBuilder(wrapped.maxConnectionsPerHost(maxConnectionsPerHost));
+    }
+
+    /**
+     * Sets the time in milliseconds after which an idle pooled connection is closed.
+     * @param maxIdleTime idle time in ms, 0 to never close idle connections
+     * @return a new TcpProtocolBuilder with the max idle time set
+     */
+    public TcpProtocolBuilder maxIdleTime(int maxIdleTime) {
+        return new TcpProtocolBuilder(wrapped.maxIdleTime(maxIdleTime));
+    }
+
+    /**
+     * Sets the timeout in milliseconds for obtaining a pooled connection when all are in use.
+     * @param acquireTimeout timeout in ms
+     * @return a new TcpProtocolBuilder with the acquire timeout set
+     */
+    public TcpProtocolBuilder acquireTimeout(int acquireTimeout) {
+        return new TcpProtocolBuilder(wrapped.acquireTimeout(acquireTimeout));
+    }
+
+    /**
+     * Enables or disables the liveness check of idle pooled connections before they are handed out.
+     * @param validateOnBorrow true to enable, false to disable
+     * @return a new TcpProtocolBuilder with validation on borrow set
+     */
+    public TcpProtocolBuilder validateOnBorrow(boolean validateOnBorrow) {
+        return new TcpProtocolBuilder(wrapped.validateOnBorrow(validateOnBorrow));
+    }
+
+    /**
+     * Sets the number of connections shared by pipelined requests with the same connection key.
+     * @param pipelinedConnections the number of connections
+     * @return a new TcpProtocolBuilder with the number of pipelined connections set
+     */
+    public TcpProtocolBuilder pipelinedConnections(int pipelinedConnections) {
+        return new TcpProtocolBuilder(wrapped.pipelinedConnections(pipelinedConnections));
+    }
+
+    /**
+     * Sets the largest response accepted by requests that don't set their own limit.
+     * @param maxResponseSize the maximum size in bytes
+     * @return a new TcpProtocolBuilder with the maximum response size set
+     */
+    public TcpProtocolBuilder maxResponseSize(int maxResponseSize) {
+        return new TcpProtocolBuilder(wrapped.maxResponseSize(maxResponseSize));
+    }
+
+    /**
+     * Sets the time after which the host is resolved again. The host is resolved once for all the
+     * virtual users, and new connections go to each of its addresses in turn.
+     * @param dnsTtl the time in milliseconds, 0 to resolve the host only once
+     * @return a new TcpProtocolBuilder with the DNS TTL set
+     */
+    public TcpProtocolBuilder dnsTtl(int dnsTtl) {
+        return new TcpProtocolBuilder(wrapped.dnsTtl(dnsTtl));
+    }
+
+    /**
+     * Adds an endpoint to spread connections over, instead of the host and port alone.
+     * @param host the hostname or IP address of the endpoint
+     * @param port the port number of the endpoint
+     * @return a new TcpProtocolBuilder with the endpoint added
+     */
+    public TcpProtocolBuilder endpoint(String host, int port) {
+        return new TcpProtocolBuilder(wrapped.endpoint(host, port));
+    }
+
+    /**
+     * Adds an endpoint to spread connections over, with a limit on its connections.
+     * @param host the hostname or IP address of the endpoint
+     * @param port the port number of the endpoint
+     * @param maxConnections the maximum number of requests exchanged with the endpoint at once, on new and kept connections alike, 0 for no limit
+     * @return a new TcpProtocolBuilder with the endpoint added
+     */
+    public TcpProtocolBuilder endpoint(String host, int port, int maxConnections) {
+        return new TcpProtocolBuilder(wrapped.endpoint(host, port, maxConnections));
+    }
+
+    /**
+     * Sets the strategy choosing the endpoint of each new connection, such as {@link TcpBalancing#leastInFlight()}.
+     * @param balancing the balancing strategy
+     * @return a new TcpProtocolBuilder with the balancing strategy set
+     */
+    public TcpProtocolBuilder balancing(TcpBalancing balancing) {
+        return new TcpProtocolBuilder(wrapped.balancing(balancing));
+    }
+
+    /**
+     * Sets the time during which an endpoint that failed to connect is avoided.
+     * @param ejectionTime the time in milliseconds, 0 to never avoid endpoints
+     * @return a new TcpProtocolBuilder with the ejection time set
+     */
+    public TcpProtocolBuilder ejectionTime(int ejectionTime) {
+        return new TcpProtocolBuilder(wrapped.ejectionTime(ejectionTime));
+    }
+
+    /**
+     * Controls whether responses are also reported per endpoint when there are several.
+     * @param endpointStats whether to report responses per endpoint
+     * @return a new TcpProtocolBuilder with the setting applied
+     */
+    public TcpProtocolBuilder endpointStats(boolean endpointStats) {
+        return new TcpProtocolBuilder(wrapped.endpointStats(endpointStats));
+    }
+
+    /**
+     * Sets the number of connections opened to each endpoint when the simulation starts.
+     * @param prewarmConnections the number of connections per endpoint, 0 to open them on demand
+     * @return a new TcpProtocolBuilder with the pre-warmed connections set
+     */
+    public TcpProtocolBuilder prewarmConnections(int prewarmConnections) {
+        return new TcpProtocolBuilder(wrapped.prewarmConnections(prewarmConnections));
+    }
+
+    /**
+     * Limits the rate of new connections.
+     * @param maxConnectsPerSecond the maximum number of new connections per second, 0 for no limit
+     * @return a new TcpProtocolBuilder with the connect rate limit set
+     */
+    public TcpProtocolBuilder maxConnectsPerSecond(int maxConnectsPerSecond) {
+        return new TcpProtocolBuilder(wrapped.maxConnectsPerSecond(maxConnectsPerSecond));
+    }
+
+    /**
+     * Enables or disables TLS. A single TLS context is shared by all virtual users, so that new
+     * connections resume the sessions of earlier ones. Setting any other TLS option enables it.
+     * @param enabled whether to secure connections with TLS
+     * @return a new TcpProtocolBuilder with TLS set
+     */
+    public TcpProtocolBuilder tls(boolean enabled) {
+        return new TcpProtocolBuilder(wrapped.tls(enabled));
+    }
+
+    /**
+     * Sets the PKCS12 store of the certificates trusted to identify servers.
+     * @param path the path of the store file, or of a classpath resource
+     * @param password the password of the store
+     * @return a new TcpProtocolBuilder with the trust store set
+     */
+    public TcpProtocolBuilder trustStore(String path, String password) {
+        return new TcpProtocolBuilder(wrapped.trustStore(path, password));
+    }
+
+    /**
+     * Sets the store of the certificates trusted to identify servers.
+     * @param path the path of the store file, or of a classpath resource
+     * @param password the password of the store
+     * @param storeType the type of the store, such as PKCS12 or JKS
+     * @return a new TcpProtocolBuilder with the trust store set
+     */
+    public TcpProtocolBuilder trustStore(String path, String password, String storeType) {
+        return new TcpProtocolBuilder(wrapped.trustStore(path, password, storeType));
+    }
+
+    /**
+     * Sets the PKCS12 store of the client certificate, for servers requiring client authentication.
+     * @param path the path of the store file, or of a classpath resource
+     * @param password the password of the store and of its key
+     * @return a new TcpProtocolBuilder with the key store set
+     */
+    public TcpProtocolBuilder keyStore(String path, String password) {
+        return new TcpProtocolBuilder(wrapped.keyStore(path, password));
+    }
+
+    /**
+     * Sets the store of the client certificate, for servers requiring client authentication.
+     * @param path the path of the store file, or of a classpath resource
+     * @param password the password of the store and of its key
+     * @param storeType the type of the store, such as PKCS12 or JKS
+     * @return a new TcpProtocolBuilder with the key store set
+     */
+    public TcpProtocolBuilder keyStore(String path, String password, String storeType) {
+        return new TcpProtocolBuilder(wrapped.keyStore(path, password, storeType));
+    }
+
+    /**
+     * Trusts any server certificate without verifying it nor the hostname, for test servers only,
+     * and enables TLS. Verifying certificates again with {@code false} leaves TLS as it is.
+     * @param trustAll whether to trust any server certificate
+     * @return a new TcpProtocolBuilder with the certificate verification set
+     */
+    public TcpProtocolBuilder trustAllCertificates(boolean trustAll) {
+        return new TcpProtocolBuilder(wrapped.trustAllCertificates(trustAll));
+    }
+
+    /**
+     * Sets the enabled TLS protocols.
+     * @param protocols the protocols, such as TLSv1.3
+     * @return a new TcpProtocolBuilder with the protocols set
+     */
+    public TcpProtocolBuilder tlsProtocols(String... protocols) {
+        return new TcpProtocolBuilder(wrapped.tlsProtocols(protocols));
+    }
+
+    /**
+     * Sets the enabled TLS cipher suites.
+     * @param cipherSuites the cipher suites, such as TLS_AES_128_GCM_SHA256
+     * @return a new TcpProtocolBuilder with the cipher suites set
+     */
+    public TcpProtocolBuilder cipherSuites(String... cipherSuites) {
+        return new TcpProtocolBuilder(wrapped.cipherSuites(cipherSuites));
+    }
+
+    /**
+     * Sets the server name sent in the TLS handshake instead of the endpoint host.
+     * @param sniHostName the server name
+     * @return a new TcpProtocolBuilder with the server name set
+     */
+    public TcpProtocolBuilder sniHostName(String sniHostName) {
+        return new TcpProtocolBuilder(wrapped.sniHostName(sniHostName));
+    }
+
+    /**
+     * Sets whether server certificates must match the endpoint host, which is the default.
+     * @param hostnameVerification whether to verify the hostname
+     * @return a new TcpProtocolBuilder with the hostname verification set
+     */
+    public TcpProtocolBuilder hostnameVerification(boolean hostnameVerification) {
+        return new TcpProtocolBuilder(wrapped.hostnameVerification(hostnameVerification));
+    }
+
+    /**
+     * Sets whether Nagle's algorithm is disabled, which is the default, so that small messages are sent at once.
+     * @param tcpNoDelay whether to disable Nagle's algorithm
+     * @return a new TcpProtocolBuilder with the option set
+     */
+    public TcpProtocolBuilder tcpNoDelay(boolean tcpNoDelay) {
+        return new TcpProtocolBuilder(wrapped.tcpNoDelay(tcpNoDelay));
+    }
+
+    /**
+     * Sets the size of the socket send buffers, instead of the system default.
+     * @param sendBufferSize the size in bytes
+     * @return a new TcpProtocolBuilder with the buffer size set
+     */
+    public TcpProtocolBuilder sendBufferSize(int sendBufferSize) {
+        return new TcpProtocolBuilder(wrapped.sendBufferSize(sendBufferSize));
+    }
+
+    /**
+     * Sets the size of the socket receive buffers, instead of the system default.
+     * @param receiveBufferSize the size in bytes
+     * @return a new TcpProtocolBuilder with the buffer size set
+     */
+    public TcpProtocolBuilder receiveBufferSize(int receiveBufferSize) {
+        return new TcpProtocolBuilder(wrapped.receiveBufferSize(receiveBufferSize));
+    }
+
+    /**
+     * Sets the time closed sockets keep sending their unsent data; with 0, connections are reset when closed.
+     * @param linger the time in seconds
+     * @return a new TcpProtocolBuilder with the linger set
+     */
+    public TcpProtocolBuilder soLinger(int linger) {
+        return new TcpProtocolBuilder(wrapped.soLinger(linger));
+    }
+
+    /**
+     * Sets whether local addresses in TIME_WAIT may be bound again.
+     * @param reuseAddress whether to reuse local addresses
+     * @return a new TcpProtocolBuilder with the option set
+     */
+    public TcpProtocolBuilder reuseAddress(boolean reuseAddress) {
+        return new TcpProtocolBuilder(wrapped.reuseAddress(reuseAddress));
+    }
+
+    /**
+     * Sets whether several sockets may bind the same local address and port (SO_REUSEPORT), where supported.
+     * @param reusePort whether to reuse local ports
+     * @return a new TcpProtocolBuilder with the option set
+     */
+    public TcpProtocolBuilder reusePort(boolean reusePort) {
+        return new TcpProtocolBuilder(wrapped.reusePort(reusePort));
+    }
+
+    /**
+     * Sets the local addresses new connections are bound to in turn, each with its own range of ephemeral ports.
+     * @param localAddresses the local IP addresses or hostnames
+     * @return a new TcpProtocolBuilder with the local addresses set
+     */
+    public TcpProtocolBuilder localAddresses(String... localAddresses) {
+        return new TcpProtocolBuilder(wrapped.localAddresses(localAddresses));
+    }
+
+    /**
+     * Samples the network metrics (throughput, connections, requests in flight) at a fixed interval into the log.
+     * @param interval the time in milliseconds between samples, 0 to never sample them
+     * @return a new TcpProtocolBuilder with the metrics interval set
+     */
+    public TcpProtocolBuilder metricsInterval(int interval) {
+        return new TcpProtocolBuilder(wrapped.metricsInterval(interval));
+    }
+
+    /**
+     * Appends the samples of the network metrics to a CSV file, every second unless the interval is set.
+     * @param file the path of the CSV file
+     * @return a new TcpProtocolBuilder with the metrics file set
+     */
+    public TcpProtocolBuilder metricsFile(String file) {
+        return new TcpProtocolBuilder(wrapped.metricsFile(file));
+    }
+
+    /**
+     * Runs blocking requests on virtual threads on JDK 21 and later, and on a bounded pool of platform threads before.
+     * @return a new TcpProtocolBuilder running blocking requests on virtual threads
+     */
+    public TcpProtocolBuilder virtualThreads() {
+        return new TcpProtocolBuilder(wrapped.virtualThreads(true));
+    }
+
+    /**
+     * Sets the number of platform threads running blocking requests when virtual threads aren't available.
+     * @param blockingThreads the number of threads
+     * @return a new TcpProtocolBuilder with the number of blocking threads set
+     */
+    public TcpProtocolBuilder blockingThreads(int blockingThreads) {
+        return new TcpProtocolBuilder(wrapped.blockingThreads(blockingThreads));
+    }
+
     /**
      * Builds and returns the configured TCP {@link Protocol} instance for Gatling.
      * @return the configured Protocol
@@ -1,7 +1,11 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.FrameCodec;
+import com.github.koosty.gatling.tcp.ResponseCompletion;
+import com.github.koosty.gatling.tcp.TcpCheck;
 import io.gatling.javaapi.core.ActionBuilder;
 
+import java.nio.ByteOrder;
 import java.util.function.Function;
 
 /**
@@ -27,6 +31,18 @@ public class TcpRequestActionBuilder implements ActionBuilder {
         return new TcpRequestActionBuilder(this.wrapped);
     }
 
+    /**
+     * Adds checks of the response, built with {@link TcpCheck}, which may capture values from it
+     * into the session with {@code saveAs}. Checks run in order after the validators, and stop at
+     * the first failure.
+     *
+     * @param checks The checks of the response.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder check(TcpCheck... checks) {
+        return new TcpRequestActionBuilder(this.wrapped.check(checks));
+    }
+
     /**
      * Enables automatic addition of a length header to the message.
      * By default, the length header is set to 2-byte big-endian format.
@@ -47,6 +63,73 @@ public class TcpRequestActionBuilder implements ActionBuilder {
         return new TcpRequestActionBuilder(this.wrapped.addLengthHeader(true).lengthHeaderType(lengthHeaderType));
     }
 
+    /**
+     * Frames the message and splits the response with a custom codec, such as delimiter-terminated,
+     * fixed-length or ASCII length-prefixed frames. See {@link FrameCodec} for the built-in codecs.
+     *
+     * @param frameCodec The codec framing requests and responses.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withFrameCodec(FrameCodec frameCodec) {
+        return new TcpRequestActionBuilder(this.wrapped.frameCodec(frameCodec));
+    }
+
+    /**
+     * Sets when a response without length header or frame codec is complete. By default, it's
+     * complete once no byte has been received for 10ms, which each exchange waits for after the last
+     * byte without it counting in the response time,
+     * or when the peer closes the connection. See {@link ResponseCompletion} for the other strategies.
+     *
+     * @param responseCompletion The completion strategy of unframed responses.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withResponseCompletion(ResponseCompletion responseCompletion) {
+        return new TcpRequestActionBuilder(this.wrapped.responseCompletion(responseCompletion));
+    }
+
+    /**
+     * Sets the largest response accepted by this request, overriding the protocol limit.
+     * Larger responses fail the request instead of being buffered.
+     *
+     * @param maxResponseSize The maximum size in bytes.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withMaxResponseSize(int maxResponseSize) {
+        return new TcpRequestActionBuilder(this.wrapped.maxResponseSize(maxResponseSize));
+    }
+
+    /**
+     * Controls whether the response bytes are stored in the session. Validators still receive
+     * the response when it isn't stored.
+     *
+     * @param storeResponse Whether to store the response in the session.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withStoreResponse(boolean storeResponse) {
+        return new TcpRequestActionBuilder(this.wrapped.storeResponse(storeResponse));
+    }
+
+    /**
+     * Reports the connect, write and time-to-first-byte phases as requests named
+     * {@code <requestName>.connect}, {@code <requestName>.write} and {@code <requestName>.firstByte},
+     * and stores their durations in microseconds in the session as {@code <requestName>.timings}.
+     *
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withTimingBreakdown() {
+        return new TcpRequestActionBuilder(this.wrapped.timingBreakdown(true));
+    }
+
+    /**
+     * Sends the message without awaiting a response, for one-way messages. The request completes
+     * once the message is written, and can't have checks.
+     *
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder send() {
+        return new TcpRequestActionBuilder(this.wrapped.send());
+    }
+
     /**
      * Enables connection reuse for this TCP request.
      * When enabled, the same TCP connection will be reused for multiple requests.
@@ -78,6 +161,52 @@ public class TcpRequestActionBuilder implements ActionBuilder {
         return new TcpRequestActionBuilder(this.wrapped.connectionKey(connectionKey));
     }
 
+    /**
+     * Sends the request again once on a new connection when the reused one was closed by the server,
+     * instead of failing it. The stale attempt isn't reported, and counts as a reconnect in the network metrics.
+     * A timeout never makes a connection stale, and fails the request as usual.
+     *
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withReconnectOnStale() {
+        return new TcpRequestActionBuilder(this.wrapped.reconnectOnStale(true));
+    }
+
+    /**
+     * Sends the request again when its connection fails, with an exponential backoff. Only meant for
+     * idempotent requests; failed attempts are reported as {@code <requestName>.retry}.
+     *
+     * @param maxRetries The number of retries.
+     * @param backoffMillis The time in milliseconds before the first retry, doubled for each next one.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withRetries(int maxRetries, int backoffMillis) {
+        return new TcpRequestActionBuilder(this.wrapped.retries(maxRetries, backoffMillis));
+    }
+
+    /**
+     * Enables pipelining: the request shares a connection with other requests in flight, and its
+     * response is matched by correlation id instead of arrival order.
+     * Pipelining requires a length header to split responses.
+     *
+     * @param correlationId A function extracting the correlation id from both request and response payloads.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withPipelining(Function<byte[], String> correlationId) {
+        return withPipelining(correlationId, correlationId);
+    }
+
+    /**
+     * Enables pipelining with distinct correlation id extractors for requests and responses.
+     *
+     * @param requestCorrelationId A function extracting the correlation id from the request payload.
+     * @param responseCorrelationId A function extracting the correlation id from a response payload.
+     * @return This TcpRequestBuilder instance for method chaining.
+     */
+    public TcpRequestActionBuilder withPipelining(Function<byte[], String> requestCorrelationId, Function<byte[], String> responseCorrelationId) {
+        return new TcpRequestActionBuilder(this.wrapped.pipelined(requestCorrelationId, responseCorrelationId));
+    }
+
     /**
      * Converts this Java-based TCP request builder into a Scala-based action builder.
      *
@@ -93,9 +222,24 @@ public class TcpRequestActionBuilder implements ActionBuilder {
      * The length header can be either 2 bytes or 4 bytes, and can use big-endian or little-endian encoding.
      */
     public enum LengthHeaderType {
-        TWO_BYTE_BIG_ENDIAN,    // Default: 2 bytes, big endian
-        TWO_BYTE_LITTLE_ENDIAN, // 2 bytes, little endian
-        FOUR_BYTE_BIG_ENDIAN,   // 4 bytes, big endian
-        FOUR_BYTE_LITTLE_ENDIAN // 4 bytes, little endian
+        TWO_BYTE_BIG_ENDIAN(2, ByteOrder.BIG_ENDIAN),       // Default: 2 bytes, big endian
+        TWO_BYTE_LITTLE_ENDIAN(2, ByteOrder.LITTLE_ENDIAN), // 2 bytes, little endian
+        FOUR_BYTE_BIG_ENDIAN(4, ByteOrder.BIG_ENDIAN),      // 4 bytes, big endian
+        FOUR_BYTE_LITTLE_ENDIAN(4, ByteOrder.LITTLE_ENDIAN); // 4 bytes, little endian
+
+        private final FrameCodec codec;
+
+        LengthHeaderType(int size, ByteOrder order) {
+            this.codec = FrameCodec.lengthField(size, order);
+        }
+
+        /**
+         * Returns the frame codec equivalent to this length header format.
+         *
+         * @return A length field FrameCodec.
+         */
+        public FrameCodec codec() {
+            return codec;
+        }
     }
 }
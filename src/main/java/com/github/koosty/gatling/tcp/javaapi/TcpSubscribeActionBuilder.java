@@ -0,0 +1,121 @@
+package com.github.koosty.gatling.tcp.javaapi;
+
+import com.github.koosty.gatling.tcp.FrameCodec;
+import com.github.koosty.gatling.tcp.TcpCheck;
+import io.gatling.javaapi.core.ActionBuilder;
+
+import java.util.function.Function;
+
+/**
+ * Builder class for actions subscribing to the frames pushed by the server in Gatling simulations.
+ * Frames must be split by a length header or a frame codec.
+ */
+public class TcpSubscribeActionBuilder implements ActionBuilder {
+    private final com.github.koosty.gatling.tcp.TcpSubscribeActionBuilder wrapped;
+
+    public TcpSubscribeActionBuilder(com.github.koosty.gatling.tcp.TcpSubscribeActionBuilder wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Adds a validator function to check each frame.
+     *
+     * @param validator A function that takes a byte array (frame) and returns a boolean indicating validation success.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withCheck(Function<byte[], Boolean> validator) {
+        this.wrapped.validators().add(validator);
+        return new TcpSubscribeActionBuilder(this.wrapped);
+    }
+
+    /**
+     * Adds checks of each frame, built with {@link TcpCheck}. Checks run in order after the validators, and
+     * stop at the first failure.
+     *
+     * @param checks The checks of the frames.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder check(TcpCheck... checks) {
+        return new TcpSubscribeActionBuilder(this.wrapped.check(checks));
+    }
+
+    /**
+     * Restricts the subscription to some of the frames, the others being left to await actions.
+     *
+     * @param filter A function telling whether a frame belongs to the subscription.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withFilter(Function<byte[], Boolean> filter) {
+        return new TcpSubscribeActionBuilder(this.wrapped.filter(filter));
+    }
+
+    /**
+     * Reports the latency of each frame from the time the server sent it. Without it, frames are
+     * reported with a zero response time, only counting them.
+     *
+     * @param sentMillis A function extracting the epoch milliseconds at which the server sent a frame.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withSentTime(Function<byte[], Long> sentMillis) {
+        return new TcpSubscribeActionBuilder(this.wrapped.sentMillis(sentMillis));
+    }
+
+    /**
+     * Splits frames with a 2-byte big-endian length header.
+     *
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withLengthHeader() {
+        return withLengthHeader(TcpRequestActionBuilder.LengthHeaderType.TWO_BYTE_BIG_ENDIAN);
+    }
+
+    /**
+     * Splits frames with a length header of the specified format.
+     *
+     * @param lengthHeaderType The format of the length header.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withLengthHeader(TcpRequestActionBuilder.LengthHeaderType lengthHeaderType) {
+        return new TcpSubscribeActionBuilder(this.wrapped.addLengthHeader(true).lengthHeaderType(lengthHeaderType));
+    }
+
+    /**
+     * Splits frames with a custom codec. See {@link FrameCodec} for the built-in codecs.
+     *
+     * @param frameCodec The codec splitting frames.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withFrameCodec(FrameCodec frameCodec) {
+        return new TcpSubscribeActionBuilder(this.wrapped.frameCodec(frameCodec));
+    }
+
+    /**
+     * Sets the key of the connection to subscribe to, kept in the session by an earlier request.
+     *
+     * @param connectionKey A string representing the connection key.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withConnectionKey(String connectionKey) {
+        return new TcpSubscribeActionBuilder(this.wrapped.connectionKey(connectionKey));
+    }
+
+    /**
+     * Sets the largest frame accepted, overriding the protocol limit.
+     *
+     * @param maxResponseSize The maximum size in bytes.
+     * @return This TcpSubscribeActionBuilder instance for method chaining.
+     */
+    public TcpSubscribeActionBuilder withMaxResponseSize(int maxResponseSize) {
+        return new TcpSubscribeActionBuilder(this.wrapped.maxResponseSize(maxResponseSize));
+    }
+
+    /**
+     * Converts this Java-based builder into a Scala-based action builder.
+     *
+     * @return A Scala-compatible ActionBuilder instance configured with the current settings.
+     */
+    @Override
+    public com.github.koosty.gatling.tcp.TcpSubscribeActionBuilder asScala() {
+        return wrapped;
+    }
+}
@@ -1,5 +1,11 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.BytePattern;
+import com.github.koosty.gatling.tcp.BytePatternSet;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.function.Function;
 
 /**
@@ -44,28 +50,43 @@ public class TcpValidators {
     /**
      * Validator to check if the response contains a specific sequence of bytes.
      *
+     * The search skips ahead with a shift table built once, when the validator is created.
+     *
      * @param expectedBytes The byte sequence to search for in the response.
      * @return A function that returns {@code true} if the response contains the {@code expectedBytes}, {@code false} otherwise.
      */
     public static Function<byte[], Boolean> containsBytes(byte[] expectedBytes) {
-        return response -> {
-            if (response.length < expectedBytes.length) return false;
-            for (int i = 0; i <= response.length - expectedBytes.length; i++) {
-                boolean found = true;
-                for (int j = 0; j < expectedBytes.length; j++) {
-                    if (response[i + j] != expectedBytes[j]) {
-                        found = false;
-                        break;
-                    }
-                }
-                if (found) return true;
-            }
-            return false;
-        };
+        BytePattern pattern = new BytePattern(expectedBytes);
+        return response -> pattern.indexOf(response) >= 0;
+    }
+
+    /**
+     * Validator to check if the response contains several byte sequences, searched in a single pass.
+     * Each byte of the response is read once, which beats one {@link #containsBytes} per sequence
+     * for short or numerous sequences, long ones letting {@link #containsBytes} skip more bytes.
+     *
+     * @param expectedBytes The byte sequences to search for in the response, at most 64.
+     * @return A function that returns {@code true} if the response contains all the {@code expectedBytes}, {@code false} otherwise.
+     */
+    public static Function<byte[], Boolean> containsAllBytes(byte[]... expectedBytes) {
+        BytePatternSet patterns = new BytePatternSet(CollectionConverters.asScala(Arrays.asList(expectedBytes)).toSeq());
+        return patterns::containsAll;
     }
 
     /**
-     * Validator to check if the response contains a specific string.
+     * Validator to check if the response contains any of several byte sequences, searched in a single pass.
+     *
+     * @param expectedBytes The byte sequences to search for in the response, at most 64.
+     * @return A function that returns {@code true} if the response contains one of the {@code expectedBytes}, {@code false} otherwise.
+     */
+    public static Function<byte[], Boolean> containsAnyBytes(byte[]... expectedBytes) {
+        BytePatternSet patterns = new BytePatternSet(CollectionConverters.asScala(Arrays.asList(expectedBytes)).toSeq());
+        return patterns::containsAny;
+    }
+
+    /**
+     * Validator to check if a string contains a specific string. It takes the decoded response, so
+     * it can't be passed to {@code withCheck}: use {@link #containsString(String, Charset)} instead.
      *
      * @param expected The string to search for in the response.
      * @return A function that returns {@code true} if the response contains the {@code expected} string, {@code false} otherwise.
@@ -73,4 +94,16 @@ public class TcpValidators {
     public static Function<String, Boolean> containsString(String expected) {
         return response -> response.contains(expected);
     }
+
+    /**
+     * Validator to check if the response contains a specific string, searched as the bytes it's
+     * encoded to, without decoding the response.
+     *
+     * @param expected The string to search for in the response.
+     * @param charset The charset the response is encoded with.
+     * @return A function that returns {@code true} if the response contains the {@code expected} string, {@code false} otherwise.
+     */
+    public static Function<byte[], Boolean> containsString(String expected, Charset charset) {
+        return containsBytes(expected.getBytes(charset));
+    }
 }
@@ -0,0 +1,180 @@
+package com.github.koosty.gatling.tcp
+
+import java.util.Arrays
+
+/**
+ * A byte sequence searched with the Boyer-Moore-Horspool algorithm, whose shift table is built
+ * once so that searching a response skips up to the length of the pattern at each step.
+ *
+ * Candidate positions are confirmed with `Arrays.equals` on ranges, which the JVM vectorizes.
+ *
+ * @param pattern The searched bytes, copied.
+ */
+final class BytePattern(pattern: Array[Byte]) {
+  private val bytes = pattern.clone()
+  private val last = bytes.length - 1
+
+  /** How far the search window moves, for each value of its last byte. */
+  private val shifts: Array[Int] = {
+    val table = new Array[Int](256)
+    Arrays.fill(table, math.max(bytes.length, 1))
+    var i = 0
+    while (i < last) {
+      table(bytes(i) & 0xFF) = last - i
+      i += 1
+    }
+    table
+  }
+
+  /** Returns the length of the pattern. */
+  def length: Int = bytes.length
+
+  /**
+   * Returns the position of the first occurrence of the pattern, -1 if there is none.
+   */
+  def indexOf(data: Array[Byte]): Int = indexOf(data, 0, data.length)
+
+  /**
+   * Returns the position of the first occurrence of the pattern within a range, -1 if there is none.
+   *
+   * @param from The first position searched.
+   * @param to The end of the searched range, exclusive.
+   */
+  def indexOf(data: Array[Byte], from: Int, to: Int): Int =
+    if (bytes.length == 0) {
+      if (from <= to) from else -1
+    } else {
+      val lastByte = bytes(last)
+      val end = to - bytes.length
+      var i = from
+      var found = -1
+      while (found < 0 && i <= end) {
+        val b = data(i + last)
+        if (b == lastByte && Arrays.equals(data, i, i + last, bytes, 0, last)) {
+          found = i
+        } else {
+          i += shifts(b & 0xFF)
+        }
+      }
+      found
+    }
+
+  override def toString: String = s"BytePattern(${bytes.length} bytes)"
+}
+
+/**
+ * Several byte sequences searched at once with the Aho-Corasick algorithm, reading each byte of a
+ * response once whatever the number of patterns.
+ *
+ * The automaton is built once as a transition table of 256 entries per state, the states being
+ * the prefixes of the patterns.
+ *
+ * @param patterns The searched byte sequences, at most 64.
+ */
+final class BytePatternSet(patterns: Seq[Array[Byte]]) {
+  if (patterns.isEmpty || patterns.size > 64) {
+    throw new IllegalArgumentException(s"A pattern set holds 1 to 64 patterns, got: ${patterns.size}")
+  }
+
+  /** The mask of all the patterns. */
+  private val all: Long = if (patterns.size == 64) -1L else (1L << patterns.size) - 1
+
+  /** The patterns ending at each state. */
+  private val outputs: Array[Long] = new Array[Long](patterns.map(_.length).sum + 1)
+
+  /**
+   * The next state for each state and byte value, as the offset of its row in the table, negated
+   * when a pattern ends at it so that the search only reads the outputs then.
+   */
+  private val transitions: Array[Int] = {
+    val goto = Array.fill(outputs.length * 256)(-1)
+    var states = 1
+    patterns.zipWithIndex.foreach { case (pattern, index) =>
+      var state = 0
+      pattern.foreach { b =>
+        val slot = state * 256 + (b & 0xFF)
+        if (goto(slot) < 0) {
+          goto(slot) = states
+          states += 1
+        }
+        state = goto(slot)
+      }
+      outputs(state) |= 1L << index
+    }
+    // Breadth-first, completing missing transitions with those of the longest proper suffix
+    val fail = new Array[Int](states)
+    val queue = new Array[Int](states)
+    var head = 0
+    var tail = 0
+    (0 until 256).foreach { b =>
+      val next = goto(b)
+      if (next < 0) goto(b) = 0
+      else {
+        queue(tail) = next
+        tail += 1
+      }
+    }
+    while (head < tail) {
+      val state = queue(head)
+      head += 1
+      outputs(state) |= outputs(fail(state))
+      (0 until 256).foreach { b =>
+        val slot = state * 256 + b
+        val next = goto(slot)
+        if (next < 0) goto(slot) = goto(fail(state) * 256 + b)
+        else {
+          fail(next) = goto(fail(state) * 256 + b)
+          queue(tail) = next
+          tail += 1
+        }
+      }
+    }
+    val table = new Array[Int](states * 256)
+    var slot = 0
+    while (slot < table.length) {
+      val next = goto(slot)
+      table(slot) = if (outputs(next) != 0) -(next * 256) - 1 else next * 256
+      slot += 1
+    }
+    table
+  }
+
+  /** Returns the number of patterns. */
+  def size: Int = patterns.size
+
+  /**
+   * Searches the patterns in a single pass, stopping once all of them have been found.
+   *
+   * @return The mask of the patterns found, bit `i` standing for the pattern at position `i`.
+   */
+  def found(data: Array[Byte]): Long = {
+    var mask = outputs(0)
+    var row = 0
+    var i = 0
+    while (mask != all && i < data.length) {
+      row = transitions(row + (data(i) & 0xFF))
+      if (row < 0) {
+        row = -row - 1
+        mask |= outputs(row >> 8)
+      }
+      i += 1
+    }
+    mask
+  }
+
+  /** Tells whether the data contains all the patterns. */
+  def containsAll(data: Array[Byte]): Boolean = found(data) == all
+
+  /** Tells whether the data contains any of the patterns, stopping at the first one found. */
+  def containsAny(data: Array[Byte]): Boolean = {
+    var row = 0
+    var i = 0
+    var matched = outputs(0) != 0
+    while (!matched && i < data.length) {
+      row = transitions(row + (data(i) & 0xFF))
+      matched = row < 0
+      i += 1
+    }
+    matched
+  }
+}
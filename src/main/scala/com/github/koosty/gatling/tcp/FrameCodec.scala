@@ -0,0 +1,341 @@
+package com.github.koosty.gatling.tcp
+
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.{ByteBuffer, ByteOrder}
+
+/**
+ * Frames the messages sent on a connection and splits the bytes received into responses.
+ *
+ * A frame is the payload surrounded by a prefix, such as a length header or a start marker, and
+ * a suffix, such as a delimiter. Codecs are shared by all the virtual users and must be
+ * thread-safe; decoding state lives in the [[FrameDecoder]] created for each exchange or
+ * pipelined connection.
+ */
+trait FrameCodec {
+
+  /**
+   * Returns the size of the prefix written before a payload.
+   *
+   * @param payloadLength The length of the payload.
+   */
+  def prefixLength(payloadLength: Int): Int
+
+  /**
+   * Writes the prefix of a payload.
+   *
+   * @param payloadLength The length of the payload.
+   * @param out The buffer to write to, with at least [[prefixLength]] remaining bytes.
+   * @throws IllegalArgumentException if the payload length can't be framed by this codec.
+   */
+  def writePrefix(payloadLength: Int, out: ByteBuffer): Unit
+
+  /**
+   * Returns the suffix written after every payload, empty when frames have none.
+   */
+  def suffix: Array[Byte]
+
+  /**
+   * Creates a decoder splitting the bytes received into payloads.
+   *
+   * @param maxFrameLength The largest payload accepted, larger ones fail the decoding.
+   */
+  def newDecoder(maxFrameLength: Int): FrameDecoder
+
+  /**
+   * Frames a payload into a new array.
+   *
+   * @param payload The payload to frame.
+   * @return The prefix, the payload and the suffix.
+   */
+  final def encode(payload: Array[Byte]): Array[Byte] = {
+    val prefix = prefixLength(payload.length)
+    val frame = ByteBuffer.allocate(prefix + payload.length + suffix.length)
+    writePrefix(payload.length, frame)
+    frame.put(payload).put(suffix)
+    frame.array
+  }
+}
+
+/**
+ * Incremental decoder of the frames received on a connection.
+ */
+trait FrameDecoder {
+
+  /**
+   * Decodes the next frame from the readable bytes of a buffer.
+   *
+   * When a frame is complete, its bytes are consumed and its payload is returned. Otherwise the
+   * position of the buffer is left untouched and null is returned; the decoder may remember how far
+   * it has scanned, so that the next call, with the same bytes followed by new ones, only inspects
+   * the new bytes.
+   *
+   * @param in The bytes received, starting at the beginning of a frame.
+   * @return The payload of the frame, or null if more bytes are needed.
+   * @throws IOException if the bytes can't be a valid frame.
+   */
+  def decode(in: ByteBuffer): Array[Byte]
+}
+
+/** Companion object providing the built-in frame codecs.
+ */
+object FrameCodec {
+
+  /** Creates a codec prefixing payloads with their binary length.
+   *
+   * @param size Size of the length field: 1, 2, 4 or 8 bytes.
+   * @param order Byte order of the length field.
+   * @return A new FrameCodec instance
+   */
+  def lengthField(size: Int, order: ByteOrder): FrameCodec = lengthField(size, order, includesHeader = false)
+
+  /** Creates a codec prefixing payloads with their binary length.
+   *
+   * @param size Size of the length field: 1, 2, 4 or 8 bytes.
+   * @param order Byte order of the length field.
+   * @param includesHeader Whether the length counts the length field itself.
+   * @return A new FrameCodec instance
+   */
+  def lengthField(size: Int, order: ByteOrder, includesHeader: Boolean): FrameCodec = {
+    if (size != 1 && size != 2 && size != 4 && size != 8) {
+      throw new IllegalArgumentException(s"Length field size must be 1, 2, 4 or 8 bytes, got $size")
+    }
+    new LengthFieldCodec(size, order, includesHeader)
+  }
+
+  /** Creates a codec prefixing payloads with their zero-padded ASCII decimal length.
+   *
+   * @param digits Number of digits of the length prefix.
+   * @return A new FrameCodec instance
+   */
+  def asciiLength(digits: Int): FrameCodec = {
+    if (digits < 1 || digits > 9) {
+      throw new IllegalArgumentException(s"ASCII length prefix must have 1 to 9 digits, got $digits")
+    }
+    new AsciiLengthCodec(digits)
+  }
+
+  /** Creates a codec terminating payloads with a delimiter, which must not occur in payloads.
+   *
+   * @param delimiter The delimiter, such as a newline.
+   * @return A new FrameCodec instance
+   */
+  def delimited(delimiter: Array[Byte]): FrameCodec = delimited(Array.emptyByteArray, delimiter)
+
+  /** Creates a codec surrounding payloads with start and end markers, such as STX and ETX.
+   *
+   * @param start The marker written before payloads, possibly empty.
+   * @param end The marker written after payloads, which must not occur in payloads.
+   * @return A new FrameCodec instance
+   */
+  def delimited(start: Array[Byte], end: Array[Byte]): FrameCodec = {
+    if (end.isEmpty) {
+      throw new IllegalArgumentException("End delimiter must not be empty")
+    }
+    new DelimitedCodec(start.clone(), end.clone())
+  }
+
+  /** Creates a codec of newline-terminated payloads.
+   *
+   * @return A new FrameCodec instance
+   */
+  def lines(): FrameCodec = delimited("\n".getBytes(StandardCharsets.US_ASCII))
+
+  /** Creates a codec of payloads surrounded by STX (0x02) and ETX (0x03).
+   *
+   * @return A new FrameCodec instance
+   */
+  def stxEtx(): FrameCodec = delimited(Array[Byte](0x02), Array[Byte](0x03))
+
+  /** Creates a codec of fixed-length records, sent and received without any framing bytes.
+   *
+   * @param length The length of every record.
+   * @return A new FrameCodec instance
+   */
+  def fixedLength(length: Int): FrameCodec = {
+    if (length < 1) {
+      throw new IllegalArgumentException(s"Record length must be positive, got $length")
+    }
+    new FixedLengthCodec(length)
+  }
+
+  private def checkLength(length: Long, maxFrameLength: Int): Unit =
+    if (length < 0) {
+      throw new IOException(s"Invalid response length: $length")
+    } else if (length > maxFrameLength) {
+      throw new IOException(s"Response length $length exceeds the maximum of $maxFrameLength bytes")
+    }
+
+  private def readPayload(in: ByteBuffer, length: Int): Array[Byte] = {
+    val payload = new Array[Byte](length)
+    in.get(payload)
+    payload
+  }
+
+  /** Codec of payloads prefixed with their length. */
+  private abstract class LengthPrefixedCodec(headerSize: Int, includesHeader: Boolean) extends FrameCodec {
+
+    /** Reads the length field starting at the given absolute index. */
+    protected def readLength(in: ByteBuffer, index: Int): Long
+
+    /** Writes a frame length that has been checked to fit the prefix. */
+    protected def writeLength(length: Long, out: ByteBuffer): Unit
+
+    protected def maxLength: Long
+
+    override def prefixLength(payloadLength: Int): Int = headerSize
+
+    override def writePrefix(payloadLength: Int, out: ByteBuffer): Unit = {
+      val length = payloadLength.toLong + (if (includesHeader) headerSize else 0)
+      if (length > maxLength) {
+        throw new IllegalArgumentException(s"Message length $payloadLength doesn't fit a $headerSize bytes length prefix")
+      }
+      writeLength(length, out)
+    }
+
+    override val suffix: Array[Byte] = Array.emptyByteArray
+
+    override def newDecoder(maxFrameLength: Int): FrameDecoder = in =>
+      if (in.remaining < headerSize) {
+        null
+      } else {
+        val length = readLength(in, in.position) - (if (includesHeader) headerSize else 0)
+        checkLength(length, maxFrameLength)
+        if (in.remaining < headerSize + length) {
+          null
+        } else {
+          in.position(in.position + headerSize)
+          readPayload(in, length.toInt)
+        }
+      }
+  }
+
+  private final class LengthFieldCodec(size: Int, order: ByteOrder, includesHeader: Boolean)
+    extends LengthPrefixedCodec(size, includesHeader) {
+
+    override protected val maxLength: Long = if (size == 8) Long.MaxValue else (1L << (size * 8)) - 1
+
+    private def shift(i: Int): Int = 8 * (if (order == ByteOrder.BIG_ENDIAN) size - 1 - i else i)
+
+    override protected def readLength(in: ByteBuffer, index: Int): Long = {
+      var length = 0L
+      var i = 0
+      while (i < size) {
+        length |= (in.get(index + i) & 0xFFL) << shift(i)
+        i += 1
+      }
+      length
+    }
+
+    override protected def writeLength(length: Long, out: ByteBuffer): Unit = {
+      var i = 0
+      while (i < size) {
+        out.put(((length >> shift(i)) & 0xFF).toByte)
+        i += 1
+      }
+    }
+  }
+
+  private final class AsciiLengthCodec(digits: Int) extends LengthPrefixedCodec(digits, includesHeader = false) {
+
+    override protected val maxLength: Long = math.pow(10, digits.toDouble).toLong - 1
+
+    override protected def readLength(in: ByteBuffer, index: Int): Long = {
+      var length = 0L
+      var i = 0
+      while (i < digits) {
+        val digit = in.get(index + i) - '0'
+        if (digit < 0 || digit > 9) {
+          throw new IOException(s"Invalid ASCII length prefix at byte $i")
+        }
+        length = length * 10 + digit
+        i += 1
+      }
+      length
+    }
+
+    override protected def writeLength(length: Long, out: ByteBuffer): Unit = {
+      var divisor = (maxLength + 1) / 10
+      while (divisor > 0) {
+        out.put(('0' + length / divisor % 10).toByte)
+        divisor /= 10
+      }
+    }
+  }
+
+  private final class FixedLengthCodec(length: Int) extends FrameCodec {
+
+    override def prefixLength(payloadLength: Int): Int = 0
+
+    override def writePrefix(payloadLength: Int, out: ByteBuffer): Unit =
+      if (payloadLength != length) {
+        throw new IllegalArgumentException(s"Message length $payloadLength doesn't match the record length $length")
+      }
+
+    override val suffix: Array[Byte] = Array.emptyByteArray
+
+    override def newDecoder(maxFrameLength: Int): FrameDecoder = in => {
+      checkLength(length.toLong, maxFrameLength)
+      if (in.remaining < length) null else readPayload(in, length)
+    }
+  }
+
+  private final class DelimitedCodec(start: Array[Byte], end: Array[Byte]) extends FrameCodec {
+
+    override def prefixLength(payloadLength: Int): Int = start.length
+
+    override def writePrefix(payloadLength: Int, out: ByteBuffer): Unit = out.put(start)
+
+    override def suffix: Array[Byte] = end
+
+    override def newDecoder(maxFrameLength: Int): FrameDecoder = new FrameDecoder {
+      // Offset from the start of the payload up to which no delimiter was found
+      private var scanned = 0
+
+      override def decode(in: ByteBuffer): Array[Byte] =
+        if (in.remaining < start.length) {
+          null
+        } else {
+          val payloadStart = in.position + start.length
+          var i = 0
+          while (i < start.length) {
+            if (in.get(in.position + i) != start(i)) {
+              throw new IOException("Missing frame start marker")
+            }
+            i += 1
+          }
+          val delimiterIndex = indexOf(in, payloadStart + scanned, in.limit)
+          if (delimiterIndex >= 0) {
+            scanned = 0
+            checkLength((delimiterIndex - payloadStart).toLong, maxFrameLength)
+            in.position(payloadStart)
+            val payload = readPayload(in, delimiterIndex - payloadStart)
+            in.position(delimiterIndex + end.length)
+            payload
+          } else {
+            scanned = math.max(0, in.limit - payloadStart - end.length + 1)
+            if (scanned > maxFrameLength) {
+              throw new IOException(s"No delimiter found within $maxFrameLength bytes")
+            }
+            null
+          }
+        }
+    }
+
+    private def indexOf(in: ByteBuffer, from: Int, until: Int): Int = {
+      var index = from
+      val last = until - end.length
+      while (index <= last) {
+        var matched = 0
+        while (matched < end.length && in.get(index + matched) == end(matched)) {
+          matched += 1
+        }
+        if (matched == end.length) {
+          return index
+        }
+        index += 1
+      }
+      -1
+    }
+  }
+}
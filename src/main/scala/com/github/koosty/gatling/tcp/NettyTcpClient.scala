@@ -0,0 +1,234 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.gatling.netty.util.Transports
+import io.netty.bootstrap.Bootstrap
+import io.netty.buffer.{ByteBufAllocator, PooledByteBufAllocator}
+import io.netty.channel.epoll.EpollDomainSocketChannel
+import io.netty.channel.socket.nio.{NioChannelOption, NioDomainSocketChannel}
+import io.netty.channel.unix.{DomainSocketAddress, IntegerUnixChannelOption}
+import io.netty.channel.{Channel, ChannelFuture, ChannelFutureListener, ChannelHandler, ChannelInitializer, ChannelOption, EventLoop, EventLoopGroup}
+import io.netty.handler.ssl.SslHandler
+import io.netty.util.concurrent.{Future => NettyFuture}
+
+import java.net.{InetSocketAddress, SocketAddress, StandardSocketOptions}
+import java.util.concurrent.TimeUnit
+
+/**
+ * Non-blocking TCP client used when [[TcpProtocol.nonBlocking]] is enabled, and by pipelined requests.
+ *
+ * Channels are registered on the virtual user's own event loop, so the response callback and the
+ * next action run on the same thread that executed the request, without parking it on a read.
+ * With a native [[TcpProtocol.transport]], they are registered on native event loops owned by the
+ * client instead, allocating pooled direct buffers, and the next action hops back to the user's loop.
+ * With a [[TcpProtocol.unixSocket]], channels are domain socket channels, which io_uring lacks: epoll
+ * event loops of the client replace the io_uring ones then.
+ *
+ * @param protocol TCP protocol configuration (timeouts, keep-alive).
+ * @param useNativeTransport Whether Gatling's event loops use the Linux native transport.
+ * @param useIoUring Whether Gatling's event loops use io_uring instead of epoll.
+ * @param connectRateLimiter Spaces out new connections, if limited.
+ * @param tls The TLS context securing the connections, if enabled.
+ * @param localAddresses The local addresses the channels are bound to in turn.
+ * @param metrics The network counters of the protocol.
+ */
+private[tcp] final class NettyTcpClient(
+                                         protocol: TcpProtocol,
+                                         useNativeTransport: Boolean,
+                                         useIoUring: Boolean,
+                                         connectRateLimiter: Option[TcpConnectRateLimiter] = None,
+                                         tls: Option[TcpTls] = None,
+                                         localAddresses: TcpLocalAddresses = new TcpLocalAddresses(Nil),
+                                         metrics: TcpMetrics = new TcpMetrics
+                                       ) extends StrictLogging {
+
+  private val counter = new TcpMetrics.ChannelCounter(metrics)
+
+  /** The native transport of the protocol, if selected and available on this host. */
+  private val nativeTransport: Option[TcpTransport] = TcpTransport.available(protocol.transport) match {
+    case Some(TcpTransport.IoUring) if protocol.unixSocket.isDefined => domainSocketsOnEpoll()
+    case None if protocol.unixSocket.isDefined && useNativeTransport && useIoUring && TcpTransport.loaded(TcpTransport.IoUring) =>
+      domainSocketsOnEpoll()
+    case transport => transport
+  }
+
+  /** Event loops of the native transport, which channels are registered on instead of the users' ones. */
+  private val nativeEventLoops: Option[EventLoopGroup] = nativeTransport.map { transport =>
+    logger.info(s"Running non-blocking connections on $transport with ${NettyTcpClient.NativeThreads} event loops")
+    Transports.newEventLoopGroup(true, transport == TcpTransport.IoUring, NettyTcpClient.NativeThreads, "gatling-tcp-native")
+  }
+
+  /** The native transport of the channels, theirs or the one of Gatling's event loops, None for NIO. */
+  private val channelTransport: Option[TcpTransport] = nativeTransport.orElse(
+    if (!useNativeTransport) None
+    else if (useIoUring && TcpTransport.loaded(TcpTransport.IoUring)) Some(TcpTransport.IoUring)
+    else Option.when(TcpTransport.loaded(TcpTransport.Epoll))(TcpTransport.Epoll)
+  )
+
+  private val bootstrap = protocol.unixSocket.fold(socketBootstrap)(_ => domainSocketBootstrap)
+
+  private def socketBootstrap: Bootstrap = {
+    val bootstrap = protocol.socket.configure(new Bootstrap()
+      .channelFactory(Transports.newSocketChannelFactory(channelTransport.isDefined, channelTransport.contains(TcpTransport.IoUring)))
+      .option[Integer](ChannelOption.CONNECT_TIMEOUT_MILLIS, protocol.connectTimeout)
+      .option[java.lang.Boolean](ChannelOption.SO_KEEPALIVE, protocol.keepAlive))
+    if (nativeTransport.isDefined) {
+      bootstrap.option[ByteBufAllocator](ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+    }
+    if (protocol.socket.reusePort) {
+      channelTransport match {
+        case None                     => bootstrap.option[java.lang.Boolean](NioChannelOption.of(StandardSocketOptions.SO_REUSEPORT), true)
+        case Some(TcpTransport.Epoll) => bootstrap.option[Integer](NettyTcpClient.EpollReusePort, 1)
+        case Some(transport)          => logger.warn(s"SO_REUSEPORT isn't supported by the channels of $transport, ignoring it")
+      }
+    }
+    bootstrap
+  }
+
+  /** Bootstraps domain socket channels, which take none of the TCP options. */
+  private def domainSocketBootstrap: Bootstrap = {
+    val bootstrap = new Bootstrap().option[Integer](ChannelOption.CONNECT_TIMEOUT_MILLIS, protocol.connectTimeout)
+    if (channelTransport.contains(TcpTransport.Epoll)) bootstrap.channel(classOf[EpollDomainSocketChannel])
+    else bootstrap.channel(classOf[NioDomainSocketChannel])
+    if (nativeTransport.isDefined) {
+      bootstrap.option[ByteBufAllocator](ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+    }
+    bootstrap
+  }
+
+  private def domainSocketsOnEpoll(): Option[TcpTransport] = {
+    logger.warn("io_uring has no domain socket channels, running the connections to the Unix socket on epoll")
+    TcpTransport.available(TcpTransport.Epoll)
+  }
+
+  /** Returns the event loop a new channel is registered on. */
+  private def eventLoopFor(userEventLoop: EventLoop): EventLoop = nativeEventLoops.fold(userEventLoop)(_.next())
+
+  /**
+   * Initializes the pipeline of a channel to an address, decrypting the bytes ahead of the handler
+   * when TLS is enabled, and counting them as they go on the wire.
+   */
+  private def initializer(address: SocketAddress, name: String, newHandler: () => ChannelHandler): ChannelInitializer[Channel] =
+    new ChannelInitializer[Channel] {
+      override def initChannel(ch: Channel): Unit = {
+        ch.pipeline.addLast(TcpMetrics.HandlerName, counter)
+        tls.foreach { tls =>
+          val sslHandler = new SslHandler(tls.newEngine(address.asInstanceOf[InetSocketAddress]))
+          sslHandler.setHandshakeTimeoutMillis(protocol.connectTimeout)
+          ch.pipeline.addLast(NettyTcpClient.TlsHandlerName, sslHandler)
+        }
+        ch.pipeline.addLast(name, newHandler())
+      }
+    }
+
+  /**
+   * Opens a new channel on the given event loop.
+   *
+   * @param eventLoop The event loop of the virtual user, which the channel is registered on unless the transport is native.
+   * @param address The remote address to connect to.
+   * @param timings The timings of the request opening the channel, recording its TLS handshake.
+   * @return A future completed once the connection is established, and secured with TLS, or has failed.
+   */
+  def connect(eventLoop: EventLoop, address: SocketAddress, timings: Option[TcpTimings] = None): ChannelFuture =
+    connect(bootstrap.clone(eventLoopFor(eventLoop)).handler(initializer(address, TcpResponseHandler.Name, () => new TcpResponseHandler)), address, timings)
+
+  /**
+   * Opens a new pipelined channel on the given event loop.
+   *
+   * @param eventLoop The event loop the channel is registered on, unless the transport is native.
+   * @param address The remote address to connect to.
+   * @param handler The handler routing responses to the requests in flight.
+   * @return A future completed once the connection is established or has failed.
+   */
+  def connectMultiplexed(eventLoop: EventLoop, address: SocketAddress, handler: => TcpMultiplexHandler): ChannelFuture =
+    connect(bootstrap.clone(eventLoopFor(eventLoop)).handler(initializer(address, TcpMultiplexHandler.Name, () => handler)), address, None)
+
+  /**
+   * Connects a new channel, once the rate limiter allows it: the channel is registered at once and
+   * its connection scheduled on its event loop, so that waiting doesn't hold a thread.
+   */
+  private def connect(bootstrap: Bootstrap, address: SocketAddress, timings: Option[TcpTimings]): ChannelFuture =
+    if (tls.isEmpty) connect(bootstrap, address) else secured(connect(bootstrap, address), timings)
+
+  /**
+   * Completes once the TLS handshake that follows the connection is over, timing it.
+   */
+  private def secured(connected: ChannelFuture, timings: Option[TcpTimings]): ChannelFuture = {
+    val channel = connected.channel
+    val promise = channel.newPromise()
+    connected.addListener((future: ChannelFuture) =>
+      if (future.isSuccess) {
+        val startNanos = System.nanoTime()
+        channel.pipeline.get(classOf[SslHandler]).handshakeFuture.addListener((handshake: NettyFuture[Channel]) =>
+          if (handshake.isSuccess) {
+            timings.foreach(_.handshake(startNanos, System.nanoTime()))
+            promise.setSuccess()
+          } else {
+            channel.close()
+            promise.setFailure(handshake.cause)
+          }
+        )
+      } else {
+        promise.setFailure(future.cause)
+      }
+    )
+    promise
+  }
+
+  private def connect(bootstrap: Bootstrap, address: SocketAddress): ChannelFuture = {
+    val connected = rateLimitedConnect(bootstrap, remoteAddress(address))
+    connected.addListener((future: ChannelFuture) => if (!future.isSuccess) metrics.connectionsFailed.increment())
+    connected
+  }
+
+  /** Returns the address epoll domain socket channels take instead of the JDK's Unix domain socket address. */
+  private def remoteAddress(address: SocketAddress): SocketAddress = address match {
+    case inet: InetSocketAddress                               => inet
+    case unix if channelTransport.contains(TcpTransport.Epoll) => new DomainSocketAddress(unix.toString)
+    case unix                                                  => unix
+  }
+
+  private def rateLimitedConnect(bootstrap: Bootstrap, address: SocketAddress): ChannelFuture = {
+    val wait = connectRateLimiter.fold(0L)(_.reserve())
+    val localAddress = if (protocol.unixSocket.isDefined) null else localAddresses.next().orNull
+    if (wait == 0L) {
+      bootstrap.connect(address, localAddress)
+    } else {
+      val registration = bootstrap.register()
+      val channel = registration.channel
+      val promise = channel.newPromise()
+      promise.addListener(ChannelFutureListener.CLOSE_ON_FAILURE)
+      registration.addListener((future: ChannelFuture) =>
+        if (future.isSuccess) {
+          channel.eventLoop.schedule((() => channel.connect(address, localAddress, promise)): Runnable, wait, TimeUnit.NANOSECONDS)
+        } else {
+          promise.setFailure(future.cause)
+        }
+      )
+      promise
+    }
+  }
+
+  /** Shuts the native event loops down, closing their channels. */
+  def close(): Unit = nativeEventLoops.foreach(_.shutdownGracefully(0, 1, TimeUnit.SECONDS))
+}
+
+private[tcp] object NettyTcpClient {
+  /** Number of event loops of a native transport. */
+  val NativeThreads: Int = Runtime.getRuntime.availableProcessors
+
+  /** SO_REUSEPORT of epoll client channels, which only take it as a raw option (SOL_SOCKET, SO_REUSEPORT on Linux). */
+  val EpollReusePort: IntegerUnixChannelOption = new IntegerUnixChannelOption("SO_REUSEPORT", 1, 15)
+
+  /** Name of the TLS handler in the pipeline, ahead of the response handler. */
+  val TlsHandlerName: String = "tls"
+
+  /**
+   * Returns the response handler installed on a channel opened by this client.
+   *
+   * @param channel A channel opened by [[NettyTcpClient.connect]].
+   * @return The channel's response handler.
+   */
+  def responseHandler(channel: Channel): TcpResponseHandler =
+    channel.pipeline.get(classOf[TcpResponseHandler])
+}
@@ -0,0 +1,144 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.buffer.ByteBuf
+
+/**
+ * Tells when an unframed response is complete, as bytes keep arriving on the connection.
+ *
+ * Only used when requests have no [[FrameCodec]]: framed responses are complete when the decoder
+ * has read a whole frame.
+ */
+sealed trait ResponseCompletion {
+
+  /**
+   * Returns the length of the response if the bytes received so far hold a complete one.
+   *
+   * @param buf The bytes received, from the reader index.
+   * @param from Offset from the reader index up to which the bytes are known not to complete the response.
+   * @return The length of the response, or -1 if more bytes are needed.
+   */
+  private[tcp] def completeLength(buf: ByteBuf, from: Int): Int
+
+  /**
+   * Returns the offset from which [[completeLength]] must scan once more bytes have arrived.
+   *
+   * @param readable The number of bytes received so far.
+   */
+  private[tcp] def rescanFrom(readable: Int): Int = 0
+
+  /** Whether the bytes received when the peer closes the connection make a complete response. */
+  private[tcp] def completesOnClose: Boolean
+
+  /** Returns the time in milliseconds without new bytes after which the response is complete, 0 if none. */
+  private[tcp] def idleGapMillis: Int = 0
+}
+
+/** Companion object providing the response completion strategies.
+ */
+object ResponseCompletion {
+
+  /** Idle gap of the default completion strategy, in milliseconds, kept short as every unframed exchange waits for it. */
+  val DefaultIdleGap: Int = 10
+
+  /**
+   * The response is complete once no byte has been received for a while, or when the peer closes
+   * the connection. The response time ends with the last byte received, not with the gap, yet the
+   * virtual user, and the thread of the blocking engine, still wait for the gap after each
+   * response: a virtual user can't exchange more than one request per gap.
+   *
+   * @param millis The idle gap in milliseconds.
+   */
+  final case class IdleGap(millis: Int) extends ResponseCompletion {
+    override private[tcp] def completeLength(buf: ByteBuf, from: Int): Int = -1
+    override private[tcp] def completesOnClose: Boolean = true
+    override private[tcp] def idleGapMillis: Int = millis
+  }
+
+  /**
+   * The response is complete once a given number of bytes has been received.
+   *
+   * @param length The length of the response.
+   */
+  final case class ExpectedLength(length: Int) extends ResponseCompletion {
+    override private[tcp] def completeLength(buf: ByteBuf, from: Int): Int =
+      if (buf.readableBytes >= length) length else -1
+    override private[tcp] def completesOnClose: Boolean = false
+  }
+
+  /**
+   * The response is complete once a terminator has been received. The terminator is part of the response.
+   *
+   * @param terminator The bytes ending the response.
+   */
+  final case class Terminator(terminator: Array[Byte]) extends ResponseCompletion {
+    override private[tcp] def completeLength(buf: ByteBuf, from: Int): Int = {
+      val start = buf.readerIndex
+      val last = buf.writerIndex - terminator.length
+      var index = start + from
+      var result = -1
+      while (result < 0 && index <= last) {
+        var matched = 0
+        while (matched < terminator.length && buf.getByte(index + matched) == terminator(matched)) {
+          matched += 1
+        }
+        if (matched == terminator.length) {
+          result = index + terminator.length - start
+        }
+        index += 1
+      }
+      result
+    }
+    override private[tcp] def rescanFrom(readable: Int): Int = math.max(0, readable - terminator.length + 1)
+    override private[tcp] def completesOnClose: Boolean = false
+  }
+
+  /**
+   * The response is complete when the peer closes the connection.
+   */
+  case object PeerClose extends ResponseCompletion {
+    override private[tcp] def completeLength(buf: ByteBuf, from: Int): Int = -1
+    override private[tcp] def completesOnClose: Boolean = true
+  }
+
+  /** Creates a strategy completing the response after an idle gap or when the peer closes the connection.
+   *
+   * @param millis The idle gap in milliseconds.
+   * @return A new ResponseCompletion instance
+   */
+  def idleGap(millis: Int): ResponseCompletion = {
+    if (millis < 1) {
+      throw new IllegalArgumentException(s"Idle gap must be positive, got $millis")
+    }
+    IdleGap(millis)
+  }
+
+  /** Creates a strategy completing the response once a given number of bytes has been received.
+   *
+   * @param length The length of the response.
+   * @return A new ResponseCompletion instance
+   */
+  def expectedLength(length: Int): ResponseCompletion = {
+    if (length < 1) {
+      throw new IllegalArgumentException(s"Expected length must be positive, got $length")
+    }
+    ExpectedLength(length)
+  }
+
+  /** Creates a strategy completing the response once a terminator has been received.
+   *
+   * @param terminator The bytes ending the response.
+   * @return A new ResponseCompletion instance
+   */
+  def terminator(terminator: Array[Byte]): ResponseCompletion = {
+    if (terminator.isEmpty) {
+      throw new IllegalArgumentException("Terminator must not be empty")
+    }
+    Terminator(terminator.clone())
+  }
+
+  /** Creates a strategy completing the response when the peer closes the connection.
+   *
+   * @return The PeerClose strategy
+   */
+  def peerClose(): ResponseCompletion = PeerClose
+}
@@ -0,0 +1,60 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import java.net.{InetAddress, InetSocketAddress, UnknownHostException}
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Resolves the host of a protocol once for all the requests, instead of on every connection, and
+ * hands out its addresses in turn so that connections are spread over all the A and AAAA records.
+ *
+ * The host is resolved when the resolver is created, and again only when [[refresh]] is called, by
+ * the balancer's scheduler once the TTL has elapsed: handing out an address never waits for a lookup.
+ *
+ * @param host The host to resolve.
+ * @param port The port of the addresses.
+ * @param resolve Resolves all the addresses of a host.
+ */
+private[tcp] final class TcpAddressResolver(
+                                             host: String,
+                                             port: Int,
+                                             resolve: String => Array[InetAddress] = InetAddress.getAllByName
+                                           ) extends StrictLogging {
+
+  private val counter = new AtomicInteger
+  @volatile private var resolved: Array[InetSocketAddress] = lookup(null)
+
+  /**
+   * Returns the next address to connect to.
+   *
+   * Without any address, an unresolved one is returned, whose connection fails with an
+   * UnknownHostException.
+   */
+  def next(): InetSocketAddress = {
+    val current = resolved
+    if (current == null) {
+      InetSocketAddress.createUnresolved(host, port)
+    } else if (current.length == 1) {
+      current(0)
+    } else {
+      current(Math.floorMod(counter.getAndIncrement(), current.length))
+    }
+  }
+
+  /** Resolves the host again, keeping the previous addresses when it can't be resolved. */
+  def refresh(): Unit = resolved = lookup(resolved)
+
+  private def lookup(previous: Array[InetSocketAddress]): Array[InetSocketAddress] =
+    try {
+      val addresses = resolve(host).map(new InetSocketAddress(_, port))
+      if (addresses.isEmpty) {
+        throw new UnknownHostException(host)
+      }
+      addresses
+    } catch {
+      case e: UnknownHostException =>
+        logger.warn(s"Failed to resolve $host: ${e.getMessage}")
+        previous
+    }
+}
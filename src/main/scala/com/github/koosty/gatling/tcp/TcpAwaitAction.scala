@@ -0,0 +1,128 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.stats.{KO, OK, Status}
+import io.gatling.commons.util.Clock
+import io.gatling.commons.validation.{Failure => ValidationFailure, Success => ValidationSuccess}
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.Channel
+
+import java.net.SocketTimeoutException
+import scala.util.{Failure, Success}
+
+/**
+ * Action receiving the next frame pushed by the server on the connection kept in the session,
+ * without sending anything. Frames pushed before the action runs are queued on the connection, so
+ * the first of them that matches completes it at once.
+ *
+ * @param requestName Name of the request for reporting and session tracking.
+ * @param matcher Tells whether a frame is the awaited one.
+ * @param frameCodec Splits the bytes pushed by the server into frames.
+ * @param maxResponseSize The largest frame accepted, larger ones close the connection.
+ * @param timeout Timeout in milliseconds for the frame to arrive.
+ * @param storeResponse Whether the frame is stored in the session.
+ * @param validators List of functions to validate the frame, run before the checks.
+ * @param checks Checks of the frame, capturing values into the session.
+ * @param connectionKey Key of the connection in the session.
+ * @param components TCP protocol components.
+ * @param statsEngine Gatling stats engine for logging results.
+ * @param clock Clock instance for timing the request.
+ * @param next The next action to execute in the scenario.
+ */
+case class TcpAwaitAction(
+                           requestName: String,
+                           matcher: Array[Byte] => Boolean,
+                           frameCodec: FrameCodec,
+                           maxResponseSize: Int = TcpProtocol.DefaultMaxResponseSize,
+                           timeout: Int,
+                           storeResponse: Boolean = true,
+                           validators: List[Array[Byte] => Boolean] = List.empty,
+                           checks: List[TcpCheck] = List.empty,
+                           connectionKey: String = "default",
+                           components: TcpComponents,
+                           statsEngine: StatsEngine,
+                           clock: Clock,
+                           next: Action
+                         ) extends Action {
+
+  override def name: String = requestName
+
+  private val connectionAttribute = TcpRequestAction.connectionAttribute(connectionKey)
+  private val responseAttribute = s"$requestName.response"
+  private val bytesReceivedAttribute = s"$requestName.bytesReceived"
+  private val validationErrorAttribute = s"$requestName.validationError"
+
+  /** The validators and checks, run in order up to the first failure. */
+  private val allChecks: List[TcpCheck] = validators.map(TcpCheck.validator) ++ checks
+
+  override def execute(session: Session): Unit = {
+    val timings = new TcpTimings(clock.nowMillis, session.userId)
+    session(connectionAttribute).asOption[Channel].filter(_.isActive) match {
+      case Some(channel) =>
+        val task: Runnable = () =>
+          NettyTcpClient.responseHandler(channel).receive(frameCodec.newDecoder(maxResponseSize), matcher, timeout, {
+            case Success(frame) =>
+              timings.ended()
+              next ! processFrame(session, timings, frame)
+            case Failure(e) =>
+              next ! processFailure(session, e, timings)
+          })
+        if (channel.eventLoop.inEventLoop) task.run() else channel.eventLoop.execute(task)
+      case None =>
+        next ! processFailure(session, new IllegalStateException(s"No open connection $connectionKey to receive from"), timings)
+    }
+  }
+
+  /**
+   * Checks a frame and logs it to the stats engine. The checks share a view of the frame, and stop
+   * at the first failure.
+   *
+   * @return The session updated with the frame and captures.
+   */
+  private def processFrame(session: Session, timings: TcpTimings, frame: Array[Byte]): Session = {
+    def stored(checkedSession: Session): Session = {
+      val received = checkedSession.set(bytesReceivedAttribute, frame.length)
+      if (storeResponse) received.set(responseAttribute, frame) else received
+    }
+    TcpCheck.checkAll(allChecks, new TcpResponse(frame), session) match {
+      case ValidationSuccess(checkedSession) =>
+        logResponse(session, timings, OK, None)
+        stored(checkedSession)
+      case ValidationFailure(message) =>
+        logger.warn(s"[${timings.requestId}] Frame validation failed: $message")
+        logResponse(session, timings, KO, Some(message))
+        stored(session).set(validationErrorAttribute, message).markAsFailed
+    }
+  }
+
+  /**
+   * Logs a failed receive to the stats engine.
+   *
+   * @return The session marked as failed.
+   */
+  private def processFailure(session: Session, cause: Throwable, timings: TcpTimings): Session = {
+    val errorMessage = cause match {
+      case e: SocketTimeoutException =>
+        logger.warn(s"[${timings.requestId}] Receive timeout: ${e.getMessage}")
+        "Timeout"
+      case e =>
+        logger.error(s"[${timings.requestId}] Unexpected error: ${e.getMessage}")
+        e.getMessage
+    }
+    logResponse(session, timings, KO, Some(errorMessage))
+    session.markAsFailed
+  }
+
+  private def logResponse(session: Session, timings: TcpTimings, status: Status, message: Option[String]): Unit =
+    statsEngine.logResponse(
+      scenario = session.scenario,
+      groups = session.groups,
+      requestName = requestName,
+      startTimestamp = timings.startMillis,
+      endTimestamp = timings.endMillis,
+      status = status,
+      responseCode = None,
+      message = message
+    )
+}
@@ -0,0 +1,148 @@
+package com.github.koosty.gatling.tcp
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.action.builder.ActionBuilder
+import io.gatling.core.stats.StatsEngine
+import io.gatling.core.structure.ScenarioContext
+import io.gatling.internal.quicklens._
+
+import java.util.function.Function
+import scala.annotation.varargs
+import scala.jdk.CollectionConverters._
+
+/**
+ * Builder for actions receiving a frame pushed by the server, on a connection kept in the session
+ * by an earlier request. Requires the non-blocking engine, whose channels queue the frames pushed
+ * between actions.
+ *
+ * @param requestName Name of the request.
+ * @param matcher Tells whether a frame is the awaited one.
+ * @param addLengthHeader Whether frames are split by a length header.
+ * @param lengthHeaderType Type of length header to use.
+ * @param frameCodec Custom framing, taking precedence over the length header.
+ * @param validators List of Java functions to validate the frame, run before the checks.
+ * @param checks Checks of the frame, capturing values into the session.
+ * @param connectionKey Key to identify the connection in the session.
+ * @param timeout Timeout in milliseconds for the frame to arrive, overriding the protocol read timeout.
+ * @param maxResponseSize The largest frame accepted, overriding the protocol limit.
+ * @param storeResponse Whether the frame is stored in the session.
+ */
+case class TcpAwaitActionBuilder(
+                                  requestName: String,
+                                  matcher: Function[Array[Byte], java.lang.Boolean],
+                                  addLengthHeader: Boolean = false,
+                                  lengthHeaderType: LengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+                                  frameCodec: Option[FrameCodec] = None,
+                                  validators: java.util.List[Function[Array[Byte], java.lang.Boolean]] = new java.util.ArrayList(),
+                                  checks: List[TcpCheck] = List.empty,
+                                  connectionKey: String = "default",
+                                  timeout: Option[Int] = None,
+                                  maxResponseSize: Option[Int] = None,
+                                  storeResponse: Boolean = true
+                                ) extends ActionBuilder {
+
+  def addLengthHeader(addLengthHeader: Boolean): TcpAwaitActionBuilder = {
+    this.modify(_.addLengthHeader).setTo(addLengthHeader)
+  }
+  def lengthHeaderType(lengthHeaderType: LengthHeaderType): TcpAwaitActionBuilder = {
+    this.modify(_.lengthHeaderType).setTo(lengthHeaderType)
+  }
+  def frameCodec(frameCodec: FrameCodec): TcpAwaitActionBuilder = {
+    this.modify(_.frameCodec).setTo(Some(frameCodec))
+  }
+  def validators(validators: java.util.List[Function[Array[Byte], java.lang.Boolean]]): TcpAwaitActionBuilder = {
+    this.modify(_.validators).setTo(validators)
+  }
+  /**
+   * Adds checks of the frame, which may capture values from it into the session.
+   *
+   * @param checks The checks, run in order after the previous ones.
+   */
+  @varargs
+  def check(checks: TcpCheck*): TcpAwaitActionBuilder = {
+    this.modify(_.checks).using(_ ++ checks)
+  }
+  def connectionKey(connectionKey: String): TcpAwaitActionBuilder = {
+    this.modify(_.connectionKey).setTo(connectionKey)
+  }
+
+  /**
+   * Sets how long to wait for the frame, instead of the protocol read timeout.
+   *
+   * @param timeout The timeout in milliseconds, must be positive.
+   */
+  def timeout(timeout: Int): TcpAwaitActionBuilder = {
+    if (timeout < 1) {
+      throw new IllegalArgumentException(s"Timeout must be positive, got: $timeout")
+    }
+    this.modify(_.timeout).setTo(Some(timeout))
+  }
+
+  /**
+   * Sets the largest frame accepted, overriding the protocol limit.
+   *
+   * @param maxResponseSize The maximum size in bytes, must be positive.
+   */
+  def maxResponseSize(maxResponseSize: Int): TcpAwaitActionBuilder = {
+    if (maxResponseSize < 1) {
+      throw new IllegalArgumentException(s"Max response size must be positive, got: $maxResponseSize")
+    }
+    this.modify(_.maxResponseSize).setTo(Some(maxResponseSize))
+  }
+
+  /**
+   * Controls whether the frame is stored in the session as `<requestName>.response`.
+   *
+   * @param storeResponse Whether to store the frame in the session.
+   */
+  def storeResponse(storeResponse: Boolean): TcpAwaitActionBuilder = {
+    this.modify(_.storeResponse).setTo(storeResponse)
+  }
+
+  override def build(ctx: ScenarioContext, next: Action): Action = {
+    val components = ctx.protocolComponentsRegistry
+      .components(TcpProtocol.TcpProtocolKey)
+      .asInstanceOf[TcpComponents]
+    newAction(components, ctx.coreComponents.statsEngine, ctx.coreComponents.clock, next)
+  }
+
+  /**
+   * Creates the action with the given components, also used to run receives outside of a scenario.
+   */
+  private[tcp] def newAction(components: TcpComponents, statsEngine: StatsEngine, clock: Clock, next: Action): TcpAwaitAction = {
+    val codec = frameCodec.orElse(Option.when(addLengthHeader)(lengthHeaderType.codec)).getOrElse {
+      throw new IllegalArgumentException(s"Await $requestName requires a length header or a frame codec to split frames")
+    }
+    if (!components.protocol.nonBlocking) {
+      throw new IllegalArgumentException(s"Await $requestName requires the non-blocking engine")
+    }
+    TcpAwaitAction(
+      requestName,
+      frame => matcher.apply(frame),
+      codec,
+      maxResponseSize.getOrElse(components.protocol.maxResponseSize),
+      timeout.getOrElse(components.protocol.readTimeout),
+      storeResponse,
+      validators.asScala.toList.map(validator => (frame: Array[Byte]) => validator.apply(frame).booleanValue),
+      checks,
+      connectionKey,
+      components,
+      statsEngine,
+      clock,
+      next
+    )
+  }
+}
+
+object TcpAwaitActionBuilder {
+  /**
+   * Creates an action receiving the next frame pushed by the server that matches.
+   *
+   * @param requestName Name of the request.
+   * @param matcher Tells whether a frame is the awaited one.
+   */
+  def await(requestName: String, matcher: Function[Array[Byte], java.lang.Boolean]): TcpAwaitActionBuilder =
+    new TcpAwaitActionBuilder(requestName, matcher)
+}
@@ -0,0 +1,64 @@
+package com.github.koosty.gatling.tcp
+
+/**
+ * Strategy choosing the endpoint of each new connection when a protocol has several endpoints.
+ *
+ * Endpoints that failed to connect are skipped while ejected, as well as those at their connection
+ * limit.
+ */
+sealed trait TcpBalancing
+
+/** Companion object providing the balancing strategies.
+ */
+object TcpBalancing {
+
+  /** Each new connection goes to the next endpoint in turn. */
+  case object RoundRobin extends TcpBalancing
+
+  /** Each new connection goes to a random endpoint. */
+  case object Random extends TcpBalancing
+
+  /** Each new connection goes to the endpoint with the fewest requests in flight. */
+  case object LeastInFlight extends TcpBalancing
+
+  /** The connections of a virtual user always go to the same endpoint, unless it's ejected. */
+  case object Sticky extends TcpBalancing
+
+  /** Returns the round-robin strategy.
+   *
+   * @return The RoundRobin strategy
+   */
+  def roundRobin(): TcpBalancing = RoundRobin
+
+  /** Returns the random strategy.
+   *
+   * @return The Random strategy
+   */
+  def random(): TcpBalancing = Random
+
+  /** Returns the least-in-flight strategy.
+   *
+   * @return The LeastInFlight strategy
+   */
+  def leastInFlight(): TcpBalancing = LeastInFlight
+
+  /** Returns the strategy keeping each virtual user on the same endpoint.
+   *
+   * @return The Sticky strategy
+   */
+  def sticky(): TcpBalancing = Sticky
+}
+
+/**
+ * A target endpoint of a protocol.
+ *
+ * @param host The host to connect to.
+ * @param port The TCP port to connect to.
+ * @param maxConnections The maximum number of requests exchanged with the endpoint at once, on new and kept connections alike, 0 for no limit.
+ * @param unixSocket The path of the Unix domain socket to connect to instead of the host and port.
+ */
+final case class TcpEndpoint(host: String, port: Int, maxConnections: Int = 0, unixSocket: Option[String] = None) {
+
+  /** The name of the endpoint in the stats. */
+  def name: String = unixSocket.fold(s"$host:$port")(path => s"unix:$path")
+}
@@ -0,0 +1,55 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ExecutorService, Executors}
+import scala.util.Try
+
+/**
+ * Runs the exchanges of blocking requests off Gatling's event loops, so that a request waiting
+ * for its response doesn't hold the thread of the virtual users sharing its event loop.
+ *
+ * Exchanges run on virtual threads when the JDK has them (21 and later), which park on socket
+ * reads instead of blocking a carrier thread. Older JDKs fall back to a fixed number of platform
+ * threads, beyond which exchanges wait for one of them to be free.
+ *
+ * @param fallbackThreads The number of platform threads when virtual threads aren't available.
+ */
+private[tcp] final class TcpBlockingExecutor(fallbackThreads: Int) extends StrictLogging {
+
+  private val virtualThreads: Option[ExecutorService] = TcpBlockingExecutor.newVirtualThreadPerTaskExecutor()
+
+  private val executor: ExecutorService = virtualThreads.getOrElse {
+    logger.info(s"Virtual threads aren't available on Java ${Runtime.version.feature}, running blocking requests on $fallbackThreads threads")
+    val counter = new AtomicInteger
+    Executors.newFixedThreadPool(fallbackThreads, { runnable =>
+      val thread = new Thread(runnable, s"${TcpBlockingExecutor.ThreadNamePrefix}${counter.incrementAndGet()}")
+      thread.setDaemon(true)
+      thread
+    })
+  }
+
+  /** Whether exchanges run on virtual threads. */
+  def virtual: Boolean = virtualThreads.isDefined
+
+  /** Runs an exchange. */
+  def execute(exchange: Runnable): Unit = executor.execute(exchange)
+
+  /** Stops the threads, interrupting the exchanges still running. */
+  def close(): Unit = executor.shutdownNow()
+}
+
+private[tcp] object TcpBlockingExecutor {
+  /** Prefix of the names of the platform threads running the exchanges. */
+  val ThreadNamePrefix: String = "gatling-tcp-blocking-"
+
+  /**
+   * Creates an executor starting a virtual thread per task, looked up at runtime as the plugin is
+   * compiled for Java 11.
+   *
+   * @return The executor, None when the JDK has no virtual threads.
+   */
+  private def newVirtualThreadPerTaskExecutor(): Option[ExecutorService] =
+    Try(classOf[Executors].getMethod("newVirtualThreadPerTaskExecutor").invoke(null).asInstanceOf[ExecutorService]).toOption
+}
@@ -0,0 +1,309 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.validation.{Validation, Failure => ValidationFailure, Success => ValidationSuccess}
+import io.gatling.core.session.Session
+
+import java.nio.ByteBuffer
+import java.nio.charset.{Charset, StandardCharsets}
+import java.util.function.{Predicate, Function => JFunction}
+import java.util.regex.Pattern
+
+/**
+ * A check of a response, which may capture values from it into the session.
+ *
+ * Checks of a request run in order and stop at the first failure, so that the checks following a
+ * failure, whose result can't change the outcome, aren't paid for.
+ */
+trait TcpCheck {
+
+  /**
+   * Checks a response.
+   *
+   * @param response A read-only view of the response, shared by the checks of the request.
+   * @param session The session, updated by the previous checks.
+   * @return The session with the captured values, or the failure message.
+   */
+  def check(response: TcpResponse, session: Session): Validation[Session]
+}
+
+/**
+ * A read-only view of a response, shared by the checks of a request.
+ *
+ * Extractors read the bytes in place, and the text of the response is only decoded when a check
+ * needs it, once per charset.
+ *
+ * @param bytes The response payload, which checks must not modify.
+ */
+final class TcpResponse(bytes: Array[Byte]) {
+  private var textCharset: Charset = _
+  private var decoded: String = _
+
+  /** Returns the length of the response. */
+  def length: Int = bytes.length
+
+  /** Returns a read-only buffer over the whole response, without copying it. */
+  def buffer: ByteBuffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+
+  /**
+   * Returns a read-only buffer over a part of the response, without copying it.
+   *
+   * @return The part, or None when the response is too short.
+   */
+  def slice(offset: Int, length: Int): Option[ByteBuffer] =
+    Option.when(offset >= 0 && length >= 0 && offset <= bytes.length - length)(ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer())
+
+  /**
+   * Returns the position of the first occurrence of a byte sequence, -1 if there is none.
+   */
+  def indexOf(pattern: Array[Byte]): Int = new BytePattern(pattern).indexOf(bytes)
+
+  /**
+   * Returns the position of the first occurrence of a compiled byte sequence, -1 if there is none.
+   */
+  def indexOf(pattern: BytePattern): Int = pattern.indexOf(bytes)
+
+  /**
+   * Returns the text of the response, decoded on first use and cached for the last charset used.
+   */
+  def text(charset: Charset): String = {
+    if (decoded == null || textCharset != charset) {
+      decoded = new String(bytes, charset)
+      textCharset = charset
+    }
+    decoded
+  }
+
+  /** Returns the response payload, for the validator functions taking the whole array. */
+  private[tcp] def array: Array[Byte] = bytes
+}
+
+/**
+ * Check built from an extractor, a validation of the extracted value and an optional capture.
+ *
+ * @param description Describes the extractor in failure messages.
+ * @param extractor Extracts a value from the response, None when there is none.
+ * @param validation Returns the failure message of an extracted value, None when it's valid.
+ * @param show Renders an extracted value in failure messages.
+ * @param captured Converts an extracted value to the value stored in the session.
+ * @param attribute The session attribute the extracted value is stored in, if any.
+ * @param validated Whether a validation other than the default was set, which a transformation would drop.
+ * @tparam T The type of the extracted value.
+ */
+final case class TcpCheckBuilder[T](
+                                     description: String,
+                                     extractor: TcpResponse => Option[T],
+                                     validation: Option[T] => Option[String],
+                                     show: T => String = (value: T) => String.valueOf(value),
+                                     captured: T => Any = (value: T) => value,
+                                     attribute: Option[String] = None,
+                                     validated: Boolean = false
+                                   ) extends TcpCheck {
+
+  private def validateWith(validation: Option[T] => Option[String]): TcpCheckBuilder[T] = copy(validation = validation, validated = true)
+
+  /** Checks that a value is extracted, the default. */
+  def exists: TcpCheckBuilder[T] = copy(validation = value => Option.when(value.isEmpty)("not found"), validated = false)
+
+  /** Checks that no value is extracted. */
+  def notExists: TcpCheckBuilder[T] = validateWith(value => value.map(v => s"found ${show(v)}"))
+
+  /**
+   * Checks that the extracted value equals an expected one.
+   *
+   * @param expected The expected value.
+   */
+  def is(expected: T): TcpCheckBuilder[T] =
+    validateWith {
+      case Some(value) if value == expected => None
+      case Some(value)                      => Some(s"expected ${show(expected)} but found ${show(value)}")
+      case None                             => Some("not found")
+    }
+
+  /**
+   * Checks that the extracted value differs from an unexpected one.
+   *
+   * @param unexpected The unexpected value.
+   */
+  def not(unexpected: T): TcpCheckBuilder[T] =
+    validateWith {
+      case Some(value) if value == unexpected => Some(s"unexpectedly found ${show(value)}")
+      case Some(_)                            => None
+      case None                               => Some("not found")
+    }
+
+  /**
+   * Checks the extracted value with a predicate.
+   *
+   * @param name Describes the predicate in failure messages.
+   * @param predicate Tells whether the extracted value is valid.
+   */
+  def validate(name: String, predicate: Predicate[T]): TcpCheckBuilder[T] =
+    validateWith {
+      case Some(value) if predicate.test(value) => None
+      case Some(value)                          => Some(s"$name failed for ${show(value)}")
+      case None                                 => Some("not found")
+    }
+
+  /**
+   * Transforms the extracted value before it's validated and captured, so it must come before the
+   * validation.
+   *
+   * @param f The transformation.
+   * @tparam U The type of the transformed value.
+   * @throws IllegalStateException if a validation was already set.
+   */
+  def transform[U](f: JFunction[T, U]): TcpCheckBuilder[U] = {
+    if (validated) {
+      throw new IllegalStateException(s"Check $description must be transformed before its validation")
+    }
+    TcpCheckBuilder[U](description, response => extractor(response).map(f.apply), value => Option.when(value.isEmpty)("not found"), attribute = attribute)
+  }
+
+  /**
+   * Stores the extracted value in the session, when the check succeeds.
+   *
+   * @param name The session attribute.
+   */
+  def saveAs(name: String): TcpCheckBuilder[T] = copy(attribute = Some(name))
+
+  override def check(response: TcpResponse, session: Session): Validation[Session] =
+    try {
+      val value = extractor(response)
+      validation(value) match {
+        case Some(error) => ValidationFailure(s"$description: $error")
+        case None =>
+          (attribute, value) match {
+            case (Some(name), Some(v)) => ValidationSuccess(session.set(name, captured(v)))
+            case _                     => ValidationSuccess(session)
+          }
+      }
+    } catch {
+      case e: Exception => ValidationFailure(s"Validation error: ${e.getMessage}")
+    }
+}
+
+/** Companion object providing the built-in checks.
+ */
+object TcpCheck {
+
+  private def found[T](value: Option[T]): Option[String] = Option.when(value.isEmpty)("not found")
+
+  private def hex(buffer: ByteBuffer): String = {
+    val out = new StringBuilder(buffer.remaining * 2)
+    var i = buffer.position
+    while (i < buffer.limit) {
+      out.append(f"${buffer.get(i) & 0xFF}%02x")
+      i += 1
+    }
+    out.toString
+  }
+
+  private def copy(buffer: ByteBuffer): Array[Byte] = {
+    val bytes = new Array[Byte](buffer.remaining)
+    buffer.duplicate().get(bytes)
+    bytes
+  }
+
+  /** Extracts the length of the response.
+   *
+   * @return A new check builder
+   */
+  def length(): TcpCheckBuilder[Integer] =
+    TcpCheckBuilder[Integer]("length", response => Some(Integer.valueOf(response.length)), found)
+
+  /** Extracts a part of the response as a read-only buffer, stored in the session as a byte array.
+   *
+   * Compare it with `is(ByteBuffer.wrap(expected))`.
+   *
+   * @param offset The position of the part.
+   * @param length The length of the part.
+   * @return A new check builder, failing when the response is too short
+   */
+  def bytes(offset: Int, length: Int): TcpCheckBuilder[ByteBuffer] =
+    TcpCheckBuilder[ByteBuffer](s"bytes($offset, $length)", _.slice(offset, length), found, hex, copy)
+
+  /** Extracts a part of the response decoded as text.
+   *
+   * @param offset The position of the part.
+   * @param length The length of the part.
+   * @param charset The charset of the text.
+   * @return A new check builder, failing when the response is too short
+   */
+  def string(offset: Int, length: Int, charset: Charset): TcpCheckBuilder[String] =
+    TcpCheckBuilder[String](s"string($offset, $length)", _.slice(offset, length).map(charset.decode(_).toString), found)
+
+  /** Extracts a part of the response decoded as UTF-8 text.
+   *
+   * @param offset The position of the part.
+   * @param length The length of the part.
+   * @return A new check builder, failing when the response is too short
+   */
+  def string(offset: Int, length: Int): TcpCheckBuilder[String] = string(offset, length, StandardCharsets.UTF_8)
+
+  /** Searches a byte sequence in the response, extracting the position of its first occurrence.
+   *
+   * @param pattern The byte sequence to search.
+   * @return A new check builder, failing when the sequence isn't found
+   */
+  def find(pattern: Array[Byte]): TcpCheckBuilder[Integer] = {
+    val searched = new BytePattern(pattern)
+    TcpCheckBuilder[Integer](
+      s"find(${hex(ByteBuffer.wrap(pattern))})",
+      response => Option(response.indexOf(searched)).filter(_ >= 0).map(Integer.valueOf),
+      found
+    )
+  }
+
+  /** Searches a regular expression in the text of the response, extracting its first capture
+   * group, or the whole match when it has no group.
+   *
+   * @param regex The regular expression.
+   * @param charset The charset the response is decoded with, once for all the checks using it.
+   * @return A new check builder, failing when the expression doesn't match
+   */
+  def regex(regex: String, charset: Charset): TcpCheckBuilder[String] = {
+    val pattern = Pattern.compile(regex)
+    TcpCheckBuilder[String](
+      s"regex($regex)",
+      { response =>
+        val matcher = pattern.matcher(response.text(charset))
+        Option.when(matcher.find())(if (matcher.groupCount > 0) matcher.group(1) else matcher.group())
+      },
+      found
+    )
+  }
+
+  /** Searches a regular expression in the response decoded as UTF-8 text.
+   *
+   * @param regex The regular expression.
+   * @return A new check builder, failing when the expression doesn't match
+   */
+  def regex(regex: String): TcpCheckBuilder[String] = this.regex(regex, StandardCharsets.UTF_8)
+
+  /** Adapts a validator taking the whole response, failing when it returns false.
+   *
+   * @param validator The validator.
+   * @return A new check
+   */
+  def validator(validator: Array[Byte] => Boolean): TcpCheck =
+    (response: TcpResponse, session: Session) =>
+      try {
+        if (validator(response.array)) ValidationSuccess(session) else ValidationFailure("Response validation failed")
+      } catch {
+        case e: Exception => ValidationFailure(s"Validation error: ${e.getMessage}")
+      }
+
+  /** Runs checks in order, stopping at the first failure.
+   *
+   * @return The session with the captured values, or the failure message of the first failed check.
+   */
+  private[tcp] def checkAll(checks: List[TcpCheck], response: TcpResponse, session: Session): Validation[Session] = {
+    var result: Validation[Session] = ValidationSuccess(session)
+    var remaining = checks
+    while (remaining.nonEmpty && result.isInstanceOf[ValidationSuccess[_]]) {
+      result = result.flatMap(remaining.head.check(response, _))
+      remaining = remaining.tail
+    }
+    result
+  }
+}
@@ -0,0 +1,51 @@
+package com.github.koosty.gatling.tcp
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Token bucket spacing out the new connections of a protocol, so that a ramp-up doesn't open them
+ * in a burst of SYNs the server can't accept.
+ *
+ * The bucket holds a tenth of a second worth of connects, refilled continuously. Callers reserve
+ * a token and wait for it, instead of being rejected, so that every connection is eventually opened:
+ * blocking connections sleep before connecting, non-blocking ones are scheduled on their event loop.
+ *
+ * @param connectsPerSecond The number of new connections allowed per second, must be positive.
+ */
+private[tcp] final class TcpConnectRateLimiter(connectsPerSecond: Int) {
+
+  private val intervalNanos = TimeUnit.SECONDS.toNanos(1) / connectsPerSecond
+  private val burstNanos = intervalNanos * (math.max(1, connectsPerSecond / 10) - 1)
+
+  /** The time at which the bucket would be full again, as a `System.nanoTime` reading. */
+  private val fullAt = new AtomicLong(System.nanoTime())
+
+  /**
+   * Reserves a token for a new connection.
+   *
+   * @return The time in nanoseconds to wait before connecting, 0 to connect at once.
+   */
+  def reserve(): Long = {
+    var wait = -1L
+    while (wait < 0) {
+      val now = System.nanoTime()
+      val current = fullAt.get
+      val from = if (current - now > 0) current else now
+      if (fullAt.compareAndSet(current, from + intervalNanos)) {
+        wait = math.max(0L, from - burstNanos - now)
+      }
+    }
+    wait
+  }
+
+  /**
+   * Reserves a token and waits for it, for blocking connections.
+   */
+  def acquire(): Unit = {
+    val wait = reserve()
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait)
+    }
+  }
+}
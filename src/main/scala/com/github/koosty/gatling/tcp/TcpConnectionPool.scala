@@ -0,0 +1,266 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import java.util.concurrent.{ConcurrentHashMap, Executors, ScheduledFuture, TimeUnit, TimeoutException}
+import scala.collection.mutable
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Connection pool shared by all virtual users of a protocol.
+ *
+ * Connections are kept per remote host, bounded by [[TcpPoolSettings.maxConnectionsPerHost]].
+ * Acquisition is asynchronous: when the limit is reached, the request waits for a connection to
+ * be released, at most [[TcpPoolSettings.acquireTimeout]] milliseconds. Idle connections are
+ * evicted after [[TcpPoolSettings.maxIdleTime]] milliseconds and, when
+ * [[TcpPoolSettings.validateOnBorrow]] is enabled, checked before being handed out.
+ *
+ * The pool is agnostic of the connection type, so it serves both blocking sockets and
+ * non-blocking channels.
+ *
+ * @param settings Pool configuration.
+ * @param isOpen Tells whether a connection is still usable.
+ * @param closeConnection Closes a connection, must not throw.
+ * @tparam K Type of the key identifying a remote host.
+ * @tparam C Type of the pooled connections.
+ */
+private[tcp] final class TcpConnectionPool[K, C](
+                                                 settings: TcpPoolSettings,
+                                                 isOpen: C => Boolean,
+                                                 closeConnection: C => Unit
+                                               ) extends StrictLogging {
+
+  private final class IdleConnection(val connection: C, val idleSince: Long)
+
+  private final class Waiter(val connect: (Try[C] => Unit) => Unit, val callback: Try[C] => Unit) {
+    var timeoutTask: ScheduledFuture[_] = _
+  }
+
+  /** Connections of a single host. All fields are guarded by the instance lock. */
+  private final class HostPool {
+    val idle = new java.util.ArrayDeque[IdleConnection]
+    val waiters = new mutable.Queue[Waiter]
+    var total = 0
+  }
+
+  private val hostPools = new ConcurrentHashMap[K, HostPool]
+  @volatile private var closed = false
+
+  private val scheduler = {
+    val executor = Executors.newSingleThreadScheduledExecutor { runnable =>
+      val thread = new Thread(runnable, "gatling-tcp-pool")
+      thread.setDaemon(true)
+      thread
+    }
+    if (settings.maxIdleTime > 0) {
+      executor.scheduleWithFixedDelay(() => evictIdle(), settings.maxIdleTime.toLong, settings.maxIdleTime.toLong, TimeUnit.MILLISECONDS)
+    }
+    executor
+  }
+
+  private def hostPool(key: K): HostPool = hostPools.computeIfAbsent(key, _ => new HostPool)
+
+  /**
+   * Acquires a connection to a host, reusing an idle one or opening a new one when under the limit.
+   *
+   * @param key The host to connect to.
+   * @param connect Opens a new connection and reports the outcome to its callback.
+   * @param callback Invoked once with the acquired connection, or the failure to acquire one.
+   */
+  def acquire(key: K, connect: (Try[C] => Unit) => Unit, callback: Try[C] => Unit): Unit = {
+    if (closed) {
+      callback(Failure(new IllegalStateException("Connection pool is closed")))
+    } else {
+      val pool = hostPool(key)
+      var waiter: Waiter = null
+      val idleConnection = pool.synchronized {
+        val connection = pollIdle(pool)
+        if (connection.isEmpty) {
+          if (pool.total < settings.maxConnectionsPerHost) {
+            pool.total += 1
+          } else {
+            waiter = new Waiter(connect, callback)
+            waiter.timeoutTask = scheduler.schedule((() => timeOut(pool, waiter)): Runnable, settings.acquireTimeout.toLong, TimeUnit.MILLISECONDS)
+            pool.waiters.enqueue(waiter)
+          }
+        }
+        connection
+      }
+      if (waiter == null) {
+        idleConnection match {
+          case Some(connection) => callback(Success(connection))
+          case None             => open(pool, connect, callback)
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a connection to the pool.
+   *
+   * @param key The host the connection belongs to.
+   * @param connection The connection to return.
+   * @param reusable Whether the connection can serve another request, otherwise it's closed.
+   */
+  def release(key: K, connection: C, reusable: Boolean): Unit = {
+    val pool = hostPool(key)
+    if (closed || !reusable || !isOpen(connection)) {
+      closeConnection(connection)
+      discard(pool)
+    } else {
+      val waiter = pool.synchronized {
+        val waiter = Option.when(pool.waiters.nonEmpty)(pool.waiters.dequeue())
+        if (waiter.isEmpty) {
+          pool.idle.push(new IdleConnection(connection, System.nanoTime()))
+        }
+        waiter
+      }
+      waiter.foreach { w =>
+        w.timeoutTask.cancel(false)
+        w.callback(Success(connection))
+      }
+    }
+  }
+
+  /**
+   * Adds a connection opened ahead of the requests, as an idle connection.
+   *
+   * Requests only wait for a connection when the host is at its limit, so there is never a waiter
+   * to hand the connection to when it can be added.
+   *
+   * @param key The host the connection belongs to.
+   * @param connection The connection to add, closed when the host is at its limit.
+   * @return Whether the connection was added.
+   */
+  def offer(key: K, connection: C): Boolean = {
+    val pool = hostPool(key)
+    val added = pool.synchronized {
+      val added = !closed && pool.total < settings.maxConnectionsPerHost
+      if (added) {
+        pool.total += 1
+        pool.idle.push(new IdleConnection(connection, System.nanoTime()))
+      }
+      added
+    }
+    if (!added) {
+      closeConnection(connection)
+    }
+    added
+  }
+
+  /**
+   * Removes a usable idle connection from the pool, the caller becoming its owner.
+   *
+   * @param key The host to take a connection to.
+   * @return An idle connection, or None when there is none.
+   */
+  def take(key: K): Option[C] =
+    if (closed) {
+      None
+    } else {
+      val pool = hostPool(key)
+      pool.synchronized {
+        val connection = pollIdle(pool)
+        if (connection.isDefined) {
+          pool.total -= 1
+        }
+        connection
+      }
+    }
+
+  /**
+   * Closes idle connections and rejects further acquisitions. Leased connections are closed when released.
+   */
+  def close(): Unit = {
+    closed = true
+    hostPools.values.forEach { pool =>
+      val connections = pool.synchronized {
+        val connections = pool.idle.toArray(Array.empty[IdleConnection])
+        pool.total -= connections.length
+        pool.idle.clear()
+        connections
+      }
+      connections.foreach(idle => closeConnection(idle.connection))
+    }
+    scheduler.shutdownNow()
+  }
+
+  /** Returns the number of open or opening connections to a host, leased or idle. */
+  def size(key: K): Int = {
+    val pool = hostPool(key)
+    pool.synchronized(pool.total)
+  }
+
+  /** Polls a usable idle connection, closing the expired and invalid ones. Must hold the pool lock. */
+  private def pollIdle(pool: HostPool): Option[C] = {
+    var result: Option[C] = None
+    while (result.isEmpty && !pool.idle.isEmpty) {
+      val idle = pool.idle.pop()
+      if (isExpired(idle) || (settings.validateOnBorrow && !isOpen(idle.connection))) {
+        pool.total -= 1
+        closeConnection(idle.connection)
+      } else {
+        result = Some(idle.connection)
+      }
+    }
+    result
+  }
+
+  private def isExpired(idle: IdleConnection): Boolean =
+    settings.maxIdleTime > 0 && System.nanoTime() - idle.idleSince > TimeUnit.MILLISECONDS.toNanos(settings.maxIdleTime.toLong)
+
+  private def open(pool: HostPool, connect: (Try[C] => Unit) => Unit, callback: Try[C] => Unit): Unit =
+    try {
+      connect {
+        case success @ Success(_) => callback(success)
+        case failure @ Failure(_) =>
+          discard(pool)
+          callback(failure)
+      }
+    } catch {
+      case e: Exception =>
+        discard(pool)
+        callback(Failure(e))
+    }
+
+  /** Forgets a closed connection, letting the next waiter, if any, open a new one. */
+  private def discard(pool: HostPool): Unit = {
+    val waiter = pool.synchronized {
+      val waiter = Option.when(pool.waiters.nonEmpty)(pool.waiters.dequeue())
+      if (waiter.isEmpty) pool.total -= 1
+      waiter
+    }
+    waiter.foreach { w =>
+      w.timeoutTask.cancel(false)
+      open(pool, w.connect, w.callback)
+    }
+  }
+
+  private def timeOut(pool: HostPool, waiter: Waiter): Unit = {
+    val removed = pool.synchronized(pool.waiters.removeFirst(_ eq waiter).isDefined)
+    if (removed) {
+      waiter.callback(Failure(new TimeoutException(s"Failed to acquire a connection within ${settings.acquireTimeout}ms")))
+    }
+  }
+
+  private def evictIdle(): Unit =
+    hostPools.values.forEach { pool =>
+      val expired = pool.synchronized {
+        val expired = mutable.ListBuffer.empty[C]
+        val iterator = pool.idle.iterator
+        while (iterator.hasNext) {
+          val idle = iterator.next()
+          if (isExpired(idle)) {
+            iterator.remove()
+            pool.total -= 1
+            expired += idle.connection
+          }
+        }
+        expired.toList
+      }
+      if (expired.nonEmpty) {
+        logger.debug(s"Evicting ${expired.size} idle connections")
+        expired.foreach(closeConnection)
+      }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.netty.channel.Channel
+
+import java.io.IOException
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Registry of the connections owned by virtual users, as opposed to pooled ones.
+ *
+ * Every socket or channel a virtual user opens is registered until the action closes it, so that
+ * connections kept for reuse are closed deterministically when the user exits, and any connection
+ * still open is force-closed at the end of the simulation instead of leaking until GC.
+ */
+private[tcp] final class TcpConnectionRegistry extends StrictLogging {
+
+  private val connections = new ConcurrentHashMap[java.lang.Long, java.util.Set[AnyRef]]
+  private val closedOnExit = new LongAdder
+  private val closedAtEnd = new LongAdder
+
+  /**
+   * Registers a connection opened by a virtual user.
+   *
+   * @param userId The virtual user owning the connection.
+   * @param connection A blocking [[Socket]] or a non-blocking [[Channel]].
+   */
+  def register(userId: Long, connection: AnyRef): Unit =
+    connections.computeIfAbsent(userId, _ => ConcurrentHashMap.newKeySet[AnyRef]()).add(connection)
+
+  /**
+   * Forgets a connection the virtual user has closed.
+   *
+   * @param userId The virtual user owning the connection.
+   * @param connection The closed connection.
+   */
+  def unregister(userId: Long, connection: AnyRef): Unit = {
+    val userConnections = connections.get(userId)
+    if (userConnections != null) {
+      userConnections.remove(connection)
+    }
+  }
+
+  /**
+   * Closes the connections a virtual user left open, typically those kept for reuse.
+   *
+   * @param userId The exiting virtual user.
+   */
+  def closeUserConnections(userId: Long): Unit = {
+    val userConnections = connections.remove(userId)
+    if (userConnections != null && !userConnections.isEmpty) {
+      userConnections.forEach(TcpConnectionRegistry.closeQuietly)
+      closedOnExit.add(userConnections.size.toLong)
+      logger.debug(s"Closed ${userConnections.size} connections left open by user $userId")
+    }
+  }
+
+  /**
+   * Force-closes all the connections still open, at the end of the simulation.
+   */
+  def closeAll(): Unit = {
+    connections.keySet.forEach { userId =>
+      val userConnections = connections.remove(userId)
+      if (userConnections != null) {
+        userConnections.forEach(TcpConnectionRegistry.closeQuietly)
+        closedAtEnd.add(userConnections.size.toLong)
+      }
+    }
+    logger.info(s"TCP connections closed on user exit: ${closedOnExit.sum}, force-closed at simulation end: ${closedAtEnd.sum}")
+  }
+
+  /** Returns the number of registered connections. */
+  def size: Int = connections.values.stream.mapToInt(_.size).sum
+
+  /** Returns the number of connections closed when their virtual user exited. */
+  def closedOnExitCount: Long = closedOnExit.sum
+
+  /** Returns the number of connections force-closed at the end of the simulation. */
+  def closedAtEndCount: Long = closedAtEnd.sum
+}
+
+private[tcp] object TcpConnectionRegistry extends StrictLogging {
+  private def closeQuietly(connection: AnyRef): Unit = connection match {
+    case socket: Socket =>
+      try socket.close()
+      catch {
+        case e: IOException => logger.debug(s"Error closing socket: ${e.getMessage}")
+      }
+    case channel: Channel =>
+      channel.close()
+    case other =>
+      logger.warn(s"Unsupported connection type ${other.getClass.getName}")
+  }
+}
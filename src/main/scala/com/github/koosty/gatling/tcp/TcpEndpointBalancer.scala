@@ -0,0 +1,193 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import java.net.{InetAddress, SocketAddress}
+import java.util.concurrent.{Executors, ScheduledExecutorService, ThreadLocalRandom, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+/**
+ * Spreads new connections over the endpoints of a protocol.
+ *
+ * Each endpoint counts the requests in flight on it, on new and kept connections alike, so that its
+ * connection limit is enforced and the least loaded one can be chosen. An endpoint that fails to connect is ejected for a while:
+ * other endpoints are preferred until then, unless all of them are ejected too.
+ *
+ * The hosts are resolved when the balancer is created, and again in the background on a TTL, so
+ * that choosing an endpoint never waits for a DNS lookup.
+ *
+ * @param endpoints The endpoints, in order.
+ * @param balancing The strategy choosing the endpoint of each new connection.
+ * @param ejectionTime The time in milliseconds during which an endpoint that failed to connect is avoided.
+ * @param dnsTtl The time in milliseconds after which the hosts are resolved again, 0 to resolve them only once.
+ * @param resolve Resolves all the addresses of a host.
+ */
+private[tcp] final class TcpEndpointBalancer(
+                                              endpoints: Seq[TcpEndpoint],
+                                              balancing: TcpBalancing,
+                                              ejectionTime: Int,
+                                              dnsTtl: Int,
+                                              resolve: String => Array[InetAddress] = InetAddress.getAllByName
+                                            ) {
+  import TcpEndpointBalancer.Endpoint
+
+  private val states: Array[Endpoint] = endpoints.zipWithIndex.map { case (endpoint, index) =>
+    new Endpoint(index, endpoint, if (endpoints.size > 1) ejectionTime else 0, resolve)
+  }.toArray
+  private val counter = new AtomicInteger
+
+  private val scheduler: Option[ScheduledExecutorService] = Option.when(dnsTtl > 0 && states.exists(_.resolved)) {
+    val executor = Executors.newSingleThreadScheduledExecutor { runnable =>
+      val thread = new Thread(runnable, "gatling-tcp-dns")
+      thread.setDaemon(true)
+      thread
+    }
+    executor.scheduleWithFixedDelay(() => states.foreach(_.refresh()), dnsTtl.toLong, dnsTtl.toLong, TimeUnit.MILLISECONDS)
+    executor
+  }
+
+  /** Returns the state of all the endpoints, in order. */
+  def all: Seq[Endpoint] = states.toSeq
+
+  /** Whether there are several endpoints, whose responses may be reported apart. */
+  val multiple: Boolean = states.length > 1
+
+  /**
+   * Chooses the endpoint of a new connection and counts the request on it.
+   *
+   * @param userId The virtual user sending the request, for the sticky strategy.
+   * @return The endpoint, or None if all of them are at their connection limit.
+   */
+  def select(userId: Long): Option[Endpoint] =
+    if (states.length == 1) {
+      Option.when(states(0).tryAcquire())(states(0))
+    } else {
+      val start = balancing match {
+        case TcpBalancing.RoundRobin    => Math.floorMod(counter.getAndIncrement(), states.length)
+        case TcpBalancing.Random        => ThreadLocalRandom.current.nextInt(states.length)
+        case TcpBalancing.Sticky        => Math.floorMod(userId, states.length.toLong).toInt
+        case TcpBalancing.LeastInFlight => leastInFlight()
+      }
+      acquireFrom(start, skipEjected = true).orElse(acquireFrom(start, skipEjected = false))
+    }
+
+  /**
+   * Counts a request sent on a connection kept open to an endpoint.
+   *
+   * @param index The position of the endpoint the connection was opened to.
+   * @return The endpoint, or None if it's at its connection limit.
+   */
+  def reuse(index: Int): Option[Endpoint] = {
+    val state = states(index)
+    Option.when(state.tryAcquire())(state)
+  }
+
+  /**
+   * Tries the endpoints in turn from a given one, returning the first that can take a request.
+   */
+  private def acquireFrom(start: Int, skipEjected: Boolean): Option[Endpoint] = {
+    var i = 0
+    var acquired: Endpoint = null
+    while (acquired == null && i < states.length) {
+      val state = states((start + i) % states.length)
+      if (!(skipEjected && state.ejected) && state.tryAcquire()) {
+        acquired = state
+      }
+      i += 1
+    }
+    Option(acquired)
+  }
+
+  /** Stops resolving the hosts again. */
+  def close(): Unit = scheduler.foreach(_.shutdownNow())
+
+  /**
+   * Returns the endpoint with the fewest requests in flight that isn't ejected, scanning from a
+   * rotating position so that ties are spread.
+   */
+  private def leastInFlight(): Int = {
+    val offset = Math.floorMod(counter.getAndIncrement(), states.length)
+    var best = -1
+    var bestInFlight = Int.MaxValue
+    var i = 0
+    while (i < states.length) {
+      val index = (offset + i) % states.length
+      val state = states(index)
+      if (!state.ejected && state.requestsInFlight < bestInFlight) {
+        best = index
+        bestInFlight = state.requestsInFlight
+      }
+      i += 1
+    }
+    if (best < 0) offset else best
+  }
+}
+
+/** Companion object providing the state of the endpoints.
+ */
+private[tcp] object TcpEndpointBalancer extends StrictLogging {
+
+  /**
+   * State of an endpoint shared by all the virtual users.
+   *
+   * @param index The position of the endpoint in the protocol.
+   * @param endpoint The endpoint.
+   * @param ejectionTime The time in milliseconds during which the endpoint is avoided after failing to connect, 0 to never avoid it.
+   * @param resolve Resolves all the addresses of the host.
+   */
+  final class Endpoint private[TcpEndpointBalancer] (val index: Int, val endpoint: TcpEndpoint, ejectionTime: Int, resolve: String => Array[InetAddress]) {
+    private val resolver: Option[TcpAddressResolver] =
+      Option.when(endpoint.unixSocket.isEmpty)(new TcpAddressResolver(endpoint.host, endpoint.port, resolve))
+    private val addresses: () => SocketAddress = resolver match {
+      case Some(resolver) => () => resolver.next()
+      case None =>
+        val address = TcpUnixSocket.address(endpoint.unixSocket.get)
+        () => address
+    }
+    private val inFlight = new AtomicInteger
+    private val ejectedUntil = new AtomicLong
+
+    /** Returns the next address of the endpoint to connect to. */
+    def address(): SocketAddress = addresses()
+
+    /** Whether the endpoint is a host resolved by DNS. */
+    private[TcpEndpointBalancer] def resolved: Boolean = resolver.isDefined
+
+    /** Resolves the host of the endpoint again. */
+    private[TcpEndpointBalancer] def refresh(): Unit = resolver.foreach(_.refresh())
+
+    /** Returns the number of requests in flight on the endpoint. */
+    def requestsInFlight: Int = inFlight.get
+
+    /** Counts a request sent to the endpoint, unless it's at its connection limit. */
+    private[TcpEndpointBalancer] def tryAcquire(): Boolean =
+      if (endpoint.maxConnections == 0) {
+        inFlight.incrementAndGet()
+        true
+      } else {
+        var acquired = false
+        var current = inFlight.get
+        while (!acquired && current < endpoint.maxConnections) {
+          acquired = inFlight.compareAndSet(current, current + 1)
+          current = inFlight.get
+        }
+        acquired
+      }
+
+    /** Counts the end of a request sent to the endpoint. */
+    def release(): Unit = inFlight.decrementAndGet()
+
+    /** Avoids the endpoint for the ejection time, after it failed to connect. */
+    def eject(): Unit =
+      if (ejectionTime > 0) {
+        ejectedUntil.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectionTime.toLong))
+        logger.warn(s"Endpoint ${endpoint.name} failed to connect, ejected for ${ejectionTime}ms")
+      }
+
+    /** Whether the endpoint is currently avoided. */
+    def ejected: Boolean = {
+      val until = ejectedUntil.get
+      until != 0L && System.nanoTime() - until < 0
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.validation._
+import io.gatling.core.session.{Expression, Session}
+import io.gatling.internal.quicklens._
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+/**
+ * Payload of a TCP request.
+ *
+ * A message is either static, the same bytes for every virtual user, or dynamic, made of
+ * segments resolved against the session of each virtual user and written one after the other,
+ * or a buffer resolved for each virtual user, such as a payload of a [[TcpPayloadCorpus]].
+ */
+sealed trait TcpMessage
+
+object TcpMessage {
+
+  /**
+   * A message sent as is by every virtual user. Its framed bytes are computed once, when the action is built.
+   *
+   * @param bytes The payload.
+   */
+  final case class Static(bytes: Array[Byte]) extends TcpMessage
+
+  /**
+   * A message resolved against the session of each virtual user.
+   *
+   * @param segments The segments of the payload, concatenated in order. Each one is written from its
+   *                 position to its limit, without being copied into the heap, and left untouched.
+   */
+  final case class Dynamic(segments: List[Expression[ByteBuffer]]) extends TcpMessage {
+
+    /**
+     * Resolves the segments of the payload.
+     *
+     * @param session The session of the virtual user sending the message.
+     * @return The resolved segments, or the first resolution failure.
+     */
+    def resolve(session: Session): Validation[List[ByteBuffer]] = {
+      var resolved: Validation[List[ByteBuffer]] = Nil.success
+      segments.reverseIterator.foreach { segment =>
+        resolved = for {
+          tail <- resolved
+          bytes <- segment(session)
+        } yield bytes :: tail
+      }
+      resolved
+    }
+  }
+
+  /**
+   * A message resolved against the session of each virtual user into a buffer, written from its
+   * position to its limit without being copied into the heap, and left untouched.
+   *
+   * @param payload Resolves the buffer holding the payload.
+   */
+  final case class Buffer(payload: Expression[ByteBuffer]) extends TcpMessage
+
+  def apply(bytes: Array[Byte]): TcpMessage = Static(bytes)
+
+  /**
+   * Creates a message drawn from a payload source for each request.
+   *
+   * @param source The source of the payloads.
+   */
+  def apply(source: TcpPayloadSource): TcpMessage =
+    Buffer(_ =>
+      try {
+        source.next().success
+      } catch {
+        case e: NoSuchElementException => e.getMessage.failure
+      }
+    )
+
+  def apply(expression: Expression[Array[Byte]]): TcpMessage = Dynamic(List(wrap(expression)))
+
+  private[tcp] def wrap(expression: Expression[Array[Byte]]): Expression[ByteBuffer] =
+    session => expression(session).map(ByteBuffer.wrap)
+}
+
+/**
+ * Builder of template messages, made of fixed byte segments and slots substituted from the session,
+ * typically with attributes fed by a feeder.
+ *
+ * @param segments The segments of the template, in order.
+ */
+case class TcpMessageTemplate(segments: List[Expression[ByteBuffer]] = Nil) {
+
+  /**
+   * Appends fixed bytes.
+   *
+   * @param bytes The bytes to append.
+   */
+  def bytes(bytes: Array[Byte]): TcpMessageTemplate = {
+    val segment = bytes.clone()
+    append(_ => ByteBuffer.wrap(segment).success)
+  }
+
+  /**
+   * Appends fixed text, encoded in UTF-8.
+   *
+   * @param text The text to append.
+   */
+  def text(text: String): TcpMessageTemplate = bytes(text.getBytes(StandardCharsets.UTF_8))
+
+  /**
+   * Appends the value of a session attribute. Byte arrays are written as is, buffers, such as the
+   * payloads fed by a [[TcpPayloadSource]], from their position to their limit without being copied,
+   * other values as their UTF-8 encoded string representation.
+   *
+   * @param name The name of the session attribute.
+   */
+  def attribute(name: String): TcpMessageTemplate =
+    append(session =>
+      session(name).validate[Any].map {
+        case bytes: Array[Byte] => ByteBuffer.wrap(bytes)
+        case buffer: ByteBuffer => buffer
+        case value              => ByteBuffer.wrap(value.toString.getBytes(StandardCharsets.UTF_8))
+      }
+    )
+
+  /**
+   * Appends a slot computed from the session.
+   *
+   * @param slot Resolves the bytes of the slot.
+   */
+  def slot(slot: Expression[Array[Byte]]): TcpMessageTemplate = append(TcpMessage.wrap(slot))
+
+  private def append(segment: Expression[ByteBuffer]): TcpMessageTemplate =
+    this.modify(_.segments).using(_ :+ segment)
+
+  /** Returns the message built from this template. */
+  def message: TcpMessage = TcpMessage.Dynamic(segments)
+}
+
+/** Companion object providing factory methods for creating message templates.
+ */
+object TcpMessageTemplate {
+  /** Creates a new empty message template.
+   *
+   * @return A new TcpMessageTemplate instance
+   */
+  def template(): TcpMessageTemplate = new TcpMessageTemplate()
+}
@@ -0,0 +1,207 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.netty.buffer.ByteBuf
+import io.netty.channel.ChannelHandler.Sharable
+import io.netty.channel.{ChannelDuplexHandler, ChannelHandlerContext, ChannelPromise}
+
+import java.io.{FilterInputStream, FilterOutputStream, InputStream, OutputStream, PrintWriter}
+import java.net.Socket
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Paths, StandardOpenOption}
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.{Executors, TimeUnit}
+
+/** Settings of the sampling of the network metrics of a protocol.
+ *
+ * @param interval The time in milliseconds between samples, 0 to never sample them
+ * @param file The CSV file samples are appended to, besides the log
+ */
+case class TcpMetricsSettings(interval: Int = 0, file: Option[String] = None)
+
+/**
+ * Network counters of a protocol, shared by all the connections of both engines.
+ *
+ * Counters are striped `LongAdder`s, so that the threads of many virtual users increment them
+ * without contending, and only the sampling sums their cells.
+ */
+private[tcp] final class TcpMetrics {
+  /** Bytes written to the sockets, headers and TLS records included. */
+  val bytesWritten = new LongAdder
+  /** Bytes read from the sockets, headers and TLS records included. */
+  val bytesRead = new LongAdder
+  val connectionsOpened = new LongAdder
+  val connectionsClosed = new LongAdder
+  /** Connections that couldn't be established. */
+  val connectionsFailed = new LongAdder
+  val requestsInFlight = new LongAdder
+  /** Requests sent again on a new connection, the reused one being stale. */
+  val reconnects = new LongAdder
+  /** Requests sent again after a failure of their connection. */
+  val retries = new LongAdder
+
+  /** Returns the current value of the counters. */
+  def snapshot(): TcpMetrics.Snapshot = TcpMetrics.Snapshot(
+    bytesWritten.sum(), bytesRead.sum(), connectionsOpened.sum(), connectionsClosed.sum(), connectionsFailed.sum(), requestsInFlight.sum(),
+    reconnects.sum(), retries.sum()
+  )
+}
+
+private[tcp] object TcpMetrics {
+  /** Name of the handler counting the bytes of a channel, ahead of the TLS one. */
+  val HandlerName: String = "metrics"
+
+  /** Header of the CSV file of the samples. */
+  val CsvHeader: String = "timestamp,bytesWrittenPerSec,bytesReadPerSec,connectionsOpen,connectionsOpened,connectionsClosed,connectionsFailed,requestsInFlight,reconnects,retries"
+
+  /** Values of the counters at a point in time. */
+  final case class Snapshot(bytesWritten: Long, bytesRead: Long, opened: Long, closed: Long, failed: Long, inFlight: Long,
+                            reconnects: Long = 0L, retries: Long = 0L) {
+    /** Returns the number of connections currently open. */
+    def open: Long = opened - closed
+  }
+
+  /**
+   * Counts the bytes and the lifecycle of the channels it's added to. It sits first in the
+   * pipeline, so that it sees the bytes as they go on the wire.
+   */
+  @Sharable
+  final class ChannelCounter(metrics: TcpMetrics) extends ChannelDuplexHandler {
+    override def channelActive(ctx: ChannelHandlerContext): Unit = {
+      metrics.connectionsOpened.increment()
+      ctx.fireChannelActive()
+    }
+
+    override def channelInactive(ctx: ChannelHandlerContext): Unit = {
+      metrics.connectionsClosed.increment()
+      ctx.fireChannelInactive()
+    }
+
+    override def channelRead(ctx: ChannelHandlerContext, msg: AnyRef): Unit = {
+      msg match {
+        case buf: ByteBuf => metrics.bytesRead.add(buf.readableBytes)
+        case _ =>
+      }
+      ctx.fireChannelRead(msg)
+    }
+
+    override def write(ctx: ChannelHandlerContext, msg: AnyRef, promise: ChannelPromise): Unit = {
+      msg match {
+        case buf: ByteBuf => metrics.bytesWritten.add(buf.readableBytes)
+        case _ =>
+      }
+      ctx.write(msg, promise)
+    }
+  }
+
+  /**
+   * A blocking socket counting its bytes, and its closing once connected.
+   */
+  final class MeteredSocket(metrics: TcpMetrics) extends Socket {
+    private val closed = new AtomicBoolean
+    private var in: InputStream = _
+    private var out: OutputStream = _
+
+    override def getInputStream: InputStream = synchronized {
+      if (in == null) in = new CountingInputStream(super.getInputStream, metrics.bytesRead)
+      in
+    }
+
+    override def getOutputStream: OutputStream = synchronized {
+      if (out == null) out = new CountingOutputStream(super.getOutputStream, metrics.bytesWritten)
+      out
+    }
+
+    override def close(): Unit = {
+      if (isConnected && closed.compareAndSet(false, true)) {
+        metrics.connectionsClosed.increment()
+      }
+      super.close()
+    }
+  }
+
+  private final class CountingInputStream(in: InputStream, counter: LongAdder) extends FilterInputStream(in) {
+    override def read(): Int = {
+      val b = in.read()
+      if (b >= 0) counter.increment()
+      b
+    }
+
+    override def read(b: Array[Byte], off: Int, len: Int): Int = {
+      val n = in.read(b, off, len)
+      if (n > 0) counter.add(n)
+      n
+    }
+  }
+
+  private final class CountingOutputStream(out: OutputStream, counter: LongAdder) extends FilterOutputStream(out) {
+    override def write(b: Int): Unit = {
+      out.write(b)
+      counter.increment()
+    }
+
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+      out.write(b, off, len)
+      counter.add(len)
+    }
+  }
+}
+
+/**
+ * Samples the metrics of a protocol at a fixed interval, logging the throughput, the open
+ * connections and the requests in flight, and appending them to a CSV file when set.
+ *
+ * Gatling's stats engine only records requests, so the samples are kept aside for correlation with
+ * the server-side metrics of the run.
+ *
+ * @param metrics The sampled metrics.
+ * @param settings The sampling interval, and the CSV file.
+ */
+private[tcp] final class TcpMetricsSampler(metrics: TcpMetrics, settings: TcpMetricsSettings) extends StrictLogging {
+  private val writer: Option[PrintWriter] = settings.file.map { file =>
+    val path = Paths.get(file)
+    val exists = Files.exists(path)
+    val writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+    if (!exists) writer.println(TcpMetrics.CsvHeader)
+    writer
+  }
+
+  private val executor = Executors.newSingleThreadScheduledExecutor { runnable =>
+    val thread = new Thread(runnable, "gatling-tcp-metrics")
+    thread.setDaemon(true)
+    thread
+  }
+
+  private var last = metrics.snapshot()
+  private var lastNanos = System.nanoTime()
+
+  executor.scheduleAtFixedRate(() => sample(), settings.interval, settings.interval, TimeUnit.MILLISECONDS)
+
+  /** Records the changes since the previous sample. */
+  private[tcp] def sample(): Unit = synchronized {
+    val current = metrics.snapshot()
+    val nanos = System.nanoTime()
+    val seconds = math.max(nanos - lastNanos, 1L) / 1e9
+    val writtenPerSec = ((current.bytesWritten - last.bytesWritten) / seconds).round
+    val readPerSec = ((current.bytesRead - last.bytesRead) / seconds).round
+    logger.info(s"Out: $writtenPerSec B/s, in: $readPerSec B/s, connections open: ${current.open} " +
+      s"(opened: ${current.opened - last.opened}, closed: ${current.closed - last.closed}, failed: ${current.failed - last.failed}), " +
+      s"requests in flight: ${current.inFlight}, reconnects: ${current.reconnects - last.reconnects}, retries: ${current.retries - last.retries}")
+    writer.foreach { writer =>
+      writer.println(s"${System.currentTimeMillis()},$writtenPerSec,$readPerSec,${current.open},${current.opened - last.opened}," +
+        s"${current.closed - last.closed},${current.failed - last.failed},${current.inFlight},${current.reconnects - last.reconnects}," +
+        s"${current.retries - last.retries}")
+      writer.flush()
+    }
+    last = current
+    lastNanos = nanos
+  }
+
+  /** Stops sampling after a last sample, and closes the CSV file. */
+  def close(): Unit = {
+    executor.shutdownNow()
+    sample()
+    writer.foreach(_.close())
+  }
+}
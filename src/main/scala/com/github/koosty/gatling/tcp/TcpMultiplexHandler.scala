@@ -0,0 +1,158 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.netty.buffer.{ByteBuf, Unpooled}
+import io.netty.channel.{ChannelHandlerContext, ChannelInboundHandlerAdapter}
+import io.netty.handler.codec.ByteToMessageDecoder
+import io.netty.util.ReferenceCountUtil
+import io.netty.util.concurrent.ScheduledFuture
+
+import java.net.SocketTimeoutException
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Inbound handler of a pipelined connection, on which many requests are in flight at once.
+ *
+ * Responses are split into frames by the decoder, and each frame is routed to the request waiting
+ * for its correlation id. Each pending request has its own timeout.
+ *
+ * @param decoder Splits the bytes received into responses, for this connection only.
+ * @param correlationId Extracts the correlation id from a response payload.
+ */
+private[tcp] final class TcpMultiplexHandler(
+                                              decoder: FrameDecoder,
+                                              correlationId: Array[Byte] => String
+                                            ) extends ChannelInboundHandlerAdapter with StrictLogging {
+
+  private final class PendingRequest(val callback: Try[Array[Byte]] => Unit) {
+    @volatile var timeoutTask: ScheduledFuture[_] = _
+  }
+
+  private val pending = new ConcurrentHashMap[String, PendingRequest]
+  private var ctx: ChannelHandlerContext = _
+  private var cumulation: ByteBuf = Unpooled.EMPTY_BUFFER
+
+  /**
+   * Registers a request awaiting its response. Can be called from any thread.
+   *
+   * A request registered once the connection is closed fails at once, since the requests in flight
+   * were already failed when it closed.
+   *
+   * @param id The correlation id of the request.
+   * @param readTimeout Timeout in milliseconds for the response.
+   * @param callback Invoked once with the response payload or the failure.
+   * @return false if a request with the same correlation id is already in flight.
+   */
+  def register(id: String, readTimeout: Int, callback: Try[Array[Byte]] => Unit): Boolean = {
+    val request = new PendingRequest(callback)
+    if (pending.putIfAbsent(id, request) != null) {
+      false
+    } else if (!ctx.channel.isActive) {
+      complete(id, request, Failure(new TcpConnectionClosedException("Connection closed before receiving complete response")))
+      true
+    } else {
+      if (readTimeout > 0) {
+        request.timeoutTask = ctx.executor.schedule(
+          new Runnable {
+            override def run(): Unit = complete(id, request, Failure(new SocketTimeoutException("Read timed out")))
+          },
+          readTimeout.toLong,
+          TimeUnit.MILLISECONDS
+        )
+      }
+      true
+    }
+  }
+
+  /**
+   * Fails a request in flight, typically when it couldn't be written.
+   *
+   * @param id The correlation id of the request.
+   * @param cause The failure reported to the callback.
+   */
+  def fail(id: String, cause: Throwable): Unit = {
+    val request = pending.get(id)
+    if (request != null) {
+      complete(id, request, Failure(cause))
+    }
+  }
+
+  /** Returns the number of requests awaiting their response. */
+  def inFlight: Int = pending.size
+
+  override def handlerAdded(ctx: ChannelHandlerContext): Unit = this.ctx = ctx
+
+  override def handlerRemoved(ctx: ChannelHandlerContext): Unit = {
+    cumulation.release()
+    cumulation = Unpooled.EMPTY_BUFFER
+  }
+
+  override def channelRead(ctx: ChannelHandlerContext, msg: Any): Unit = msg match {
+    case buf: ByteBuf =>
+      cumulation = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(ctx.alloc, cumulation, buf)
+      decode()
+    case other =>
+      ReferenceCountUtil.release(other)
+  }
+
+  override def channelInactive(ctx: ChannelHandlerContext): Unit = {
+    failAll(new TcpConnectionClosedException("Connection closed before receiving complete response"))
+    ctx.fireChannelInactive()
+  }
+
+  override def exceptionCaught(ctx: ChannelHandlerContext, cause: Throwable): Unit = {
+    failAll(cause)
+    ctx.close()
+  }
+
+  private def decode(): Unit = {
+    var continue = true
+    while (continue && cumulation.isReadable) {
+      val in = cumulation.nioBuffer()
+      val start = in.position
+      Try(decoder.decode(in)) match {
+        case Success(null) =>
+          continue = false
+        case Success(frame) =>
+          cumulation.skipBytes(in.position - start)
+          route(frame)
+        case Failure(e) =>
+          exceptionCaught(ctx, e)
+          continue = false
+      }
+    }
+    if (!cumulation.isReadable) {
+      cumulation.release()
+      cumulation = Unpooled.EMPTY_BUFFER
+    }
+  }
+
+  private def route(frame: Array[Byte]): Unit =
+    Try(correlationId(frame)) match {
+      case Success(id) =>
+        val request = pending.get(id)
+        if (request != null) {
+          complete(id, request, Success(frame))
+        } else {
+          logger.debug(s"Dropping response with unknown correlation id $id")
+        }
+      case Failure(e) =>
+        logger.warn(s"Failed to extract correlation id from response: ${e.getMessage}")
+    }
+
+  private def complete(id: String, request: PendingRequest, result: Try[Array[Byte]]): Unit =
+    if (pending.remove(id, request)) {
+      if (request.timeoutTask != null) {
+        request.timeoutTask.cancel(false)
+      }
+      request.callback(result)
+    }
+
+  private def failAll(cause: Throwable): Unit =
+    pending.forEach((id, request) => complete(id, request, Failure(cause)))
+}
+
+private[tcp] object TcpMultiplexHandler {
+  val Name = "tcpMultiplex"
+}
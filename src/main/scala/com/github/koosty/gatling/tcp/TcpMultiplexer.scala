@@ -0,0 +1,61 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.channel.{ChannelFuture, EventLoop}
+
+import java.net.SocketAddress
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Pipelined connections shared by all virtual users, by connection key.
+ *
+ * Requests are spread round-robin over a fixed number of connections per key. Each connection is
+ * opened on first use and reopened once it has failed or been closed.
+ *
+ * @param client The client opening the connections.
+ * @param connectionsPerKey The number of connections per connection key.
+ */
+private[tcp] final class TcpMultiplexer(client: NettyTcpClient, connectionsPerKey: Int) {
+
+  private final class Slot {
+    var future: ChannelFuture = _
+  }
+
+  private val slots = new ConcurrentHashMap[String, Array[Slot]]
+  private val counter = new AtomicInteger
+
+  /**
+   * Returns one of the pipelined connections of a connection key, opening it if needed.
+   *
+   * @param connectionKey The connection key shared by the requests.
+   * @param eventLoop The event loop a new connection is registered on.
+   * @param address The remote address to connect to.
+   * @param newHandler Creates the handler routing the responses of a new connection.
+   * @return A future completed once the connection is established or has failed.
+   */
+  def channel(connectionKey: String, eventLoop: EventLoop, address: SocketAddress, newHandler: => TcpMultiplexHandler): ChannelFuture = {
+    val keySlots = slots.computeIfAbsent(connectionKey, _ => Array.fill(connectionsPerKey)(new Slot))
+    val slot = keySlots(Math.floorMod(counter.getAndIncrement(), connectionsPerKey))
+    slot.synchronized {
+      val current = slot.future
+      if (current != null && (!current.isDone || (current.isSuccess && current.channel.isActive))) {
+        current
+      } else {
+        slot.future = client.connectMultiplexed(eventLoop, address, newHandler)
+        slot.future
+      }
+    }
+  }
+
+  /**
+   * Closes all the pipelined connections.
+   */
+  def close(): Unit =
+    slots.values.forEach(_.foreach { slot =>
+      slot.synchronized {
+        if (slot.future != null) {
+          slot.future.channel.close()
+        }
+      }
+    })
+}
@@ -0,0 +1,290 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import java.io.{BufferedOutputStream, DataOutputStream, IOException}
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Path, Paths, StandardCopyOption, StandardOpenOption}
+import java.nio.{ByteBuffer, ByteOrder, LongBuffer}
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+import scala.util.Using
+
+/**
+ * A file of length-prefixed payloads, such as captured requests, memory-mapped so that corpora
+ * far larger than the heap can be replayed.
+ *
+ * Payloads are read-only slices of the mapping, written to the socket without being copied into
+ * the heap. They are found through an index of their offsets, built by scanning the corpus once and
+ * stored next to it as `<corpus>.idx`, itself mapped: it is reused as long as the corpus keeps its
+ * size and modification time. Corpora over 2GB are mapped in regions overlapping by the longest
+ * record, so that every record lies whole in the region where it starts.
+ *
+ * @param path The corpus file.
+ * @param lengthFieldSize The size of the length field before each payload: 1, 2 or 4 bytes.
+ * @param order The byte order of the length field.
+ * @param regionSize The size of the regions the corpus is mapped in.
+ */
+final class TcpPayloadCorpus private[tcp] (path: Path, lengthFieldSize: Int, order: ByteOrder, regionSize: Long) extends StrictLogging {
+
+  private val index: TcpPayloadCorpus.Index = TcpPayloadCorpus.Index.load(path, lengthFieldSize, order)
+
+  private val offsets: LongBuffer = index.offsets
+  if (index.count == 0) {
+    throw new IllegalArgumentException(s"$path holds no payload")
+  }
+
+  /** Regions of the corpus, region `i` mapping from `i * regionSize` with the longest record past its end. */
+  private val regions: Array[ByteBuffer] = Using.resource(FileChannel.open(path, StandardOpenOption.READ)) { channel =>
+    val size = channel.size
+    if (regionSize + index.maxRecordLength > Int.MaxValue) {
+      throw new IllegalArgumentException(s"Records of ${index.maxRecordLength} bytes can't be mapped in regions of $regionSize bytes")
+    }
+    Array.tabulate(math.max(1, ((size + regionSize - 1) / regionSize).toInt)) { i =>
+      val start = i * regionSize
+      channel.map(FileChannel.MapMode.READ_ONLY, start, math.min(size - start, regionSize + index.maxRecordLength)).order(order)
+    }
+  }
+  logger.info(s"Mapped ${index.count} payloads from $path in ${regions.length} regions")
+
+  /** Returns the number of payloads in the corpus.
+   *
+   * @return The payload count
+   */
+  def size: Long = index.count
+
+  /**
+   * Returns a payload, as a read-only slice of the mapping, shared with the other users.
+   *
+   * @param i The index of the payload, from 0.
+   * @return The bytes of the payload, from the position to the limit of the buffer.
+   */
+  def payload(i: Long): ByteBuffer = {
+    if (i < 0 || i >= index.count) {
+      throw new IndexOutOfBoundsException(s"Payload $i out of ${index.count}")
+    }
+    val offset = offsets.get(i.toInt)
+    val region = regions((offset / regionSize).toInt)
+    val start = (offset % regionSize).toInt
+    val length = TcpPayloadCorpus.readLength(region, start, lengthFieldSize)
+    region.duplicate().position(start + lengthFieldSize).limit(start + lengthFieldSize + length).slice()
+  }
+
+  /** Draws the payloads in order, each one once: requests fail once they are all drawn.
+   *
+   * @return A new TcpPayloadSource instance
+   */
+  def sequential(): TcpPayloadSource = new TcpPayloadSource(this, TcpPayloadSource.Sequential)
+
+  /** Draws the payloads at random.
+   *
+   * @return A new TcpPayloadSource instance
+   */
+  def random(): TcpPayloadSource = new TcpPayloadSource(this, TcpPayloadSource.Random)
+
+  /** Draws the payloads in order, starting over after the last one.
+   *
+   * @return A new TcpPayloadSource instance
+   */
+  def circular(): TcpPayloadSource = new TcpPayloadSource(this, TcpPayloadSource.Circular)
+}
+
+/** Companion object providing factory methods for opening payload corpora.
+ */
+object TcpPayloadCorpus extends StrictLogging {
+
+  /** Size of the regions a corpus is mapped in. */
+  private[tcp] val RegionSize: Long = 1L << 30
+
+  /** Opens a corpus of payloads prefixed with a 4 bytes big-endian length.
+   *
+   * @param path The corpus file
+   * @return A new TcpPayloadCorpus instance
+   */
+  def open(path: String): TcpPayloadCorpus = open(path, 4, ByteOrder.BIG_ENDIAN)
+
+  /** Opens a corpus of length-prefixed payloads, building its index if needed.
+   *
+   * @param path The corpus file
+   * @param lengthFieldSize The size of the length field: 1, 2 or 4 bytes
+   * @param order The byte order of the length field
+   * @return A new TcpPayloadCorpus instance
+   */
+  def open(path: String, lengthFieldSize: Int, order: ByteOrder): TcpPayloadCorpus = open(Paths.get(path), lengthFieldSize, order, RegionSize)
+
+  private[tcp] def open(path: Path, lengthFieldSize: Int, order: ByteOrder, regionSize: Long): TcpPayloadCorpus = {
+    if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4) {
+      throw new IllegalArgumentException(s"Length field size must be 1, 2 or 4, got: $lengthFieldSize")
+    }
+    new TcpPayloadCorpus(path, lengthFieldSize, order, regionSize)
+  }
+
+  /** Returns the path of the index of a corpus. */
+  private[tcp] def indexPath(path: Path): Path = path.resolveSibling(path.getFileName.toString + ".idx")
+
+  private def readLength(buffer: ByteBuffer, at: Int, lengthFieldSize: Int): Int = lengthFieldSize match {
+    case 1 => buffer.get(at) & 0xFF
+    case 2 => buffer.getShort(at) & 0xFFFF
+    case _ => buffer.getInt(at)
+  }
+
+  /**
+   * The offsets of the records of a corpus, with the state of the corpus they were built from.
+   *
+   * @param count The number of records.
+   * @param maxRecordLength The length of the longest record, length field included.
+   * @param offsets The offset of each record.
+   */
+  private[tcp] final case class Index(count: Long, maxRecordLength: Long, offsets: LongBuffer)
+
+  private[tcp] object Index {
+    /** Marks index files, with the version of their format. */
+    private val Magic = 0x54435049445801L // "TCPIDX" 1
+    /** Magic, corpus size, corpus modification time, length field size, byte order, count, longest record. */
+    private val HeaderSize = 7 * 8
+
+    /**
+     * Maps the index of a corpus, built first when missing or stale. When it can't be written next
+     * to the corpus, it is built in a temporary file instead.
+     */
+    def load(corpus: Path, lengthFieldSize: Int, order: ByteOrder): Index = {
+      val stored = indexPath(corpus)
+      if (fresh(stored, corpus, lengthFieldSize, order)) {
+        map(stored)
+      } else {
+        val nextToCorpus = try {
+          Some(Files.createTempFile(corpus.toAbsolutePath.getParent, corpus.getFileName.toString, ".idx.tmp"))
+        } catch {
+          case e: IOException =>
+            logger.warn(s"Could not store the index of $corpus next to it, keeping it in a temporary file: ${e.getMessage}")
+            None
+        }
+        val built = nextToCorpus.getOrElse(Files.createTempFile("tcp-corpus", ".idx"))
+        try {
+          build(corpus, lengthFieldSize, order, built)
+        } catch {
+          case e: Exception =>
+            Files.deleteIfExists(built)
+            throw e
+        }
+        if (nextToCorpus.isDefined) {
+          Files.move(built, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+          map(stored)
+        } else {
+          built.toFile.deleteOnExit()
+          map(built)
+        }
+      }
+    }
+
+    private def fresh(index: Path, corpus: Path, lengthFieldSize: Int, order: ByteOrder): Boolean =
+      Files.isRegularFile(index) && Files.size(index) >= HeaderSize && Using.resource(FileChannel.open(index, StandardOpenOption.READ)) { channel =>
+        val header = ByteBuffer.allocate(HeaderSize)
+        while (header.hasRemaining && channel.read(header) >= 0) {}
+        header.flip()
+        header.getLong == Magic && header.getLong == Files.size(corpus) && header.getLong == Files.getLastModifiedTime(corpus).toMillis &&
+          header.getLong == lengthFieldSize && header.getLong == (if (order == ByteOrder.BIG_ENDIAN) 0L else 1L)
+      }
+
+    /** Scans the corpus once, writing the offset of each record to the index. */
+    private def build(corpus: Path, lengthFieldSize: Int, order: ByteOrder, index: Path): Unit = {
+      val startNanos = System.nanoTime()
+      val corpusSize = Files.size(corpus)
+      val modified = Files.getLastModifiedTime(corpus).toMillis
+      var count = 0L
+      var maxRecordLength = 0L
+      Using.resources(FileChannel.open(corpus, StandardOpenOption.READ),
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index), 64 * 1024))) { (channel, out) =>
+        out.write(new Array[Byte](HeaderSize))
+        val field = ByteBuffer.allocate(lengthFieldSize).order(order)
+        var offset = 0L
+        while (offset < corpusSize) {
+          field.clear()
+          while (field.hasRemaining && channel.read(field, offset + field.position) >= 0) {}
+          if (field.hasRemaining) {
+            throw new IOException(s"Truncated length field at offset $offset of $corpus")
+          }
+          val length = readLength(field, 0, lengthFieldSize)
+          if (length < 0 || offset + lengthFieldSize + length > corpusSize) {
+            throw new IOException(s"Invalid payload length $length at offset $offset of $corpus")
+          }
+          out.writeLong(offset)
+          count += 1
+          maxRecordLength = math.max(maxRecordLength, lengthFieldSize.toLong + length)
+          offset += lengthFieldSize + length
+        }
+      }
+      if (count > (Int.MaxValue - HeaderSize) / 8) {
+        throw new IOException(s"$corpus holds $count payloads, more than an index can map")
+      }
+      Using.resource(FileChannel.open(index, StandardOpenOption.WRITE)) { channel =>
+        val header = ByteBuffer.allocate(HeaderSize)
+        header.putLong(Magic).putLong(corpusSize).putLong(modified).putLong(lengthFieldSize.toLong)
+          .putLong(if (order == ByteOrder.BIG_ENDIAN) 0L else 1L).putLong(count).putLong(maxRecordLength).flip()
+        while (header.hasRemaining) channel.write(header, header.position.toLong)
+      }
+      logger.info(s"Indexed $count payloads of $corpus in ${(System.nanoTime() - startNanos) / 1000000}ms")
+    }
+
+    private def map(index: Path): Index = Using.resource(FileChannel.open(index, StandardOpenOption.READ)) { channel =>
+      val mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size)
+      val count = mapped.getLong(5 * 8)
+      val maxRecordLength = mapped.getLong(6 * 8)
+      Index(count, maxRecordLength, mapped.position(HeaderSize).slice().asLongBuffer())
+    }
+  }
+}
+
+/**
+ * Draws the payloads of a [[TcpPayloadCorpus]] for the requests of all the virtual users, safely
+ * from any thread.
+ *
+ * @param corpus The corpus of the payloads.
+ * @param order The order the payloads are drawn in.
+ */
+final class TcpPayloadSource private[tcp] (val corpus: TcpPayloadCorpus, order: TcpPayloadSource.Order) {
+
+  private val drawn = new AtomicLong
+
+  /** Returns whether payloads remain to be drawn, which only ends for sequential sources.
+   *
+   * @return Whether [[next]] returns a payload
+   */
+  def hasNext: Boolean = order != TcpPayloadSource.Sequential || drawn.get < corpus.size
+
+  /**
+   * Draws the next payload.
+   *
+   * @return The payload, as a read-only slice of the mapping
+   * @throws NoSuchElementException Once a sequential source has drawn all the payloads.
+   */
+  def next(): ByteBuffer = order match {
+    case TcpPayloadSource.Sequential =>
+      val i = drawn.getAndIncrement()
+      if (i >= corpus.size) {
+        throw new NoSuchElementException(s"All the ${corpus.size} payloads of the corpus were sent")
+      }
+      corpus.payload(i)
+    case TcpPayloadSource.Random   => corpus.payload(ThreadLocalRandom.current().nextLong(corpus.size))
+    case TcpPayloadSource.Circular => corpus.payload(java.lang.Long.remainderUnsigned(drawn.getAndIncrement(), corpus.size))
+  }
+
+  /**
+   * Returns a feeder putting the next payload in the session of each virtual user, under an
+   * attribute that [[TcpMessageTemplate.attribute]] writes without copying the buffer.
+   *
+   * @param attributeName The name of the session attribute.
+   * @return The feeder, ending with a sequential source.
+   */
+  def feeder(attributeName: String): Iterator[Map[String, Any]] = new Iterator[Map[String, Any]] {
+    override def hasNext: Boolean = TcpPayloadSource.this.hasNext
+    override def next(): Map[String, Any] = Map(attributeName -> TcpPayloadSource.this.next())
+  }
+}
+
+private[tcp] object TcpPayloadSource {
+  sealed trait Order
+  case object Sequential extends Order
+  case object Random extends Order
+  case object Circular extends Order
+}
@@ -1,9 +1,16 @@
 package com.github.koosty.gatling.tcp
 
+import com.typesafe.scalalogging.StrictLogging
 import io.gatling.core.CoreComponents
 import io.gatling.core.config.GatlingConfiguration
 import io.gatling.core.protocol.{Protocol, ProtocolComponents, ProtocolKey}
 import io.gatling.core.session.Session
+import io.netty.channel.{Channel, ChannelFuture}
+
+import java.io.IOException
+import java.net.{InetSocketAddress, Socket, SocketAddress}
+import java.util.concurrent.Executors
+import scala.util.{Failure, Success, Try}
 
 /** A protocol implementation for TCP connections in Gatling performance tests.
  *
@@ -12,16 +19,272 @@ import io.gatling.core.session.Session
  * @param connectTimeout The timeout in milliseconds for establishing a connection
  * @param readTimeout The timeout in milliseconds for reading data from the connection
  * @param keepAlive Whether to use TCP keep-alive
+ * @param reuseConnections Whether connections may be reused across requests
+ * @param nonBlocking Whether requests run on the non-blocking Netty engine instead of blocking sockets
+ * @param pool Settings of the connection pool shared by all virtual users
+ * @param pipelinedConnections The number of connections shared by pipelined requests of a connection key
+ * @param maxResponseSize The largest response in bytes accepted by requests that don't set their own limit
+ * @param dnsTtl The time in milliseconds after which the host is resolved again, 0 to resolve it only once
+ * @param endpoints The endpoints to spread connections over, the host and port alone when empty
+ * @param balancing The strategy choosing the endpoint of each new connection
+ * @param ejectionTime The time in milliseconds during which an endpoint that failed to connect is avoided
+ * @param endpointStats Whether responses are also reported per endpoint when there are several
+ * @param prewarmConnections The number of connections opened to each endpoint when the simulation starts
+ * @param maxConnectsPerSecond The maximum number of new connections per second, 0 for no limit
+ * @param tls Settings of TLS, securing the connections when enabled
+ * @param socket Options of the sockets, and the local addresses they are bound to
+ * @param metrics Settings of the sampling of the network metrics
+ * @param virtualThreads Whether blocking requests run on virtual threads instead of Gatling's event loops
+ * @param blockingThreads The number of threads running blocking requests when virtual threads aren't available
+ * @param transport The transport of the channels of the non-blocking engine
+ * @param unixSocket The path of the Unix domain socket to connect to instead of the host and port
+ */
+case class TcpProtocol(
+                        host: String,
+                        port: Int,
+                        connectTimeout: Int,
+                        readTimeout: Int,
+                        keepAlive: Boolean,
+                        reuseConnections: Boolean,
+                        nonBlocking: Boolean = false,
+                        pool: TcpPoolSettings = TcpPoolSettings(),
+                        pipelinedConnections: Int = 1,
+                        maxResponseSize: Int = TcpProtocol.DefaultMaxResponseSize,
+                        dnsTtl: Int = 0,
+                        endpoints: List[TcpEndpoint] = Nil,
+                        balancing: TcpBalancing = TcpBalancing.RoundRobin,
+                        ejectionTime: Int = 10000,
+                        endpointStats: Boolean = true,
+                        prewarmConnections: Int = 0,
+                        maxConnectsPerSecond: Int = 0,
+                        tls: TcpTlsSettings = TcpTlsSettings(),
+                        socket: TcpSocketSettings = TcpSocketSettings(),
+                        metrics: TcpMetricsSettings = TcpMetricsSettings(),
+                        virtualThreads: Boolean = false,
+                        blockingThreads: Int = TcpProtocol.DefaultBlockingThreads,
+                        transport: TcpTransport = TcpTransport.Gatling,
+                        unixSocket: Option[String] = None
+                      ) extends Protocol {
+
+  /** Returns the endpoints connections are spread over: the Unix domain socket alone when set. */
+  def targetEndpoints: List[TcpEndpoint] = unixSocket match {
+    case Some(path)                 => List(TcpEndpoint(host, port, unixSocket = Some(path)))
+    case None if endpoints.isEmpty => List(TcpEndpoint(host, port))
+    case None                       => endpoints
+  }
+}
+
+/** Settings of the connection pool shared by all virtual users of a protocol.
+ *
+ * @param enabled Whether requests borrow connections from the shared pool instead of owning them
+ * @param maxConnectionsPerHost The maximum number of connections opened to a single host
+ * @param maxIdleTime The time in milliseconds after which an idle connection is closed, 0 to never close them
+ * @param acquireTimeout The timeout in milliseconds for obtaining a connection when the pool is exhausted
+ * @param validateOnBorrow Whether idle connections are checked for liveness before being handed out
  */
-case class TcpProtocol(host: String, port: Int, connectTimeout: Int, readTimeout: Int, keepAlive: Boolean, reuseConnections: Boolean) extends Protocol
+case class TcpPoolSettings(
+                            enabled: Boolean = false,
+                            maxConnectionsPerHost: Int = 100,
+                            maxIdleTime: Int = 60000,
+                            acquireTimeout: Int = 10000,
+                            validateOnBorrow: Boolean = true
+                          )
 
 /** Components for managing TCP protocol state during Gatling simulations.
  *
  * This class handles the lifecycle of TCP connections during performance tests.
  *
  * @param protocol The TCP protocol configuration to use
+ * @param coreComponents The Gatling core components, absent when created outside of a simulation
  */
-case class TcpComponents(protocol: TcpProtocol) extends ProtocolComponents {
+case class TcpComponents(protocol: TcpProtocol, coreComponents: Option[CoreComponents] = None) extends ProtocolComponents with StrictLogging {
+  /** Connections owned by virtual users, closed when they exit and at the end of the simulation. */
+  private[tcp] val connections: TcpConnectionRegistry = new TcpConnectionRegistry
+  coreComponents.foreach(_.actorSystem.registerOnTermination(() => connections.closeAll()))
+
+  /** Endpoints of the protocol, whose hosts are resolved now and handed out to new connections. */
+  private[tcp] val balancer: TcpEndpointBalancer = {
+    val balancer = new TcpEndpointBalancer(protocol.targetEndpoints, protocol.balancing, protocol.ejectionTime, protocol.dnsTtl)
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => balancer.close()))
+    balancer
+  }
+
+  /** Spaces out new connections, when [[TcpProtocol.maxConnectsPerSecond]] is set. */
+  private[tcp] val connectRateLimiter: Option[TcpConnectRateLimiter] =
+    Option.when(protocol.maxConnectsPerSecond > 0)(new TcpConnectRateLimiter(protocol.maxConnectsPerSecond))
+
+  /** TLS context shared by all connections, built once so that they resume each other's sessions. */
+  private[tcp] val tls: Option[TcpTls] = Option.when(protocol.tls.enabled)(new TcpTls(protocol.tls))
+
+  /** Network counters of all the connections, whatever the engine. */
+  private[tcp] val metrics: TcpMetrics = new TcpMetrics
+
+  /** Samples the network counters, when [[TcpMetricsSettings.interval]] is set. */
+  private[tcp] val metricsSampler: Option[TcpMetricsSampler] = Option.when(protocol.metrics.interval > 0) {
+    val sampler = new TcpMetricsSampler(metrics, protocol.metrics)
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => sampler.close()))
+    sampler
+  }
+
+  /** Runs blocking requests off the event loops, when [[TcpProtocol.virtualThreads]] is set. */
+  private[tcp] val blockingExecutor: Option[TcpBlockingExecutor] = Option.when(protocol.virtualThreads && !protocol.nonBlocking) {
+    val executor = new TcpBlockingExecutor(protocol.blockingThreads)
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => executor.close()))
+    executor
+  }
+
+  /** Local addresses new connections are bound to in turn, resolved once. */
+  private[tcp] val localAddresses: TcpLocalAddresses = new TcpLocalAddresses(protocol.socket.localAddresses)
+
+  /** Non-blocking client, created on first use so that blocking simulations never pay for it.
+   *
+   * The channel type follows Gatling's Netty configuration, as channels are registered on the
+   * virtual users' event loops, unless the protocol selects a native transport of its own.
+   */
+  private[tcp] lazy val nettyClient: NettyTcpClient = {
+    val netty = coreComponents.map(_.configuration.netty)
+    val client = new NettyTcpClient(protocol, netty.exists(_.useNativeTransport), netty.exists(_.useIoUring), connectRateLimiter, tls, localAddresses, metrics)
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => client.close()))
+    client
+  }
+
+  /** Pool of blocking sockets shared by all virtual users, used when [[TcpPoolSettings.enabled]]. */
+  private[tcp] lazy val socketPool: TcpConnectionPool[SocketAddress, Socket] =
+    closedOnTermination(new TcpConnectionPool[SocketAddress, Socket](
+      protocol.pool,
+      socket => !socket.isClosed && socket.isConnected,
+      socket => try socket.close() catch { case _: IOException => }
+    ))
+
+  /** Pool of non-blocking channels shared by all virtual users, used when [[TcpPoolSettings.enabled]]. */
+  private[tcp] lazy val channelPool: TcpConnectionPool[SocketAddress, Channel] =
+    closedOnTermination(new TcpConnectionPool[SocketAddress, Channel](protocol.pool, _.isActive, _.close()))
+
+  /** Connections shared by pipelined requests. */
+  private[tcp] lazy val multiplexer: TcpMultiplexer = {
+    val multiplexer = new TcpMultiplexer(nettyClient, protocol.pipelinedConnections)
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => multiplexer.close()))
+    multiplexer
+  }
+
+  private def closedOnTermination[K, C](pool: TcpConnectionPool[K, C]): TcpConnectionPool[K, C] = {
+    coreComponents.foreach(_.actorSystem.registerOnTermination(() => pool.close()))
+    pool
+  }
+
+  /** Opens a blocking socket to an address of an endpoint, once the rate limiter allows it, from
+   * the next local address if any, and runs the TLS handshake when enabled.
+   *
+   * @param address The address to connect to.
+   * @param endpoint The endpoint of the address, ejected when the connection fails.
+   * @param timings The timings of the request opening the socket, recording its TLS handshake.
+   * @return A connected socket.
+   */
+  private[tcp] def openSocket(address: SocketAddress, endpoint: TcpEndpointBalancer.Endpoint, timings: Option[TcpTimings] = None): Socket = {
+    connectRateLimiter.foreach(_.acquire())
+    address match {
+      case inet: InetSocketAddress => openTcpSocket(inet, endpoint, timings)
+      case unix                    => openUnixSocket(unix, endpoint)
+    }
+  }
+
+  private def openTcpSocket(address: InetSocketAddress, endpoint: TcpEndpointBalancer.Endpoint, timings: Option[TcpTimings]): Socket = {
+    val socket = new TcpMetrics.MeteredSocket(metrics)
+    socket.setKeepAlive(protocol.keepAlive)
+    socket.setSoTimeout(protocol.readTimeout)
+    try {
+      protocol.socket.configure(socket)
+      localAddresses.next().foreach(socket.bind)
+      socket.connect(address, protocol.connectTimeout)
+      metrics.connectionsOpened.increment()
+    } catch {
+      case e: Exception =>
+        socket.close() // Don't leak the file descriptor of a failed connection
+        metrics.connectionsFailed.increment()
+        endpoint.eject()
+        throw e
+    }
+    tls.fold[Socket](socket) { tls =>
+      val startNanos = System.nanoTime()
+      try {
+        val secured = tls.secure(socket, address)
+        timings.foreach(_.handshake(startNanos, System.nanoTime()))
+        secured
+      } catch {
+        case e: Exception =>
+          socket.close()
+          throw e
+      }
+    }
+  }
+
+  /** Connects to the Unix domain socket of an endpoint, which takes neither socket options nor TLS. */
+  private def openUnixSocket(address: SocketAddress, endpoint: TcpEndpointBalancer.Endpoint): Socket = {
+    val socket = try {
+      TcpUnixSocket.connect(address, metrics)
+    } catch {
+      case e: Exception =>
+        metrics.connectionsFailed.increment()
+        endpoint.eject()
+        throw e
+    }
+    metrics.connectionsOpened.increment()
+    socket.setSoTimeout(protocol.readTimeout)
+    socket
+  }
+
+  /** Whether connections were opened at start, to be taken by requests before opening their own. */
+  private[tcp] val prewarmed: Boolean = protocol.prewarmConnections > 0
+
+  if (prewarmed) {
+    prewarm()
+  }
+
+  /** Opens [[TcpProtocol.prewarmConnections]] connections to each endpoint in the background, and
+   * keeps them idle in the pool of the engine. Requests borrow them when the pool is enabled, and
+   * take them over for themselves otherwise.
+   */
+  private def prewarm(): Unit = {
+    val endpoints = balancer.all.flatMap(endpoint => Seq.fill(protocol.prewarmConnections)(endpoint))
+    logger.info(s"Opening ${endpoints.size} connections ahead of the first requests")
+    if (protocol.nonBlocking) {
+      coreComponents match {
+        case Some(core) =>
+          endpoints.foreach { endpoint =>
+            val address = endpoint.address()
+            nettyClient.connect(core.eventLoopGroup.next(), address).addListener((future: ChannelFuture) =>
+              if (future.isSuccess) {
+                channelPool.offer(address, future.channel)
+              } else {
+                endpoint.eject()
+                logger.warn(s"Failed to open connection to ${endpoint.endpoint.name} ahead of the requests: ${future.cause.getMessage}")
+              }
+            )
+          }
+        case None =>
+          logger.warn("Connections can't be opened ahead of the requests without Gatling's event loops")
+      }
+    } else {
+      val executor = Executors.newFixedThreadPool(math.min(endpoints.size, TcpComponents.PrewarmThreads), { runnable =>
+        val thread = new Thread(runnable, "gatling-tcp-prewarm")
+        thread.setDaemon(true)
+        thread
+      })
+      endpoints.foreach { endpoint =>
+        executor.execute { () =>
+          val address = endpoint.address()
+          Try(openSocket(address, endpoint)) match {
+            case Success(socket) =>
+              socketPool.offer(address, socket)
+            case Failure(e) =>
+              logger.warn(s"Failed to open connection to ${endpoint.endpoint.name} ahead of the requests: ${e.getMessage}")
+          }
+        }
+      }
+      executor.shutdown()
+    }
+  }
+
   /** Called when a virtual user starts their session.
    *
    * @return The potentially modified session
@@ -30,13 +293,27 @@ case class TcpComponents(protocol: TcpProtocol) extends ProtocolComponents {
 
   /** Called when a virtual user ends their session.
    *
-   * */
-  override def onExit: Session => Unit = _ => ()
+   * Closes the connections the user kept open for reuse.
+   */
+  override def onExit: Session => Unit = session => connections.closeUserConnections(session.userId)
+}
+
+/** Companion object for TcpComponents holding the settings of the pre-warming.
+ */
+object TcpComponents {
+  /** Maximum number of threads opening blocking connections ahead of the requests. */
+  private[tcp] val PrewarmThreads: Int = 16
 }
 
 /** Companion object for TcpProtocol containing protocol configuration and factory methods.
  */
 object TcpProtocol {
+  /** Default largest response accepted, in bytes. */
+  val DefaultMaxResponseSize: Int = 1024 * 1024
+
+  /** Default number of threads running blocking requests when virtual threads aren't available. */
+  val DefaultBlockingThreads: Int = 200
+
   /** Protocol key for registering the TCP protocol with Gatling.
    *
    * Provides default configuration and component initialization for the TCP protocol.
@@ -59,6 +336,6 @@ object TcpProtocol {
      * @return A function that creates TcpComponents from a protocol instance
      */
     override def newComponents(coreComponents: CoreComponents): TcpProtocol => TcpComponents =
-      protocol => TcpComponents(protocol)
+      protocol => TcpComponents(protocol, Some(coreComponents))
   }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.github.koosty.gatling.tcp
 import io.gatling.internal.quicklens._
 
 import java.util.Objects
+import scala.annotation.varargs
 
 /** Builder class for creating TCP protocol configurations in Gatling.
  *
@@ -15,7 +16,25 @@ case class TcpProtocolBuilder(
                                connectTimeout: Int = 50000,
                                readTimeout: Int = 10000,
                                keepAlive: Boolean = true,
-                               reuseConnections: Boolean = true
+                               reuseConnections: Boolean = true,
+                               nonBlocking: Boolean = false,
+                               pool: TcpPoolSettings = TcpPoolSettings(),
+                               pipelinedConnections: Int = 1,
+                               maxResponseSize: Int = TcpProtocol.DefaultMaxResponseSize,
+                               dnsTtl: Int = 0,
+                               endpoints: List[TcpEndpoint] = Nil,
+                               balancing: TcpBalancing = TcpBalancing.RoundRobin,
+                               ejectionTime: Int = 10000,
+                               endpointStats: Boolean = true,
+                               prewarmConnections: Int = 0,
+                               maxConnectsPerSecond: Int = 0,
+                               tls: TcpTlsSettings = TcpTlsSettings(),
+                               socket: TcpSocketSettings = TcpSocketSettings(),
+                               metrics: TcpMetricsSettings = TcpMetricsSettings(),
+                               virtualThreads: Boolean = false,
+                               blockingThreads: Int = TcpProtocol.DefaultBlockingThreads,
+                               transport: TcpTransport = TcpTransport.Gatling,
+                               unixSocket: Option[String] = None
                              ) {
 
 
@@ -42,6 +61,19 @@ case class TcpProtocolBuilder(
     this.modify(_.port).setTo(port)
   }
 
+  /** Connects to a Unix domain socket instead of the host and port, on Java 16 and later.
+   *
+   * Requests are framed, checked and reuse their connections as they do over TCP, on both engines,
+   * while the TCP socket options, local addresses and TLS don't apply.
+   *
+   * @param path The path of the socket file
+   * @return This builder instance for method chaining
+   */
+  def unixSocket(path: String): TcpProtocolBuilder = {
+    Objects.requireNonNull(path, "Unix socket path cannot be null")
+    this.modify(_.unixSocket).setTo(Some(path))
+  }
+
   /** Sets the connection timeout value.
    *
    * @param connectTimeout The timeout in milliseconds for establishing new connections
@@ -70,18 +102,458 @@ case class TcpProtocolBuilder(
    */
   def reuseConnections(reuseConnections: Boolean): TcpProtocolBuilder = this.modify(_.reuseConnections).setTo(reuseConnections)
 
+  /** Selects the non-blocking engine instead of blocking sockets.
+   *
+   * When enabled, requests are written and their responses awaited on Netty event loops, so
+   * virtual users waiting for a response don't hold a thread.
+   *
+   * @param nonBlocking Whether to use the non-blocking engine
+   * @return This builder instance for method chaining
+   */
+  def nonBlocking(nonBlocking: Boolean): TcpProtocolBuilder = this.modify(_.nonBlocking).setTo(nonBlocking)
+
+  /** Sets the transport of the non-blocking engine's channels.
+   *
+   * Channels follow Gatling's transport by default. [[TcpTransport.Epoll]] and
+   * [[TcpTransport.IoUring]] run them on native event loops of their own with pooled direct
+   * buffers, which cut the syscalls and garbage of each connection when opening hundreds of
+   * thousands of them. Hosts without the native library fall back to Gatling's transport.
+   *
+   * @param transport The transport of the channels
+   * @return This builder instance for method chaining
+   */
+  def transport(transport: TcpTransport): TcpProtocolBuilder = {
+    Objects.requireNonNull(transport, "Transport cannot be null")
+    this.modify(_.transport).setTo(transport)
+  }
+
+  /** Enables or disables the connection pool shared by all virtual users.
+   *
+   * When enabled, requests borrow a connection from the pool and return it once the response is
+   * received, so that the session never holds a connection and many users share a few connections.
+   *
+   * @param enabled Whether to use the shared connection pool
+   * @return This builder instance for method chaining
+   */
+  def connectionPool(enabled: Boolean): TcpProtocolBuilder = this.modify(_.pool.enabled).setTo(enabled)
+
+  /** Sets the maximum number of pooled connections opened to a single host.
+   *
+   * @param maxConnectionsPerHost The maximum number of connections, must be positive
+   * @return This builder instance for method chaining
+   */
+  def maxConnectionsPerHost(maxConnectionsPerHost: Int): TcpProtocolBuilder = {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException(s"Max connections per host must be positive, got: $maxConnectionsPerHost")
+    }
+    this.modify(_.pool.maxConnectionsPerHost).setTo(maxConnectionsPerHost)
+  }
+
+  /** Sets the time after which an idle pooled connection is closed.
+   *
+   * @param maxIdleTime The idle time in milliseconds, 0 to never close idle connections
+   * @return This builder instance for method chaining
+   */
+  def maxIdleTime(maxIdleTime: Int): TcpProtocolBuilder = {
+    if (maxIdleTime < 0) {
+      throw new IllegalArgumentException(s"Max idle time must not be negative, got: $maxIdleTime")
+    }
+    this.modify(_.pool.maxIdleTime).setTo(maxIdleTime)
+  }
+
+  /** Sets the timeout for obtaining a pooled connection when all connections are in use.
+   *
+   * @param acquireTimeout The timeout in milliseconds
+   * @return This builder instance for method chaining
+   */
+  def acquireTimeout(acquireTimeout: Int): TcpProtocolBuilder = {
+    if (acquireTimeout < 0) {
+      throw new IllegalArgumentException(s"Acquire timeout must not be negative, got: $acquireTimeout")
+    }
+    this.modify(_.pool.acquireTimeout).setTo(acquireTimeout)
+  }
+
+  /** Controls whether idle pooled connections are checked for liveness before being handed out.
+   *
+   * @param validateOnBorrow Whether to validate connections on borrow
+   * @return This builder instance for method chaining
+   */
+  def validateOnBorrow(validateOnBorrow: Boolean): TcpProtocolBuilder = this.modify(_.pool.validateOnBorrow).setTo(validateOnBorrow)
+
+  /** Sets the number of connections shared by pipelined requests with the same connection key.
+   *
+   * @param pipelinedConnections The number of connections, must be positive
+   * @return This builder instance for method chaining
+   */
+  def pipelinedConnections(pipelinedConnections: Int): TcpProtocolBuilder = {
+    if (pipelinedConnections < 1) {
+      throw new IllegalArgumentException(s"Pipelined connections must be positive, got: $pipelinedConnections")
+    }
+    this.modify(_.pipelinedConnections).setTo(pipelinedConnections)
+  }
+
+  /** Sets the largest response accepted by requests that don't set their own limit.
+   *
+   * Larger responses fail the request instead of being buffered.
+   *
+   * @param maxResponseSize The maximum size in bytes, must be positive
+   * @return This builder instance for method chaining
+   */
+  def maxResponseSize(maxResponseSize: Int): TcpProtocolBuilder = {
+    if (maxResponseSize < 1) {
+      throw new IllegalArgumentException(s"Max response size must be positive, got: $maxResponseSize")
+    }
+    this.modify(_.maxResponseSize).setTo(maxResponseSize)
+  }
+
+  /** Sets the time after which the host is resolved again.
+   *
+   * The host is resolved once for all the virtual users when the simulation starts, and new
+   * connections go to each of its addresses in turn. It's resolved again in the background, so
+   * requests never wait for a lookup. By default, it's never resolved again during the simulation.
+   *
+   * @param dnsTtl The time in milliseconds, 0 to resolve the host only once
+   * @return This builder instance for method chaining
+   */
+  def dnsTtl(dnsTtl: Int): TcpProtocolBuilder = {
+    if (dnsTtl < 0) {
+      throw new IllegalArgumentException(s"DNS TTL must not be negative, got: $dnsTtl")
+    }
+    this.modify(_.dnsTtl).setTo(dnsTtl)
+  }
+
+  /** Adds an endpoint to spread connections over, instead of the host and port alone.
+   *
+   * @param host The hostname or IP address of the endpoint
+   * @param port The port number of the endpoint
+   * @return This builder instance for method chaining
+   */
+  def endpoint(host: String, port: Int): TcpProtocolBuilder = endpoint(host, port, 0)
+
+  /** Adds an endpoint to spread connections over, with a limit on its connections.
+   *
+   * Each connection exchanges one request at a time, so the limit bounds the connections busy with the
+   * endpoint. Requests that find every endpoint at its limit fail instead of waiting, and so do
+   * requests on a connection kept open to an endpoint at its limit.
+   *
+   * @param host The hostname or IP address of the endpoint
+   * @param port The port number of the endpoint
+   * @param maxConnections The maximum number of requests exchanged with the endpoint at once, on new and kept connections alike, 0 for no limit
+   * @return This builder instance for method chaining
+   */
+  def endpoint(host: String, port: Int, maxConnections: Int): TcpProtocolBuilder = {
+    Objects.requireNonNull(host, "Host cannot be null")
+    if (port<1 || port>65535) {
+      throw new IllegalArgumentException(s"Port number must be between 1 and 65535, got: $port")
+    }
+    if (maxConnections < 0) {
+      throw new IllegalArgumentException(s"Max connections must not be negative, got: $maxConnections")
+    }
+    this.modify(_.endpoints).using(_ :+ TcpEndpoint(host, port, maxConnections))
+  }
+
+  /** Sets the strategy choosing the endpoint of each new connection.
+   *
+   * @param balancing The balancing strategy
+   * @return This builder instance for method chaining
+   */
+  def balancing(balancing: TcpBalancing): TcpProtocolBuilder = {
+    Objects.requireNonNull(balancing, "Balancing cannot be null")
+    this.modify(_.balancing).setTo(balancing)
+  }
+
+  /** Sets the time during which an endpoint that failed to connect is avoided.
+   *
+   * @param ejectionTime The time in milliseconds, 0 to never avoid endpoints
+   * @return This builder instance for method chaining
+   */
+  def ejectionTime(ejectionTime: Int): TcpProtocolBuilder = {
+    if (ejectionTime < 0) {
+      throw new IllegalArgumentException(s"Ejection time must not be negative, got: $ejectionTime")
+    }
+    this.modify(_.ejectionTime).setTo(ejectionTime)
+  }
+
+  /** Controls whether responses are also reported under `<requestName>@<host>:<port>` when there
+   * are several endpoints.
+   *
+   * @param endpointStats Whether to report responses per endpoint
+   * @return This builder instance for method chaining
+   */
+  def endpointStats(endpointStats: Boolean): TcpProtocolBuilder = this.modify(_.endpointStats).setTo(endpointStats)
+
+  /** Sets the number of connections opened to each endpoint when the simulation starts.
+   *
+   * They are opened in the background before the first requests need them, and kept idle in the
+   * connection pool: requests borrow them when the pool is enabled, and take them over as their
+   * own connection otherwise. The pool limits and idle time apply to them.
+   *
+   * @param prewarmConnections The number of connections per endpoint, 0 to open them on demand
+   * @return This builder instance for method chaining
+   */
+  def prewarmConnections(prewarmConnections: Int): TcpProtocolBuilder = {
+    if (prewarmConnections < 0) {
+      throw new IllegalArgumentException(s"Prewarm connections must not be negative, got: $prewarmConnections")
+    }
+    this.modify(_.prewarmConnections).setTo(prewarmConnections)
+  }
+
+  /** Limits the rate of new connections, so that ramping up users doesn't flood the server with SYNs.
+   *
+   * Connections over the rate wait for their turn, which counts in the response time of the request opening them.
+   *
+   * @param maxConnectsPerSecond The maximum number of new connections per second, 0 for no limit
+   * @return This builder instance for method chaining
+   */
+  def maxConnectsPerSecond(maxConnectsPerSecond: Int): TcpProtocolBuilder = {
+    if (maxConnectsPerSecond < 0) {
+      throw new IllegalArgumentException(s"Max connects per second must not be negative, got: $maxConnectsPerSecond")
+    }
+    this.modify(_.maxConnectsPerSecond).setTo(maxConnectsPerSecond)
+  }
+
+  /** Enables or disables TLS, securing the connections with the JDK's default trust store unless
+   * set otherwise. Setting any other TLS option enables it.
+   *
+   * A single TLS context is shared by all virtual users, so that new connections resume the
+   * sessions of earlier ones instead of running full handshakes. The handshake is part of the
+   * connection, and is reported as `<request name>.handshake` with the timing breakdown.
+   *
+   * @param enabled Whether to secure connections with TLS
+   * @return This builder instance for method chaining
+   */
+  def tls(enabled: Boolean): TcpProtocolBuilder = this.modify(_.tls.enabled).setTo(enabled)
+
+  /** Sets the store of the certificates trusted to identify servers, and enables TLS.
+   *
+   * @param path The path of the store file, or of a classpath resource
+   * @param password The password of the store
+   * @param storeType The type of the store, such as PKCS12 or JKS
+   * @return This builder instance for method chaining
+   */
+  def trustStore(path: String, password: String, storeType: String): TcpProtocolBuilder =
+    this.modify(_.tls.trustStore).setTo(Some(TcpKeyStore(path, password, storeType))).tls(true)
+
+  /** Sets the PKCS12 store of the certificates trusted to identify servers, and enables TLS.
+   *
+   * @param path The path of the store file, or of a classpath resource
+   * @param password The password of the store
+   * @return This builder instance for method chaining
+   */
+  def trustStore(path: String, password: String): TcpProtocolBuilder = trustStore(path, password, "PKCS12")
+
+  /** Sets the store of the client certificate, for servers requiring client authentication, and enables TLS.
+   *
+   * @param path The path of the store file, or of a classpath resource
+   * @param password The password of the store and of its key
+   * @param storeType The type of the store, such as PKCS12 or JKS
+   * @return This builder instance for method chaining
+   */
+  def keyStore(path: String, password: String, storeType: String): TcpProtocolBuilder =
+    this.modify(_.tls.keyStore).setTo(Some(TcpKeyStore(path, password, storeType))).tls(true)
+
+  /** Sets the PKCS12 store of the client certificate, and enables TLS.
+   *
+   * @param path The path of the store file, or of a classpath resource
+   * @param password The password of the store and of its key
+   * @return This builder instance for method chaining
+   */
+  def keyStore(path: String, password: String): TcpProtocolBuilder = keyStore(path, password, "PKCS12")
+
+  /** Trusts any server certificate without verifying it nor the hostname, and enables TLS. Only
+   * meant for test servers with self-signed certificates. Verifying certificates again leaves TLS
+   * as it is.
+   *
+   * @param trustAll Whether to trust any server certificate
+   * @return This builder instance for method chaining
+   */
+  def trustAllCertificates(trustAll: Boolean): TcpProtocolBuilder = {
+    val trusted = this.modify(_.tls.trustAll).setTo(trustAll)
+    if (trustAll) trusted.tls(true) else trusted
+  }
+
+  /** Sets the enabled TLS protocols, and enables TLS.
+   *
+   * @param protocols The protocols, such as TLSv1.3
+   * @return This builder instance for method chaining
+   */
+  @varargs
+  def tlsProtocols(protocols: String*): TcpProtocolBuilder = this.modify(_.tls.protocols).setTo(protocols.toList).tls(true)
+
+  /** Sets the enabled TLS cipher suites, and enables TLS.
+   *
+   * @param cipherSuites The cipher suites, such as TLS_AES_128_GCM_SHA256
+   * @return This builder instance for method chaining
+   */
+  @varargs
+  def cipherSuites(cipherSuites: String*): TcpProtocolBuilder = this.modify(_.tls.cipherSuites).setTo(cipherSuites.toList).tls(true)
+
+  /** Sets the server name sent in the TLS handshake instead of the endpoint host, and enables TLS.
+   *
+   * @param sniHostName The server name
+   * @return This builder instance for method chaining
+   */
+  def sniHostName(sniHostName: String): TcpProtocolBuilder = {
+    Objects.requireNonNull(sniHostName, "SNI host name cannot be null")
+    this.modify(_.tls.sniHostName).setTo(Some(sniHostName)).tls(true)
+  }
+
+  /** Controls whether server certificates must match the endpoint host, which is the default.
+   *
+   * @param hostnameVerification Whether to verify the hostname
+   * @return This builder instance for method chaining
+   */
+  def hostnameVerification(hostnameVerification: Boolean): TcpProtocolBuilder =
+    this.modify(_.tls.hostnameVerification).setTo(hostnameVerification)
+
+  /** Controls whether Nagle's algorithm is disabled, which is the default, so that small messages
+   * are sent at once instead of waiting for the acknowledgement of the previous ones.
+   *
+   * @param tcpNoDelay Whether to disable Nagle's algorithm
+   * @return This builder instance for method chaining
+   */
+  def tcpNoDelay(tcpNoDelay: Boolean): TcpProtocolBuilder = this.modify(_.socket.tcpNoDelay).setTo(tcpNoDelay)
+
+  /** Sets the size of the socket send buffers, instead of the system default.
+   *
+   * @param sendBufferSize The size in bytes
+   * @return This builder instance for method chaining
+   */
+  def sendBufferSize(sendBufferSize: Int): TcpProtocolBuilder = {
+    if (sendBufferSize <= 0) {
+      throw new IllegalArgumentException(s"Send buffer size must be positive, got: $sendBufferSize")
+    }
+    this.modify(_.socket.sendBufferSize).setTo(sendBufferSize)
+  }
+
+  /** Sets the size of the socket receive buffers, instead of the system default. It's set before
+   * connecting, so that the TCP window can be scaled to it for large responses.
+   *
+   * @param receiveBufferSize The size in bytes
+   * @return This builder instance for method chaining
+   */
+  def receiveBufferSize(receiveBufferSize: Int): TcpProtocolBuilder = {
+    if (receiveBufferSize <= 0) {
+      throw new IllegalArgumentException(s"Receive buffer size must be positive, got: $receiveBufferSize")
+    }
+    this.modify(_.socket.receiveBufferSize).setTo(receiveBufferSize)
+  }
+
+  /** Sets the time closed sockets keep sending their unsent data, blocking the close. With 0,
+   * connections are reset when closed, which leaves no socket in TIME_WAIT.
+   *
+   * @param linger The time in seconds
+   * @return This builder instance for method chaining
+   */
+  def soLinger(linger: Int): TcpProtocolBuilder = {
+    if (linger < 0) {
+      throw new IllegalArgumentException(s"Linger must not be negative, got: $linger")
+    }
+    this.modify(_.socket.linger).setTo(linger)
+  }
+
+  /** Controls whether local addresses in TIME_WAIT may be bound again.
+   *
+   * @param reuseAddress Whether to reuse local addresses
+   * @return This builder instance for method chaining
+   */
+  def reuseAddress(reuseAddress: Boolean): TcpProtocolBuilder = this.modify(_.socket.reuseAddress).setTo(reuseAddress)
+
+  /** Controls whether several sockets may bind the same local address and port (SO_REUSEPORT),
+   * on systems that support it. io_uring channels don't support it.
+   *
+   * @param reusePort Whether to reuse local ports
+   * @return This builder instance for method chaining
+   */
+  def reusePort(reusePort: Boolean): TcpProtocolBuilder = this.modify(_.socket.reusePort).setTo(reusePort)
+
+  /** Sets the local addresses new connections are bound to in turn. Each source address has its
+   * own range of ephemeral ports, so that a single load generator can open more connections to
+   * an endpoint than one range allows.
+   *
+   * @param localAddresses The local IP addresses or hostnames, resolved once
+   * @return This builder instance for method chaining
+   */
+  @varargs
+  def localAddresses(localAddresses: String*): TcpProtocolBuilder = {
+    localAddresses.foreach(Objects.requireNonNull(_, "Local address cannot be null"))
+    this.modify(_.socket.localAddresses).setTo(localAddresses.toList)
+  }
+
+  /** Samples the network metrics at a fixed interval: bytes written and read per second, open,
+   * opened, closed and failed connections, and requests in flight, across both engines. Samples
+   * are logged, as Gatling's reports only hold requests.
+   *
+   * @param interval The time in milliseconds between samples, 0 to never sample them
+   * @return This builder instance for method chaining
+   */
+  def metricsInterval(interval: Int): TcpProtocolBuilder = {
+    if (interval < 0) {
+      throw new IllegalArgumentException(s"Metrics interval must not be negative, got: $interval")
+    }
+    this.modify(_.metrics.interval).setTo(interval)
+  }
+
+  /** Appends the samples of the network metrics to a CSV file, and samples them every second
+   * unless [[metricsInterval]] is set.
+   *
+   * @param file The path of the CSV file, created with a header when missing
+   * @return This builder instance for method chaining
+   */
+  def metricsFile(file: String): TcpProtocolBuilder = {
+    Objects.requireNonNull(file, "Metrics file cannot be null")
+    val withFile = this.modify(_.metrics.file).setTo(Some(file))
+    if (metrics.interval == 0) withFile.metricsInterval(TcpProtocolBuilder.DefaultMetricsInterval) else withFile
+  }
+
+  /** Runs the exchanges of blocking requests on virtual threads instead of Gatling's event loops.
+   *
+   * A blocking request holds its thread until the response arrives, stalling the other virtual
+   * users of its event loop. Virtual threads park on socket reads instead, which lets many users
+   * wait for slow responses at once. They're used when the JDK has them (21 and later); older
+   * ones fall back to [[blockingThreads]] platform threads. The non-blocking engine ignores it.
+   *
+   * @param virtualThreads Whether to run blocking requests on virtual threads
+   * @return This builder instance for method chaining
+   */
+  def virtualThreads(virtualThreads: Boolean): TcpProtocolBuilder = this.modify(_.virtualThreads).setTo(virtualThreads)
+
+  /** Sets the number of platform threads running blocking requests when [[virtualThreads]] is
+   * enabled on a JDK without virtual threads. Further requests wait for one of them to be free.
+   *
+   * @param blockingThreads The number of threads, 200 by default
+   * @return This builder instance for method chaining
+   */
+  def blockingThreads(blockingThreads: Int): TcpProtocolBuilder = {
+    if (blockingThreads <= 0) {
+      throw new IllegalArgumentException(s"Blocking threads must be positive, got: $blockingThreads")
+    }
+    this.modify(_.blockingThreads).setTo(blockingThreads)
+  }
+
   /** Builds and returns the final TCP protocol configuration.
    *
    * @return A Protocol instance configured with the current builder settings
    */
   def protocol(): TcpProtocol = {
-    TcpProtocol(host, port, connectTimeout, readTimeout, keepAlive, reuseConnections)
+    if (unixSocket.isDefined && endpoints.nonEmpty) {
+      throw new IllegalArgumentException("A Unix socket can't be combined with endpoints")
+    }
+    if (unixSocket.isDefined && tls.enabled) {
+      throw new IllegalArgumentException("TLS isn't supported over a Unix socket")
+    }
+    TcpProtocol(host, port, connectTimeout, readTimeout, keepAlive, reuseConnections, nonBlocking, pool, pipelinedConnections, maxResponseSize, dnsTtl,
+      endpoints, balancing, ejectionTime, endpointStats, prewarmConnections, maxConnectsPerSecond, tls, socket, metrics,
+      virtualThreads, blockingThreads, transport, unixSocket)
   }
 }
 
 /** Companion object providing factory methods for creating TCP protocol builders.
  */
 object TcpProtocolBuilder {
+  /** Time in milliseconds between samples of the network metrics written to a file. */
+  val DefaultMetricsInterval: Int = 1000
+
   /** Creates a new TCP protocol builder with default settings.
    *
    * @return A new TcpProtocolBuilder instance
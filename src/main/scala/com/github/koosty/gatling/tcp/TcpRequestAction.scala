@@ -1,336 +1,1007 @@
 package com.github.koosty.gatling.tcp
 
-import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
-import io.gatling.commons.stats.{KO, OK}
+import io.gatling.commons.stats.{KO, OK, Status}
 import io.gatling.commons.util.Clock
+import io.gatling.commons.validation.{Validation, Failure => ValidationFailure, Success => ValidationSuccess}
 import io.gatling.core.action.Action
 import io.gatling.core.session.Session
 import io.gatling.core.stats.StatsEngine
 
-import java.io.{InputStream, OutputStream}
-import java.net.{InetSocketAddress, Socket}
+import io.netty.buffer.{ByteBuf, ByteBufAllocator, PooledByteBufAllocator, Unpooled}
+import io.netty.channel.{Channel, ChannelFuture, ConnectTimeoutException}
+
+import java.io.{IOException, InputStream, OutputStream}
+import java.net.{Socket, SocketAddress, SocketTimeoutException}
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.{CompletableFuture, ExecutionException, RejectedExecutionException, TimeUnit}
+import scala.util.{Failure, Success, Try}
 
 /**
  * Action for sending a TCP request and handling the response in a Gatling simulation.
  *
  * @param requestName Name of the request for reporting and session tracking.
- * @param message The message payload to send as a byte array.
- * @param addLengthHeader Whether to prepend a length header to the message.
- * @param lengthHeaderType The type of length header to use (big/little endian, 2/4 bytes).
- * @param validators List of functions to validate the response bytes.
+ * @param message The message to send, static, resolved from the session or drawn from a corpus.
+ * @param frameCodec Framing of requests and responses, or None to send the message as is.
+ * @param responseCompletion Tells when a response is complete when there is no frame codec.
+ * @param maxResponseSize The largest response accepted, larger ones fail the request.
+ * @param storeResponse Whether the response bytes are stored in the session.
+ * @param timingBreakdown Whether the connect, write and first byte phases are reported besides the request.
+ * @param expectResponse Whether a response is awaited, the request otherwise completing once written.
+ * @param validators List of functions to validate the response bytes, run before the checks.
+ * @param checks Checks of the response, capturing values into the session.
  * @param reuseConnection Whether to reuse an existing TCP connection.
  * @param connectionKey Key to identify the connection in the session for reuse.
- * @param protocol TCP protocol configuration (host, port, timeouts, etc.).
+ * @param pipelining Correlation of requests and responses when pipelining on shared connections.
+ * @param retryPolicy How the request recovers from failures of its connection.
+ * @param components TCP protocol components, holding the protocol configuration and the non-blocking client.
  * @param statsEngine Gatling stats engine for logging results.
  * @param clock Clock instance for timing the request.
  * @param next The next action to execute in the scenario.
  */
 case class TcpRequestAction(
                         requestName: String,
-                        message: Array[Byte],
-                        addLengthHeader: Boolean = false,
-                        lengthHeaderType: LengthHeaderType,
+                        message: TcpMessage,
+                        frameCodec: Option[FrameCodec] = None,
+                        responseCompletion: ResponseCompletion = ResponseCompletion.IdleGap(ResponseCompletion.DefaultIdleGap),
+                        maxResponseSize: Int = TcpProtocol.DefaultMaxResponseSize,
+                        storeResponse: Boolean = true,
+                        timingBreakdown: Boolean = false,
+                        expectResponse: Boolean = true,
                         validators: List[Function[Array[Byte], Boolean]] = List.empty,
+                        checks: List[TcpCheck] = List.empty,
                         reuseConnection: Boolean = false,
                         connectionKey: String = "default",
-                        protocol: TcpProtocol,
+                        pipelining: Option[TcpPipelining] = None,
+                        retryPolicy: TcpRetryPolicy = TcpRetryPolicy(),
+                        components: TcpComponents,
                         statsEngine: StatsEngine,
                         clock: Clock,
                         next: Action
                       ) extends Action {
+  /**
+   * TCP protocol configuration (host, port, timeouts, etc.).
+   */
+  private val protocol: TcpProtocol = components.protocol
+
   /**
    * The name of this action, used for reporting.
    */
   override def name: String = requestName
 
+  /** Session attribute holding the connection kept for reuse. */
+  private val connectionAttribute = TcpRequestAction.connectionAttribute(connectionKey)
+
+  /** Session attribute holding the position of the endpoint of the connection kept for reuse. */
+  private val endpointAttribute = s"tcp.endpoint.$connectionKey"
+
+  /** Request names reporting the responses of each endpoint, empty unless there are several. */
+  private val endpointRequestNames: Array[String] =
+    if (protocol.endpointStats && components.balancer.multiple) protocol.targetEndpoints.map(e => s"$requestName@${e.name}").toArray
+    else Array.empty
+
+  /** Whether the frames pushed by the server on the connections kept in the session are queued. */
+  private val queuePushedFrames = reuseConnection && !protocol.pool.enabled && frameCodec.isDefined
+
+  /** Keys of the pipelined connections to each endpoint. */
+  private val pipelinedKeys: Array[String] =
+    if (components.balancer.multiple) protocol.targetEndpoints.indices.map(i => s"$connectionKey@$i").toArray
+    else Array(connectionKey)
+
+  // Session attributes updated with the response of each request
+  private val responseAttribute = s"$requestName.response"
+  private val responseStringAttribute = s"$requestName.responseString"
+  private val bytesReceivedAttribute = s"$requestName.bytesReceived"
+  private val bytesSentAttribute = s"$requestName.bytesSent"
+  private val validationErrorAttribute = s"$requestName.validationError"
+  private val timingsAttribute = s"$requestName.timings"
+
+  /** Name under which failed attempts are reported when they are retried. */
+  private val retryRequestName = s"$requestName.retry"
+
+  /** The validators and checks, run in order up to the first failure. */
+  private val allChecks: List[TcpCheck] = validators.map(TcpCheck.validator) ++ checks
+
   /**
-   * Creates a length header for the message according to the specified header type.
+   * Segments of a static message, shared by all executions.
+   */
+  private val staticSegments: List[ByteBuffer] = message match {
+    case TcpMessage.Static(bytes) => List(ByteBuffer.wrap(bytes))
+    case _ => Nil
+  }
+
+  /**
+   * Framed bytes of a static message, computed once when the action is built.
+   */
+  private val staticFrame: Option[Array[Byte]] = message match {
+    case TcpMessage.Static(bytes) => Some(frameCodec.fold(bytes)(_.encode(bytes)))
+    case _ => None
+  }
+
+  /**
+   * Direct buffer holding the static frame, written as a retained duplicate by the non-blocking engine.
+   */
+  private lazy val staticFrameBuffer: ByteBuf = {
+    val frame = staticFrame.get
+    Unpooled.directBuffer(frame.length).writeBytes(frame)
+  }
+
+  /**
+   * Chooses the endpoint of a new connection and records it in the timings of the request.
    *
-   * @param messageLength The length of the message to encode in the header.
-   * @return Byte array representing the length header.
-   */
-  private def createLengthHeader(messageLength: Int): Array[Byte] = {
-    lengthHeaderType match {
-      case LengthHeaderType.TWO_BYTE_BIG_ENDIAN =>
-        Array[Byte](
-          ((messageLength >> 8) & 0xFF).toByte,  // High byte
-          (messageLength & 0xFF).toByte          // Low byte
-        )
-      case LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN =>
-        Array[Byte](
-          (messageLength & 0xFF).toByte,         // Low byte
-          ((messageLength >> 8) & 0xFF).toByte   // High byte
-        )
-      case LengthHeaderType.FOUR_BYTE_BIG_ENDIAN =>
-        Array[Byte](
-          ((messageLength >> 24) & 0xFF).toByte,
-          ((messageLength >> 16) & 0xFF).toByte,
-          ((messageLength >> 8) & 0xFF).toByte,
-          (messageLength & 0xFF).toByte
-        )
-      case LengthHeaderType.FOUR_BYTE_LITTLE_ENDIAN =>
-        Array[Byte](
-          (messageLength & 0xFF).toByte,
-          ((messageLength >> 8) & 0xFF).toByte,
-          ((messageLength >> 16) & 0xFF).toByte,
-          ((messageLength >> 24) & 0xFF).toByte
-        )
+   * @return The endpoint, or a failure when all of them are at their connection limit.
+   */
+  private def newEndpoint(session: Session, timings: TcpTimings): Try[TcpEndpointBalancer.Endpoint] =
+    components.balancer.select(session.userId) match {
+      case Some(endpoint) =>
+        timings.endpoint = endpoint
+        Success(endpoint)
+      case None =>
+        Failure(new IllegalStateException("All endpoints are at their connection limit"))
     }
+
+  /**
+   * Records the endpoint of the connection kept in the session in the timings of the request.
+   *
+   * @return The endpoint, or a failure when it's at its connection limit.
+   */
+  private def reusedEndpoint(session: Session, timings: TcpTimings): Try[TcpEndpointBalancer.Endpoint] =
+    components.balancer.reuse(session(endpointAttribute).asOption[Int].getOrElse(0)) match {
+      case Some(endpoint) =>
+        timings.endpoint = endpoint
+        Success(endpoint)
+      case None =>
+        Failure(new IllegalStateException("The endpoint of the connection is at its connection limit"))
+    }
+
+  /**
+   * Keeps a connection in the session for reuse, along with its endpoint when there are several.
+   */
+  private def keepConnection(session: Session, connection: AnyRef, timings: TcpTimings): Session =
+    if (components.balancer.multiple) {
+      session.set(connectionAttribute, connection).set(endpointAttribute, timings.endpoint.index)
+    } else {
+      session.set(connectionAttribute, connection)
+    }
+
+  /**
+   * Removes the connection kept for reuse from the session.
+   */
+  private def dropConnection(session: Session): Session = session.removeAll(connectionAttribute, endpointAttribute)
+  /**
+   * Opens a socket owned by a virtual user, registered so that it's closed when the user exits.
+   * A socket opened when the simulation started is taken instead, if any is left.
+   *
+   * @param userId The virtual user owning the socket.
+   * @param endpoint The endpoint to connect to.
+   * @param timings The timings of the request opening the socket.
+   * @return A connected socket.
+   */
+  private def openUserConnection(userId: Long, endpoint: TcpEndpointBalancer.Endpoint, timings: TcpTimings): Socket = {
+    val isa = endpoint.address()
+    val prewarmed = if (components.prewarmed) components.socketPool.take(isa) else None
+    val socket = prewarmed.getOrElse {
+      val socket = components.openSocket(isa, endpoint, Some(timings))
+      timings.connectionOpened = true
+      socket
+    }
+    components.connections.register(userId, socket)
+    socket
   }
 
-  private def readLengthFromHeader(headerBytes: Array[Byte]): Int = {
-    lengthHeaderType match {
-      case LengthHeaderType.TWO_BYTE_BIG_ENDIAN =>
-        ((headerBytes(0) & 0xFF) << 8) | (headerBytes(1) & 0xFF)
-      case LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN =>
-        (headerBytes(0) & 0xFF) | ((headerBytes(1) & 0xFF) << 8)
-      case LengthHeaderType.FOUR_BYTE_BIG_ENDIAN =>
-        ((headerBytes(0) & 0xFF) << 24) |
-          ((headerBytes(1) & 0xFF) << 16) |
-          ((headerBytes(2) & 0xFF) << 8) |
-          (headerBytes(3) & 0xFF)
-      case LengthHeaderType.FOUR_BYTE_LITTLE_ENDIAN =>
-        (headerBytes(0) & 0xFF) |
-          ((headerBytes(1) & 0xFF) << 8) |
-          ((headerBytes(2) & 0xFF) << 16) |
-          ((headerBytes(3) & 0xFF) << 24)
+  /**
+   * Borrows a socket from the shared pool, waiting for one to be released when the pool is exhausted.
+   *
+   * @param address The address of the host to connect to.
+   * @param endpoint The endpoint of the address.
+   * @param timings The timings of the request, marked when a new socket is opened.
+   * @return A connected socket, to be released to the pool once the exchange is over.
+   */
+  private def acquirePooledSocket(address: SocketAddress, endpoint: TcpEndpointBalancer.Endpoint, timings: TcpTimings): Socket = {
+    val future = new CompletableFuture[Socket]
+    components.socketPool.acquire(
+      address,
+      callback => callback(Try {
+        val socket = components.openSocket(address, endpoint, Some(timings))
+        timings.connectionOpened = true
+        socket
+      }),
+      {
+        case Success(socket) => future.complete(socket)
+        case Failure(e) => future.completeExceptionally(e)
+      }
+    )
+    try {
+      future.get()
+    } catch {
+      case e: ExecutionException => throw e.getCause
     }
   }
 
-  private def getHeaderSize: Int = {
-    lengthHeaderType match {
-      case LengthHeaderType.TWO_BYTE_BIG_ENDIAN | LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN => 2
-      case LengthHeaderType.FOUR_BYTE_BIG_ENDIAN | LengthHeaderType.FOUR_BYTE_LITTLE_ENDIAN => 4
+  override def execute(session: Session): Unit = {
+    val timings = new TcpTimings(clock.nowMillis, session.userId)
+    components.metrics.requestsInFlight.increment()
+    resolveSegments(session) match {
+      case ValidationSuccess(segments) =>
+        pipelining match {
+          case Some(correlation) => executePipelined(session, segments, correlation, timings)
+          case None              => executeAttempt(session, segments, timings, TcpRetryPolicy.Attempt())
+        }
+      case ValidationFailure(error) =>
+        next ! processFailure(session, new IllegalArgumentException(s"Failed to resolve message: $error"), timings)
     }
   }
 
-  private def createConnection(keepAlive: Boolean, readTimeout: Int, connectTimeout: Int, inetSocketAddress: InetSocketAddress): Socket = {
-    val socket = new Socket()
-    socket.setKeepAlive(keepAlive)
-    socket.setSoTimeout(readTimeout)
-    socket.connect(inetSocketAddress, connectTimeout)
-    socket
+  /**
+   * Sends the request on the engine of the protocol. Blocking requests run on the blocking
+   * executor when there's one, and resume the scenario from there, as `next !` hands the session
+   * back to the event loop of the virtual user.
+   *
+   * @param attempt The recoveries the request went through before.
+   */
+  private def executeAttempt(session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt): Unit =
+    if (protocol.nonBlocking) {
+      executeNonBlocking(session, segments, timings, attempt)
+    } else {
+      components.blockingExecutor match {
+        case Some(executor) =>
+          try {
+            executor.execute(() => executeBlocking(session, segments, timings, attempt))
+          } catch {
+            case e: RejectedExecutionException => next ! processFailure(session, e, timings)
+          }
+        case None =>
+          executeBlocking(session, segments, timings, attempt)
+      }
+    }
+
+  /**
+   * Resolves the segments of the message for a virtual user.
+   *
+   * @return The segments of the payload, or the resolution failure.
+   */
+  private def resolveSegments(session: Session): Validation[List[ByteBuffer]] =
+    message match {
+      case _: TcpMessage.Static        => ValidationSuccess(staticSegments)
+      case dynamic: TcpMessage.Dynamic => dynamic.resolve(session)
+      case TcpMessage.Buffer(payload)  => payload(session).map(_ :: Nil)
+    }
+
+  private def payloadLength(segments: List[ByteBuffer]): Int = segments.foldLeft(0)(_ + _.remaining)
+
+  /**
+   * Writes the message on a blocking socket: the precomputed frame of a static message, or the
+   * prefix, each segment and the suffix of a dynamic one, without copying them together.
+   */
+  private def writeMessage(out: OutputStream, segments: List[ByteBuffer]): Unit =
+    staticFrame match {
+      case Some(frame) => out.write(frame)
+      case None =>
+        frameCodec match {
+          case Some(codec) =>
+            val length = payloadLength(segments)
+            val prefix = ByteBuffer.allocate(codec.prefixLength(length))
+            codec.writePrefix(length, prefix)
+            out.write(prefix.array)
+            segments.foreach(writeSegment(out, _))
+            out.write(codec.suffix)
+          case None =>
+            segments.foreach(writeSegment(out, _))
+        }
+    }
+
+  /**
+   * Writes a segment on a blocking socket, leaving its position untouched. Off-heap segments, such
+   * as mapped payloads, go through a chunk of heap, the only way into a socket stream.
+   */
+  private def writeSegment(out: OutputStream, segment: ByteBuffer): Unit =
+    if (segment.hasArray) {
+      out.write(segment.array, segment.arrayOffset + segment.position, segment.remaining)
+    } else {
+      val chunk = new Array[Byte](math.min(segment.remaining, TcpRequestAction.WriteChunkSize))
+      val source = segment.duplicate()
+      while (source.hasRemaining) {
+        val length = math.min(chunk.length, source.remaining)
+        source.get(chunk, 0, length)
+        out.write(chunk, 0, length)
+      }
+    }
+
+  /**
+   * Encodes the message for a channel: a duplicate of the precomputed frame of a static message,
+   * the prefix, the segments and the suffix of a dynamic one written into a pooled direct buffer, or
+   * off-heap segments wrapped as they are.
+   */
+  private def encodeMessage(alloc: ByteBufAllocator, segments: List[ByteBuffer]): ByteBuf =
+    staticFrame match {
+      case Some(_) => staticFrameBuffer.retainedDuplicate()
+      case None if segments.exists(_.isDirect) => wrapMessage(alloc, segments)
+      case None =>
+        val length = payloadLength(segments)
+        frameCodec match {
+          case Some(codec) =>
+            val prefixLength = codec.prefixLength(length)
+            val buf = alloc.directBuffer(prefixLength + length + codec.suffix.length)
+            try {
+              codec.writePrefix(length, buf.nioBuffer(buf.writerIndex, prefixLength))
+            } catch {
+              case e: Exception =>
+                buf.release()
+                throw e
+            }
+            buf.writerIndex(buf.writerIndex + prefixLength)
+            segments.foreach(segment => buf.writeBytes(segment.duplicate()))
+            buf.writeBytes(codec.suffix)
+          case None =>
+            val buf = alloc.directBuffer(length)
+            segments.foreach(segment => buf.writeBytes(segment.duplicate()))
+            buf
+        }
+    }
+
+  /**
+   * Wraps off-heap segments, such as mapped payloads, between the prefix and the suffix in a
+   * composite buffer, which the channel writes with a gathering write instead of copying them.
+   * Heap segments, such as the fixed text of a template, are copied into direct buffers, as a
+   * composite buffer with any heap component would be copied whole by the channel.
+   */
+  private def wrapMessage(alloc: ByteBufAllocator, segments: List[ByteBuffer]): ByteBuf = {
+    val payload = segments.map { segment =>
+      if (segment.isDirect) Unpooled.wrappedBuffer(segment)
+      else alloc.directBuffer(segment.remaining).writeBytes(segment.duplicate())
+    }
+    frameCodec match {
+      case Some(codec) =>
+        val length = payloadLength(segments)
+        val prefix = alloc.directBuffer(codec.prefixLength(length))
+        try {
+          codec.writePrefix(length, prefix.nioBuffer(0, prefix.capacity))
+        } catch {
+          case e: Exception =>
+            prefix.release()
+            throw e
+        }
+        prefix.writerIndex(prefix.capacity)
+        val suffix = if (codec.suffix.isEmpty) Nil else List(alloc.directBuffer(codec.suffix.length).writeBytes(codec.suffix))
+        val components = prefix :: payload ::: suffix
+        alloc.compositeDirectBuffer(components.size).addComponents(true, components: _*)
+      case None if payload.size == 1 => payload.head
+      case None                      => alloc.compositeDirectBuffer(payload.size).addComponents(true, payload: _*)
+    }
   }
-  override def execute(session: Session): Unit = {
-    val requestId = s"${session.userId}-${System.nanoTime()}"
-    val isa = new InetSocketAddress(protocol.host, protocol.port)
-    logger.debug(s"[$requestId] Executing TCP request: $requestName")
+
+  /**
+   * Reads more bytes from a blocking socket into a growable buffer.
+   *
+   * @return The number of bytes read, or -1 when the peer closed the connection.
+   */
+  private def readChunk(buf: ByteBuf, in: InputStream): Int = {
+    buf.ensureWritable(TcpRequestAction.ReadChunkSize)
+    buf.writeBytes(in, buf.writableBytes)
+  }
+
+  /**
+   * Reads the next frame from a blocking socket, until the decoder finds a complete frame.
+   */
+  private def readFrame(in: InputStream, decoder: FrameDecoder, timings: TcpTimings): Array[Byte] = {
+    val buf = PooledByteBufAllocator.DEFAULT.heapBuffer(TcpRequestAction.ReadChunkSize)
+    try {
+      var frame: Array[Byte] = null
+      while (frame == null) {
+        if (readChunk(buf, in) == -1) {
+          throw new TcpConnectionClosedException("Connection closed before receiving complete response")
+        }
+        timings.firstByte()
+        frame = decoder.decode(buf.nioBuffer())
+      }
+      frame
+    } finally {
+      buf.release()
+    }
+  }
+
+  /**
+   * Reads an unframed response from a blocking socket, until the completion strategy deems it complete.
+   *
+   * @return The response, and the time in nanoseconds waited after its last byte to detect an idle gap.
+   */
+  private def readUnframed(socket: Socket, in: InputStream, timings: TcpTimings): (Array[Byte], Long) = {
+    val buf = PooledByteBufAllocator.DEFAULT.heapBuffer(TcpRequestAction.ReadChunkSize)
+    val idleGap = responseCompletion.idleGapMillis
+    var length = -1
+    var scanFrom = 0
+    var lastReadNanos = 0L
+    var closed = false
+    var idle = false
+    try {
+      while (length < 0 && !closed && !idle) {
+        val bytesRead =
+          try {
+            readChunk(buf, in)
+          } catch {
+            case _: SocketTimeoutException if idleGap > 0 && buf.isReadable =>
+              idle = true
+              0
+          }
+        if (bytesRead == -1) {
+          closed = true
+        } else if (bytesRead > 0) {
+          if (lastReadNanos == 0L && idleGap > 0) {
+            socket.setSoTimeout(idleGap)
+          }
+          lastReadNanos = System.nanoTime()
+          timings.firstByte(lastReadNanos)
+          length = responseCompletion.completeLength(buf, scanFrom)
+          scanFrom = responseCompletion.rescanFrom(buf.readableBytes)
+          if (length > maxResponseSize || (length < 0 && buf.readableBytes > maxResponseSize)) {
+            throw new IOException(s"Response exceeds $maxResponseSize bytes")
+          }
+        }
+      }
+      if (length < 0) {
+        if (!buf.isReadable) {
+          throw new TcpConnectionClosedException("No response received")
+        } else if (closed && !responseCompletion.completesOnClose) {
+          throw new TcpConnectionClosedException("Connection closed before receiving complete response")
+        }
+        length = buf.readableBytes
+      }
+      val response = new Array[Byte](length)
+      buf.readBytes(response)
+      (response, if (idle) System.nanoTime() - lastReadNanos else 0L)
+    } finally {
+      buf.release()
+      if (idleGap > 0 && !socket.isClosed) {
+        socket.setSoTimeout(protocol.readTimeout)
+      }
+    }
+  }
+
+  private def executeBlocking(session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt): Unit = {
+    logger.debug(s"[${timings.requestId}] Executing TCP request: $requestName")
+    var isa: SocketAddress = null
     var socket: Socket = null
     var shouldCloseSocket = false
+    val pooled = protocol.pool.enabled
     var finalSession = session
+    var recovery: Option[(Throwable, TcpRetryPolicy.Recovery)] = None
 
     try {
-      val start = clock.nowMillis
-
-      val messageToSend = if (addLengthHeader) {
-        val lengthHeader = createLengthHeader(message.length)
-        val result = new Array[Byte](lengthHeader.length + message.length)
-        System.arraycopy(lengthHeader, 0, result, 0, lengthHeader.length)
-        System.arraycopy(message, 0, result, lengthHeader.length, message.length)
-        result
-      } else {
-        message
-      }
-
       // Create socket with timeout
-      socket = if (reuseConnection) {
-        session(s"tcp.connection.$connectionKey").asOption[Socket] match {
+      socket = if (pooled) {
+        val endpoint = newEndpoint(session, timings).get
+        isa = endpoint.address()
+        acquirePooledSocket(isa, endpoint, timings)
+      } else if (reuseConnection) {
+        session(connectionAttribute).asOption[Socket] match {
           case Some(existingSocket) if !existingSocket.isClosed && existingSocket.isConnected=>
-            logger.debug(s"[$requestId] Reusing existing connection")
+            logger.debug(s"[${timings.requestId}] Reusing existing connection")
+            reusedEndpoint(session, timings).get
             existingSocket
           case _ =>
-            logger.debug(s"[$requestId] Creating new connection to ${protocol.host}:${protocol.port} with timeout ${protocol.connectTimeout}ms")
-            createConnection(protocol.keepAlive, protocol.readTimeout, protocol.connectTimeout, isa)
+            val endpoint = newEndpoint(session, timings).get
+            logger.debug(s"[${timings.requestId}] Creating new connection to ${endpoint.endpoint.name} with timeout ${protocol.connectTimeout}ms")
+            openUserConnection(session.userId, endpoint, timings)
         }
       } else {
         shouldCloseSocket = true // Always close if not reusing
-        logger.debug(s"[$requestId] Creating new connection to ${protocol.host}:${protocol.port} with timeout ${protocol.connectTimeout}ms")
-        createConnection(protocol.keepAlive, protocol.readTimeout, protocol.connectTimeout, isa)
+        val endpoint = newEndpoint(session, timings).get
+        logger.debug(s"[${timings.requestId}] Creating new connection to ${endpoint.endpoint.name} with timeout ${protocol.connectTimeout}ms")
+        openUserConnection(session.userId, endpoint, timings)
       }
 
+      timings.connected()
       val out: OutputStream = socket.getOutputStream
       val in: InputStream = socket.getInputStream
       // Send the message (with or without length header)
-      logger.debug(s"[$requestId] Sending request of length ${messageToSend.length} bytes")
-      out.write(messageToSend)
+      logger.debug(s"[${timings.requestId}] Sending request of length ${payloadLength(segments)} bytes")
+      writeMessage(out, segments)
       out.flush()
-      // Read response
-      logger.debug(s"[$requestId] Waiting for response")
-      var totalBytesRead = 0
-      val responseBytes = if (addLengthHeader) {
-        // Read response length header first
-        val headerSize = getHeaderSize
-        val responseHeader = new Array[Byte](headerSize)
-        val headerBytesRead = in.read(responseHeader, 0, headerSize)
-
-        if (headerBytesRead != headerSize) {
-          throw new Exception(s"Failed to read response length header (expected $headerSize bytes, got $headerBytesRead)")
+      timings.written()
+      val (responseSession, validationsPassed) =
+        if (expectResponse) {
+          // Read response
+          logger.debug(s"[${timings.requestId}] Waiting for response")
+          val (responseBytes, idleNanos) = frameCodec match {
+            case Some(codec) =>
+              (readFrame(in, codec.newDecoder(maxResponseSize), timings), 0L)
+            case None =>
+              logger.debug(s"[${timings.requestId}] Request doesn't have a length header, reading until $responseCompletion")
+              readUnframed(socket, in, timings)
+          }
+
+          // The response ended with its last byte, not when the idle gap was detected
+          timings.ended(idleNanos)
+          processResponse(session, timings, payloadLength(segments), responseBytes)
+        } else {
+          timings.ended()
+          (processSent(session, timings, payloadLength(segments)), true)
         }
+      finalSession = responseSession
+      // Store connection for reuse if needed, close connection on validation failure
+      if (pooled) {
+        shouldCloseSocket = !validationsPassed
+      } else if (validationsPassed && reuseConnection && !socket.isClosed) {
+        finalSession = keepConnection(finalSession, socket, timings)
+      } else {
+        shouldCloseSocket = true
+      }
 
-        // Calculate response length from header
-        val responseLength = readLengthFromHeader(responseHeader)
+    } catch {
+      case e: Exception =>
+        shouldCloseSocket = true // The connection state is unknown after a failure
+        recovery = retryPolicy.recover(attempt, e, stale = timings.reusedConnection && !timings.responseStarted).map((e, _))
+        if (recovery.isEmpty) {
+          finalSession = processFailure(session, e, timings)
+        }
+    } finally {
+      // Clean up socket if needed
+      if (socket != null && pooled) {
+        components.socketPool.release(isa, socket, reusable = !shouldCloseSocket)
+      } else if (socket != null && shouldCloseSocket) {
+        try {
+          socket.close()
+          components.connections.unregister(session.userId, socket)
+          // Remove from session if it was stored
+          if (reuseConnection) {
+            finalSession = dropConnection(finalSession)
+          }
+        } catch {
+          case e: Exception =>
+            logger.warn(s"[${timings.requestId}] Error closing socket: ${e.getMessage}")
+        }
+      }
+      // Always pass the final session to next action, unless the request is sent again
+      recovery match {
+        case Some((cause, recovered)) => recover(finalSession, segments, cause, timings, recovered)
+        case None                     => next ! finalSession
+      }
+    }
+  }
 
-        if (responseLength < 0 || responseLength > 1024 * 1024) { // 1MB safety limit
-          throw new Exception(s"Invalid response length: $responseLength")
+  /**
+   * Executes the request on the non-blocking engine.
+   *
+   * The connection and the response are awaited through callbacks on the channel's event loop,
+   * which then passes the session to the next action.
+   */
+  private def executeNonBlocking(session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt): Unit = {
+    logger.debug(s"[${timings.requestId}] Executing non-blocking TCP request: $requestName")
+    def connect(endpoint: TcpEndpointBalancer.Endpoint, isa: SocketAddress)(callback: Try[Channel] => Unit): Unit = {
+      logger.debug(s"[${timings.requestId}] Creating new connection to ${endpoint.endpoint.name} with timeout ${protocol.connectTimeout}ms")
+      components.nettyClient.connect(session.eventLoop, isa, Some(timings)).addListener((future: ChannelFuture) =>
+        if (future.isSuccess) {
+          timings.connectionOpened = true
+          callback(Success(future.channel))
+        } else {
+          endpoint.eject()
+          callback(Failure(future.cause))
         }
+      )
+    }
 
-        // Read the actual response
-        val buffer = new Array[Byte](responseLength)
+    if (protocol.pool.enabled) {
+      newEndpoint(session, timings) match {
+        case Success(endpoint) =>
+          val isa = endpoint.address()
+          components.channelPool.acquire(isa, connect(endpoint, isa), {
+            case Success(channel) =>
+              exchange(channel, session, segments, timings, attempt) { (updatedSession, reusable) =>
+                components.channelPool.release(isa, channel, reusable)
+                updatedSession
+              }
+            case Failure(e) =>
+              failAttempt(session, segments, e, timings, attempt, stale = false)(identity)
+          })
+        case Failure(e) =>
+          next ! processFailure(session, e, timings)
+      }
+    } else {
+      val reusableChannel =
+        if (reuseConnection) session(connectionAttribute).asOption[Channel].filter(_.isActive)
+        else None
+      val keepInSession: Channel => (Session, Boolean) => Session = channel => (updatedSession, reusable) =>
+        if (reusable && reuseConnection && channel.isActive) {
+          keepConnection(updatedSession, channel, timings)
+        } else {
+          channel.close()
+          dropConnection(updatedSession)
+        }
 
-        while (totalBytesRead < responseLength) {
-          val bytesRead = in.read(buffer, totalBytesRead, responseLength - totalBytesRead)
-          if (bytesRead == -1) {
-            throw new Exception("Connection closed before receiving complete response")
+      reusableChannel match {
+        case Some(channel) =>
+          logger.debug(s"[${timings.requestId}] Reusing existing connection")
+          reusedEndpoint(session, timings) match {
+            case Success(_) =>
+              exchange(channel, session, segments, timings, attempt)(keepInSession(channel))
+            case Failure(e) =>
+              next ! processFailure(session, e, timings)
           }
-          totalBytesRead += bytesRead
+        case None =>
+          newEndpoint(session, timings) match {
+            case Success(endpoint) =>
+              val isa = endpoint.address()
+              val prewarmed = if (components.prewarmed) components.channelPool.take(isa) else None
+              val open: (Try[Channel] => Unit) => Unit = prewarmed match {
+                case Some(channel) => callback => callback(Success(channel))
+                case None          => connect(endpoint, isa)
+              }
+              open {
+                case Success(channel) =>
+                  components.connections.register(session.userId, channel)
+                  channel.closeFuture.addListener((_: ChannelFuture) => components.connections.unregister(session.userId, channel))
+                  exchange(channel, session, segments, timings, attempt)(keepInSession(channel))
+                case Failure(e) =>
+                  failAttempt(session, segments, e, timings, attempt, stale = false)(dropConnection)
+              }
+            case Failure(e) =>
+              next ! processFailure(dropConnection(session), e, timings)
+          }
+      }
+    }
+  }
+
+  /**
+   * Executes the request on a pipelined connection shared with other requests in flight.
+   *
+   * The response is matched by correlation id, and the connection stays open whatever the outcome.
+   * Requires a frame codec, which the builder checks.
+   */
+  private def executePipelined(session: Session, segments: List[ByteBuffer], correlation: TcpPipelining, timings: TcpTimings): Unit = {
+    logger.debug(s"[${timings.requestId}] Executing pipelined TCP request: $requestName")
+
+    Try(correlation.requestCorrelationId(contiguous(segments))) match {
+      case Failure(e) =>
+        next ! processFailure(session, new IllegalArgumentException(s"Failed to extract correlation id from request: ${e.getMessage}", e), timings)
+      case Success(correlationId) =>
+        newEndpoint(session, timings) match {
+          case Failure(e) =>
+            next ! processFailure(session, e, timings)
+          case Success(endpoint) =>
+            components.multiplexer
+              .channel(pipelinedKeys(endpoint.index), session.eventLoop, endpoint.address(), new TcpMultiplexHandler(frameCodec.get.newDecoder(maxResponseSize), correlation.responseCorrelationId))
+              .addListener((future: ChannelFuture) =>
+                if (!future.isSuccess) {
+                  endpoint.eject()
+                  next ! processFailure(session, future.cause, timings)
+                } else {
+                  timings.connected()
+                  val channel = future.channel
+                  val handler = channel.pipeline.get(classOf[TcpMultiplexHandler])
+                  val registered = handler.register(correlationId, protocol.readTimeout, {
+                    case Success(responseBytes) =>
+                      timings.ended()
+                      next ! processResponse(session, timings, payloadLength(segments), responseBytes)._1
+                    case Failure(e) =>
+                      next ! processFailure(session, e, timings)
+                  })
+                  if (registered) {
+                    logger.debug(s"[${timings.requestId}] Sending pipelined request $correlationId of length ${payloadLength(segments)} bytes")
+                    Try(encodeMessage(channel.alloc, segments)) match {
+                      case Success(buf) =>
+                        channel.writeAndFlush(buf).addListener((writeFuture: ChannelFuture) =>
+                          if (writeFuture.isSuccess) {
+                            timings.written()
+                          } else {
+                            handler.fail(correlationId, writeFuture.cause)
+                          }
+                        )
+                      case Failure(e) =>
+                        handler.fail(correlationId, e)
+                    }
+                  } else {
+                    next ! processFailure(session, new IllegalStateException(s"Request with correlation id $correlationId already in flight"), timings)
+                  }
+                }
+              )
         }
+    }
+  }
 
-        java.util.Arrays.copyOf(buffer, totalBytesRead)
-      } else {
-        // Read all available data (no length header expected)
-        logger.debug(s"[$requestId] Request doesn't have a length header, reading all available data")
-        /** Read response data from the input stream using a fixed-size buffer.
-         * Uses an 8KB buffer to efficiently read data chunks from the socket.
-         */
-        val buffer = new Array[Byte](8192) // 8KB buffer
-        val bytesRead = in.read(buffer)
-        if (bytesRead == -1) {
-          throw new Exception("No response received")
+  /**
+   * Returns the payload as a single array, for the correlation id extractor.
+   */
+  private def contiguous(segments: List[ByteBuffer]): Array[Byte] =
+    segments match {
+      case single :: Nil if single.hasArray && single.arrayOffset == 0 && single.position == 0 && single.remaining == single.array.length =>
+        single.array
+      case _ =>
+        val bytes = new Array[Byte](payloadLength(segments))
+        segments.foldLeft(0) { (offset, segment) =>
+          segment.duplicate().get(bytes, offset, segment.remaining)
+          offset + segment.remaining
         }
-        java.util.Arrays.copyOf(buffer, bytesRead)
+        bytes
+    }
+
+  /**
+   * Writes the request on a channel and awaits its response, unless none is expected.
+   *
+   * @param afterResponse Disposes of the channel once the exchange is over, given the session to
+   *                      pass to the next action and whether the channel can serve another request.
+   */
+  private def exchange(channel: Channel, session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt)(afterResponse: (Session, Boolean) => Session): Unit = {
+    val task: Runnable = () => {
+      // Frames pushed on a connection kept in the session are queued for await actions
+      if (queuePushedFrames) {
+        NettyTcpClient.responseHandler(channel).listen(frameCodec.get.newDecoder(maxResponseSize))
       }
+      if (expectResponse) writeAndAwait(channel, session, segments, timings, attempt)(afterResponse)
+      else send(channel, session, segments, timings, attempt)(afterResponse)
+    }
+    if (channel.eventLoop.inEventLoop) task.run() else channel.eventLoop.execute(task)
+  }
 
-      val end = clock.nowMillis
+  /**
+   * Arms the response handler of a channel and writes the request on it.
+   */
+  private def writeAndAwait(channel: Channel, session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt)(afterResponse: (Session, Boolean) => Session): Unit = {
+    timings.connected()
+    val handler = NettyTcpClient.responseHandler(channel)
+    handler.expect(frameCodec.map(_.newDecoder(maxResponseSize)), responseCompletion, maxResponseSize, protocol.readTimeout, {
+      case Success(responseBytes) =>
+        timings.firstByte(handler.firstByteNanos)
+        timings.ended(handler.idleNanos)
+        val (responseSession, validationsPassed) = processResponse(session, timings, payloadLength(segments), responseBytes)
+        next ! afterResponse(responseSession, validationsPassed)
+      case Failure(e) =>
+        val stale = timings.reusedConnection && handler.firstByteNanos == 0L
+        failAttempt(session, segments, e, timings, attempt, stale)(afterResponse(_, false))
+    })
+    logger.debug(s"[${timings.requestId}] Sending request of length ${payloadLength(segments)} bytes")
+    Try(encodeMessage(channel.alloc, segments)) match {
+      case Success(buf) =>
+        channel.writeAndFlush(buf).addListener((future: ChannelFuture) =>
+          if (future.isSuccess) {
+            timings.written()
+          } else {
+            handler.fail(future.cause)
+          }
+        )
+      case Failure(e) =>
+        handler.fail(e)
+    }
+  }
 
-      /** Validate the response using configured validators.
-       * Each validator is applied to the response bytes and returns a tuple of:
-       * - Boolean: whether validation passed
-       * - Option[String]: optional error message if validation failed
-       */
-      val validationResults = validators.map { validator =>
-        try {
-          validator.apply(responseBytes) -> None
-        } catch {
-          case e: Exception => false -> Some(s"Validation error: ${e.getMessage}")
-        }
-      }
-      logger.debug(s"[$requestId] Validating response with ${validationResults.size} validators")
-      val validationsPassed = validationResults.forall(_._1)
-      val validationErrors = validationResults.flatMap(_._2)
-
-      /** Handle the response based on validation results.
-       * If all validations pass:
-       * - Log successful response to stats engine
-       * - Update session with response data and metrics
-       * If any validation fails:
-       * - Log warning with validation error details
-       */
-      if(validationsPassed) {
-        statsEngine.logResponse(
-          scenario = session.scenario,
-          groups = session.groups,
-          requestName = requestName,
-          startTimestamp = start,
-          endTimestamp = end,
-          status = OK,
-          responseCode = None,
-          message = None
+  /**
+   * Writes the request on a channel, the request completing once the write is flushed.
+   */
+  private def send(channel: Channel, session: Session, segments: List[ByteBuffer], timings: TcpTimings, attempt: TcpRetryPolicy.Attempt)(afterResponse: (Session, Boolean) => Session): Unit = {
+    timings.connected()
+    logger.debug(s"[${timings.requestId}] Sending request of length ${payloadLength(segments)} bytes without awaiting a response")
+    Try(encodeMessage(channel.alloc, segments)) match {
+      case Success(buf) =>
+        channel.writeAndFlush(buf).addListener((future: ChannelFuture) =>
+          if (future.isSuccess) {
+            timings.written()
+            timings.ended()
+            next ! afterResponse(processSent(session, timings, payloadLength(segments)), true)
+          } else {
+            failAttempt(session, segments, future.cause, timings, attempt, stale = timings.reusedConnection)(afterResponse(_, false))
+          }
         )
-        logger.debug(s"[$requestId] Request successful, response length: $totalBytesRead")
-        // Update session with response data AND connection
-        finalSession = session
-          .set(s"$requestName.response", responseBytes)
-          .set(s"$requestName.bytesReceived", totalBytesRead)
-          .set(s"$requestName.bytesSent", message.length)
-
-        // Store connection for reuse if needed
-        if (reuseConnection && !socket.isClosed) {
-          finalSession = finalSession.set(s"tcp.connection.$connectionKey", socket)
-        } else {
-          shouldCloseSocket = true
-        }
-      } else {
-        logger.warn(s"[$requestId] Response validation failed: ${validationErrors.mkString(", ")}")
-        // Handle validation failure (same logic as yours)
-        shouldCloseSocket = true // Close connection on validation failure
-        val errorMessage = if (validationErrors.nonEmpty) {
-          validationErrors.mkString("; ")
-        } else {
-          "Response validation failed"
-        }
+      case Failure(e) =>
+        next ! afterResponse(processFailure(session, e, timings), false)
+    }
+  }
+
+  /**
+   * Logs a request sent without awaiting a response to the stats engine.
+   *
+   * @param bytesSent The length of the message payload.
+   * @return The session updated with the bytes sent.
+   */
+  private def processSent(session: Session, timings: TcpTimings, bytesSent: Int): Session = {
+    endRequest(timings)
+    logResponse(session, timings, OK, None)
+    reportTimings(session, timings).set(bytesSentAttribute, bytesSent)
+  }
+
+  /**
+   * Checks a response and logs it to the stats engine. The checks share a view of the response,
+   * and stop at the first failure.
+   *
+   * @param timings The phases of the request, ended with the response.
+   * @param bytesSent The length of the message payload.
+   * @return The session updated with the response data and captures, and whether all checks passed.
+   */
+  private def processResponse(session: Session, timings: TcpTimings, bytesSent: Int, responseBytes: Array[Byte]): (Session, Boolean) = {
+    endRequest(timings)
+    logger.debug(s"[${timings.requestId}] Checking response with ${allChecks.size} checks")
+    val response = new TcpResponse(responseBytes)
+    TcpCheck.checkAll(allChecks, response, session) match {
+      case ValidationSuccess(checkedSession) =>
+        logResponse(session, timings, OK, None)
+        logger.debug(s"[${timings.requestId}] Request successful, response length: ${responseBytes.length}")
+        val responseSession = storedResponse(reportTimings(checkedSession, timings), response)
+          .set(bytesReceivedAttribute, responseBytes.length)
+          .set(bytesSentAttribute, bytesSent)
+        (responseSession, true)
+      case ValidationFailure(errorMessage) =>
+        logger.warn(s"[${timings.requestId}] Response validation failed: $errorMessage")
+        logResponse(session, timings, KO, Some(errorMessage))
+        val failedSession = storedResponse(reportTimings(session, timings), response, withString = true)
+          .set(validationErrorAttribute, errorMessage)
+          .markAsFailed
+        (failedSession, false)
+    }
+  }
 
+  /**
+   * Stores the response in the session, unless disabled so that responses aren't retained for
+   * the lifetime of the virtual user. The text of failed responses is decoded as UTF-8, reusing
+   * the text decoded by the checks when they used the same charset.
+   */
+  private def storedResponse(session: Session, response: TcpResponse, withString: Boolean = false): Session =
+    if (!storeResponse) {
+      session
+    } else if (withString) {
+      session
+        .set(responseAttribute, response.array)
+        .set(responseStringAttribute, response.text(StandardCharsets.UTF_8))
+    } else {
+      session.set(responseAttribute, response.array)
+    }
+
+  /**
+   * Reports the phases of the request when the timing breakdown is enabled: each completed phase is
+   * logged as a request named after this one, and their durations are stored in the session.
+   *
+   * @return The session with the timing breakdown, or unchanged when disabled.
+   */
+  private def reportTimings(session: Session, timings: TcpTimings): Session =
+    if (!timingBreakdown) {
+      session
+    } else {
+      timings.phases.foreach { case (phase, start, end) =>
         statsEngine.logResponse(
           scenario = session.scenario,
           groups = session.groups,
-          requestName = requestName,
+          requestName = s"$requestName.$phase",
           startTimestamp = start,
           endTimestamp = end,
-          status = KO,
+          status = OK,
           responseCode = None,
-          message = Some(errorMessage)
+          message = None
         )
-        finalSession = session
-          .set(s"$requestName.response", responseBytes)
-          .set(s"$requestName.responseString", new String(responseBytes))
-          .set(s"$requestName.validationError", errorMessage)
-          .markAsFailed
       }
+      session.set(timingsAttribute, timings.breakdown)
+    }
 
-    } catch {
-      case e: java.net.SocketTimeoutException =>
-        logger.warn(s"[$requestId] Request timeout: ${e.getMessage}")
-        statsEngine.logResponse(
-          scenario = session.scenario,
-          groups = session.groups,
-          requestName = requestName,
-          startTimestamp = clock.nowMillis,
-          endTimestamp = clock.nowMillis,
-          status = KO,
-          responseCode = None,
-          message = Some("Timeout"))
-        finalSession = session.markAsFailed
+  /**
+   * Logs a failed exchange to the stats engine.
+   *
+   * @return The session marked as failed.
+   */
+  private def processFailure(session: Session, cause: Throwable, timings: TcpTimings): Session = {
+    cause match {
+      case e @ (_: java.net.SocketTimeoutException | _: ConnectTimeoutException) =>
+        logger.warn(s"[${timings.requestId}] Request timeout: ${e.getMessage}")
       case e: java.net.ConnectException =>
-        logger.error(s"[$requestId] Connection failed: ${e.getMessage}")
+        logger.error(s"[${timings.requestId}] Connection failed: ${e.getMessage}")
+      case e =>
+        logger.error(s"[${timings.requestId}] Unexpected error: ${e.getMessage}", e)
+    }
+    endRequest(timings)
+    logResponse(session, timings, KO, Some(failureMessage(cause)))
+    reportTimings(session, timings).markAsFailed
+  }
+
+  /**
+   * Returns the message of a failure reported to the stats engine.
+   */
+  private def failureMessage(cause: Throwable): String = cause match {
+    case _: java.net.SocketTimeoutException | _: ConnectTimeoutException => "Timeout"
+    case _: java.net.ConnectException                                     => "Connection failed"
+    case e                                                                => e.getMessage
+  }
+
+  /**
+   * Ends a failed attempt of the request: the request is sent again when the retry policy
+   * recovers from the failure, and fails otherwise.
+   *
+   * @param stale Whether the attempt failed on a reused connection before receiving any byte.
+   * @param dispose Disposes of the connection of the attempt, given the session to pass on.
+   */
+  private def failAttempt(session: Session, segments: List[ByteBuffer], cause: Throwable, timings: TcpTimings, attempt: TcpRetryPolicy.Attempt, stale: Boolean)
+                         (dispose: Session => Session): Unit =
+    retryPolicy.recover(attempt, cause, stale) match {
+      case Some(recovery) => recover(dispose(session), segments, cause, timings, recovery)
+      case None           => next ! dispose(processFailure(session, cause, timings))
+    }
+
+  /**
+   * Sends the request again after a failed attempt, with new timings so that the failed attempt
+   * doesn't count in its response time. Stale connections are replaced at once, while retries
+   * wait for their backoff on the event loop of the virtual user and are reported as
+   * `<requestName>.retry`, so that the failures they hide stay visible.
+   *
+   * @param session The session, without the connection of the failed attempt.
+   * @param failed The timings of the failed attempt.
+   */
+  private def recover(session: Session, segments: List[ByteBuffer], cause: Throwable, failed: TcpTimings, recovery: TcpRetryPolicy.Recovery): Unit = {
+    releaseEndpoint(failed)
+    recovery match {
+      case TcpRetryPolicy.Reconnect(attempt) =>
+        logger.debug(s"[${failed.requestId}] Stale connection, sending the request again on a new one: ${cause.getMessage}")
+        components.metrics.reconnects.increment()
+        executeAttempt(session, segments, new TcpTimings(clock.nowMillis, session.userId), attempt)
+      case TcpRetryPolicy.Retry(attempt, delayMillis) =>
+        logger.info(s"[${failed.requestId}] Retrying in ${delayMillis}ms (${attempt.retries}/${retryPolicy.maxRetries}): ${cause.getMessage}")
+        components.metrics.retries.increment()
         statsEngine.logResponse(
           scenario = session.scenario,
           groups = session.groups,
-          requestName = requestName,
-          startTimestamp = clock.nowMillis,
-          endTimestamp = clock.nowMillis,
+          requestName = retryRequestName,
+          startTimestamp = failed.startMillis,
+          endTimestamp = failed.endMillis,
           status = KO,
           responseCode = None,
-          message = Some("Connection failed")
+          message = Some(failureMessage(cause))
         )
-        finalSession = session.markAsFailed
-      case e: Exception =>
-        logger.error(s"[$requestId] Unexpected error: ${e.getMessage}", e)
-        statsEngine.logResponse(
-          scenario = session.scenario,
-          groups = session.groups,
-          requestName = requestName,
-          startTimestamp = clock.nowMillis,
-          endTimestamp = clock.nowMillis,
-          status = KO,
-          responseCode = None,
-          message = Some(e.getMessage)
+        session.eventLoop.schedule(
+          (() => executeAttempt(session, segments, new TcpTimings(clock.nowMillis, session.userId), attempt)): Runnable,
+          delayMillis,
+          TimeUnit.MILLISECONDS
         )
-        finalSession = session.markAsFailed
-    } finally {
-      // Clean up socket if needed
-      if (socket != null && shouldCloseSocket) {
-        try {
-          socket.close()
-          // Remove from session if it was stored
-          if (reuseConnection) {
-            finalSession = finalSession.remove(s"tcp.connection.$connectionKey")
-          }
-        } catch {
-          case e: Exception =>
-            logger.warn(s"[$requestId] Error closing socket: ${e.getMessage}")
-        }
-      }
-      // Always pass the final session to next action
-      next ! finalSession
     }
   }
+
+  /**
+   * Logs the outcome of the request to the stats engine, and again under the name tagged with its
+   * endpoint when responses are reported per endpoint.
+   */
+  private def logResponse(session: Session, timings: TcpTimings, status: Status, message: Option[String]): Unit = {
+    val start = timings.startMillis
+    val end = timings.endMillis
+    statsEngine.logResponse(
+      scenario = session.scenario,
+      groups = session.groups,
+      requestName = requestName,
+      startTimestamp = start,
+      endTimestamp = end,
+      status = status,
+      responseCode = None,
+      message = message
+    )
+    if (endpointRequestNames.nonEmpty && timings.endpoint != null) {
+      statsEngine.logResponse(
+        scenario = session.scenario,
+        groups = session.groups,
+        requestName = endpointRequestNames(timings.endpoint.index),
+        startTimestamp = start,
+        endTimestamp = end,
+        status = status,
+        responseCode = None,
+        message = message
+      )
+    }
+  }
+
+  /**
+   * Ends the request, so that it no longer counts in the requests in flight.
+   */
+  private def endRequest(timings: TcpTimings): Unit = {
+    components.metrics.requestsInFlight.decrement()
+    releaseEndpoint(timings)
+  }
+
+  /**
+   * Ends an attempt of the request on its endpoint, so that it no longer counts towards its connection limit.
+   */
+  private def releaseEndpoint(timings: TcpTimings): Unit =
+    if (timings.endpoint != null) {
+      timings.endpoint.release()
+    }
+}
+
+object TcpRequestAction {
+  /** Minimum free space of the buffer for each blocking read. */
+  private[tcp] val ReadChunkSize: Int = 8192
+
+  /** Size of the heap chunks off-heap segments are written through on blocking sockets. */
+  private[tcp] val WriteChunkSize: Int = 8192
+
+  /** Returns the session attribute holding the connection kept for reuse under a connection key. */
+  private[tcp] def connectionAttribute(connectionKey: String): String = s"tcp.connection.$connectionKey"
 }
@@ -1,33 +1,55 @@
 package com.github.koosty.gatling.tcp
 
 import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import io.gatling.commons.util.Clock
 import io.gatling.core.action.Action
 import io.gatling.core.action.builder.ActionBuilder
+import io.gatling.core.session.Expression
+import io.gatling.core.stats.StatsEngine
 import io.gatling.core.structure.ScenarioContext
 import io.gatling.internal.quicklens._
 
 import java.util.function.Function
+import scala.annotation.varargs
 import scala.jdk.CollectionConverters._
 
 /**
  * Builder for creating TCP request actions in Gatling scenarios.
  *
  * @param requestName Name of the request.
- * @param message Byte array representing the message to send.
+ * @param message The message to send, static or resolved from the session.
  * @param addLengthHeader Whether to add a length header to the message.
  * @param lengthHeaderType Type of length header to use.
  * @param validators List of Java functions to validate the response.
  * @param reuseConnection Whether to reuse an existing connection.
  * @param connectionKey Key to identify the connection in the session.
+ * @param pipelining Correlation of requests and responses when pipelining on shared connections.
+ * @param frameCodec Custom framing of requests and responses, taking precedence over the length header.
+ * @param responseCompletion Tells when an unframed response is complete.
+ * @param maxResponseSize The largest response accepted, overriding the protocol limit.
+ * @param storeResponse Whether the response bytes are stored in the session.
+ * @param timingBreakdown Whether the connect, write and first byte phases are reported besides the request.
+ * @param expectResponse Whether a response is awaited, the request otherwise completing once written.
+ * @param checks Checks of the response, run after the validators.
+ * @param retryPolicy How the request recovers from failures of its connection.
  */
 case class TcpRequestActionBuilder(
                                requestName: String,
-                               message: Array[Byte],
+                               message: TcpMessage,
                                addLengthHeader: Boolean = false,
                                lengthHeaderType: LengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
                                validators: java.util.List[Function[Array[Byte], java.lang.Boolean]] = new java.util.ArrayList(),
                                reuseConnection: Boolean = false,
                                connectionKey: String = "default",
+                               pipelining: Option[TcpPipelining] = None,
+                               frameCodec: Option[FrameCodec] = None,
+                               responseCompletion: ResponseCompletion = ResponseCompletion.IdleGap(ResponseCompletion.DefaultIdleGap),
+                               maxResponseSize: Option[Int] = None,
+                               storeResponse: Boolean = true,
+                               timingBreakdown: Boolean = false,
+                               expectResponse: Boolean = true,
+                               checks: List[TcpCheck] = List.empty,
+                               retryPolicy: TcpRetryPolicy = TcpRetryPolicy()
                              ) extends ActionBuilder {
 
   def addLengthHeader(addLengthHeader: Boolean): TcpRequestActionBuilder = {
@@ -39,6 +61,15 @@ case class TcpRequestActionBuilder(
   def validators(validators: java.util.List[Function[Array[Byte], java.lang.Boolean]]): TcpRequestActionBuilder = {
     this.modify(_.validators).setTo(validators)
   }
+  /**
+   * Adds checks of the response, which may capture values from it into the session.
+   *
+   * @param checks The checks, run in order after the previous ones.
+   */
+  @varargs
+  def check(checks: TcpCheck*): TcpRequestActionBuilder = {
+    this.modify(_.checks).using(_ ++ checks)
+  }
   def reuseConnection(reuseConnection: Boolean): TcpRequestActionBuilder = {
     this.modify(_.reuseConnection).setTo(reuseConnection)
   }
@@ -46,10 +77,142 @@ case class TcpRequestActionBuilder(
     this.modify(_.connectionKey).setTo(connectionKey)
   }
 
+  /**
+   * Frames requests and splits responses with a custom codec, instead of the length header.
+   *
+   * @param frameCodec The codec framing requests and responses.
+   */
+  def frameCodec(frameCodec: FrameCodec): TcpRequestActionBuilder = {
+    this.modify(_.frameCodec).setTo(Some(frameCodec))
+  }
+
+  /**
+   * Sets when an unframed response is complete: after an idle gap (the default, of 10ms, which
+   * each exchange waits for after the last byte without it counting in the response time), once a
+   * given number of bytes or a terminator has been received, or when the peer closes the connection.
+   *
+   * @param responseCompletion The completion strategy of unframed responses.
+   */
+  def responseCompletion(responseCompletion: ResponseCompletion): TcpRequestActionBuilder = {
+    this.modify(_.responseCompletion).setTo(responseCompletion)
+  }
+
+  /**
+   * Sets the largest response accepted by this request, overriding the protocol limit. Larger
+   * responses fail the request instead of being buffered.
+   *
+   * @param maxResponseSize The maximum size in bytes, must be positive.
+   */
+  def maxResponseSize(maxResponseSize: Int): TcpRequestActionBuilder = {
+    if (maxResponseSize < 1) {
+      throw new IllegalArgumentException(s"Max response size must be positive, got: $maxResponseSize")
+    }
+    this.modify(_.maxResponseSize).setTo(Some(maxResponseSize))
+  }
+
+  /**
+   * Controls whether the response bytes are stored in the session as `<requestName>.response`.
+   * Disabling it spares keeping every response for the lifetime of the virtual user when only
+   * validators inspect it.
+   *
+   * @param storeResponse Whether to store the response in the session.
+   */
+  def storeResponse(storeResponse: Boolean): TcpRequestActionBuilder = {
+    this.modify(_.storeResponse).setTo(storeResponse)
+  }
+
+  /**
+   * Reports the phases of the request besides its response time: the connection when one is
+   * opened, the write of the request and the wait for the first byte of the response are logged
+   * as requests named `<requestName>.connect`, `<requestName>.write` and `<requestName>.firstByte`,
+   * and their durations in microseconds are stored in the session as `<requestName>.timings`.
+   *
+   * @param timingBreakdown Whether to report the phases of the request.
+   */
+  def timingBreakdown(timingBreakdown: Boolean): TcpRequestActionBuilder = {
+    this.modify(_.timingBreakdown).setTo(timingBreakdown)
+  }
+
+  /**
+   * Sends the message without awaiting a response, for one-way messages: the request completes
+   * once the message is written, and its response time is the time to connect and write it.
+   */
+  def send(): TcpRequestActionBuilder = {
+    this.modify(_.expectResponse).setTo(false)
+  }
+
+  /**
+   * Sends the request again once on a new connection when the reused one turns out to be closed
+   * by the server, such as after its idle timeout: the request failing on it before receiving
+   * any byte isn't reported, nor timed, and counts as a reconnect in the network metrics. Only a
+   * close, a reset or a write failure makes a connection stale, never a timeout, which fails the
+   * request as usual.
+   *
+   * @param reconnectOnStale Whether to replace stale connections.
+   */
+  def reconnectOnStale(reconnectOnStale: Boolean): TcpRequestActionBuilder = {
+    this.modify(_.retryPolicy.reconnectOnStale).setTo(reconnectOnStale)
+  }
+
+  /**
+   * Sends the request again when its connection fails, to connect, write or read, waiting for
+   * the backoff before the first retry and twice as long before each next one. Only meant for
+   * idempotent requests, as the server may have processed the failed ones. Failed attempts are
+   * reported as `<requestName>.retry`, and the response time of the request is the one of its
+   * last attempt.
+   *
+   * @param maxRetries The number of retries, 0 to never retry.
+   * @param backoff The time in milliseconds before the first retry.
+   */
+  def retries(maxRetries: Int, backoff: Int): TcpRequestActionBuilder = {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException(s"Max retries must not be negative, got: $maxRetries")
+    }
+    if (backoff < 0) {
+      throw new IllegalArgumentException(s"Retry backoff must not be negative, got: $backoff")
+    }
+    this.modify(_.retryPolicy).using(_.copy(maxRetries = maxRetries, backoff = backoff))
+  }
+
+  /**
+   * Returns the codec framing requests and responses: the custom one if any, otherwise the
+   * length header when enabled, otherwise none.
+   */
+  def effectiveFrameCodec: Option[FrameCodec] =
+    frameCodec.orElse(Option.when(addLengthHeader)(lengthHeaderType.codec))
+
+  /**
+   * Enables pipelining: the request is written on a connection shared with other requests in
+   * flight, and its response is matched by correlation id instead of arrival order.
+   *
+   * @param requestCorrelationId Extracts the correlation id from the request payload.
+   * @param responseCorrelationId Extracts the correlation id from a response payload.
+   */
+  def pipelined(requestCorrelationId: Function[Array[Byte], String], responseCorrelationId: Function[Array[Byte], String]): TcpRequestActionBuilder = {
+    this.modify(_.pipelining).setTo(Some(TcpPipelining(requestCorrelationId.apply, responseCorrelationId.apply)))
+  }
+
   override def build(ctx: ScenarioContext, next: Action): Action = {
     val components = ctx.protocolComponentsRegistry
       .components(TcpProtocol.TcpProtocolKey)
       .asInstanceOf[TcpComponents]
+    newAction(components, ctx.coreComponents.statsEngine, ctx.coreComponents.clock, next)
+  }
+
+  /**
+   * Creates the action with the given components, also used to run requests outside of a scenario.
+   */
+  private[tcp] def newAction(components: TcpComponents, statsEngine: StatsEngine, clock: Clock, next: Action): TcpRequestAction = {
+    val codec = effectiveFrameCodec
+    if (pipelining.isDefined && codec.isEmpty) {
+      throw new IllegalArgumentException(s"Pipelined request $requestName requires a length header or a frame codec to split responses")
+    }
+    if (!expectResponse && (pipelining.isDefined || !validators.isEmpty || checks.nonEmpty)) {
+      throw new IllegalArgumentException(s"Request $requestName sent without awaiting a response can't be pipelined nor checked")
+    }
+    if (pipelining.isDefined && retryPolicy.enabled) {
+      throw new IllegalArgumentException(s"Pipelined request $requestName can't be retried, as other requests share its connection")
+    }
     // Convert Java Functions to Scala Function1
     val scalaValidators: List[Array[Byte] => Boolean] = validators.asScala.toList.map { javaFunc =>
       (bytes: Array[Byte]) => javaFunc.apply(bytes)
@@ -57,19 +220,59 @@ case class TcpRequestActionBuilder(
     TcpRequestAction(
       requestName,
       message,
-      addLengthHeader,
-      lengthHeaderType,
+      codec,
+      responseCompletion,
+      maxResponseSize.getOrElse(components.protocol.maxResponseSize),
+      storeResponse,
+      timingBreakdown,
+      expectResponse,
       scalaValidators,
+      checks,
       reuseConnection,
       connectionKey,
-      components.protocol,
-      ctx.coreComponents.statsEngine,
-      ctx.coreComponents.clock,
+      pipelining,
+      retryPolicy,
+      components,
+      statsEngine,
+      clock,
       next
     )
   }
 }
 
+/**
+ * Correlation of pipelined requests with their responses.
+ *
+ * @param requestCorrelationId Extracts the correlation id from a request payload.
+ * @param responseCorrelationId Extracts the correlation id from a response payload.
+ */
+case class TcpPipelining(requestCorrelationId: Array[Byte] => String, responseCorrelationId: Array[Byte] => String)
+
 object TcpRequestActionBuilder {
-  def request(requestName: String, message: Array[Byte]): TcpRequestActionBuilder = new TcpRequestActionBuilder(requestName, message)
+  def request(requestName: String, message: Array[Byte]): TcpRequestActionBuilder = new TcpRequestActionBuilder(requestName, TcpMessage(message))
+
+  /**
+   * Creates a request whose message is resolved from the session of each virtual user.
+   *
+   * @param requestName Name of the request.
+   * @param message Resolves the message to send.
+   */
+  def request(requestName: String, message: Expression[Array[Byte]]): TcpRequestActionBuilder = new TcpRequestActionBuilder(requestName, TcpMessage(message))
+
+  /**
+   * Creates a request whose message is a template of fixed segments and session-substituted slots.
+   *
+   * @param requestName Name of the request.
+   * @param template The message template.
+   */
+  def request(requestName: String, template: TcpMessageTemplate): TcpRequestActionBuilder = new TcpRequestActionBuilder(requestName, template.message)
+
+  /**
+   * Creates a request whose message is drawn from a payload source for each request, and written
+   * without being copied into the heap. Requests fail once a sequential source is exhausted.
+   *
+   * @param requestName Name of the request.
+   * @param source The source of the payloads.
+   */
+  def request(requestName: String, source: TcpPayloadSource): TcpRequestActionBuilder = new TcpRequestActionBuilder(requestName, TcpMessage(source))
 }
\ No newline at end of file
@@ -0,0 +1,352 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.netty.buffer.{ByteBuf, Unpooled}
+import io.netty.channel.{ChannelHandlerContext, ChannelInboundHandlerAdapter}
+import io.netty.handler.codec.ByteToMessageDecoder
+import io.netty.util.ReferenceCountUtil
+import io.netty.util.concurrent.ScheduledFuture
+
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.util.concurrent.TimeUnit
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Inbound handler collecting the response of the exchange currently in flight on a channel.
+ *
+ * A single exchange is expected at a time: [[expect]] arms the handler before the request is
+ * written, and the callback is invoked exactly once, from the channel's event loop, when the
+ * response is complete, the read timeout expires or the channel fails.
+ *
+ * Once [[listen]], [[receive]] or [[subscribe]] has set how to split them, frames the server
+ * pushes outside of an exchange are handed to the pending receive when they match it, then to the
+ * subscription, and are otherwise queued for a later receive, the oldest being dropped once the
+ * queue is full.
+ */
+private[tcp] final class TcpResponseHandler extends ChannelInboundHandlerAdapter with StrictLogging {
+  private var ctx: ChannelHandlerContext = _
+  private var cumulation: ByteBuf = Unpooled.EMPTY_BUFFER
+  private var decoder: Option[FrameDecoder] = None
+  private var completion: ResponseCompletion = _
+  private var maxResponseSize: Int = 0
+  private var scanFrom: Int = 0
+  private var lastReadNanos: Long = 0L
+  private var idleTask: ScheduledFuture[_] = _
+  private var _idleNanos: Long = 0L
+  private var _firstByteNanos: Long = 0L
+  private var callback: Try[Array[Byte]] => Unit = _
+  private var timeoutTask: ScheduledFuture[_] = _
+
+  // Frames received outside of an exchange
+  private var inboundDecoder: FrameDecoder = _
+  private val inbound = new java.util.ArrayDeque[Array[Byte]]
+  private var receiveMatcher: Array[Byte] => Boolean = _
+  private var receiveCallback: Try[Array[Byte]] => Unit = _
+  private var receiveTimeoutTask: ScheduledFuture[_] = _
+  private var subscription: TcpSubscription = _
+
+  /**
+   * Arms the handler for the next response. Must be called from the channel's event loop.
+   *
+   * @param decoder Splits the response from the bytes received, or None when responses are not framed.
+   * @param completion Tells when an unframed response is complete.
+   * @param maxResponseSize The largest unframed response accepted, framed ones being checked by the decoder.
+   * @param readTimeout Timeout in milliseconds for the whole response.
+   * @param callback Invoked once with the response payload or the failure.
+   */
+  def expect(decoder: Option[FrameDecoder], completion: ResponseCompletion, maxResponseSize: Int, readTimeout: Int, callback: Try[Array[Byte]] => Unit): Unit = {
+    this.decoder = decoder
+    this.completion = completion
+    this.maxResponseSize = maxResponseSize
+    this.scanFrom = 0
+    this.lastReadNanos = 0L
+    this._idleNanos = 0L
+    this._firstByteNanos = 0L
+    this.callback = callback
+    if (readTimeout > 0) {
+      timeoutTask = ctx.executor.schedule(
+        new Runnable {
+          override def run(): Unit = fail(new SocketTimeoutException("Read timed out"))
+        },
+        readTimeout.toLong,
+        TimeUnit.MILLISECONDS
+      )
+    }
+  }
+
+  /**
+   * Fails the exchange in flight, if any.
+   *
+   * @param cause The failure reported to the callback.
+   */
+  def fail(cause: Throwable): Unit = complete(Failure(cause))
+
+  /**
+   * Awaits the next frame pushed by the server that matches, taking it from the frames already
+   * queued if any. Must be called from the channel's event loop, when no exchange is in flight.
+   *
+   * @param decoder Splits the frames received outside of an exchange, unless already set by a previous call.
+   * @param matcher Tells whether a frame is the awaited one.
+   * @param readTimeout Timeout in milliseconds for the frame to arrive.
+   * @param callback Invoked once with the frame payload or the failure.
+   */
+  def receive(decoder: => FrameDecoder, matcher: Array[Byte] => Boolean, readTimeout: Int, callback: Try[Array[Byte]] => Unit): Unit = {
+    listen(decoder)
+    val queued = inbound.iterator
+    var result: Try[Array[Byte]] = null
+    while (result == null && queued.hasNext) {
+      val frame = queued.next()
+      Try(matcher(frame)) match {
+        case Success(true) =>
+          queued.remove()
+          result = Success(frame)
+        case Success(false) =>
+        case Failure(e) =>
+          result = Failure(e)
+      }
+    }
+    if (result != null) {
+      callback(result)
+    } else {
+      receiveMatcher = matcher
+      receiveCallback = callback
+      if (readTimeout > 0) {
+        receiveTimeoutTask = ctx.executor.schedule(
+          new Runnable {
+            override def run(): Unit = completeReceive(Failure(new SocketTimeoutException("Read timed out")))
+          },
+          readTimeout.toLong,
+          TimeUnit.MILLISECONDS
+        )
+      }
+    }
+  }
+
+  /**
+   * Hands the frames pushed by the server outside of an exchange to a subscription, starting with
+   * those already queued that it accepts, until the channel is closed or another subscription
+   * replaces it. Must be called from the channel's event loop.
+   *
+   * @param decoder Splits the frames received outside of an exchange, unless already set.
+   * @param subscription Reports the frames it accepts.
+   */
+  def subscribe(decoder: => FrameDecoder, subscription: TcpSubscription): Unit = {
+    listen(decoder)
+    this.subscription = subscription
+    inbound.removeIf { frame =>
+      val accepted = subscription.accepts(frame)
+      if (accepted) {
+        subscription.report(frame)
+      }
+      accepted
+    }
+  }
+
+  /**
+   * Starts queueing the frames received outside of an exchange, unless already started, so that
+   * frames pushed right after a response aren't lost before they are awaited.
+   *
+   * @param decoder Splits the frames received outside of an exchange.
+   */
+  def listen(decoder: => FrameDecoder): Unit =
+    if (inboundDecoder == null) {
+      inboundDecoder = decoder
+    }
+
+  /** Returns the number of frames received outside of an exchange and not consumed yet. */
+  def queued: Int = inbound.size
+
+  /**
+   * Returns the time in nanoseconds waited after the last byte of the response to detect an idle
+   * gap, 0 if the response wasn't completed by an idle gap. Valid within the callback.
+   */
+  def idleNanos: Long = _idleNanos
+
+  /**
+   * Returns the `System.nanoTime` reading at the arrival of the first byte of the response, 0 if
+   * none arrived. Valid within the callback.
+   */
+  def firstByteNanos: Long = _firstByteNanos
+
+  override def handlerAdded(ctx: ChannelHandlerContext): Unit = this.ctx = ctx
+
+  override def handlerRemoved(ctx: ChannelHandlerContext): Unit = releaseCumulation()
+
+  override def channelRead(ctx: ChannelHandlerContext, msg: Any): Unit = msg match {
+    case buf: ByteBuf if callback != null =>
+      if (_firstByteNanos == 0L) {
+        _firstByteNanos = System.nanoTime()
+      }
+      cumulation = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(ctx.alloc, cumulation, buf)
+      decode()
+    case buf: ByteBuf if inboundDecoder != null =>
+      cumulation = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(ctx.alloc, cumulation, buf)
+      decodeInbound()
+    case other =>
+      ReferenceCountUtil.release(other)
+  }
+
+  override def channelInactive(ctx: ChannelHandlerContext): Unit = {
+    if (callback != null && decoder.isEmpty && completion.completesOnClose && cumulation.isReadable) {
+      complete(Success(readBytes(cumulation.readableBytes)))
+    } else {
+      fail(new TcpConnectionClosedException("Connection closed before receiving complete response"))
+    }
+    completeReceive(Failure(new TcpConnectionClosedException("Connection closed before receiving complete response")))
+    ctx.fireChannelInactive()
+  }
+
+  override def exceptionCaught(ctx: ChannelHandlerContext, cause: Throwable): Unit = {
+    fail(cause)
+    completeReceive(Failure(cause))
+    ctx.close()
+  }
+
+  /**
+   * Splits the bytes received outside of an exchange into frames, and routes each of them.
+   */
+  private def decodeInbound(): Unit = {
+    var continue = true
+    while (continue && cumulation.isReadable) {
+      val in = cumulation.nioBuffer()
+      val start = in.position
+      Try(inboundDecoder.decode(in)) match {
+        case Success(null) =>
+          continue = false
+        case Success(frame) =>
+          cumulation.skipBytes(in.position - start)
+          route(frame)
+        case Failure(e) =>
+          exceptionCaught(ctx, e)
+          continue = false
+      }
+    }
+    if (!cumulation.isReadable) {
+      releaseCumulation()
+    }
+  }
+
+  private def route(frame: Array[Byte]): Unit = {
+    val awaited = receiveCallback != null && (Try(receiveMatcher(frame)) match {
+      case Success(matches) => matches
+      case Failure(e) =>
+        completeReceive(Failure(e))
+        false
+    })
+    if (awaited) {
+      completeReceive(Success(frame))
+    } else if (subscription != null && subscription.accepts(frame)) {
+      subscription.report(frame)
+    } else {
+      if (inbound.size == TcpResponseHandler.MaxQueuedFrames) {
+        inbound.poll()
+        logger.debug(s"Dropping the oldest of ${TcpResponseHandler.MaxQueuedFrames} frames received outside of an exchange")
+      }
+      inbound.add(frame)
+    }
+  }
+
+  private def completeReceive(result: Try[Array[Byte]]): Unit =
+    if (receiveCallback != null) {
+      val cb = receiveCallback
+      receiveCallback = null
+      receiveMatcher = null
+      if (receiveTimeoutTask != null) {
+        receiveTimeoutTask.cancel(false)
+        receiveTimeoutTask = null
+      }
+      cb(result)
+    }
+
+  private def decode(): Unit =
+    decoder match {
+      case None =>
+        lastReadNanos = System.nanoTime()
+        val length = completion.completeLength(cumulation, scanFrom)
+        if (length >= 0 && length <= maxResponseSize) {
+          complete(Success(readBytes(length)))
+        } else if (cumulation.readableBytes > maxResponseSize) {
+          fail(new IOException(s"Response exceeds $maxResponseSize bytes"))
+        } else {
+          scanFrom = completion.rescanFrom(cumulation.readableBytes)
+          if (completion.idleGapMillis > 0 && idleTask == null) {
+            scheduleIdleCheck(completion.idleGapMillis.toLong)
+          }
+        }
+      case Some(frameDecoder) =>
+        val in = cumulation.nioBuffer()
+        val start = in.position
+        Try(frameDecoder.decode(in)) match {
+          case Success(null) => // wait for more bytes
+          case Success(frame) =>
+            cumulation.skipBytes(in.position - start)
+            complete(Success(frame))
+          case failure @ Failure(_) =>
+            complete(failure)
+        }
+    }
+
+  /**
+   * Completes the response once no byte has been received for the idle gap, checking again later
+   * when bytes arrived in the meantime, so that the task isn't rescheduled on every read.
+   */
+  private def scheduleIdleCheck(delayMillis: Long): Unit =
+    idleTask = ctx.executor.schedule(
+      new Runnable {
+        override def run(): Unit = if (callback != null) {
+          val idle = System.nanoTime() - lastReadNanos
+          val remaining = TimeUnit.MILLISECONDS.toNanos(completion.idleGapMillis.toLong) - idle
+          if (remaining > 0) {
+            scheduleIdleCheck(TimeUnit.NANOSECONDS.toMillis(remaining) + 1)
+          } else {
+            idleTask = null
+            _idleNanos = idle
+            complete(Success(readBytes(cumulation.readableBytes)))
+          }
+        }
+      },
+      delayMillis,
+      TimeUnit.MILLISECONDS
+    )
+
+  private def readBytes(length: Int): Array[Byte] = {
+    val bytes = new Array[Byte](length)
+    cumulation.readBytes(bytes)
+    bytes
+  }
+
+  private def complete(result: Try[Array[Byte]]): Unit =
+    if (callback != null) {
+      val cb = callback
+      callback = null
+      decoder = None
+      if (timeoutTask != null) {
+        timeoutTask.cancel(false)
+        timeoutTask = null
+      }
+      if (idleTask != null) {
+        idleTask.cancel(false)
+        idleTask = null
+      }
+      // Bytes following the response are frames pushed by the server, when they are awaited
+      if (result.isSuccess && inboundDecoder != null) {
+        decodeInbound()
+      } else {
+        releaseCumulation()
+      }
+      cb(result)
+    }
+
+  private def releaseCumulation(): Unit = {
+    cumulation.release()
+    cumulation = Unpooled.EMPTY_BUFFER
+  }
+}
+
+private[tcp] object TcpResponseHandler {
+  val Name = "tcpResponse"
+
+  /** Maximum number of frames received outside of an exchange kept for later receives. */
+  val MaxQueuedFrames: Int = 1024
+}
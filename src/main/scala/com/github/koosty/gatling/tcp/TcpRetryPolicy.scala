@@ -0,0 +1,85 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.channel.unix.Errors.NativeIoException
+
+import java.io.IOException
+import java.net.{ConnectException, SocketException, SocketTimeoutException}
+import java.nio.channels.ClosedChannelException
+
+/** How a request recovers from failures of its connection.
+ *
+ * @param reconnectOnStale Whether a request whose reused connection is closed, reset or fails to
+ *                         write before receiving any byte is sent again once on a new connection,
+ *                         as the server closed it. Timeouts never make a connection stale.
+ * @param maxRetries The number of times a request failing on its connection is sent again
+ * @param backoff The time in milliseconds before the first retry, doubled for each next one
+ */
+case class TcpRetryPolicy(reconnectOnStale: Boolean = false, maxRetries: Int = 0, backoff: Int = TcpRetryPolicy.DefaultBackoff) {
+
+  /** Tells whether the request recovers from any failure. */
+  def enabled: Boolean = reconnectOnStale || maxRetries > 0
+
+  /**
+   * Returns how a failed attempt of a request recovers, None when the request fails.
+   *
+   * @param attempt The failed attempt.
+   * @param cause The failure.
+   * @param stale Whether the attempt failed on a reused connection before receiving any byte.
+   */
+  private[tcp] def recover(attempt: TcpRetryPolicy.Attempt, cause: Throwable, stale: Boolean): Option[TcpRetryPolicy.Recovery] =
+    if (!TcpRetryPolicy.connectionFailure(cause)) {
+      None
+    } else if (stale && reconnectOnStale && !attempt.reconnected && TcpRetryPolicy.staleFailure(cause)) {
+      Some(TcpRetryPolicy.Reconnect(attempt.copy(reconnected = true)))
+    } else if (attempt.retries < maxRetries) {
+      Some(TcpRetryPolicy.Retry(attempt.copy(retries = attempt.retries + 1), backoff.toLong << math.min(attempt.retries, 20)))
+    } else {
+      None
+    }
+}
+
+object TcpRetryPolicy {
+  /** Time in milliseconds before the first retry. */
+  val DefaultBackoff: Int = 100
+
+  /** The recoveries a request went through before an attempt. */
+  private[tcp] final case class Attempt(retries: Int = 0, reconnected: Boolean = false)
+
+  /** How a failed attempt recovers. */
+  private[tcp] sealed trait Recovery {
+    /** The next attempt. */
+    def attempt: Attempt
+  }
+
+  /** Sends the request again at once on a new connection, the previous one being stale. */
+  private[tcp] final case class Reconnect(attempt: Attempt) extends Recovery
+
+  /** Sends the request again after a delay. */
+  private[tcp] final case class Retry(attempt: Attempt, delayMillis: Long) extends Recovery
+
+  /**
+   * Tells whether a failure comes from the connection, rather than from the response or the
+   * request: only those are recovered from.
+   */
+  private[tcp] def connectionFailure(cause: Throwable): Boolean = cause match {
+    case _: ConnectException | _: SocketException | _: SocketTimeoutException => true
+    case _: ClosedChannelException | _: NativeIoException | _: TcpConnectionClosedException => true
+    case _ => false
+  }
+
+  /**
+   * Tells whether a failure on a reused connection shows that the server closed it. A timeout
+   * doesn't: the server may be slow or stuck, and may have processed the request.
+   */
+  private[tcp] def staleFailure(cause: Throwable): Boolean = cause match {
+    case _: SocketTimeoutException => false
+    case _                         => connectionFailure(cause)
+  }
+}
+
+/**
+ * Signals that the peer closed the connection before the response was complete.
+ *
+ * @param message The detail message.
+ */
+class TcpConnectionClosedException(message: String) extends IOException(message)
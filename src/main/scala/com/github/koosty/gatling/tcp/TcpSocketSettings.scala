@@ -0,0 +1,67 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.bootstrap.Bootstrap
+import io.netty.channel.ChannelOption
+
+import java.net.{InetAddress, InetSocketAddress, Socket, StandardSocketOptions}
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Options of the sockets of a protocol.
+ *
+ * @param tcpNoDelay Whether Nagle's algorithm is disabled, so that small messages are sent at once
+ * @param sendBufferSize The size of the socket send buffer in bytes, 0 for the system default
+ * @param receiveBufferSize The size of the socket receive buffer in bytes, 0 for the system default
+ * @param linger The time in seconds a closed socket keeps sending unsent data, -1 to close in the background
+ * @param reuseAddress Whether local addresses in TIME_WAIT may be bound again
+ * @param reusePort Whether several sockets may bind the same local address and port, when the system supports it
+ * @param localAddresses The local addresses connections are bound to in turn, the system's choice when empty
+ */
+case class TcpSocketSettings(
+                              tcpNoDelay: Boolean = true,
+                              sendBufferSize: Int = 0,
+                              receiveBufferSize: Int = 0,
+                              linger: Int = -1,
+                              reuseAddress: Boolean = false,
+                              reusePort: Boolean = false,
+                              localAddresses: List[String] = Nil
+                            ) {
+
+  /** Applies the options to a blocking socket, before it connects. */
+  private[tcp] def configure(socket: Socket): Unit = {
+    socket.setTcpNoDelay(tcpNoDelay)
+    if (sendBufferSize > 0) socket.setSendBufferSize(sendBufferSize)
+    if (receiveBufferSize > 0) socket.setReceiveBufferSize(receiveBufferSize)
+    if (linger >= 0) socket.setSoLinger(true, linger)
+    socket.setReuseAddress(reuseAddress)
+    if (reusePort && socket.supportedOptions.contains(StandardSocketOptions.SO_REUSEPORT)) {
+      socket.setOption[java.lang.Boolean](StandardSocketOptions.SO_REUSEPORT, true)
+    }
+  }
+
+  /** Applies the options to the channels of a bootstrap, but SO_REUSEPORT, which depends on their transport. */
+  private[tcp] def configure(bootstrap: Bootstrap): Bootstrap = {
+    bootstrap
+      .option[java.lang.Boolean](ChannelOption.TCP_NODELAY, tcpNoDelay)
+      .option[java.lang.Boolean](ChannelOption.SO_REUSEADDR, reuseAddress)
+    if (sendBufferSize > 0) bootstrap.option[Integer](ChannelOption.SO_SNDBUF, sendBufferSize)
+    if (receiveBufferSize > 0) bootstrap.option[Integer](ChannelOption.SO_RCVBUF, receiveBufferSize)
+    if (linger >= 0) bootstrap.option[Integer](ChannelOption.SO_LINGER, linger)
+    bootstrap
+  }
+}
+
+/**
+ * Hands out the local addresses of a protocol in turn, so that connections spread over several
+ * source addresses, each with its own range of ephemeral ports.
+ *
+ * @param addresses The local addresses, resolved once.
+ */
+private[tcp] final class TcpLocalAddresses(addresses: List[String]) {
+  private val resolved: Array[InetSocketAddress] = addresses.map(address => new InetSocketAddress(InetAddress.getByName(address), 0)).toArray
+  private val counter = new AtomicInteger
+
+  /** Returns the local address of the next connection, None to let the system choose. */
+  def next(): Option[InetSocketAddress] =
+    if (resolved.isEmpty) None
+    else Some(resolved(Math.floorMod(counter.getAndIncrement(), resolved.length)))
+}
@@ -0,0 +1,255 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.internal.quicklens._
+
+import java.util.Objects
+import java.util.concurrent.{ThreadLocalRandom, TimeUnit}
+
+/**
+ * Distribution of the time a [[TcpStubServer]] waits before answering a request.
+ */
+sealed trait TcpStubLatency {
+
+  /** Draws the next latency in nanoseconds. */
+  private[tcp] def nextNanos(random: ThreadLocalRandom): Long
+}
+
+/** Companion object providing the latency distributions.
+ */
+object TcpStubLatency {
+
+  /** Answers at once. */
+  case object Zero extends TcpStubLatency {
+    override private[tcp] def nextNanos(random: ThreadLocalRandom): Long = 0L
+  }
+
+  /**
+   * Always waits the same time.
+   *
+   * @param millis The latency in milliseconds.
+   */
+  final case class Fixed(millis: Int) extends TcpStubLatency {
+    override private[tcp] def nextNanos(random: ThreadLocalRandom): Long = TimeUnit.MILLISECONDS.toNanos(millis.toLong)
+  }
+
+  /**
+   * Waits a time drawn uniformly between two bounds.
+   *
+   * @param minMillis The shortest latency in milliseconds.
+   * @param maxMillis The longest latency in milliseconds.
+   */
+  final case class Uniform(minMillis: Int, maxMillis: Int) extends TcpStubLatency {
+    override private[tcp] def nextNanos(random: ThreadLocalRandom): Long =
+      random.nextLong(TimeUnit.MILLISECONDS.toNanos(minMillis.toLong), TimeUnit.MILLISECONDS.toNanos(maxMillis.toLong) + 1)
+  }
+
+  /**
+   * Waits a time drawn from an exponential distribution, as between the arrivals of a Poisson process:
+   * most answers are fast, and a long tail is slow.
+   *
+   * @param meanMillis The mean latency in milliseconds.
+   */
+  final case class Exponential(meanMillis: Int) extends TcpStubLatency {
+    override private[tcp] def nextNanos(random: ThreadLocalRandom): Long =
+      (-math.log(1.0 - random.nextDouble()) * TimeUnit.MILLISECONDS.toNanos(meanMillis.toLong)).toLong
+  }
+
+  /**
+   * Waits a time drawn from a normal distribution, never less than 0.
+   *
+   * @param meanMillis The mean latency in milliseconds.
+   * @param stdDevMillis The standard deviation in milliseconds.
+   */
+  final case class Normal(meanMillis: Int, stdDevMillis: Int) extends TcpStubLatency {
+    override private[tcp] def nextNanos(random: ThreadLocalRandom): Long =
+      math.max(0L, ((meanMillis + random.nextGaussian() * stdDevMillis) * 1000000).toLong)
+  }
+
+  /** Returns the zero latency.
+   *
+   * @return The Zero latency
+   */
+  def zero(): TcpStubLatency = Zero
+
+  /** Creates a fixed latency.
+   *
+   * @param millis The latency in milliseconds
+   * @return A new TcpStubLatency instance
+   */
+  def fixed(millis: Int): TcpStubLatency = {
+    if (millis < 0) {
+      throw new IllegalArgumentException(s"Latency must not be negative, got: $millis")
+    }
+    Fixed(millis)
+  }
+
+  /** Creates a latency drawn uniformly between two bounds.
+   *
+   * @param minMillis The shortest latency in milliseconds
+   * @param maxMillis The longest latency in milliseconds
+   * @return A new TcpStubLatency instance
+   */
+  def uniform(minMillis: Int, maxMillis: Int): TcpStubLatency = {
+    if (minMillis < 0 || maxMillis < minMillis) {
+      throw new IllegalArgumentException(s"Latency bounds must be positive and ordered, got: $minMillis, $maxMillis")
+    }
+    Uniform(minMillis, maxMillis)
+  }
+
+  /** Creates an exponentially distributed latency.
+   *
+   * @param meanMillis The mean latency in milliseconds
+   * @return A new TcpStubLatency instance
+   */
+  def exponential(meanMillis: Int): TcpStubLatency = {
+    if (meanMillis <= 0) {
+      throw new IllegalArgumentException(s"Mean latency must be positive, got: $meanMillis")
+    }
+    Exponential(meanMillis)
+  }
+
+  /** Creates a normally distributed latency.
+   *
+   * @param meanMillis The mean latency in milliseconds
+   * @param stdDevMillis The standard deviation in milliseconds
+   * @return A new TcpStubLatency instance
+   */
+  def normal(meanMillis: Int, stdDevMillis: Int): TcpStubLatency = {
+    if (meanMillis < 0 || stdDevMillis < 0) {
+      throw new IllegalArgumentException(s"Latency mean and deviation must not be negative, got: $meanMillis, $stdDevMillis")
+    }
+    Normal(meanMillis, stdDevMillis)
+  }
+}
+
+/**
+ * How a [[TcpStubServer]] answers a request, and the faults it injects while doing so.
+ *
+ * @param answer Computes the payload of the answer from the payload of the request, null for no answer.
+ * @param latency The time waited before writing the answer.
+ * @param chunkSize The size of the chunks the answer is written in, 0 to write it at once.
+ * @param chunkDelay The time in milliseconds between two chunks.
+ * @param truncateAt The number of bytes of the framed answer written before closing the connection, -1 to write it all.
+ * @param dropRate The probability of closing the connection instead of answering.
+ * @param closeAfter Whether the connection is closed once the answer is written.
+ */
+final case class TcpStubResponse(
+                                  answer: java.util.function.Function[Array[Byte], Array[Byte]],
+                                  latency: TcpStubLatency = TcpStubLatency.Zero,
+                                  chunkSize: Int = 0,
+                                  chunkDelay: Int = 0,
+                                  truncateAt: Int = -1,
+                                  dropRate: Double = 0.0,
+                                  closeAfter: Boolean = false
+                                ) {
+
+  /** Sets the time waited before writing the answer.
+   *
+   * Answers on a connection are written in the order of the requests, so that a slow answer delays
+   * the next ones, as with a server processing a connection's requests one at a time.
+   *
+   * @param latency The latency distribution
+   * @return This response for method chaining
+   */
+  def withLatency(latency: TcpStubLatency): TcpStubResponse = {
+    Objects.requireNonNull(latency, "Latency cannot be null")
+    this.modify(_.latency).setTo(latency)
+  }
+
+  /** Writes the answer in chunks, so that the client receives it across several reads.
+   *
+   * @param size The size of the chunks in bytes
+   * @param delayMillis The time between two chunks in milliseconds
+   * @return This response for method chaining
+   */
+  def withChunks(size: Int, delayMillis: Int): TcpStubResponse = {
+    if (size <= 0) {
+      throw new IllegalArgumentException(s"Chunk size must be positive, got: $size")
+    }
+    if (delayMillis < 0) {
+      throw new IllegalArgumentException(s"Chunk delay must not be negative, got: $delayMillis")
+    }
+    this.modify(_.chunkSize).setTo(size).modify(_.chunkDelay).setTo(delayMillis)
+  }
+
+  /** Writes the answer one byte at a time, as a slow-loris server would.
+   *
+   * @param delayMillis The time between two bytes in milliseconds
+   * @return This response for method chaining
+   */
+  def slowLoris(delayMillis: Int): TcpStubResponse = withChunks(1, delayMillis)
+
+  /** Writes the beginning of the framed answer only, then closes the connection.
+   *
+   * @param bytes The number of bytes written
+   * @return This response for method chaining
+   */
+  def truncateAt(bytes: Int): TcpStubResponse = {
+    if (bytes < 0) {
+      throw new IllegalArgumentException(s"Truncation must not be negative, got: $bytes")
+    }
+    this.modify(_.truncateAt).setTo(bytes)
+  }
+
+  /** Closes the connection instead of answering for a share of the requests.
+   *
+   * @param rate The probability between 0 and 1
+   * @return This response for method chaining
+   */
+  def withDropRate(rate: Double): TcpStubResponse = {
+    if (rate < 0.0 || rate > 1.0) {
+      throw new IllegalArgumentException(s"Drop rate must be between 0 and 1, got: $rate")
+    }
+    this.modify(_.dropRate).setTo(rate)
+  }
+
+  /** Closes the connection once the answer is written.
+   *
+   * @return This response for method chaining
+   */
+  def thenClose(): TcpStubResponse = this.modify(_.closeAfter).setTo(true)
+}
+
+/** Companion object providing the responses of a stub server.
+ */
+object TcpStubResponse {
+
+  /** Answers each request with its own payload.
+   *
+   * @return A new TcpStubResponse instance
+   */
+  def echo(): TcpStubResponse = TcpStubResponse(payload => payload)
+
+  /** Answers with a fixed payload.
+   *
+   * @param payload The payload of the answer, framed by the server's codec
+   * @return A new TcpStubResponse instance
+   */
+  def reply(payload: Array[Byte]): TcpStubResponse = {
+    Objects.requireNonNull(payload, "Payload cannot be null")
+    val answer = payload.clone()
+    TcpStubResponse(_ => answer)
+  }
+
+  /** Answers with a payload computed from the request.
+   *
+   * @param answer Computes the payload of the answer from the payload of the request, null for no answer
+   * @return A new TcpStubResponse instance
+   */
+  def reply(answer: java.util.function.Function[Array[Byte], Array[Byte]]): TcpStubResponse = {
+    Objects.requireNonNull(answer, "Answer cannot be null")
+    TcpStubResponse(answer)
+  }
+
+  /** Never answers, keeping the connection open.
+   *
+   * @return A new TcpStubResponse instance
+   */
+  def silence(): TcpStubResponse = TcpStubResponse(_ => null)
+
+  /** Closes the connection upon receiving the request.
+   *
+   * @return A new TcpStubResponse instance
+   */
+  def drop(): TcpStubResponse = silence().withDropRate(1.0)
+}
@@ -0,0 +1,444 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+import io.gatling.internal.quicklens._
+
+import java.io.IOException
+import java.net.{InetSocketAddress, StandardSocketOptions}
+import java.nio.ByteBuffer
+import java.nio.channels.{ClosedChannelException, SelectionKey, Selector, ServerSocketChannel, SocketChannel}
+import java.util.concurrent.atomic.{AtomicInteger, LongAdder}
+import java.util.concurrent.{ConcurrentLinkedQueue, ThreadLocalRandom, TimeUnit}
+import java.util.{Arrays, Objects}
+import scala.util.control.NonFatal
+
+/**
+ * A scripted response of a [[TcpStubServer]], given to the requests its matcher accepts.
+ *
+ * @param matcher Tells whether the payload of a request is answered by this rule.
+ * @param response The response to the matching requests.
+ */
+final case class TcpStubRule(matcher: java.util.function.Predicate[Array[Byte]], response: TcpStubResponse)
+
+/** Builder class for creating stub servers.
+ *
+ * A stub server stands for the system under test on the load generator itself, to check the
+ * plugin's behavior and throughput end-to-end against a server whose latency and faults are known.
+ * Requests are split with a [[FrameCodec]], or taken as the bytes of each read without one, and
+ * answered by the first rule matching their payload.
+ */
+case class TcpStubServerBuilder(
+                                 host: String = "localhost",
+                                 port: Int = 0,
+                                 workers: Int = Runtime.getRuntime.availableProcessors,
+                                 frameCodec: Option[FrameCodec] = None,
+                                 maxFrameLength: Int = TcpProtocol.DefaultMaxResponseSize,
+                                 rules: List[TcpStubRule] = Nil,
+                                 defaultResponse: TcpStubResponse = TcpStubResponse.echo()
+                               ) {
+
+  /** Sets the address the server listens on.
+   *
+   * @param host The host name or IP address, localhost by default
+   * @return This builder instance for method chaining
+   */
+  def host(host: String): TcpStubServerBuilder = {
+    Objects.requireNonNull(host, "Host cannot be null")
+    this.modify(_.host).setTo(host)
+  }
+
+  /** Sets the port the server listens on.
+   *
+   * @param port The port number, 0 for any free port
+   * @return This builder instance for method chaining
+   */
+  def port(port: Int): TcpStubServerBuilder = {
+    if (port < 0 || port > 65535) {
+      throw new IllegalArgumentException(s"Port number must be between 0 and 65535, got: $port")
+    }
+    this.modify(_.port).setTo(port)
+  }
+
+  /** Sets the number of worker threads serving the connections, each with a selector of its own.
+   *
+   * @param workers The number of threads, the number of processors by default
+   * @return This builder instance for method chaining
+   */
+  def workers(workers: Int): TcpStubServerBuilder = {
+    if (workers <= 0) {
+      throw new IllegalArgumentException(s"Workers must be positive, got: $workers")
+    }
+    this.modify(_.workers).setTo(workers)
+  }
+
+  /** Splits requests and frames answers with a codec.
+   *
+   * @param frameCodec The codec of the frames
+   * @return This builder instance for method chaining
+   */
+  def frameCodec(frameCodec: FrameCodec): TcpStubServerBuilder = {
+    Objects.requireNonNull(frameCodec, "Frame codec cannot be null")
+    this.modify(_.frameCodec).setTo(Some(frameCodec))
+  }
+
+  /** Sets the largest request payload, larger ones closing their connection.
+   *
+   * @param maxFrameLength The limit in bytes, 1MB by default
+   * @return This builder instance for method chaining
+   */
+  def maxFrameLength(maxFrameLength: Int): TcpStubServerBuilder = {
+    if (maxFrameLength <= 0) {
+      throw new IllegalArgumentException(s"Max frame length must be positive, got: $maxFrameLength")
+    }
+    this.modify(_.maxFrameLength).setTo(maxFrameLength)
+  }
+
+  /** Answers the requests whose payload starts with a prefix.
+   *
+   * @param prefix The first bytes of the payload
+   * @param response The response to the matching requests
+   * @return This builder instance for method chaining
+   */
+  def when(prefix: Array[Byte], response: TcpStubResponse): TcpStubServerBuilder = {
+    Objects.requireNonNull(prefix, "Prefix cannot be null")
+    val expected = prefix.clone()
+    when((payload: Array[Byte]) =>
+      payload.length >= expected.length && Arrays.equals(payload, 0, expected.length, expected, 0, expected.length), response)
+  }
+
+  /** Answers the requests whose payload a matcher accepts.
+   *
+   * Rules are tried in the order they were added, before the default response.
+   *
+   * @param matcher Tells whether a payload is answered by the response
+   * @param response The response to the matching requests
+   * @return This builder instance for method chaining
+   */
+  def when(matcher: java.util.function.Predicate[Array[Byte]], response: TcpStubResponse): TcpStubServerBuilder = {
+    Objects.requireNonNull(matcher, "Matcher cannot be null")
+    Objects.requireNonNull(response, "Response cannot be null")
+    this.modify(_.rules).using(_ :+ TcpStubRule(matcher, response))
+  }
+
+  /** Sets the response to the requests no rule matches, an echo by default.
+   *
+   * @param response The default response
+   * @return This builder instance for method chaining
+   */
+  def otherwise(response: TcpStubResponse): TcpStubServerBuilder = {
+    Objects.requireNonNull(response, "Response cannot be null")
+    this.modify(_.defaultResponse).setTo(response)
+  }
+
+  /** Starts a server with the current settings.
+   *
+   * @return The running server, to be stopped once done
+   */
+  def start(): TcpStubServer = new TcpStubServer(this)
+}
+
+/** Companion object providing factory methods for creating stub server builders.
+ */
+object TcpStubServerBuilder {
+
+  /** Creates a new stub server builder echoing every request, with default settings.
+   *
+   * @return A new TcpStubServerBuilder instance
+   */
+  def stubServer(): TcpStubServerBuilder = TcpStubServerBuilder()
+
+  /** Creates a new stub server builder framing requests and answers with a codec.
+   *
+   * @param frameCodec The codec of the frames
+   * @return A new TcpStubServerBuilder instance
+   */
+  def stubServer(frameCodec: FrameCodec): TcpStubServerBuilder = TcpStubServerBuilder().frameCodec(frameCodec)
+}
+
+/**
+ * A non-blocking TCP server answering requests as scripted by a [[TcpStubServerBuilder]].
+ *
+ * An acceptor thread hands the connections over to the workers in turn. Each worker serves its
+ * connections with a selector, and keeps the answers waiting for their latency or their next chunk
+ * in a timer queue, so that slow answers don't hold a thread and thousands of connections can be
+ * served on a few threads. The received bytes and frames are counted with `LongAdder`s.
+ *
+ * @param settings The settings of the server.
+ */
+final class TcpStubServer private[tcp] (settings: TcpStubServerBuilder) extends AutoCloseable with StrictLogging {
+
+  private val received = new LongAdder
+  private val sent = new LongAdder
+  private val frames = new LongAdder
+  private val accepted = new LongAdder
+  private val dropped = new LongAdder
+
+  private val serverChannel = ServerSocketChannel.open()
+  try {
+    serverChannel.bind(new InetSocketAddress(settings.host, settings.port), TcpStubServer.Backlog)
+  } catch {
+    case e: IOException =>
+      serverChannel.close()
+      throw new IOException(s"Could not listen on ${settings.host}:${settings.port}", e)
+  }
+
+  @volatile private var running = true
+  private val workers = Array.tabulate(settings.workers)(i => new Worker(i))
+  private val acceptor = new Thread(() => accept(), "tcp-stub-acceptor")
+  acceptor.setDaemon(true)
+  acceptor.start()
+  logger.info(s"Stub server listening on ${serverChannel.getLocalAddress} with ${workers.length} workers")
+
+  /** Returns the port the server listens on.
+   *
+   * @return The local port
+   */
+  def port: Int = serverChannel.socket.getLocalPort
+
+  /** Returns the number of connections accepted so far.
+   *
+   * @return The connection count
+   */
+  def connectionsAccepted: Long = accepted.sum()
+
+  /** Returns the number of connections closed instead of answering, by drops, truncations and
+   * failures to answer, such as a rule throwing an exception.
+   *
+   * @return The connection count
+   */
+  def connectionsDropped: Long = dropped.sum()
+
+  /** Returns the number of bytes received so far, frame headers included.
+   *
+   * @return The byte count
+   */
+  def bytesReceived: Long = received.sum()
+
+  /** Returns the number of bytes written so far, frame headers included.
+   *
+   * @return The byte count
+   */
+  def bytesSent: Long = sent.sum()
+
+  /** Returns the number of requests received so far: frames with a codec, reads without.
+   *
+   * @return The frame count
+   */
+  def framesReceived: Long = frames.sum()
+
+  /** Stops the server and closes all the connections. */
+  def stop(): Unit = if (running) {
+    running = false
+    serverChannel.close()
+    workers.foreach(_.selector.wakeup())
+    (acceptor +: workers.map(_.thread)).foreach(_.join(TimeUnit.SECONDS.toMillis(1)))
+  }
+
+  override def close(): Unit = stop()
+
+  private def accept(): Unit = {
+    val next = new AtomicInteger
+    try {
+      while (running) {
+        val channel = serverChannel.accept()
+        accepted.increment()
+        workers(next.getAndIncrement() % workers.length).register(channel)
+      }
+    } catch {
+      case _: ClosedChannelException => // Stopped
+      case NonFatal(e) => logger.error(s"Stub server stopped accepting connections: ${e.getMessage}", e)
+    }
+  }
+
+  /** Returns the response of the first rule matching a payload, or the default one. */
+  private def responseTo(payload: Array[Byte]): TcpStubResponse =
+    settings.rules.find(_.matcher.test(payload)).fold(settings.defaultResponse)(_.response)
+
+  /** A chunk of an answer, written once due. */
+  private final class Pending(val due: Long, val buffer: ByteBuffer, val closeAfter: Boolean)
+
+  /** A connection of a worker, with the bytes of its next request and its answers to write. */
+  private final class Connection(val channel: SocketChannel, val key: SelectionKey, worker: Worker) {
+    private var in = ByteBuffer.allocate(TcpStubServer.ReadBufferSize)
+    private val decoder = settings.frameCodec.map(_.newDecoder(settings.maxFrameLength))
+    private val pending = new java.util.ArrayDeque[Pending]
+    private var lastDue = 0L
+
+    def read(): Unit = {
+      val n = channel.read(in)
+      if (n == -1) {
+        close()
+      } else if (n > 0) {
+        received.add(n)
+        in.flip()
+        decoder match {
+          case Some(decoder) =>
+            var payload = decoder.decode(in)
+            while (payload != null && channel.isOpen) {
+              answer(payload)
+              payload = decoder.decode(in)
+            }
+          case None =>
+            val payload = new Array[Byte](in.remaining)
+            in.get(payload)
+            answer(payload)
+        }
+        in.compact()
+        if (!in.hasRemaining) {
+          in = ByteBuffer.allocate(in.capacity * 2).put(in.flip())
+        }
+      }
+    }
+
+    private def answer(payload: Array[Byte]): Unit = {
+      frames.increment()
+      val response = responseTo(payload)
+      val random = ThreadLocalRandom.current()
+      if (response.dropRate > 0.0 && random.nextDouble() < response.dropRate) {
+        dropped.increment()
+        close()
+      } else {
+        val answer = response.answer(payload)
+        if (answer != null) {
+          val framed = settings.frameCodec.fold(answer)(_.encode(answer))
+          val length = if (response.truncateAt >= 0) math.min(response.truncateAt, framed.length) else framed.length
+          val closeAfter = response.closeAfter || response.truncateAt >= 0
+          val chunkSize = if (response.chunkSize > 0) response.chunkSize else length
+          lastDue = math.max(lastDue, System.nanoTime() + response.latency.nextNanos(random))
+          var offset = 0
+          do {
+            val end = math.min(offset + chunkSize, length)
+            if (offset > 0) lastDue += TimeUnit.MILLISECONDS.toNanos(response.chunkDelay.toLong)
+            pending.add(new Pending(lastDue, ByteBuffer.wrap(framed, offset, end - offset), closeAfter && end == length))
+            offset = end
+          } while (offset < length)
+          flush()
+        }
+      }
+    }
+
+    /** Writes the chunks that are due, until one is not yet or the socket is full. */
+    def flush(): Unit = {
+      val now = System.nanoTime()
+      while (channel.isOpen && !pending.isEmpty) {
+        val head = pending.peek()
+        if (head.due > now) {
+          worker.schedule(head.due, this)
+          key.interestOps(SelectionKey.OP_READ)
+          return
+        }
+        sent.add(channel.write(head.buffer))
+        if (head.buffer.hasRemaining) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE)
+          return
+        }
+        pending.poll()
+        if (head.closeAfter) {
+          dropped.increment()
+          close()
+        }
+      }
+      if (key.isValid) key.interestOps(SelectionKey.OP_READ)
+    }
+
+    def close(): Unit = {
+      key.cancel()
+      worker.closing = true
+      try channel.close() catch {
+        case _: IOException => // Already closed
+      }
+    }
+  }
+
+  /** A worker thread serving its connections with a selector, and writing the answers due on time. */
+  private final class Worker(index: Int) {
+    val selector: Selector = Selector.open()
+    private val registrations = new ConcurrentLinkedQueue[SocketChannel]
+    private val timers = new java.util.PriorityQueue[(Long, Connection)]((a: (Long, Connection), b: (Long, Connection)) => java.lang.Long.compare(a._1, b._1))
+    /** Whether connections were closed since the last select, which only releases their sockets then. */
+    var closing = false
+    val thread = new Thread(() => run(), s"tcp-stub-worker-$index")
+    thread.setDaemon(true)
+    thread.start()
+
+    def register(channel: SocketChannel): Unit = {
+      registrations.add(channel)
+      selector.wakeup()
+    }
+
+    def schedule(due: Long, connection: Connection): Unit = timers.add((due, connection))
+
+    private def run(): Unit =
+      try {
+        while (running) {
+          val timeout = if (timers.isEmpty) 0L else math.max(1L, TimeUnit.NANOSECONDS.toMillis(timers.peek()._1 - System.nanoTime()) + 1)
+          selector.select(timeout)
+          registerNew()
+          val keys = selector.selectedKeys.iterator()
+          while (keys.hasNext) {
+            val key = keys.next()
+            keys.remove()
+            val connection = key.attachment.asInstanceOf[Connection]
+            try {
+              if (key.isReadable) connection.read()
+              if (key.isValid && key.isWritable) connection.flush()
+            } catch {
+              case _: IOException => connection.close()
+              case NonFatal(e)    => fail(connection, e)
+            }
+          }
+          val now = System.nanoTime()
+          while (!timers.isEmpty && timers.peek()._1 <= now) {
+            val connection = timers.poll()._2
+            try connection.flush() catch {
+              case _: IOException => connection.close()
+              case NonFatal(e)    => fail(connection, e)
+            }
+          }
+          if (closing) {
+            closing = false
+            selector.selectNow()
+          }
+        }
+      } catch {
+        case NonFatal(e) => logger.error(s"Stub server worker $index failed: ${e.getMessage}", e)
+      } finally {
+        selector.keys.forEach(_.channel.close())
+        selector.close()
+        registrations.forEach(_.close())
+      }
+
+    /**
+     * Closes a connection that failed to answer, such as with a throwing rule or an answer its codec
+     * can't encode, leaving the other connections of the worker served.
+     */
+    private def fail(connection: Connection, e: Throwable): Unit = {
+      logger.error(s"Stub server worker $index failed to answer, closing the connection: ${e.getMessage}", e)
+      dropped.increment()
+      connection.close()
+    }
+
+    private def registerNew(): Unit = {
+      var channel = registrations.poll()
+      while (channel != null) {
+        try {
+          channel.configureBlocking(false)
+          channel.setOption[java.lang.Boolean](StandardSocketOptions.TCP_NODELAY, true)
+          val key = channel.register(selector, SelectionKey.OP_READ)
+          key.attach(new Connection(channel, key, this))
+        } catch {
+          case _: IOException => channel.close()
+        }
+        channel = registrations.poll()
+      }
+    }
+  }
+}
+
+private[tcp] object TcpStubServer {
+  /** Length of the queue of connections waiting to be accepted. */
+  val Backlog: Int = 1024
+
+  /** Initial size of the buffer of each connection, doubled for larger requests. */
+  val ReadBufferSize: Int = 16 * 1024
+}
@@ -0,0 +1,125 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.stats.{KO, OK}
+import io.gatling.commons.util.Clock
+import io.gatling.commons.validation.{Failure => ValidationFailure, Success => ValidationSuccess}
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.Channel
+
+import java.util.concurrent.atomic.LongAdder
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Action subscribing to the frames the server pushes on the connection kept in the session, and
+ * passing the session to the next action at once: each frame is then reported from the channel's
+ * event loop, without a virtual user waiting for it.
+ *
+ * @param requestName Name under which the frames are reported.
+ * @param frameCodec Splits the bytes pushed by the server into frames.
+ * @param maxFrameSize The largest frame accepted, larger ones close the connection.
+ * @param filter Tells whether a frame belongs to the subscription, others being left to receives.
+ * @param sentMillis Extracts the epoch milliseconds at which the server sent a frame, to report its latency.
+ * @param validators List of functions to validate each frame, run before the checks.
+ * @param checks Checks of each frame, whose captures are dropped since the virtual user has moved on.
+ * @param connectionKey Key of the connection in the session.
+ * @param components TCP protocol components.
+ * @param statsEngine Gatling stats engine for logging the frames.
+ * @param clock Clock instance for timing the frames.
+ * @param next The next action to execute in the scenario.
+ */
+case class TcpSubscribeAction(
+                               requestName: String,
+                               frameCodec: FrameCodec,
+                               maxFrameSize: Int = TcpProtocol.DefaultMaxResponseSize,
+                               filter: Array[Byte] => Boolean = _ => true,
+                               sentMillis: Option[Array[Byte] => Long] = None,
+                               validators: List[Array[Byte] => Boolean] = List.empty,
+                               checks: List[TcpCheck] = List.empty,
+                               connectionKey: String = "default",
+                               components: TcpComponents,
+                               statsEngine: StatsEngine,
+                               clock: Clock,
+                               next: Action
+                             ) extends Action {
+
+  override def name: String = requestName
+
+  private val connectionAttribute = TcpRequestAction.connectionAttribute(connectionKey)
+
+  /** The validators and checks, run in order up to the first failure. */
+  private val allChecks: List[TcpCheck] = validators.map(TcpCheck.validator) ++ checks
+
+  override def execute(session: Session): Unit =
+    session(connectionAttribute).asOption[Channel].filter(_.isActive) match {
+      case Some(channel) =>
+        val subscription = new TcpSubscription(requestName, session, filter, sentMillis, allChecks, statsEngine, clock)
+        val task: Runnable = () => NettyTcpClient.responseHandler(channel).subscribe(frameCodec.newDecoder(maxFrameSize), subscription)
+        if (channel.eventLoop.inEventLoop) task.run() else channel.eventLoop.execute(task)
+        logger.debug(s"Subscribed to the frames pushed on connection $connectionKey of user ${session.userId}")
+        next ! session
+      case None =>
+        val now = clock.nowMillis
+        val message = s"No open connection $connectionKey to subscribe to"
+        logger.warn(s"[${session.userId}] $message")
+        statsEngine.logResponse(session.scenario, session.groups, requestName, now, now, KO, None, Some(message))
+        next ! session.markAsFailed
+    }
+}
+
+/**
+ * Reports the frames pushed by the server on a connection, each as a response named after the
+ * subscription. A frame starts when the server sent it if its payload tells, and otherwise when it
+ * arrived, so that it's only counted.
+ *
+ * @param requestName Name under which the frames are reported.
+ * @param session The session of the virtual user that subscribed, for its scenario and groups.
+ * @param filter Tells whether a frame belongs to the subscription.
+ * @param sentMillis Extracts the epoch milliseconds at which the server sent a frame.
+ * @param checks Checks of each frame, run in order up to the first failure.
+ * @param statsEngine Gatling stats engine for logging the frames.
+ * @param clock Clock instance for timing the frames.
+ */
+private[tcp] final class TcpSubscription(
+                                          requestName: String,
+                                          session: Session,
+                                          filter: Array[Byte] => Boolean,
+                                          sentMillis: Option[Array[Byte] => Long],
+                                          checks: List[TcpCheck],
+                                          statsEngine: StatsEngine,
+                                          clock: Clock
+                                        ) {
+  private val received = new LongAdder
+
+  /** Returns the number of frames reported. */
+  def count: Long = received.sum
+
+  /** Tells whether a frame belongs to the subscription, a failing filter rejecting it. */
+  def accepts(frame: Array[Byte]): Boolean = Try(filter(frame)).getOrElse(false)
+
+  /** Checks a frame and logs it to the stats engine. */
+  def report(frame: Array[Byte]): Unit = {
+    received.increment()
+    val end = clock.nowMillis
+    val start = sentMillis.fold[Try[Long]](Success(end))(f => Try(f(frame)))
+    val error = start match {
+      case Failure(e) => Some(s"Failed to extract the sent time: ${e.getMessage}")
+      case Success(_) =>
+        TcpCheck.checkAll(checks, new TcpResponse(frame), session) match {
+          case ValidationSuccess(_)       => None
+          case ValidationFailure(message) => Some(message)
+        }
+    }
+    statsEngine.logResponse(
+      scenario = session.scenario,
+      groups = session.groups,
+      requestName = requestName,
+      startTimestamp = math.min(start.getOrElse(end), end),
+      endTimestamp = end,
+      status = if (error.isEmpty) OK else KO,
+      responseCode = None,
+      message = error
+    )
+  }
+}
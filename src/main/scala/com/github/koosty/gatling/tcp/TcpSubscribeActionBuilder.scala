@@ -0,0 +1,141 @@
+package com.github.koosty.gatling.tcp
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.action.builder.ActionBuilder
+import io.gatling.core.stats.StatsEngine
+import io.gatling.core.structure.ScenarioContext
+import io.gatling.internal.quicklens._
+
+import java.util.function.Function
+import scala.annotation.varargs
+import scala.jdk.CollectionConverters._
+
+/**
+ * Builder for actions subscribing to the frames pushed by the server on a connection kept in the
+ * session by an earlier request. Requires the non-blocking engine, whose event loops report the
+ * frames in the background.
+ *
+ * @param requestName Name under which the frames are reported.
+ * @param addLengthHeader Whether frames are split by a length header.
+ * @param lengthHeaderType Type of length header to use.
+ * @param frameCodec Custom framing, taking precedence over the length header.
+ * @param filter Tells whether a frame belongs to the subscription.
+ * @param sentMillis Extracts the epoch milliseconds at which the server sent a frame.
+ * @param validators List of Java functions to validate each frame, run before the checks.
+ * @param checks Checks of each frame.
+ * @param connectionKey Key to identify the connection in the session.
+ * @param maxResponseSize The largest frame accepted, overriding the protocol limit.
+ */
+case class TcpSubscribeActionBuilder(
+                                      requestName: String,
+                                      addLengthHeader: Boolean = false,
+                                      lengthHeaderType: LengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+                                      frameCodec: Option[FrameCodec] = None,
+                                      filter: Option[Function[Array[Byte], java.lang.Boolean]] = None,
+                                      sentMillis: Option[Function[Array[Byte], java.lang.Long]] = None,
+                                      validators: java.util.List[Function[Array[Byte], java.lang.Boolean]] = new java.util.ArrayList(),
+                                      checks: List[TcpCheck] = List.empty,
+                                      connectionKey: String = "default",
+                                      maxResponseSize: Option[Int] = None
+                                    ) extends ActionBuilder {
+
+  def addLengthHeader(addLengthHeader: Boolean): TcpSubscribeActionBuilder = {
+    this.modify(_.addLengthHeader).setTo(addLengthHeader)
+  }
+  def lengthHeaderType(lengthHeaderType: LengthHeaderType): TcpSubscribeActionBuilder = {
+    this.modify(_.lengthHeaderType).setTo(lengthHeaderType)
+  }
+  def frameCodec(frameCodec: FrameCodec): TcpSubscribeActionBuilder = {
+    this.modify(_.frameCodec).setTo(Some(frameCodec))
+  }
+  def validators(validators: java.util.List[Function[Array[Byte], java.lang.Boolean]]): TcpSubscribeActionBuilder = {
+    this.modify(_.validators).setTo(validators)
+  }
+  /**
+   * Adds checks of the frames.
+   *
+   * @param checks The checks, run in order after the previous ones.
+   */
+  @varargs
+  def check(checks: TcpCheck*): TcpSubscribeActionBuilder = {
+    this.modify(_.checks).using(_ ++ checks)
+  }
+  def connectionKey(connectionKey: String): TcpSubscribeActionBuilder = {
+    this.modify(_.connectionKey).setTo(connectionKey)
+  }
+
+  /**
+   * Restricts the subscription to some of the frames, the others being left to await actions.
+   *
+   * @param filter Tells whether a frame belongs to the subscription.
+   */
+  def filter(filter: Function[Array[Byte], java.lang.Boolean]): TcpSubscribeActionBuilder = {
+    this.modify(_.filter).setTo(Some(filter))
+  }
+
+  /**
+   * Reports the latency of each frame from the time the server sent it, read from its payload.
+   * Without it, frames are reported with a zero response time, only counting them.
+   *
+   * @param sentMillis Extracts the epoch milliseconds at which the server sent a frame.
+   */
+  def sentMillis(sentMillis: Function[Array[Byte], java.lang.Long]): TcpSubscribeActionBuilder = {
+    this.modify(_.sentMillis).setTo(Some(sentMillis))
+  }
+
+  /**
+   * Sets the largest frame accepted, overriding the protocol limit.
+   *
+   * @param maxResponseSize The maximum size in bytes, must be positive.
+   */
+  def maxResponseSize(maxResponseSize: Int): TcpSubscribeActionBuilder = {
+    if (maxResponseSize < 1) {
+      throw new IllegalArgumentException(s"Max response size must be positive, got: $maxResponseSize")
+    }
+    this.modify(_.maxResponseSize).setTo(Some(maxResponseSize))
+  }
+
+  override def build(ctx: ScenarioContext, next: Action): Action = {
+    val components = ctx.protocolComponentsRegistry
+      .components(TcpProtocol.TcpProtocolKey)
+      .asInstanceOf[TcpComponents]
+    newAction(components, ctx.coreComponents.statsEngine, ctx.coreComponents.clock, next)
+  }
+
+  /**
+   * Creates the action with the given components, also used to subscribe outside of a scenario.
+   */
+  private[tcp] def newAction(components: TcpComponents, statsEngine: StatsEngine, clock: Clock, next: Action): TcpSubscribeAction = {
+    val codec = frameCodec.orElse(Option.when(addLengthHeader)(lengthHeaderType.codec)).getOrElse {
+      throw new IllegalArgumentException(s"Subscription $requestName requires a length header or a frame codec to split frames")
+    }
+    if (!components.protocol.nonBlocking) {
+      throw new IllegalArgumentException(s"Subscription $requestName requires the non-blocking engine")
+    }
+    TcpSubscribeAction(
+      requestName,
+      codec,
+      maxResponseSize.getOrElse(components.protocol.maxResponseSize),
+      filter.fold[Array[Byte] => Boolean](_ => true)(f => frame => f.apply(frame).booleanValue),
+      sentMillis.map(f => frame => f.apply(frame).longValue),
+      validators.asScala.toList.map(validator => (frame: Array[Byte]) => validator.apply(frame).booleanValue),
+      checks,
+      connectionKey,
+      components,
+      statsEngine,
+      clock,
+      next
+    )
+  }
+}
+
+object TcpSubscribeActionBuilder {
+  /**
+   * Creates an action subscribing to the frames pushed by the server.
+   *
+   * @param requestName Name under which the frames are reported.
+   */
+  def subscribe(requestName: String): TcpSubscribeActionBuilder = new TcpSubscribeActionBuilder(requestName)
+}
@@ -0,0 +1,123 @@
+package com.github.koosty.gatling.tcp
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Phases of a request, measured with `System.nanoTime` from the start of the request.
+ *
+ * Gatling records epoch milliseconds, so the phases are reported relative to the clock reading
+ * taken at the start: durations keep their nanosecond precision until they are converted, instead
+ * of being the difference of two millisecond readings. A request goes through its phases on a
+ * single thread at a time, each phase being handed over through the connection or the event loop.
+ *
+ * @param startMillis The clock reading at the start of the request, in epoch milliseconds.
+ * @param userId The virtual user sending the request.
+ */
+private[tcp] final class TcpTimings(val startMillis: Long, userId: Long) {
+  private val startNanos = System.nanoTime()
+  private var connectedNanos = 0L
+  private var handshakeStartNanos = 0L
+  private var handshakeEndNanos = 0L
+  private var writtenNanos = 0L
+  private var firstByteNanos = 0L
+  private var endNanos = 0L
+
+  /**
+   * Returns the identifier of the request in the logs, only built when a message is actually logged.
+   */
+  def requestId: String = s"$userId-$startNanos"
+
+  /** Whether a connection was opened for this request, rather than reused. */
+  var connectionOpened: Boolean = false
+
+  /** The endpoint the request was sent to, null until chosen. */
+  var endpoint: TcpEndpointBalancer.Endpoint = _
+
+  /**
+   * Records the TLS handshake of the connection opened for the request, part of its connection.
+   *
+   * @param startNanos The `System.nanoTime` reading at the start of the handshake.
+   * @param endNanos The `System.nanoTime` reading at its end.
+   */
+  def handshake(startNanos: Long, endNanos: Long): Unit = {
+    handshakeStartNanos = startNanos
+    handshakeEndNanos = endNanos
+  }
+
+  /** Marks the connection as ready, either opened or reused. */
+  def connected(): Unit = connectedNanos = System.nanoTime()
+
+  /** Marks the request as written to the connection. */
+  def written(): Unit = writtenNanos = System.nanoTime()
+
+  /**
+   * Marks the arrival of the first byte of the response, unless already marked.
+   *
+   * @param nanos The `System.nanoTime` reading at the arrival.
+   */
+  def firstByte(nanos: Long = System.nanoTime()): Unit =
+    if (firstByteNanos == 0L) {
+      firstByteNanos = nanos
+    }
+
+  /**
+   * Marks the response as complete.
+   *
+   * @param idleNanos The time waited after the last byte of the response to detect an idle gap,
+   *                  which isn't part of the response time.
+   */
+  def ended(idleNanos: Long = 0L): Unit = endNanos = System.nanoTime() - idleNanos
+
+  /** Whether the request was written on a connection that it didn't open. */
+  def reusedConnection: Boolean = connectedNanos != 0L && !connectionOpened
+
+  /** Whether any byte of the response arrived. */
+  def responseStarted: Boolean = firstByteNanos != 0L
+
+  /** Returns the end of the response in epoch milliseconds, the current time if not ended. */
+  def endMillis: Long = toMillis(if (endNanos == 0L) System.nanoTime() else endNanos)
+
+  /** Returns the time of a phase mark in epoch milliseconds. */
+  private def toMillis(nanos: Long): Long = startMillis + TimeUnit.NANOSECONDS.toMillis(nanos - startNanos)
+
+  /**
+   * Returns the phases that completed, as (name, start, end) in epoch milliseconds: the connection
+   * when one was opened, its TLS handshake, the write of the request and the wait for the first
+   * byte of the response.
+   */
+  def phases: List[(String, Long, Long)] = {
+    val connect = Option.when(connectionOpened && connectedNanos != 0L)(("connect", startNanos, connectedNanos))
+    val handshake = Option.when(connectionOpened && handshakeEndNanos != 0L)(("handshake", handshakeStartNanos, handshakeEndNanos))
+    val writeStart = if (connectedNanos != 0L) connectedNanos else startNanos
+    val write = Option.when(writtenNanos != 0L)(("write", writeStart, writtenNanos))
+    val firstByte = Option.when(writtenNanos != 0L && firstByteNanos != 0L)(("firstByte", writtenNanos, firstByteNanos))
+    List(connect, handshake, write, firstByte).flatten.map { case (name, from, to) => (name, toMillis(from), toMillis(to)) }
+  }
+
+  /**
+   * Returns the durations of the phases in microseconds, -1 for the phases that didn't happen.
+   */
+  def breakdown: TcpTimingBreakdown = {
+    def micros(from: Long, to: Long): Long = if (from == 0L || to == 0L) -1L else TimeUnit.NANOSECONDS.toMicros(to - from)
+    val writeStart = if (connectedNanos != 0L) connectedNanos else startNanos
+    TcpTimingBreakdown(
+      connectMicros = if (connectionOpened) micros(startNanos, connectedNanos) else -1L,
+      handshakeMicros = if (connectionOpened) micros(handshakeStartNanos, handshakeEndNanos) else -1L,
+      writeMicros = micros(writeStart, writtenNanos),
+      firstByteMicros = micros(writtenNanos, firstByteNanos),
+      responseMicros = micros(startNanos, endNanos)
+    )
+  }
+}
+
+/**
+ * Durations of the phases of a request in microseconds, stored in the session as
+ * `<requestName>.timings` when the timing breakdown is enabled. Phases that didn't happen are -1.
+ *
+ * @param connectMicros Time to open the connection, -1 when an open connection was reused.
+ * @param handshakeMicros Time of the TLS handshake, part of the connection, -1 without TLS or connection.
+ * @param writeMicros Time to write the request, once the connection was ready.
+ * @param firstByteMicros Time from the end of the write to the first byte of the response.
+ * @param responseMicros Time from the start of the request to the complete response.
+ */
+final case class TcpTimingBreakdown(connectMicros: Long, handshakeMicros: Long, writeMicros: Long, firstByteMicros: Long, responseMicros: Long)
@@ -0,0 +1,141 @@
+package com.github.koosty.gatling.tcp
+
+import java.io.{FileInputStream, InputStream}
+import java.net.{InetSocketAddress, Socket}
+import java.nio.file.{Files, Paths}
+import java.security.KeyStore
+import java.security.cert.X509Certificate
+import javax.net.ssl._
+import scala.jdk.CollectionConverters._
+import scala.util.Using
+
+/** TLS settings of a protocol.
+ *
+ * @param enabled Whether connections are secured with TLS
+ * @param trustStore The store of the certificates trusted to identify servers, the JDK's default when absent
+ * @param keyStore The store of the client certificate, for servers requiring client authentication
+ * @param trustAll Whether any server certificate is trusted, without verifying it nor the hostname
+ * @param protocols The enabled protocols, such as TLSv1.3, the JDK's default when empty
+ * @param cipherSuites The enabled cipher suites, the JDK's default when empty
+ * @param sniHostName The server name sent in the handshake, the endpoint host when absent
+ * @param hostnameVerification Whether the server certificate must match the endpoint host
+ */
+case class TcpTlsSettings(
+                           enabled: Boolean = false,
+                           trustStore: Option[TcpKeyStore] = None,
+                           keyStore: Option[TcpKeyStore] = None,
+                           trustAll: Boolean = false,
+                           protocols: List[String] = Nil,
+                           cipherSuites: List[String] = Nil,
+                           sniHostName: Option[String] = None,
+                           hostnameVerification: Boolean = true
+                         )
+
+/** A key or trust store.
+ *
+ * @param path The path of the store file, or of a classpath resource
+ * @param password The password of the store and of its keys
+ * @param storeType The type of the store, such as PKCS12 or JKS
+ */
+case class TcpKeyStore(path: String, password: String, storeType: String = "PKCS12") {
+
+  /** Loads the store from the file, or from the classpath when there is no such file. */
+  private[tcp] def load(): KeyStore = {
+    val keyStore = KeyStore.getInstance(storeType)
+    Using.resource(open())(in => keyStore.load(in, password.toCharArray))
+    keyStore
+  }
+
+  private def open(): InputStream =
+    if (Files.isRegularFile(Paths.get(path))) {
+      new FileInputStream(path)
+    } else {
+      Option(getClass.getClassLoader.getResourceAsStream(path)).getOrElse {
+        throw new IllegalArgumentException(s"Key store $path is neither a file nor a classpath resource")
+      }
+    }
+}
+
+/**
+ * The TLS context of a protocol, built once and shared by all the connections of the simulation.
+ *
+ * Sharing the `SSLContext` shares its client session cache: connections to an endpoint that was
+ * already connected to resume its session, with a session ticket or a session id, instead of
+ * running a full handshake.
+ *
+ * @param settings The TLS settings, enabled.
+ */
+private[tcp] final class TcpTls(settings: TcpTlsSettings) {
+
+  val sslContext: SSLContext = {
+    val keyManagers = settings.keyStore.map { store =>
+      val factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm)
+      factory.init(store.load(), store.password.toCharArray)
+      factory.getKeyManagers
+    }
+    val trustManagers =
+      if (settings.trustAll) {
+        Some(Array[TrustManager](TcpTls.TrustAllManager))
+      } else {
+        settings.trustStore.map { store =>
+          val factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm)
+          factory.init(store.load())
+          factory.getTrustManagers
+        }
+      }
+    val context = SSLContext.getInstance("TLS")
+    context.init(keyManagers.orNull, trustManagers.orNull, null)
+    context
+  }
+
+  /** The parameters of the connections, copied into each of them. */
+  private val parameters: SSLParameters = {
+    val parameters = sslContext.getDefaultSSLParameters
+    if (settings.protocols.nonEmpty) parameters.setProtocols(settings.protocols.toArray)
+    if (settings.cipherSuites.nonEmpty) parameters.setCipherSuites(settings.cipherSuites.toArray)
+    settings.sniHostName.foreach(name => parameters.setServerNames(List[SNIServerName](new SNIHostName(name)).asJava))
+    if (settings.hostnameVerification && !settings.trustAll) {
+      parameters.setEndpointIdentificationAlgorithm("HTTPS")
+    }
+    parameters
+  }
+
+  /**
+   * Secures a connected socket, running the handshake.
+   *
+   * @param socket The connected socket, closed with the returned one.
+   * @param address The address the socket is connected to, identifying the session to resume.
+   * @return The secured socket.
+   */
+  def secure(socket: Socket, address: InetSocketAddress): SSLSocket = {
+    val secured = sslContext.getSocketFactory.createSocket(socket, address.getHostString, address.getPort, true).asInstanceOf[SSLSocket]
+    secured.setSSLParameters(parameters)
+    secured.startHandshake()
+    secured
+  }
+
+  /**
+   * Creates the engine of a non-blocking connection to an address.
+   *
+   * @param address The address to connect to, identifying the session to resume.
+   */
+  def newEngine(address: InetSocketAddress): SSLEngine = {
+    val engine = sslContext.createSSLEngine(address.getHostString, address.getPort)
+    engine.setUseClientMode(true)
+    engine.setSSLParameters(parameters)
+    engine
+  }
+}
+
+private[tcp] object TcpTls {
+  /** Trusts any server, for test servers with self-signed certificates. */
+  private object TrustAllManager extends X509ExtendedTrustManager {
+    override def checkClientTrusted(chain: Array[X509Certificate], authType: String): Unit = ()
+    override def checkServerTrusted(chain: Array[X509Certificate], authType: String): Unit = ()
+    override def checkClientTrusted(chain: Array[X509Certificate], authType: String, socket: Socket): Unit = ()
+    override def checkServerTrusted(chain: Array[X509Certificate], authType: String, socket: Socket): Unit = ()
+    override def checkClientTrusted(chain: Array[X509Certificate], authType: String, engine: SSLEngine): Unit = ()
+    override def checkServerTrusted(chain: Array[X509Certificate], authType: String, engine: SSLEngine): Unit = ()
+    override def getAcceptedIssuers: Array[X509Certificate] = Array.empty
+  }
+}
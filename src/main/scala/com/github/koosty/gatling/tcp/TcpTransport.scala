@@ -0,0 +1,77 @@
+package com.github.koosty.gatling.tcp
+
+import com.typesafe.scalalogging.StrictLogging
+
+import scala.util.Try
+
+/**
+ * Transport of the channels of the non-blocking engine.
+ *
+ * By default, channels follow Gatling's own transport, as they are registered on the event loops
+ * of the virtual users. The native transports run the channels on event loops of their own instead,
+ * whatever Gatling's configuration, and fall back to Gatling's when their library can't be loaded.
+ */
+sealed trait TcpTransport
+
+/** Companion object providing the transports.
+ */
+object TcpTransport extends StrictLogging {
+
+  /** Channels follow Gatling's transport, set by `netty.useNativeTransport` in gatling.conf. */
+  case object Gatling extends TcpTransport
+
+  /** Linux epoll, with edge-triggered events. */
+  case object Epoll extends TcpTransport
+
+  /** Linux io_uring, falling back to epoll on kernels without it. */
+  case object IoUring extends TcpTransport
+
+  /** Returns the transport following Gatling's configuration.
+   *
+   * @return The Gatling transport
+   */
+  def gatling(): TcpTransport = Gatling
+
+  /** Returns the epoll transport.
+   *
+   * @return The Epoll transport
+   */
+  def epoll(): TcpTransport = Epoll
+
+  /** Returns the io_uring transport.
+   *
+   * @return The IoUring transport
+   */
+  def ioUring(): TcpTransport = IoUring
+
+  /**
+   * Returns the native transport that can actually be used on this host, falling back from
+   * io_uring to epoll, and from epoll to Gatling's transport.
+   *
+   * @param transport The transport selected in the protocol.
+   * @return The native transport to use, None to use Gatling's.
+   */
+  private[tcp] def available(transport: TcpTransport): Option[TcpTransport] = transport match {
+    case Gatling => None
+    case IoUring if loaded(IoUring) => Some(IoUring)
+    case IoUring =>
+      logger.warn(s"io_uring isn't available, trying epoll: ${unavailabilityCause(io.netty.channel.uring.IoUring.unavailabilityCause)}")
+      available(Epoll)
+    case Epoll if loaded(Epoll) => Some(Epoll)
+    case Epoll =>
+      logger.warn(s"epoll isn't available, using Gatling's transport: ${unavailabilityCause(io.netty.channel.epoll.Epoll.unavailabilityCause)}")
+      None
+  }
+
+  /**
+   * Returns whether the native library of a transport is loaded on this host.
+   */
+  private[tcp] def loaded(transport: TcpTransport): Boolean = transport match {
+    case Gatling => false
+    case Epoll   => Try(io.netty.channel.epoll.Epoll.isAvailable).getOrElse(false)
+    case IoUring => Try(io.netty.channel.uring.IoUring.isAvailable).getOrElse(false)
+  }
+
+  private def unavailabilityCause(cause: => Throwable): String =
+    Try(cause).toOption.flatMap(Option(_)).fold("not a Linux host")(_.getMessage)
+}
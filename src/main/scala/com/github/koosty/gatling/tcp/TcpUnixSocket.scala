@@ -0,0 +1,143 @@
+package com.github.koosty.gatling.tcp
+
+import java.io.{InputStream, OutputStream}
+import java.net.{ProtocolFamily, Socket, SocketAddress, SocketTimeoutException, StandardProtocolFamily}
+import java.nio.ByteBuffer
+import java.nio.channels.{SelectionKey, Selector, SocketChannel}
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import scala.util.control.NonFatal
+
+/**
+ * A connection to a Unix domain socket, behind the `Socket` interface of the blocking engine, so
+ * that framing, checks and connection reuse work as they do over TCP.
+ *
+ * `java.net.Socket` can't connect to Unix domain sockets, so the connection is a `SocketChannel`
+ * in non-blocking mode, whose streams wait on a selector of their own to honor the read timeout.
+ * The streams count their bytes, like [[TcpMetrics.MeteredSocket]] does.
+ *
+ * @param channel The connected channel.
+ * @param metrics The network counters of the protocol.
+ */
+private[tcp] final class TcpUnixSocket private (channel: SocketChannel, metrics: TcpMetrics) extends Socket {
+  channel.configureBlocking(false)
+  private val selector = Selector.open()
+  private val key = channel.register(selector, 0)
+  private val closed = new AtomicBoolean
+  @volatile private var timeout = 0
+
+  private val in: InputStream = new InputStream {
+    override def read(): Int = {
+      val b = new Array[Byte](1)
+      if (read(b, 0, 1) == -1) -1 else b(0) & 0xFF
+    }
+
+    override def read(b: Array[Byte], off: Int, len: Int): Int =
+      if (len == 0) {
+        0
+      } else {
+        val buffer = ByteBuffer.wrap(b, off, len)
+        var n = channel.read(buffer)
+        while (n == 0) {
+          await(SelectionKey.OP_READ)
+          n = channel.read(buffer)
+        }
+        if (n > 0) metrics.bytesRead.add(n)
+        n
+      }
+  }
+
+  private val out: OutputStream = new OutputStream {
+    override def write(b: Int): Unit = write(Array(b.toByte), 0, 1)
+
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+      val buffer = ByteBuffer.wrap(b, off, len)
+      while (buffer.hasRemaining) {
+        if (channel.write(buffer) == 0) await(SelectionKey.OP_WRITE)
+      }
+      metrics.bytesWritten.add(len)
+    }
+  }
+
+  /**
+   * Waits until the channel is ready for an operation, for the timeout at most.
+   *
+   * @throws SocketTimeoutException If it isn't ready in time.
+   */
+  private def await(ops: Int): Unit = synchronized {
+    key.interestOps(ops)
+    val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout.toLong)
+    var ready = false
+    while (!ready) {
+      val remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())
+      if (timeout > 0 && remaining <= 0) {
+        throw new SocketTimeoutException("Read timed out")
+      }
+      ready = (if (timeout > 0) selector.select(math.max(remaining, 1L)) else selector.select()) > 0
+      selector.selectedKeys.clear()
+    }
+    key.interestOps(0)
+  }
+
+  override def getInputStream: InputStream = in
+
+  override def getOutputStream: OutputStream = out
+
+  override def setSoTimeout(timeout: Int): Unit = this.timeout = timeout
+
+  override def getSoTimeout: Int = timeout
+
+  override def isConnected: Boolean = channel.isConnected
+
+  override def isClosed: Boolean = !channel.isOpen
+
+  override def getRemoteSocketAddress: SocketAddress = channel.getRemoteAddress
+
+  override def close(): Unit =
+    if (closed.compareAndSet(false, true)) {
+      metrics.connectionsClosed.increment()
+      try selector.close() finally channel.close()
+    }
+
+  override def toString: String = s"TcpUnixSocket[$getRemoteSocketAddress]"
+}
+
+private[tcp] object TcpUnixSocket {
+
+  /** `SocketChannel.open(ProtocolFamily)`, which takes the UNIX family since Java 16. */
+  private lazy val OpenChannel = classOf[SocketChannel].getMethod("open", classOf[ProtocolFamily])
+
+  /**
+   * Returns the address of a Unix domain socket, looked up at runtime as the plugin is compiled
+   * for Java 11.
+   *
+   * @param path The path of the socket file.
+   * @throws UnsupportedOperationException On JDKs before 16, which can't connect to Unix domain sockets.
+   */
+  def address(path: String): SocketAddress =
+    try {
+      Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", classOf[String]).invoke(null, path).asInstanceOf[SocketAddress]
+    } catch {
+      case _: ClassNotFoundException =>
+        throw new UnsupportedOperationException(s"Unix domain sockets require Java 16 or later, running on ${Runtime.version.feature}")
+    }
+
+  /**
+   * Connects to a Unix domain socket.
+   *
+   * @param address The address of the socket, from [[address]].
+   * @param metrics The network counters of the protocol.
+   * @return The connected socket.
+   */
+  def connect(address: SocketAddress, metrics: TcpMetrics): TcpUnixSocket = {
+    val channel = OpenChannel.invoke(null, StandardProtocolFamily.valueOf("UNIX")).asInstanceOf[SocketChannel]
+    try {
+      channel.connect(address)
+      new TcpUnixSocket(channel, metrics)
+    } catch {
+      case NonFatal(e) =>
+        channel.close()
+        throw e
+    }
+  }
+}
@@ -1,128 +1,178 @@
 package com.github.koosty.gatling.tcp;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 
 /**
- * A simple TCP echo server for testing purposes.
- * It listens on a specified port and echoes back messages received from clients.
- * Messages are prefixed with a 2-byte length header.
+ * A TCP echo server for testing and benchmarking purposes.
+ * It serves any number of clients from a single non-blocking selector thread and echoes back
+ * every byte it receives, so a message framed with a length header gets the same framed message
+ * as response, and an unframed message gets the same bytes back. It listens on a TCP port, or on a
+ * Unix domain socket on Java 16 and later.
  */
-public class TcpTestServer {
-    final int port;
-    static final AtomicBoolean running = new AtomicBoolean(true);
+public class TcpTestServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the server.
+     *
+     * @param port The port number on which the server will listen, 0 for any free port.
+     */
     public TcpTestServer(int port) {
-        this.port = port;
-        run();
-    }
-    public void run(){
-        ServerThread serverThread = new ServerThread(port);
-        serverThread.start();
-    }
-    public void stop() {
-        running.set(false);
+        this(new InetSocketAddress(port));
     }
 
     /**
-     * A thread class that handles the server's main functionality.
-     * It listens for client connections and echoes back received messages.
+     * Starts the server.
+     *
+     * @param address The TCP or Unix domain socket address on which the server will listen.
      */
-    static class ServerThread extends Thread {
-        int port;
-
-        /**
-         * Constructor to initialize the server thread with a specific port.
-         *
-         * @param port The port number on which the server will listen.
-         */
-        public ServerThread(int port) {
-            this.port = port;
+    public TcpTestServer(SocketAddress address) {
+        try {
+            selector = Selector.open();
+            serverChannel = address instanceof InetSocketAddress
+                    ? ServerSocketChannel.open()
+                    : ServerSocketChannel.open(StandardProtocolFamily.valueOf("UNIX"));
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not listen on " + address, e);
         }
+        thread = new Thread(this::run, "tcp-test-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        /**
-         * The main logic of the server thread.
-         * It listens for client connections, reads messages with a 2-byte length header,
-         * and echoes them back to the client.
-         */
-        @Override
-        public void run() {
-            try (ServerSocket serverSocket = new ServerSocket(this.port)) {
-                System.out.println("Echo Server started on port " + port);
-
-                while (running.get()) {
-                    try (Socket clientSocket = serverSocket.accept()) {
-                        System.out.println("Client connected: " + clientSocket.getInetAddress().getHostAddress());
-
-                        InputStream in = clientSocket.getInputStream();
-                        OutputStream out = clientSocket.getOutputStream();
-
-                        while (true) {
-                            // Read 2-byte length header
-                            byte[] header = new byte[2];
-                            int bytesRead = 0;
-                            while (bytesRead < 2) {
-                                int read = in.read(header, bytesRead, 2 - bytesRead);
-                                if (read == -1) {
-                                    System.out.println("Client disconnected");
-                                    break;
-                                }
-                                bytesRead += read;
-                            }
-                            if (bytesRead < 2) break; // Connection closed
-
-                            // Convert header to message length
-                            int messageLength = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port.
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
 
-                            // Read the message
-                            byte[] message = new byte[messageLength];
-                            bytesRead = 0;
-                            while (bytesRead < messageLength) {
-                                int read = in.read(message, bytesRead, messageLength - bytesRead);
-                                if (read == -1) {
-                                    throw new IOException("Connection closed before reading full message");
-                                }
-                                bytesRead += read;
-                            }
+    /**
+     * Stops the server and closes the connections of all clients.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                            // Convert message to string for logging (assuming UTF-8 text)
-                            String inputLine = new String(message, StandardCharsets.UTF_8);
-                            System.out.println("Received: " + inputLine);
+    @Override
+    public void close() {
+        stop();
+    }
 
-                            // Send response with length header
-                            byte[] inputLineBytes = inputLine.getBytes(StandardCharsets.UTF_8);
-                            byte[] lengthHeader = createLengthHeader(inputLineBytes.length);
-                            byte[] result = new byte[lengthHeader.length + inputLineBytes.length];
-                            System.arraycopy(lengthHeader, 0, result, 0, lengthHeader.length);
-                            System.arraycopy(inputLineBytes, 0, result, lengthHeader.length, inputLineBytes.length);
-                            System.out.println("Returning: " + result.length);
-                            out.write(result);
-                            out.flush();
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
                         }
                     } catch (IOException e) {
-                        System.err.println("Error handling client: " + e.getMessage());
+                        closeClient(key);
                     }
                 }
-            } catch (IOException e) {
-                System.err.println("Could not listen on port " + port);
             }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = serverChannel.accept();
+        if (client != null) {
+            client.configureBlocking(false);
+            if (client.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            client.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Reads what the client sent and echoes it back, waiting for the client to drain its socket
+     * before reading more when the echo can't be written at once.
+     */
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        if (client.read(buffer) == -1) {
+            closeClient(key);
+            return;
+        }
+        buffer.flip();
+        client.write(buffer);
+        if (buffer.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+        buffer.compact();
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        buffer.flip();
+        client.write(buffer);
+        if (!buffer.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ);
         }
+        buffer.compact();
+    }
 
-        /**
-         * Creates a 2-byte length header for a given message length.
-         *
-         * @param messageLength The length of the message.
-         * @return A 2-byte array representing the length header.
-         */
-        private byte[] createLengthHeader(int messageLength) {
-            return new byte[] {
-                    (byte) ((messageLength >> 8) & 0xFF), // High byte
-                    (byte) (messageLength & 0xFF)        // Low byte
-            };
+    private void closeClient(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            closeClient(key);
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error stopping server: " + e.getMessage());
         }
     }
 }
@@ -1,9 +1,23 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.TcpCheck;
+import com.github.koosty.gatling.tcp.TcpMessage;
+import com.github.koosty.gatling.tcp.TcpPayloadCorpus;
+import com.github.koosty.gatling.tcp.TcpPayloadSource;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class TcpDslTest {
@@ -11,7 +25,67 @@ class TcpDslTest {
     @Test
     @DisplayName("tcp(String) throws NullPointerException for null name")
     void tcpStringThrowsForNullName() {
-        assertThrows(NullPointerException.class, () -> TcpDsl.tcp(null, null));
+        assertThrows(NullPointerException.class, () -> TcpDsl.tcp(null, (byte[]) null));
+    }
+
+    @Test
+    @DisplayName("tcp(String, Function) creates a request with a dynamic message")
+    void tcpFunctionCreatesDynamicMessage() {
+        TcpRequestActionBuilder builder = TcpDsl.tcp("dynamic", session -> session.getString("payload").getBytes());
+        TcpMessage.Dynamic message = assertInstanceOf(TcpMessage.Dynamic.class, builder.asScala().message());
+        assertEquals(1, message.segments().size());
+    }
+
+    @Test
+    @DisplayName("tcp(String, TcpMessageTemplate) creates a request with a segment per template part")
+    void tcpTemplateCreatesDynamicMessage() {
+        TcpMessageTemplate template = TcpDsl.template()
+                .text("ID=")
+                .attribute("id")
+                .bytes(new byte[]{0x00})
+                .slot(session -> new byte[]{0x01});
+        TcpRequestActionBuilder builder = TcpDsl.tcp("template", template);
+        TcpMessage.Dynamic message = assertInstanceOf(TcpMessage.Dynamic.class, builder.asScala().message());
+        assertEquals(4, message.segments().size());
+    }
+
+    @Test
+    @DisplayName("tcp(String, TcpPayloadSource) and feeder draw payloads from a corpus")
+    void tcpPayloadSourceDrawsFromCorpus(@TempDir Path directory) throws IOException {
+        Path corpus = Files.write(directory.resolve("corpus.bin"), new byte[]{0, 0, 0, 2, 'O', 'K'});
+        TcpPayloadSource source = TcpPayloadCorpus.open(corpus.toString()).sequential();
+        TcpRequestActionBuilder builder = TcpDsl.tcp("corpus", source);
+        assertInstanceOf(TcpMessage.Buffer.class, builder.asScala().message());
+
+        Iterator<Map<String, Object>> feeder = TcpDsl.feeder(source, "payload");
+        ByteBuffer payload = assertInstanceOf(ByteBuffer.class, feeder.next().get("payload"));
+        assertEquals(ByteBuffer.wrap("OK".getBytes()), payload);
+        assertFalse(feeder.hasNext());
+    }
+
+    @Test
+    @DisplayName("tcp(String) creates await and subscribe actions receiving pushed frames")
+    void tcpNameCreatesInboundActions() {
+        TcpAwaitActionBuilder await = TcpDsl.tcp("tick").await(frame -> frame[0] == 'T')
+                .withLengthHeader()
+                .withConnectionKey("feed")
+                .withTimeout(500)
+                .check(TcpCheck.regex("T(\\d+)").saveAs("tick"));
+        assertEquals("tick", await.asScala().requestName());
+        assertEquals(1, await.asScala().checks().size());
+        assertEquals("feed", await.asScala().connectionKey());
+        assertEquals(scala.Option.apply(500), await.asScala().timeout());
+        assertEquals(true, await.asScala().matcher().apply(new byte[]{'T'}));
+
+        TcpSubscribeActionBuilder subscribe = TcpDsl.tcp("ticks").subscribe()
+                .withFrameCodec(com.github.koosty.gatling.tcp.FrameCodec.lines())
+                .withFilter(frame -> frame[0] == 'T')
+                .withSentTime(frame -> 1000L)
+                .check(TcpCheck.length().is(5));
+        assertEquals("ticks", subscribe.asScala().requestName());
+        assertEquals(true, subscribe.asScala().filter().isDefined());
+        assertEquals(true, subscribe.asScala().sentMillis().isDefined());
+        assertEquals(1, subscribe.asScala().checks().size());
     }
 
     @Test
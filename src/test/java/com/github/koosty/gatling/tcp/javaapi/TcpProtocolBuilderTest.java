@@ -1,6 +1,8 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.TcpBalancing;
 import com.github.koosty.gatling.tcp.TcpProtocol;
+import com.github.koosty.gatling.tcp.TcpTransport;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -36,6 +38,133 @@ class TcpProtocolBuilderTest {
         assertEquals(readTimeout, tcpProtocol.readTimeout());
     }
 
+    @Test
+    void enablesNonBlockingEngine() {
+        TcpProtocol tcpProtocol = tcp().nonBlocking(true).protocol();
+        assertTrue(tcpProtocol.nonBlocking());
+    }
+
+    @Test
+    void configuresConnectionPool() {
+        TcpProtocol tcpProtocol = tcp()
+                .connectionPool(true)
+                .maxConnectionsPerHost(500)
+                .maxIdleTime(30000)
+                .acquireTimeout(2000)
+                .validateOnBorrow(false)
+                .protocol();
+        assertTrue(tcpProtocol.pool().enabled());
+        assertEquals(500, tcpProtocol.pool().maxConnectionsPerHost());
+        assertEquals(30000, tcpProtocol.pool().maxIdleTime());
+        assertEquals(2000, tcpProtocol.pool().acquireTimeout());
+        assertFalse(tcpProtocol.pool().validateOnBorrow());
+    }
+
+    @Test
+    void setsMaxResponseSize() {
+        TcpProtocol tcpProtocol = tcp().maxResponseSize(2048).protocol();
+        assertEquals(2048, tcpProtocol.maxResponseSize());
+    }
+
+    @Test
+    void setsDnsTtl() {
+        TcpProtocol tcpProtocol = tcp().dnsTtl(60000).protocol();
+        assertEquals(60000, tcpProtocol.dnsTtl());
+    }
+
+    @Test
+    void addsEndpointsWithBalancing() {
+        TcpProtocol tcpProtocol = tcp()
+                .endpoint("node1", 2222)
+                .endpoint("node2", 2223, 10)
+                .balancing(TcpBalancing.sticky())
+                .ejectionTime(5000)
+                .protocol();
+        assertEquals(2, tcpProtocol.endpoints().size());
+        assertEquals(10, tcpProtocol.endpoints().apply(1).maxConnections());
+        assertEquals(TcpBalancing.sticky(), tcpProtocol.balancing());
+        assertEquals(5000, tcpProtocol.ejectionTime());
+    }
+
+    @Test
+    void setsPrewarmConnectionsAndConnectRate() {
+        TcpProtocol tcpProtocol = tcp().prewarmConnections(4).maxConnectsPerSecond(200).protocol();
+        assertEquals(4, tcpProtocol.prewarmConnections());
+        assertEquals(200, tcpProtocol.maxConnectsPerSecond());
+    }
+
+    @Test
+    void setsTlsOptions() {
+        TcpProtocol tcpProtocol = tcp()
+                .trustStore("trust.p12", "secret")
+                .tlsProtocols("TLSv1.3")
+                .sniHostName("server")
+                .protocol();
+        assertTrue(tcpProtocol.tls().enabled());
+        assertEquals("trust.p12", tcpProtocol.tls().trustStore().get().path());
+        assertEquals("TLSv1.3", tcpProtocol.tls().protocols().head());
+        assertEquals("server", tcpProtocol.tls().sniHostName().get());
+        assertTrue(tcpProtocol.tls().hostnameVerification());
+        assertFalse(tcp().protocol().tls().enabled());
+    }
+
+    @Test
+    void trustsAllCertificatesOnlyWhenAsked() {
+        TcpProtocol trusting = tcp().trustAllCertificates(true).protocol();
+        assertTrue(trusting.tls().enabled());
+        assertTrue(trusting.tls().trustAll());
+        TcpProtocol plain = tcp().trustAllCertificates(false).protocol();
+        assertFalse(plain.tls().enabled());
+        assertFalse(plain.tls().trustAll());
+    }
+
+    @Test
+    void setsSocketOptions() {
+        TcpProtocol tcpProtocol = tcp()
+                .tcpNoDelay(false)
+                .receiveBufferSize(131072)
+                .soLinger(0)
+                .localAddresses("127.0.0.1", "127.0.0.2")
+                .protocol();
+        assertFalse(tcpProtocol.socket().tcpNoDelay());
+        assertEquals(131072, tcpProtocol.socket().receiveBufferSize());
+        assertEquals(0, tcpProtocol.socket().linger());
+        assertEquals(2, tcpProtocol.socket().localAddresses().size());
+        assertTrue(tcp().protocol().socket().tcpNoDelay());
+    }
+
+    @Test
+    void setsMetricsSampling() {
+        TcpProtocol tcpProtocol = tcp().metricsInterval(2000).metricsFile("metrics.csv").protocol();
+        assertEquals(2000, tcpProtocol.metrics().interval());
+        assertEquals("metrics.csv", tcpProtocol.metrics().file().get());
+        assertEquals(0, tcp().protocol().metrics().interval());
+    }
+
+    @Test
+    void runsBlockingRequestsOnVirtualThreads() {
+        TcpProtocol tcpProtocol = tcp().virtualThreads().blockingThreads(50).protocol();
+        assertTrue(tcpProtocol.virtualThreads());
+        assertEquals(50, tcpProtocol.blockingThreads());
+        assertFalse(tcp().protocol().virtualThreads());
+    }
+
+    @Test
+    void selectsNativeTransport() {
+        TcpProtocol tcpProtocol = tcp().nonBlocking(true).transport(TcpTransport.epoll()).reusePort(true).protocol();
+        assertEquals(TcpTransport.epoll(), tcpProtocol.transport());
+        assertTrue(tcpProtocol.socket().reusePort());
+        assertEquals(TcpTransport.gatling(), tcp().protocol().transport());
+    }
+
+    @Test
+    void connectsToUnixSocket() {
+        TcpProtocol tcpProtocol = tcp().unixSocket("/run/app.sock").protocol();
+        assertEquals("/run/app.sock", tcpProtocol.unixSocket().get());
+        assertEquals("unix:/run/app.sock", tcpProtocol.targetEndpoints().head().name());
+        assertThrows(IllegalArgumentException.class, () -> tcp().unixSocket("/run/app.sock").tls(true).protocol());
+    }
+
     @Test
     void handlesNullHostGracefully() {
         TcpProtocolBuilder tcpProtocolBuilder = tcp();
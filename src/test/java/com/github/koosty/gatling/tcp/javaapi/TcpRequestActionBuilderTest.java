@@ -1,8 +1,14 @@
 package com.github.koosty.gatling.tcp.javaapi;
 
+import com.github.koosty.gatling.tcp.FrameCodec;
+import com.github.koosty.gatling.tcp.ResponseCompletion;
+import com.github.koosty.gatling.tcp.TcpCheck;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.function.Function;
+import scala.jdk.javaapi.CollectionConverters;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,6 +68,87 @@ class TcpRequestActionBuilderTest {
         assertEquals("custom-key", scalaBuilder.connectionKey());
     }
 
+    @Test
+    void enablesPipelining() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        var builder = new TcpRequestActionBuilder(wrapped).withPipelining(bytes -> String.valueOf(bytes[0]));
+
+        com.github.koosty.gatling.tcp.TcpRequestActionBuilder scalaBuilder = builder.asScala();
+        assertTrue(scalaBuilder.pipelining().isDefined());
+        assertEquals("1", scalaBuilder.pipelining().get().responseCorrelationId().apply(new byte[]{0x01}));
+    }
+
+    @Test
+    void setsFrameCodecTakingPrecedenceOverLengthHeader() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+        FrameCodec codec = FrameCodec.lines();
+
+        var builder = new TcpRequestActionBuilder(wrapped).withLengthHeader().withFrameCodec(codec);
+
+        com.github.koosty.gatling.tcp.TcpRequestActionBuilder scalaBuilder = builder.asScala();
+        assertSame(codec, scalaBuilder.effectiveFrameCodec().get());
+    }
+
+    @Test
+    void setsResponseCompletion() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        var builder = new TcpRequestActionBuilder(wrapped).withResponseCompletion(ResponseCompletion.terminator(new byte[]{'\n'}));
+
+        com.github.koosty.gatling.tcp.TcpRequestActionBuilder scalaBuilder = builder.asScala();
+        assertInstanceOf(ResponseCompletion.Terminator.class, scalaBuilder.responseCompletion());
+    }
+
+    @Test
+    void setsMaxResponseSizeAndStoreResponse() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        var builder = new TcpRequestActionBuilder(wrapped).withMaxResponseSize(512).withStoreResponse(false);
+
+        com.github.koosty.gatling.tcp.TcpRequestActionBuilder scalaBuilder = builder.asScala();
+        assertEquals(scala.Option.apply(512), scalaBuilder.maxResponseSize());
+        assertFalse(scalaBuilder.storeResponse());
+    }
+
+    @Test
+    void enablesTimingBreakdown() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        assertFalse(wrapped.timingBreakdown());
+        assertTrue(new TcpRequestActionBuilder(wrapped).withTimingBreakdown().asScala().timingBreakdown());
+    }
+
+    @Test
+    void sendsWithoutAwaitingAResponse() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        assertTrue(wrapped.expectResponse());
+        assertFalse(new TcpRequestActionBuilder(wrapped).send().asScala().expectResponse());
+    }
+
+    @Test
+    void addsChecksInOrder() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        var length = TcpCheck.length().is(2);
+        var status = TcpCheck.bytes(0, 1).is(ByteBuffer.wrap(new byte[]{0x01})).saveAs("status");
+        var builder = new TcpRequestActionBuilder(wrapped).check(length, status);
+
+        assertEquals(List.of(length, status), CollectionConverters.asJava(builder.asScala().checks()));
+    }
+
+    @Test
+    void setsRetryPolicy() {
+        var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
+
+        var retryPolicy = new TcpRequestActionBuilder(wrapped).withReconnectOnStale().withRetries(2, 250).asScala().retryPolicy();
+
+        assertTrue(retryPolicy.reconnectOnStale());
+        assertEquals(2, retryPolicy.maxRetries());
+        assertEquals(250, retryPolicy.backoff());
+    }
+
     @Test
     void convertsToScalaActionBuilder() {
         var wrapped = com.github.koosty.gatling.tcp.TcpRequestActionBuilder.request("test-request", new byte[]{0x01, 0x02});
@@ -3,8 +3,10 @@ package com.github.koosty.gatling.tcp.javaapi;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -51,5 +53,35 @@ class TcpValidatorsTest {
         Function<byte[], Boolean> validator = TcpValidators.minLength(0);
         assertTrue(validator.apply(new byte[]{}));
     }
-}
 
+    @Test
+    @DisplayName("containsBytes finds a sequence anywhere in the response")
+    void containsBytesFindsSequenceAnywhere() {
+        Function<byte[], Boolean> validator = TcpValidators.containsBytes("END".getBytes());
+        assertTrue(validator.apply("END".getBytes()));
+        assertTrue(validator.apply("DATA END".getBytes()));
+        assertTrue(validator.apply("ENENDD".getBytes()));
+        assertFalse(validator.apply("EN".getBytes()));
+        assertFalse(validator.apply("DATA ENE".getBytes()));
+    }
+
+    @Test
+    @DisplayName("containsAllBytes and containsAnyBytes search several sequences")
+    void containsAllAndAnyBytesSearchSeveralSequences() {
+        Function<byte[], Boolean> all = TcpValidators.containsAllBytes("OK".getBytes(), "END".getBytes());
+        Function<byte[], Boolean> any = TcpValidators.containsAnyBytes("ERROR".getBytes(), "FAIL".getBytes());
+        assertTrue(all.apply("OK DATA END".getBytes()));
+        assertFalse(all.apply("OK DATA".getBytes()));
+        assertTrue(any.apply("DATA FAIL".getBytes()));
+        assertFalse(any.apply("DATA ERRO".getBytes()));
+    }
+
+    @Test
+    @DisplayName("containsString searches the encoded string in the response bytes")
+    void containsStringSearchesEncodedString() {
+        Function<byte[], Boolean> validator = TcpValidators.containsString("café", StandardCharsets.UTF_8);
+        assertTrue(validator.apply("au café".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(validator.apply("au café".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(1, TcpDsl.tcp("check", "PING".getBytes()).withCheck(validator).asScala().validators().size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import scala.util.Random
+
+class BytePatternSpec extends AnyFlatSpec with Matchers {
+
+  /** Reference search, checking every position. */
+  private def naiveIndexOf(data: Array[Byte], pattern: Array[Byte]): Int =
+    (0 to data.length - pattern.length).find(i => data.slice(i, i + pattern.length).sameElements(pattern)).getOrElse(-1)
+
+  behavior of "BytePattern"
+
+  it should "find the first occurrence like a naive search" in {
+    val random = new Random(42)
+    (1 to 2000).foreach { _ =>
+      // A small alphabet makes partial matches frequent
+      val data = Array.fill(random.nextInt(64))((random.nextInt(3) - 1).toByte)
+      val pattern = Array.fill(random.nextInt(6))((random.nextInt(3) - 1).toByte)
+      new BytePattern(pattern).indexOf(data) shouldBe naiveIndexOf(data, pattern)
+    }
+  }
+
+  it should "search within a range" in {
+    val pattern = new BytePattern("ab".getBytes)
+    val data = "ab-ab-ab".getBytes
+    pattern.indexOf(data, 1, data.length) shouldBe 3
+    pattern.indexOf(data, 1, 4) shouldBe -1
+    pattern.indexOf(data, 6, data.length) shouldBe 6
+  }
+
+  behavior of "BytePatternSet"
+
+  it should "find overlapping patterns in a single pass" in {
+    val patterns = new BytePatternSet(Seq("he", "she", "hers", "his").map(_.getBytes))
+    patterns.found("ushers".getBytes) shouldBe 0x7L
+    patterns.found("this".getBytes) shouldBe 0x8L
+    patterns.containsAll("ushers this".getBytes) shouldBe true
+    patterns.containsAll("ushers".getBytes) shouldBe false
+    patterns.containsAny("xyz".getBytes) shouldBe false
+    patterns.containsAny("xhiy".getBytes) shouldBe false
+    patterns.containsAny("xhey".getBytes) shouldBe true
+  }
+
+  it should "agree with single pattern searches" in {
+    val random = new Random(7)
+    (1 to 500).foreach { _ =>
+      val data = Array.fill(random.nextInt(64))(random.nextInt(3).toByte)
+      val patterns = Seq.fill(1 + random.nextInt(5))(Array.fill(1 + random.nextInt(4))(random.nextInt(3).toByte))
+      val expected = patterns.zipWithIndex.foldLeft(0L) { case (mask, (pattern, i)) =>
+        if (naiveIndexOf(data, pattern) >= 0) mask | (1L << i) else mask
+      }
+      new BytePatternSet(patterns).found(data) shouldBe expected
+    }
+  }
+
+  it should "hold 1 to 64 patterns" in {
+    an[IllegalArgumentException] should be thrownBy new BytePatternSet(Nil)
+    an[IllegalArgumentException] should be thrownBy new BytePatternSet(Seq.fill(65)(Array[Byte](1)))
+  }
+}
@@ -0,0 +1,138 @@
+package com.github.koosty.gatling.tcp
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.io.IOException
+import java.nio.{ByteBuffer, ByteOrder}
+
+class FrameCodecSpec extends AnyFlatSpec with Matchers {
+
+  private val MaxLength = 1024 * 1024
+
+  private def prefix(codec: FrameCodec, payloadLength: Int): Array[Byte] = {
+    val buffer = ByteBuffer.allocate(codec.prefixLength(payloadLength))
+    codec.writePrefix(payloadLength, buffer)
+    buffer.array
+  }
+
+  behavior of "FrameCodec"
+
+  it should "create correct length header for TWO_BYTE_BIG_ENDIAN" in {
+    prefix(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec, 256) shouldBe Array[Byte](1, 0) // 256 in big endian: high byte = 1, low byte = 0
+  }
+
+  it should "create correct length header for TWO_BYTE_LITTLE_ENDIAN" in {
+    prefix(LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN.codec, 256) shouldBe Array[Byte](0, 1) // 256 in little endian: low byte = 0, high byte = 1
+  }
+
+  it should "create correct length header for FOUR_BYTE_BIG_ENDIAN" in {
+    prefix(LengthHeaderType.FOUR_BYTE_BIG_ENDIAN.codec, 0x12345678) shouldBe Array[Byte](0x12, 0x34, 0x56, 0x78)
+  }
+
+  it should "create correct length header for FOUR_BYTE_LITTLE_ENDIAN" in {
+    prefix(LengthHeaderType.FOUR_BYTE_LITTLE_ENDIAN.codec, 0x12345678) shouldBe Array[Byte](0x78, 0x56, 0x34, 0x12)
+  }
+
+  it should "read length from TWO_BYTE_BIG_ENDIAN header correctly" in {
+    val frame = Array[Byte](1, 0) ++ new Array[Byte](256)
+    LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.newDecoder(MaxLength).decode(ByteBuffer.wrap(frame)).length shouldBe 256
+  }
+
+  it should "read length from TWO_BYTE_LITTLE_ENDIAN header correctly" in {
+    val frame = Array[Byte](0, 1) ++ new Array[Byte](256)
+    LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN.codec.newDecoder(MaxLength).decode(ByteBuffer.wrap(frame)).length shouldBe 256
+  }
+
+  it should "return correct header size for different types" in {
+    LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.prefixLength(10) shouldBe 2
+    LengthHeaderType.FOUR_BYTE_BIG_ENDIAN.codec.prefixLength(10) shouldBe 4
+  }
+
+  it should "frame 1 and 8 bytes lengths, optionally including the header" in {
+    FrameCodec.lengthField(1, ByteOrder.BIG_ENDIAN).encode(Array[Byte](7, 8)) shouldBe Array[Byte](2, 7, 8)
+    FrameCodec.lengthField(8, ByteOrder.LITTLE_ENDIAN, includesHeader = true).encode(Array[Byte](7)) shouldBe
+      Array[Byte](9, 0, 0, 0, 0, 0, 0, 0, 7)
+
+    val decoder = FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN, includesHeader = true).newDecoder(MaxLength)
+    decoder.decode(ByteBuffer.wrap(Array[Byte](0, 4, 7, 8))) shouldBe Array[Byte](7, 8)
+  }
+
+  it should "reject lengths that don't fit the length field" in {
+    an[IllegalArgumentException] should be thrownBy FrameCodec.lengthField(1, ByteOrder.BIG_ENDIAN).encode(new Array[Byte](256))
+    an[IllegalArgumentException] should be thrownBy FrameCodec.lengthField(3, ByteOrder.BIG_ENDIAN)
+  }
+
+  it should "decode length-prefixed frames incrementally and leave the next frame's bytes" in {
+    val decoder = LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.newDecoder(MaxLength)
+    val buffer = ByteBuffer.wrap(Array[Byte](0, 2, 7, 8, 0, 1, 9))
+
+    buffer.limit(3)
+    decoder.decode(buffer) shouldBe null
+    buffer.position shouldBe 0
+
+    buffer.limit(7)
+    decoder.decode(buffer) shouldBe Array[Byte](7, 8)
+    decoder.decode(buffer) shouldBe Array[Byte](9)
+    buffer.hasRemaining shouldBe false
+  }
+
+  it should "fail on invalid response lengths" in {
+    val decoder = FrameCodec.lengthField(4, ByteOrder.BIG_ENDIAN).newDecoder(MaxLength)
+    an[IOException] should be thrownBy decoder.decode(ByteBuffer.wrap(Array[Byte](0x7F, 0, 0, 0)))
+  }
+
+  it should "frame and decode ASCII decimal length prefixes" in {
+    val codec = FrameCodec.asciiLength(4)
+    codec.encode("hello".getBytes) shouldBe "0005hello".getBytes
+    codec.newDecoder(MaxLength).decode(ByteBuffer.wrap("0003abcdef".getBytes)) shouldBe "abc".getBytes
+    an[IOException] should be thrownBy codec.newDecoder(MaxLength).decode(ByteBuffer.wrap("00x3abc".getBytes))
+    an[IllegalArgumentException] should be thrownBy FrameCodec.asciiLength(1).encode(new Array[Byte](10))
+  }
+
+  it should "frame and decode delimiter-terminated payloads across chunks" in {
+    val codec = FrameCodec.delimited("\r\n".getBytes)
+    codec.encode("abc".getBytes) shouldBe "abc\r\n".getBytes
+
+    val decoder = codec.newDecoder(MaxLength)
+    val buffer = ByteBuffer.wrap("hello\r\nworld\r\n".getBytes)
+    buffer.limit(6)
+    decoder.decode(buffer) shouldBe null
+    buffer.limit(buffer.capacity)
+    decoder.decode(buffer) shouldBe "hello".getBytes
+    decoder.decode(buffer) shouldBe "world".getBytes
+    buffer.hasRemaining shouldBe false
+  }
+
+  it should "frame and decode STX/ETX payloads" in {
+    val codec = FrameCodec.stxEtx()
+    codec.encode("abc".getBytes) shouldBe Array[Byte](0x02) ++ "abc".getBytes ++ Array[Byte](0x03)
+    codec.newDecoder(MaxLength).decode(ByteBuffer.wrap(Array[Byte](0x02, 'x', 0x03))) shouldBe "x".getBytes
+    an[IOException] should be thrownBy codec.newDecoder(MaxLength).decode(ByteBuffer.wrap(Array[Byte]('x', 0x03)))
+  }
+
+  it should "frame and decode fixed-length records" in {
+    val codec = FrameCodec.fixedLength(3)
+    codec.encode("abc".getBytes) shouldBe "abc".getBytes
+    an[IllegalArgumentException] should be thrownBy codec.encode("ab".getBytes)
+
+    val buffer = ByteBuffer.wrap("abcde".getBytes)
+    val decoder = codec.newDecoder(MaxLength)
+    decoder.decode(buffer) shouldBe "abc".getBytes
+    decoder.decode(buffer) shouldBe null
+  }
+
+  it should "reject frames larger than the maximum length" in {
+    val frame = Array[Byte](0, 4, 1, 2, 3, 4)
+    val thrown = the[IOException] thrownBy LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.newDecoder(3).decode(ByteBuffer.wrap(frame))
+    thrown.getMessage should include("exceeds the maximum of 3 bytes")
+    LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.newDecoder(4).decode(ByteBuffer.wrap(frame)) shouldBe Array[Byte](1, 2, 3, 4)
+
+    an[IOException] should be thrownBy FrameCodec.lines().newDecoder(3).decode(ByteBuffer.wrap("abcdef".getBytes))
+    // Delimiter found in the same chunk as the oversized payload
+    the[IOException] thrownBy FrameCodec.lines().newDecoder(3).decode(ByteBuffer.wrap("abcd\n".getBytes)) should have message
+      "Response length 4 exceeds the maximum of 3 bytes"
+    FrameCodec.lines().newDecoder(3).decode(ByteBuffer.wrap("abc\n".getBytes)) shouldBe "abc".getBytes
+  }
+}
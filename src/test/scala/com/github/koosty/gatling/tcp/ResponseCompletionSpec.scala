@@ -0,0 +1,44 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.buffer.Unpooled
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+class ResponseCompletionSpec extends AnyFlatSpec with Matchers {
+
+  behavior of "ResponseCompletion"
+
+  it should "complete on the expected length only" in {
+    val completion = ResponseCompletion.expectedLength(4)
+    completion.completeLength(Unpooled.wrappedBuffer("abc".getBytes), 0) shouldBe -1
+    completion.completeLength(Unpooled.wrappedBuffer("abcde".getBytes), 0) shouldBe 4
+    completion.completesOnClose shouldBe false
+  }
+
+  it should "complete on a terminator split across chunks, including it in the response" in {
+    val completion = ResponseCompletion.terminator("\r\n".getBytes)
+    val buf = Unpooled.buffer()
+
+    buf.writeBytes("OK\r".getBytes)
+    completion.completeLength(buf, 0) shouldBe -1
+    val scanFrom = completion.rescanFrom(buf.readableBytes)
+    scanFrom shouldBe 2
+
+    buf.writeBytes("\nnext".getBytes)
+    completion.completeLength(buf, scanFrom) shouldBe 4
+  }
+
+  it should "complete on peer close or idle gap only" in {
+    val buf = Unpooled.wrappedBuffer("anything".getBytes)
+    ResponseCompletion.peerClose().completeLength(buf, 0) shouldBe -1
+    ResponseCompletion.peerClose().completesOnClose shouldBe true
+    ResponseCompletion.idleGap(10).completeLength(buf, 0) shouldBe -1
+    ResponseCompletion.idleGap(10).idleGapMillis shouldBe 10
+  }
+
+  it should "reject invalid settings" in {
+    an[IllegalArgumentException] should be thrownBy ResponseCompletion.idleGap(0)
+    an[IllegalArgumentException] should be thrownBy ResponseCompletion.expectedLength(0)
+    an[IllegalArgumentException] should be thrownBy ResponseCompletion.terminator(Array.emptyByteArray)
+  }
+}
@@ -0,0 +1,107 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.concurrent.Eventually.{eventually, timeout}
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.time.{Seconds, Span}
+
+import java.net.{InetAddress, UnknownHostException}
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class TcpAddressResolverSpec extends AnyFlatSpec with Matchers {
+
+  private val first = InetAddress.getByAddress("server", Array[Byte](10, 0, 0, 1))
+  private val second = InetAddress.getByAddress("server", Array[Byte](10, 0, 0, 2))
+
+  behavior of "TcpAddressResolver"
+
+  it should "resolve the host once, when created, and hand out its addresses in turn" in {
+    val lookups = new AtomicInteger
+    val resolver = new TcpAddressResolver("server", 2222, _ => {
+      lookups.incrementAndGet()
+      Array(first, second)
+    })
+    lookups.get shouldBe 1
+
+    (1 to 4).map(_ => resolver.next().getAddress) shouldBe Seq(first, second, first, second)
+    resolver.next().getPort shouldBe 2222
+    lookups.get shouldBe 1
+  }
+
+  it should "hand out the new addresses once refreshed" in {
+    val lookups = new AtomicInteger
+    val resolver = new TcpAddressResolver("server", 2222, _ => if (lookups.incrementAndGet() == 1) Array(first) else Array(second))
+
+    resolver.next().getAddress shouldBe first
+    resolver.refresh()
+    resolver.next().getAddress shouldBe second
+  }
+
+  it should "keep the previous addresses when the host can't be resolved again" in {
+    val lookups = new AtomicInteger
+    val resolver = new TcpAddressResolver("server", 2222, _ =>
+      if (lookups.incrementAndGet() == 1) Array(first) else throw new UnknownHostException("server")
+    )
+
+    resolver.refresh()
+    resolver.next().getAddress shouldBe first
+    lookups.get shouldBe 2
+  }
+
+  it should "return an unresolved address when the host can't be resolved" in {
+    val resolver = new TcpAddressResolver("unknown", 2222, host => throw new UnknownHostException(host))
+
+    val address = resolver.next()
+    address.isUnresolved shouldBe true
+    address.getHostString shouldBe "unknown"
+  }
+
+  it should "hand out the current addresses while a refresh is waiting for the DNS" in {
+    val lookups = new AtomicInteger
+    val answer = new CountDownLatch(1)
+    val resolver = new TcpAddressResolver("server", 2222, _ =>
+      if (lookups.incrementAndGet() == 1) Array(first) else { answer.await(); Array(second) }
+    )
+    val refresh = new Thread(() => resolver.refresh())
+    refresh.start()
+    eventually(timeout(Span(5, Seconds))) {
+      lookups.get shouldBe 2
+    }
+
+    resolver.next().getAddress shouldBe first
+    answer.countDown()
+    refresh.join(5000)
+    resolver.next().getAddress shouldBe second
+  }
+
+  behavior of "TcpEndpointBalancer"
+
+  it should "resolve the hosts when created, then again in the background once the TTL has elapsed" in {
+    val lookups = new AtomicInteger
+    val balancer = new TcpEndpointBalancer(List(TcpEndpoint("server", 2222)), TcpBalancing.RoundRobin, 0, 20, _ =>
+      if (lookups.incrementAndGet() == 1) Array(first) else Array(second)
+    )
+    try {
+      lookups.get shouldBe 1
+      val endpoint = balancer.select(1).get
+      endpoint.address() shouldBe new java.net.InetSocketAddress(first, 2222)
+      eventually(timeout(Span(5, Seconds))) {
+        endpoint.address() shouldBe new java.net.InetSocketAddress(second, 2222)
+      }
+    } finally {
+      balancer.close()
+    }
+  }
+
+  it should "never resolve the hosts again without a TTL" in {
+    val lookups = new AtomicInteger
+    val balancer = new TcpEndpointBalancer(List(TcpEndpoint("server", 2222)), TcpBalancing.RoundRobin, 0, 0, _ => {
+      lookups.incrementAndGet()
+      Array(first)
+    })
+    Thread.sleep(50)
+    balancer.select(1).get.address()
+    lookups.get shouldBe 1
+  }
+}
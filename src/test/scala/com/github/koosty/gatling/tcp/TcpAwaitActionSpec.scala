@@ -0,0 +1,132 @@
+package com.github.koosty.gatling.tcp
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import io.gatling.commons.stats.{KO, OK, Status}
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.ArgumentMatchers._
+import org.mockito.Mockito._
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.io.OutputStream
+import java.net.ServerSocket
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+
+class TcpAwaitActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
+
+  val codec: FrameCodec = LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def nextSession(): Session = sessions.poll(2, TimeUnit.SECONDS)
+  }
+
+  def writeFrame(out: OutputStream, payload: String): Unit = out.write(codec.encode(payload.getBytes))
+
+  def verifyLogged(statsEngine: StatsEngine, requestName: String, status: Status, message: Option[String]): Unit =
+    verify(statsEngine).logResponse(
+      org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+      org.mockito.ArgumentMatchers.eq(requestName), anyLong, anyLong,
+      org.mockito.ArgumentMatchers.eq(status), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(message)
+    )
+
+  behavior of "TcpAwaitAction"
+
+  it should "receive the frames pushed after a response in any order and time out when none matches" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val serverSocket = new ServerSocket(0)
+
+    // Kept until the end of the test, as a GC would otherwise close the unreachable socket
+    val accepted = Future {
+      // Answer the subscription request and push frames right behind the response
+      val clientSocket = serverSocket.accept()
+      val in = clientSocket.getInputStream
+      val out = clientSocket.getOutputStream
+      val header = in.readNBytes(2)
+      in.readNBytes(((header(0) & 0xFF) << 8) | (header(1) & 0xFF))
+      Seq("SUBSCRIBED", "TICK1", "HB", "TICK2").foreach(writeFrame(out, _))
+      out.flush()
+      clientSocket
+    }
+
+    val components = TcpComponents(TcpProtocol("localhost", serverSocket.getLocalPort, 1000, 1000, keepAlive = false,
+      reuseConnections = true, nonBlocking = true))
+    val capture = new CapturingAction
+    def await(requestName: String, prefix: String, timeout: Int = 1000, checks: List[TcpCheck] = Nil) =
+      TcpAwaitAction(requestName, new String(_).startsWith(prefix), codec, timeout = timeout, checks = checks,
+        components = components, statsEngine = mockStatsEngine, clock = mockClock, next = capture)
+
+    try {
+      TcpRequestAction(
+        requestName = "subscribe",
+        message = TcpMessage("SUBSCRIBE".getBytes),
+        frameCodec = Some(codec),
+        reuseConnection = true,
+        components = components,
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = capture
+      ).execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+      val subscribed = capture.nextSession()
+      new String(subscribed("subscribe.response").as[Array[Byte]]) shouldBe "SUBSCRIBED"
+
+      await("second", "TICK2", checks = List(TcpCheck.regex("TICK(\\d)").saveAs("tick"))).execute(subscribed)
+      val second = capture.nextSession()
+      new String(second("second.response").as[Array[Byte]]) shouldBe "TICK2"
+      second("tick").as[String] shouldBe "2"
+
+      await("first", "TICK1").execute(second)
+      val first = capture.nextSession()
+      new String(first("first.response").as[Array[Byte]]) shouldBe "TICK1"
+
+      await("missing", "TICK3", timeout = 100).execute(first)
+      capture.nextSession().isFailed shouldBe true
+
+      verifyLogged(mockStatsEngine, "second", OK, None)
+      verifyLogged(mockStatsEngine, "first", OK, None)
+      verifyLogged(mockStatsEngine, "missing", KO, Some("Timeout"))
+    } finally {
+      components.connections.closeAll()
+      accepted.foreach(_.close())
+      serverSocket.close()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+
+  it should "fail when there is no connection to receive from" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val nextAction = mock[Action]
+    val components = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = true, nonBlocking = true))
+
+    TcpAwaitAction("orphan", _ => true, codec, timeout = 100, components = components, statsEngine = mockStatsEngine,
+      clock = mockClock, next = nextAction).execute(Session(scenario = "test-scenario", userId = 1, eventLoop = null))
+
+    verify(nextAction).!(argThat[Session](_.isFailed))
+    verifyLogged(mockStatsEngine, "orphan", KO, Some("No open connection default to receive from"))
+  }
+
+  it should "require a frame codec and the non-blocking engine" in {
+    val nonBlocking = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = true, nonBlocking = true))
+    val blocking = TcpComponents(nonBlocking.protocol.copy(nonBlocking = false))
+    val builder = TcpAwaitActionBuilder.await("tick", _ => true)
+
+    builder.addLengthHeader(true).newAction(nonBlocking, null, mockClock, null).frameCodec shouldBe codec
+    an[IllegalArgumentException] should be thrownBy builder.newAction(nonBlocking, null, mockClock, null)
+    an[IllegalArgumentException] should be thrownBy builder.addLengthHeader(true).newAction(blocking, null, mockClock, null)
+    an[IllegalArgumentException] should be thrownBy builder.timeout(0)
+  }
+}
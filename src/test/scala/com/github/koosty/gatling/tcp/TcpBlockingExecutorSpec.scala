@@ -0,0 +1,124 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.nio.ByteOrder
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, LinkedBlockingQueue, TimeUnit}
+import scala.jdk.CollectionConverters._
+import scala.util.Try
+
+class TcpBlockingExecutorSpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val server = new TcpTestServer(0)
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession(userId: Long = 1) = Session(scenario = "test-scenario", userId = userId, eventLoop = eventLoopGroup.next())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def afterAll(): Unit = {
+    server.stop()
+    eventLoopGroup.shutdownGracefully()
+  }
+
+  /** Collects the sessions passed to the next action, and whether they came back on their event loop. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[(Session, Boolean)]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put((session, session.eventLoop.inEventLoop))
+    def next(): (Session, Boolean) = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private val virtualThreadsAvailable = Try(classOf[Thread].getMethod("ofVirtual")).isSuccess
+
+  private def request(components: TcpComponents, capture: Action, validator: Array[Byte] => Boolean) =
+    TcpRequestAction(
+      requestName = "offloaded",
+      message = TcpMessage("PING".getBytes),
+      frameCodec = Some(FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)),
+      validators = List(bytes => validator(bytes)),
+      components = components,
+      statsEngine = mock[StatsEngine],
+      clock = mockClock,
+      next = capture
+    )
+
+  behavior of "TcpBlockingExecutor"
+
+  it should "run on virtual threads when the JDK has them, and on named platform threads otherwise" in {
+    val executor = new TcpBlockingExecutor(2)
+    try {
+      val thread = new LinkedBlockingQueue[Thread]
+      executor.execute(() => thread.put(Thread.currentThread))
+
+      executor.virtual shouldBe virtualThreadsAvailable
+      val name = thread.poll(5, TimeUnit.SECONDS).getName
+      if (!virtualThreadsAvailable) name should startWith(TcpBlockingExecutor.ThreadNamePrefix)
+    } finally {
+      executor.close()
+    }
+  }
+
+  behavior of "TcpRequestAction with virtual threads"
+
+  it should "run the exchange off the event loop and resume the scenario on it" in {
+    val components = TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = false,
+      virtualThreads = true))
+    val capture = new CapturingAction
+    val threads = new ConcurrentLinkedQueue[Thread]
+
+    request(components, capture, { _ => threads.add(Thread.currentThread); true }).execute(newSession())
+
+    val (session, onEventLoop) = capture.next()
+    session.isFailed shouldBe false
+    onEventLoop shouldBe true
+    val exchangeThread = threads.asScala.head
+    session.eventLoop.inEventLoop(exchangeThread) shouldBe false
+    if (!virtualThreadsAvailable) exchangeThread.getName should startWith(TcpBlockingExecutor.ThreadNamePrefix)
+    components.blockingExecutor.foreach(_.close())
+  }
+
+  it should "queue the exchanges beyond the platform threads of the fallback" in {
+    val components = TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = false,
+      virtualThreads = true, blockingThreads = 1))
+    val capture = new CapturingAction
+    val release = new CountDownLatch(1)
+    val action = request(components, capture, { _ => release.await(5, TimeUnit.SECONDS) })
+
+    (1 to 3).foreach(userId => action.execute(newSession(userId)))
+    release.countDown()
+
+    val sessions = Seq.fill(3)(capture.next())
+    sessions.map(_._1.isFailed) shouldBe Seq(false, false, false)
+    sessions.map(_._1.userId).toSet shouldBe Set(1L, 2L, 3L)
+    components.metrics.snapshot().inFlight shouldBe 0
+    components.blockingExecutor.foreach(_.close())
+  }
+
+  it should "fail the requests sent once the executor is closed" in {
+    val components = TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = false,
+      virtualThreads = true))
+    val capture = new CapturingAction
+    components.blockingExecutor.foreach(_.close())
+
+    request(components, capture, _ => true).execute(newSession())
+
+    capture.next()._1.isFailed shouldBe true
+    components.metrics.snapshot().inFlight shouldBe 0
+  }
+
+  it should "be left to the non-blocking engine" in {
+    TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = false,
+      nonBlocking = true, virtualThreads = true)).blockingExecutor shouldBe None
+  }
+}
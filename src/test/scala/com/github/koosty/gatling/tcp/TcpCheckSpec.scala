@@ -0,0 +1,80 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.validation.{Failure => ValidationFailure, Success => ValidationSuccess}
+import io.gatling.core.session.Session
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+class TcpCheckSpec extends AnyFlatSpec with Matchers {
+
+  private val session = Session(scenario = "test-scenario", userId = 1, eventLoop = null)
+  private def response(text: String) = new TcpResponse(text.getBytes(StandardCharsets.UTF_8))
+
+  behavior of "TcpCheck"
+
+  it should "extract slices, byte sequences and regex groups and save them" in {
+    val checked = TcpCheck.checkAll(List(
+      TcpCheck.bytes(0, 2).is(ByteBuffer.wrap("OK".getBytes)).saveAs("status"),
+      TcpCheck.string(3, 4).saveAs("code"),
+      TcpCheck.find(" ID=".getBytes).saveAs("idPosition"),
+      TcpCheck.regex("ID=(\\d+)").saveAs("id"),
+      TcpCheck.length().is(13)
+    ), response("OK 0042 ID=17"), session)
+
+    checked shouldBe a[ValidationSuccess[_]]
+    val captured = checked.toOption.get
+    captured("status").as[Array[Byte]] shouldBe "OK".getBytes
+    captured("code").as[String] shouldBe "0042"
+    captured("idPosition").as[Integer] shouldBe 7
+    captured("id").as[String] shouldBe "17"
+  }
+
+  it should "stop at the first failed check and describe it" in {
+    var evaluated = false
+    val checked = TcpCheck.checkAll(List(
+      TcpCheck.bytes(0, 2).is(ByteBuffer.wrap("OK".getBytes)),
+      TcpCheck.regex("ID=(\\d+)").validate("evaluated", _ => { evaluated = true; true })
+    ), response("KO"), session)
+
+    checked shouldBe ValidationFailure("bytes(0, 2): expected 4f4b but found 4b4f")
+    evaluated shouldBe false
+  }
+
+  it should "fail extractors that find nothing unless absence is expected" in {
+    TcpCheck.bytes(4, 8).check(response("short"), session) shouldBe ValidationFailure("bytes(4, 8): not found")
+    TcpCheck.regex("ERROR").notExists.check(response("fine"), session) shouldBe ValidationSuccess(session)
+    TcpCheck.find("x".getBytes).notExists.check(response("xyz"), session) shouldBe ValidationFailure("find(78): found 0")
+    TcpCheck.string(0, 2).not("KO").check(response("KO"), session) shouldBe ValidationFailure("string(0, 2): unexpectedly found KO")
+  }
+
+  it should "transform extracted values and report exceptions as validation errors" in {
+    TcpCheck.regex("ID=(\\d+)").transform[Integer](Integer.valueOf(_)).is(17).saveAs("id")
+      .check(response("ID=17"), session).toOption.get("id").as[Integer] shouldBe 17
+    TcpCheck.regex("ID=(\\w+)").transform[Integer](Integer.valueOf(_)).check(response("ID=abc"), session) shouldBe
+      ValidationFailure("Validation error: For input string: \"abc\"")
+  }
+
+  it should "reject transformations after a validation, which they would drop" in {
+    val transformed = TcpCheck.regex("ID=(\\d+)").transform[Integer](Integer.valueOf(_))
+    transformed.is(18).check(response("ID=17"), session) shouldBe ValidationFailure("regex(ID=(\\d+)): expected 18 but found 17")
+    TcpCheck.regex("ID=(\\d+)").exists.transform[Integer](Integer.valueOf(_)).check(response("ID=17"), session) shouldBe ValidationSuccess(session)
+
+    an[IllegalStateException] should be thrownBy TcpCheck.regex("ID=(\\d+)").is("18").transform[Integer](Integer.valueOf(_))
+    an[IllegalStateException] should be thrownBy TcpCheck.length().validate("positive", _ > 0).transform[String](_.toString)
+    an[IllegalStateException] should be thrownBy TcpCheck.regex("ERROR").notExists.transform[String](_.trim)
+  }
+
+  it should "adapt validators taking the whole response" in {
+    TcpCheck.validator(_.nonEmpty).check(response("x"), session) shouldBe ValidationSuccess(session)
+    TcpCheck.validator(_.isEmpty).check(response("x"), session) shouldBe ValidationFailure("Response validation failed")
+  }
+
+  it should "decode the text of a response once per charset" in {
+    val view = response("text")
+    view.text(StandardCharsets.UTF_8) should be theSameInstanceAs view.text(StandardCharsets.UTF_8)
+    view.text(StandardCharsets.ISO_8859_1) shouldBe "text"
+  }
+}
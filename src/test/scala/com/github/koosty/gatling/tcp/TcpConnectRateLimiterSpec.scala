@@ -0,0 +1,29 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.util.concurrent.TimeUnit
+
+class TcpConnectRateLimiterSpec extends AnyFlatSpec with Matchers {
+
+  behavior of "TcpConnectRateLimiter"
+
+  it should "let a tenth of a second worth of connects through at once, then space them out" in {
+    val limiter = new TcpConnectRateLimiter(100)
+
+    (1 to 10).map(_ => limiter.reserve()) shouldBe Seq.fill(10)(0L)
+    val waits = (1 to 10).map(_ => limiter.reserve())
+    waits.sliding(2).foreach { case Seq(previous, next) => next should be > previous }
+    TimeUnit.NANOSECONDS.toMillis(waits.last) should (be >= 50L and be <= 100L)
+  }
+
+  it should "wait for the next token when acquiring over the rate" in {
+    val limiter = new TcpConnectRateLimiter(5)
+    limiter.acquire()
+    val start = System.nanoTime()
+    limiter.acquire()
+
+    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) should be >= 150L
+  }
+}
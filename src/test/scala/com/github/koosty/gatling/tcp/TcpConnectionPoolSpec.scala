@@ -0,0 +1,130 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CompletableFuture, TimeUnit, TimeoutException}
+import scala.util.{Failure, Success, Try}
+
+class TcpConnectionPoolSpec extends AnyFlatSpec with Matchers {
+
+  /** A fake connection that can be closed. */
+  final class FakeConnection(val id: Int) {
+    @volatile var open = true
+  }
+
+  def createPool(settings: TcpPoolSettings): (TcpConnectionPool[String, FakeConnection], (Try[FakeConnection] => Unit) => Unit, AtomicInteger) = {
+    val opened = new AtomicInteger
+    val pool = new TcpConnectionPool[String, FakeConnection](settings, _.open, _.open = false)
+    val connect: (Try[FakeConnection] => Unit) => Unit = callback => callback(Success(new FakeConnection(opened.incrementAndGet())))
+    (pool, connect, opened)
+  }
+
+  def acquire(pool: TcpConnectionPool[String, FakeConnection], connect: (Try[FakeConnection] => Unit) => Unit): CompletableFuture[FakeConnection] = {
+    val future = new CompletableFuture[FakeConnection]
+    pool.acquire("host", connect, {
+      case Success(connection) => future.complete(connection)
+      case Failure(e) => future.completeExceptionally(e)
+    })
+    future
+  }
+
+  behavior of "TcpConnectionPool"
+
+  it should "reuse a released connection" in {
+    val (pool, connect, opened) = createPool(TcpPoolSettings(enabled = true))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    pool.release("host", first, reusable = true)
+    val second = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+
+    second shouldBe theSameInstanceAs(first)
+    opened.get shouldBe 1
+    pool.close()
+  }
+
+  it should "close connections released as not reusable" in {
+    val (pool, connect, opened) = createPool(TcpPoolSettings(enabled = true))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    pool.release("host", first, reusable = false)
+    val second = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+
+    first.open shouldBe false
+    second.id shouldBe 2
+    opened.get shouldBe 2
+    pool.size("host") shouldBe 1
+    pool.close()
+  }
+
+  it should "hand a released connection to a waiting request when the limit is reached" in {
+    val (pool, connect, opened) = createPool(TcpPoolSettings(enabled = true, maxConnectionsPerHost = 1))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    val waiting = acquire(pool, connect)
+
+    waiting.isDone shouldBe false
+    pool.release("host", first, reusable = true)
+
+    waiting.get(1, TimeUnit.SECONDS) shouldBe theSameInstanceAs(first)
+    opened.get shouldBe 1
+    pool.close()
+  }
+
+  it should "fail a waiting request after the acquire timeout" in {
+    val (pool, connect, _) = createPool(TcpPoolSettings(enabled = true, maxConnectionsPerHost = 1, acquireTimeout = 50))
+    acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    val waiting = acquire(pool, connect)
+
+    val thrown = the[java.util.concurrent.ExecutionException] thrownBy waiting.get(1, TimeUnit.SECONDS)
+    thrown.getCause shouldBe a[TimeoutException]
+    pool.close()
+  }
+
+  it should "replace an idle connection that is no longer open when validating on borrow" in {
+    val (pool, connect, opened) = createPool(TcpPoolSettings(enabled = true, validateOnBorrow = true))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    pool.release("host", first, reusable = true)
+    first.open = false
+
+    acquire(pool, connect).get(1, TimeUnit.SECONDS).id shouldBe 2
+    opened.get shouldBe 2
+    pool.size("host") shouldBe 1
+    pool.close()
+  }
+
+  it should "evict connections idle for longer than the max idle time" in {
+    val (pool, connect, _) = createPool(TcpPoolSettings(enabled = true, maxIdleTime = 20))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    pool.release("host", first, reusable = true)
+    Thread.sleep(100)
+
+    first.open shouldBe false
+    pool.size("host") shouldBe 0
+    pool.close()
+  }
+
+  it should "keep offered connections idle up to the limit and hand them over when taken" in {
+    val (pool, connect, opened) = createPool(TcpPoolSettings(enabled = true, maxConnectionsPerHost = 2))
+    val prewarmed = (1 to 3).map(id => new FakeConnection(-id))
+
+    prewarmed.map(pool.offer("host", _)) shouldBe Seq(true, true, false)
+    prewarmed(2).open shouldBe false
+    pool.size("host") shouldBe 2
+
+    pool.take("host").map(_.id) shouldBe Some(-2)
+    pool.size("host") shouldBe 1
+    acquire(pool, connect).get(1, TimeUnit.SECONDS).id shouldBe -1
+    pool.take("host") shouldBe None
+    opened.get shouldBe 0
+  }
+
+  it should "close idle connections and reject acquisitions once closed" in {
+    val (pool, connect, _) = createPool(TcpPoolSettings(enabled = true))
+    val first = acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    pool.release("host", first, reusable = true)
+    pool.close()
+
+    first.open shouldBe false
+    val thrown = the[java.util.concurrent.ExecutionException] thrownBy acquire(pool, connect).get(1, TimeUnit.SECONDS)
+    thrown.getCause shouldBe an[IllegalStateException]
+  }
+}
@@ -0,0 +1,60 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.net.{ServerSocket, Socket}
+
+class TcpConnectionRegistrySpec extends AnyFlatSpec with Matchers {
+
+  def withServer(test: ServerSocket => Unit): Unit = {
+    val serverSocket = new ServerSocket(0)
+    try test(serverSocket) finally serverSocket.close()
+  }
+
+  behavior of "TcpConnectionRegistry"
+
+  it should "close only the exiting user's connections" in withServer { server =>
+    val registry = new TcpConnectionRegistry
+    val user1Socket = new Socket("localhost", server.getLocalPort)
+    val user2Socket = new Socket("localhost", server.getLocalPort)
+    registry.register(1L, user1Socket)
+    registry.register(2L, user2Socket)
+
+    registry.closeUserConnections(1L)
+
+    user1Socket.isClosed shouldBe true
+    user2Socket.isClosed shouldBe false
+    registry.closedOnExitCount shouldBe 1
+    registry.size shouldBe 1
+    user2Socket.close()
+  }
+
+  it should "not close connections that were unregistered" in withServer { server =>
+    val registry = new TcpConnectionRegistry
+    val socket = new Socket("localhost", server.getLocalPort)
+    registry.register(1L, socket)
+    registry.unregister(1L, socket)
+
+    registry.closeUserConnections(1L)
+
+    socket.isClosed shouldBe false
+    registry.closedOnExitCount shouldBe 0
+    socket.close()
+  }
+
+  it should "force-close all remaining connections at the end of the simulation" in withServer { server =>
+    val registry = new TcpConnectionRegistry
+    val sockets = (1 to 3).map { userId =>
+      val socket = new Socket("localhost", server.getLocalPort)
+      registry.register(userId.toLong, socket)
+      socket
+    }
+
+    registry.closeAll()
+
+    sockets.forall(_.isClosed) shouldBe true
+    registry.closedAtEndCount shouldBe 3
+    registry.size shouldBe 0
+  }
+}
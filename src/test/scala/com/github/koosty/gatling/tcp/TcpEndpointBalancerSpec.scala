@@ -0,0 +1,93 @@
+package com.github.koosty.gatling.tcp
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.net.InetAddress
+
+class TcpEndpointBalancerSpec extends AnyFlatSpec with Matchers {
+
+  private val endpoints = List(TcpEndpoint("a", 1), TcpEndpoint("b", 2), TcpEndpoint("c", 3))
+
+  private def balancer(balancing: TcpBalancing, endpoints: List[TcpEndpoint] = endpoints, ejectionTime: Int = 10000) =
+    new TcpEndpointBalancer(endpoints, balancing, ejectionTime, 0, _ => Array(InetAddress.getLoopbackAddress))
+
+  behavior of "TcpEndpointBalancer"
+
+  it should "hand out the endpoints in turn with the round-robin strategy" in {
+    val roundRobin = balancer(TcpBalancing.RoundRobin)
+
+    (1 to 6).map(_ => roundRobin.select(1).get.index) shouldBe Seq(0, 1, 2, 0, 1, 2)
+  }
+
+  it should "keep each virtual user on the same endpoint with the sticky strategy" in {
+    val sticky = balancer(TcpBalancing.Sticky)
+
+    (1 to 3).map(_ => sticky.select(4).get.index) shouldBe Seq(1, 1, 1)
+    sticky.select(5).get.index shouldBe 2
+  }
+
+  it should "choose the endpoint with the fewest requests in flight" in {
+    val leastInFlight = balancer(TcpBalancing.LeastInFlight)
+    val busy = leastInFlight.select(1).get
+    val other = leastInFlight.select(1).get
+
+    other.index should not be busy.index
+    val third = leastInFlight.select(1).get
+    Set(busy.index, other.index, third.index) shouldBe Set(0, 1, 2)
+
+    other.release()
+    leastInFlight.select(1).get.index shouldBe other.index
+  }
+
+  it should "only choose among the endpoints with the random strategy" in {
+    val random = balancer(TcpBalancing.Random)
+
+    (1 to 20).forall(_ => Set(0, 1, 2).contains(random.select(1).get.index)) shouldBe true
+  }
+
+  it should "skip endpoints at their connection limit and fail once all of them are" in {
+    val limited = balancer(TcpBalancing.RoundRobin, List(TcpEndpoint("a", 1, maxConnections = 1), TcpEndpoint("b", 2, maxConnections = 2)))
+
+    val acquired = (1 to 3).map(_ => limited.select(1).get)
+    acquired.map(_.index) shouldBe Seq(0, 1, 1)
+    limited.select(1) shouldBe None
+
+    acquired.head.release()
+    limited.select(1).map(_.index) shouldBe Some(0)
+  }
+
+  it should "enforce the connection limit on requests over reused connections" in {
+    val limited = balancer(TcpBalancing.RoundRobin, List(TcpEndpoint("a", 1, maxConnections = 1)))
+    val endpoint = limited.select(1).get
+
+    limited.reuse(0) shouldBe None
+    endpoint.release()
+    limited.reuse(0).map(_.requestsInFlight) shouldBe Some(1)
+  }
+
+  it should "avoid ejected endpoints until the ejection time has elapsed" in {
+    val ejecting = balancer(TcpBalancing.RoundRobin, ejectionTime = 50)
+    ejecting.select(1).get.eject()
+
+    (1 to 4).map(_ => ejecting.select(1).get.index) should not contain 0
+    Thread.sleep(100)
+    (1 to 3).map(_ => ejecting.select(1).get.index).toSet shouldBe Set(0, 1, 2)
+  }
+
+  it should "still choose an ejected endpoint when all of them are ejected" in {
+    val ejecting = balancer(TcpBalancing.RoundRobin, endpoints.take(2))
+    ejecting.select(1).get.eject()
+    ejecting.select(1).get.eject()
+
+    ejecting.select(1).map(_.index) shouldBe Some(0)
+  }
+
+  it should "never eject a single endpoint" in {
+    val single = balancer(TcpBalancing.RoundRobin, List(TcpEndpoint("a", 1)))
+    val endpoint = single.select(1).get
+    endpoint.eject()
+
+    endpoint.ejected shouldBe false
+  }
+}
@@ -0,0 +1,113 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.concurrent.Eventually
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.time.{Seconds, Span}
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.net.ServerSocket
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+import scala.jdk.CollectionConverters._
+
+class TcpMetricsSpec extends AnyFlatSpec with Matchers with MockitoSugar with Eventually with BeforeAndAfterAll {
+
+  private val server = new TcpTestServer(0)
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession() = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def afterAll(): Unit = {
+    server.stop()
+    eventLoopGroup.shutdownGracefully()
+  }
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def nextSession(): Session = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private def protocol(nonBlocking: Boolean, port: Int = server.port) =
+    TcpProtocol("localhost", port, 2000, 2000, keepAlive = false, reuseConnections = false, nonBlocking = nonBlocking)
+
+  /** Runs a framed request echoed by the server, on a connection closed afterwards. */
+  private def echo(components: TcpComponents): Session = {
+    val capture = new CapturingAction
+    TcpRequestAction(
+      requestName = "metered",
+      message = TcpMessage("PING".getBytes),
+      frameCodec = Some(FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)),
+      components = components,
+      statsEngine = mock[StatsEngine],
+      clock = mockClock,
+      next = capture
+    ).execute(newSession())
+    capture.nextSession()
+  }
+
+  behavior of "TcpMetrics"
+
+  it should "count the bytes on the wire and the connections of blocking requests" in {
+    val components = TcpComponents(protocol(nonBlocking = false))
+    echo(components).isFailed shouldBe false
+    echo(components).isFailed shouldBe false
+
+    components.metrics.snapshot() shouldBe TcpMetrics.Snapshot(bytesWritten = 12, bytesRead = 12, opened = 2, closed = 2, failed = 0, inFlight = 0)
+  }
+
+  it should "count the bytes on the wire and the connections of non-blocking requests" in {
+    val components = TcpComponents(protocol(nonBlocking = true))
+    echo(components).isFailed shouldBe false
+
+    eventually(timeout(Span(5, Seconds))) {
+      components.metrics.snapshot() shouldBe TcpMetrics.Snapshot(bytesWritten = 6, bytesRead = 6, opened = 1, closed = 1, failed = 0, inFlight = 0)
+    }
+  }
+
+  it should "count the connections that failed" in {
+    val closedPort = { val socket = new ServerSocket(0); socket.close(); socket.getLocalPort }
+    Seq(false, true).foreach { nonBlocking =>
+      val components = TcpComponents(protocol(nonBlocking, closedPort))
+      echo(components).isFailed shouldBe true
+
+      components.metrics.snapshot() shouldBe TcpMetrics.Snapshot(bytesWritten = 0, bytesRead = 0, opened = 0, closed = 0, failed = 1, inFlight = 0)
+    }
+  }
+
+  behavior of "TcpMetricsSampler"
+
+  it should "append the changes since the previous sample to the CSV file" in {
+    val file = Files.createTempFile("tcp-metrics", ".csv")
+    Files.delete(file)
+    val metrics = new TcpMetrics
+    val sampler = new TcpMetricsSampler(metrics, TcpMetricsSettings(interval = 60000, file = Some(file.toString)))
+    try {
+      metrics.connectionsOpened.add(3)
+      metrics.requestsInFlight.add(2)
+      sampler.sample()
+      metrics.connectionsClosed.increment()
+      sampler.close()
+
+      val lines = Files.readAllLines(file).asScala.map(_.split(',').drop(3).mkString(","))
+      lines.head shouldBe TcpMetrics.CsvHeader.split(',').drop(3).mkString(",")
+      lines.tail shouldBe Seq("3,3,0,0,2,0,0", "2,0,1,0,2,0,0")
+    } finally {
+      Files.deleteIfExists(file)
+    }
+  }
+}
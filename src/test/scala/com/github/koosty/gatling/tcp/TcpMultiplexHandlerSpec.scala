@@ -0,0 +1,58 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.buffer.Unpooled
+import io.netty.channel.embedded.EmbeddedChannel
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.nio.ByteOrder
+import scala.util.{Failure, Success, Try}
+
+class TcpMultiplexHandlerSpec extends AnyFlatSpec with Matchers {
+
+  private val codec = FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)
+
+  private def handler() = new TcpMultiplexHandler(codec.newDecoder(1024), frame => new String(frame.take(2)))
+
+  behavior of "TcpMultiplexHandler"
+
+  it should "route each response to the request awaiting its correlation id" in {
+    val multiplex = handler()
+    val channel = new EmbeddedChannel(multiplex)
+    var first: Try[Array[Byte]] = null
+    var second: Try[Array[Byte]] = null
+    multiplex.register("01", 0, first = _) shouldBe true
+    multiplex.register("02", 0, second = _) shouldBe true
+    multiplex.register("02", 0, _ => ()) shouldBe false
+
+    channel.writeInbound(Unpooled.wrappedBuffer(codec.encode("02-B".getBytes) ++ codec.encode("01-A".getBytes)))
+
+    first.map(new String(_)) shouldBe Success("01-A")
+    second.map(new String(_)) shouldBe Success("02-B")
+    multiplex.inFlight shouldBe 0
+  }
+
+  it should "fail the requests in flight when the connection closes" in {
+    val multiplex = handler()
+    val channel = new EmbeddedChannel(multiplex)
+    var result: Try[Array[Byte]] = null
+    multiplex.register("01", 0, result = _)
+
+    channel.close()
+
+    result shouldBe a[Failure[_]]
+    result.failed.get shouldBe a[TcpConnectionClosedException]
+  }
+
+  it should "fail at once the requests registered after the connection closed" in {
+    val multiplex = handler()
+    val channel = new EmbeddedChannel(multiplex)
+    channel.close()
+    var result: Try[Array[Byte]] = null
+
+    multiplex.register("01", 0, result = _) shouldBe true
+
+    result.failed.get shouldBe a[TcpConnectionClosedException]
+    multiplex.inFlight shouldBe 0
+  }
+}
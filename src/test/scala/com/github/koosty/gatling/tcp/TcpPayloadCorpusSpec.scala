@@ -0,0 +1,209 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.io.IOException
+import java.nio.file.{Files, Path}
+import java.nio.{ByteBuffer, ByteOrder}
+import java.util.concurrent.{Callable, ConcurrentHashMap, Executors, LinkedBlockingQueue, TimeUnit}
+import scala.jdk.CollectionConverters._
+
+class TcpPayloadCorpusSpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val directory = Files.createTempDirectory("tcp-corpus")
+  private val server = new TcpTestServer(0)
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def afterAll(): Unit = {
+    server.stop()
+    eventLoopGroup.shutdownGracefully()
+    Files.list(directory).forEach(Files.delete(_))
+    Files.delete(directory)
+  }
+
+  private def payloads(count: Int): Seq[Array[Byte]] = (0 until count).map(i => s"payload-$i-${"x" * (i % 20)}".getBytes)
+
+  /** Writes a corpus of payloads prefixed with their length. */
+  private def writeCorpus(name: String, payloads: Seq[Array[Byte]], lengthFieldSize: Int = 4, order: ByteOrder = ByteOrder.BIG_ENDIAN): Path = {
+    val buffer = ByteBuffer.allocate(payloads.map(_.length + lengthFieldSize).sum).order(order)
+    payloads.foreach { payload =>
+      lengthFieldSize match {
+        case 1 => buffer.put(payload.length.toByte)
+        case 2 => buffer.putShort(payload.length.toShort)
+        case _ => buffer.putInt(payload.length)
+      }
+      buffer.put(payload)
+    }
+    Files.write(directory.resolve(name), buffer.array)
+  }
+
+  private def bytes(buffer: ByteBuffer): Array[Byte] = {
+    val bytes = new Array[Byte](buffer.remaining)
+    buffer.duplicate().get(bytes)
+    bytes
+  }
+
+  behavior of "TcpPayloadCorpus"
+
+  it should "map each payload of the corpus as a read-only off-heap slice" in {
+    val expected = payloads(500)
+    val corpus = TcpPayloadCorpus.open(writeCorpus("slices.bin", expected, 2, ByteOrder.LITTLE_ENDIAN).toString, 2, ByteOrder.LITTLE_ENDIAN)
+    corpus.size shouldBe 500
+    (0 until 500).foreach(i => bytes(corpus.payload(i)) shouldBe expected(i))
+    corpus.payload(42).isDirect shouldBe true
+    corpus.payload(42).isReadOnly shouldBe true
+    an[IndexOutOfBoundsException] should be thrownBy corpus.payload(500)
+  }
+
+  it should "store its index next to the corpus, and rebuild it once the corpus changes" in {
+    val path = writeCorpus("indexed.bin", payloads(10))
+    TcpPayloadCorpus.open(path.toString)
+    val index = TcpPayloadCorpus.indexPath(path)
+    Files.exists(index) shouldBe true
+    val built = Files.getLastModifiedTime(index)
+
+    TcpPayloadCorpus.open(path.toString).size shouldBe 10
+    Files.getLastModifiedTime(index) shouldBe built
+
+    writeCorpus("indexed.bin", payloads(12))
+    val corpus = TcpPayloadCorpus.open(path.toString)
+    corpus.size shouldBe 12
+    bytes(corpus.payload(11)) shouldBe payloads(12)(11)
+  }
+
+  it should "find records across the regions of a large corpus" in {
+    val expected = payloads(300)
+    // Regions of 64 bytes, far smaller than the corpus, with records of up to 32 bytes straddling them
+    val corpus = TcpPayloadCorpus.open(writeCorpus("regions.bin", expected), 4, ByteOrder.BIG_ENDIAN, 64)
+    (0 until 300).foreach(i => bytes(corpus.payload(i)) shouldBe expected(i))
+  }
+
+  it should "reject truncated, empty or misdescribed corpora" in {
+    val truncated = writeCorpus("truncated.bin", payloads(3))
+    Files.write(truncated, Files.readAllBytes(truncated).dropRight(1))
+    an[IOException] should be thrownBy TcpPayloadCorpus.open(truncated.toString)
+    Files.exists(TcpPayloadCorpus.indexPath(truncated)) shouldBe false
+
+    an[IllegalArgumentException] should be thrownBy TcpPayloadCorpus.open(writeCorpus("empty.bin", Nil).toString)
+    an[IllegalArgumentException] should be thrownBy TcpPayloadCorpus.open(truncated.toString, 3, ByteOrder.BIG_ENDIAN)
+  }
+
+  behavior of "TcpPayloadSource"
+
+  it should "draw each payload once in order across threads, then fail" in {
+    val corpus = TcpPayloadCorpus.open(writeCorpus("sequential.bin", payloads(1000)).toString)
+    val source = corpus.sequential()
+    val drawn = ConcurrentHashMap.newKeySet[String]()
+    val threads = Executors.newFixedThreadPool(8)
+    try {
+      threads.invokeAll(List.fill(8)((() => {
+        (1 to 125).foreach(_ => drawn.add(new String(bytes(source.next()))))
+      }): Callable[Unit]).asJava).asScala.foreach(_.get())
+    } finally {
+      threads.shutdownNow()
+    }
+    drawn.asScala shouldBe payloads(1000).map(new String(_)).toSet
+    source.hasNext shouldBe false
+    a[NoSuchElementException] should be thrownBy source.next()
+  }
+
+  it should "draw payloads circularly or at random" in {
+    val corpus = TcpPayloadCorpus.open(writeCorpus("circular.bin", payloads(3)).toString)
+    val circular = corpus.circular()
+    (0 until 7).map(_ => new String(bytes(circular.next()))) shouldBe Seq(0, 1, 2, 0, 1, 2, 0).map(i => new String(payloads(3)(i)))
+
+    val random = corpus.random()
+    val drawn = (1 to 100).map(_ => new String(bytes(random.next()))).toSet
+    drawn shouldBe payloads(3).map(new String(_)).toSet
+    random.hasNext shouldBe true
+  }
+
+  it should "feed the payloads to the sessions" in {
+    val source = TcpPayloadCorpus.open(writeCorpus("feeder.bin", payloads(2)).toString).sequential()
+    val feeder = source.feeder("payload")
+    bytes(feeder.next()("payload").asInstanceOf[ByteBuffer]) shouldBe payloads(2).head
+    feeder.hasNext shouldBe true
+    feeder.next()
+    feeder.hasNext shouldBe false
+  }
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def next(): Session = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private def send(message: TcpMessage, nonBlocking: Boolean): Session = {
+    val capture = new CapturingAction
+    val components = TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking))
+    try {
+      TcpRequestAction(
+        requestName = "corpus",
+        message = message,
+        frameCodec = Some(FrameCodec.lengthField(4, ByteOrder.BIG_ENDIAN)),
+        components = components,
+        statsEngine = mock[StatsEngine],
+        clock = mockClock,
+        next = capture
+      ).execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+      capture.next()
+    } finally {
+      components.connections.closeAll()
+    }
+  }
+
+  it should "send the payloads of a corpus on both engines" in {
+    val expected = payloads(4)
+    val source = TcpPayloadCorpus.open(writeCorpus("requests.bin", expected).toString).sequential()
+    for ((nonBlocking, i) <- List(false, true, false, true).zipWithIndex) {
+      val session = send(TcpMessage(source), nonBlocking)
+      session.isFailed shouldBe false
+      session("corpus.response").as[Array[Byte]] shouldBe expected(i)
+    }
+    send(TcpMessage(source), nonBlocking = false).isFailed shouldBe true
+  }
+
+  it should "write fed payloads from a template attribute on both engines, without copying them" in {
+    val expected = payloads(2)
+    val source = TcpPayloadCorpus.open(writeCorpus("template.bin", expected).toString).sequential()
+    val feeder = source.feeder("payload")
+    val message = TcpMessageTemplate.template().text(">").attribute("payload").message
+    for ((nonBlocking, i) <- List(false, true).zipWithIndex) {
+      val fed = feeder.next()
+      val session = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()).setAll(fed)
+      message.asInstanceOf[TcpMessage.Dynamic].resolve(session).toOption.get.last should be theSameInstanceAs fed("payload").asInstanceOf[ByteBuffer]
+
+      val capture = new CapturingAction
+      val components = TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking))
+      try {
+        TcpRequestAction(
+          requestName = "corpus",
+          message = message,
+          frameCodec = Some(FrameCodec.lengthField(4, ByteOrder.BIG_ENDIAN)),
+          components = components,
+          statsEngine = mock[StatsEngine],
+          clock = mockClock,
+          next = capture
+        ).execute(session)
+        capture.next()("corpus.response").as[Array[Byte]] shouldBe ">".getBytes ++ expected(i)
+      } finally {
+        components.connections.closeAll()
+      }
+    }
+  }
+}
@@ -15,6 +15,7 @@ class TcpProtocolBuilderSpec extends AnyFlatSpec with Matchers with MockitoSugar
     protocol.readTimeout shouldBe 10000
     protocol.keepAlive shouldBe true
     protocol.reuseConnections shouldBe true
+    protocol.nonBlocking shouldBe false
   }
 
   it should "override default host and port" in {
@@ -47,6 +48,160 @@ class TcpProtocolBuilderSpec extends AnyFlatSpec with Matchers with MockitoSugar
     protocol.reuseConnections shouldBe false
   }
 
+  it should "enable the non-blocking engine" in {
+    val protocol = TcpProtocolBuilder.tcp()
+      .nonBlocking(true)
+      .protocol()
+
+    protocol.nonBlocking shouldBe true
+  }
+
+  it should "configure the connection pool" in {
+    val protocol = TcpProtocolBuilder.tcp()
+      .connectionPool(true)
+      .maxConnectionsPerHost(500)
+      .maxIdleTime(30000)
+      .acquireTimeout(2000)
+      .validateOnBorrow(false)
+      .protocol()
+
+    protocol.pool shouldBe TcpPoolSettings(
+      enabled = true,
+      maxConnectionsPerHost = 500,
+      maxIdleTime = 30000,
+      acquireTimeout = 2000,
+      validateOnBorrow = false
+    )
+  }
+
+  it should "throw exception for invalid pool limits" in {
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().maxConnectionsPerHost(0)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().maxIdleTime(-1)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().acquireTimeout(-1)
+  }
+
+  it should "set the number of pipelined connections" in {
+    TcpProtocolBuilder.tcp().pipelinedConnections(4).protocol().pipelinedConnections shouldBe 4
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().pipelinedConnections(0)
+  }
+
+  it should "set the maximum response size" in {
+    TcpProtocolBuilder.tcp().protocol().maxResponseSize shouldBe 1024 * 1024
+    TcpProtocolBuilder.tcp().maxResponseSize(4096).protocol().maxResponseSize shouldBe 4096
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().maxResponseSize(0)
+  }
+
+  it should "set the DNS TTL" in {
+    TcpProtocolBuilder.tcp().protocol().dnsTtl shouldBe 0
+    TcpProtocolBuilder.tcp().dnsTtl(30000).protocol().dnsTtl shouldBe 30000
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().dnsTtl(-1)
+  }
+
+  it should "add endpoints and set the balancing" in {
+    val protocol = TcpProtocolBuilder.tcp()
+      .endpoint("node1", 2222)
+      .endpoint("node2", 2223, 10)
+      .balancing(TcpBalancing.leastInFlight())
+      .ejectionTime(5000)
+      .endpointStats(false)
+      .protocol()
+
+    protocol.endpoints shouldBe List(TcpEndpoint("node1", 2222), TcpEndpoint("node2", 2223, 10))
+    protocol.targetEndpoints shouldBe protocol.endpoints
+    protocol.balancing shouldBe TcpBalancing.LeastInFlight
+    protocol.ejectionTime shouldBe 5000
+    protocol.endpointStats shouldBe false
+    TcpProtocolBuilder.tcp().host("server").port(3000).protocol().targetEndpoints shouldBe List(TcpEndpoint("server", 3000))
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().endpoint("node", 0)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().endpoint("node", 2222, -1)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().ejectionTime(-1)
+  }
+
+  it should "set the pre-warmed connections and the connect rate limit" in {
+    val protocol = TcpProtocolBuilder.tcp().prewarmConnections(10).maxConnectsPerSecond(500).protocol()
+
+    protocol.prewarmConnections shouldBe 10
+    protocol.maxConnectsPerSecond shouldBe 500
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().prewarmConnections(-1)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().maxConnectsPerSecond(-1)
+  }
+
+  it should "enable TLS with any of its options" in {
+    TcpProtocolBuilder.tcp().protocol().tls.enabled shouldBe false
+    TcpProtocolBuilder.tcp().sniHostName("server").protocol().tls shouldBe TcpTlsSettings(enabled = true, sniHostName = Some("server"))
+
+    val tls = TcpProtocolBuilder.tcp()
+      .trustStore("trust.jks", "secret", "JKS")
+      .keyStore("client.p12", "password")
+      .tlsProtocols("TLSv1.3", "TLSv1.2")
+      .cipherSuites("TLS_AES_128_GCM_SHA256")
+      .hostnameVerification(false)
+      .protocol().tls
+
+    tls.enabled shouldBe true
+    tls.trustStore shouldBe Some(TcpKeyStore("trust.jks", "secret", "JKS"))
+    tls.keyStore shouldBe Some(TcpKeyStore("client.p12", "password"))
+    tls.protocols shouldBe List("TLSv1.3", "TLSv1.2")
+    tls.cipherSuites shouldBe List("TLS_AES_128_GCM_SHA256")
+    tls.hostnameVerification shouldBe false
+    TcpProtocolBuilder.tcp().trustAllCertificates(true).tls(false).protocol().tls.enabled shouldBe false
+    TcpProtocolBuilder.tcp().trustAllCertificates(true).protocol().tls shouldBe TcpTlsSettings(enabled = true, trustAll = true)
+    TcpProtocolBuilder.tcp().trustAllCertificates(false).protocol().tls shouldBe TcpTlsSettings()
+    TcpProtocolBuilder.tcp().tls(true).trustAllCertificates(false).protocol().tls.enabled shouldBe true
+  }
+
+  it should "set the socket options and local addresses" in {
+    TcpProtocolBuilder.tcp().protocol().socket shouldBe TcpSocketSettings()
+
+    val socket = TcpProtocolBuilder.tcp()
+      .tcpNoDelay(false)
+      .sendBufferSize(65536)
+      .receiveBufferSize(262144)
+      .soLinger(0)
+      .reuseAddress(true)
+      .localAddresses("10.0.0.1", "10.0.0.2")
+      .protocol().socket
+
+    socket shouldBe TcpSocketSettings(tcpNoDelay = false, sendBufferSize = 65536, receiveBufferSize = 262144, linger = 0,
+      reuseAddress = true, localAddresses = List("10.0.0.1", "10.0.0.2"))
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().sendBufferSize(0)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().receiveBufferSize(-1)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().soLinger(-1)
+  }
+
+  it should "sample the metrics every second once written to a file" in {
+    TcpProtocolBuilder.tcp().protocol().metrics shouldBe TcpMetricsSettings()
+    TcpProtocolBuilder.tcp().metricsFile("tcp.csv").protocol().metrics shouldBe TcpMetricsSettings(1000, Some("tcp.csv"))
+    TcpProtocolBuilder.tcp().metricsInterval(5000).metricsFile("tcp.csv").protocol().metrics shouldBe TcpMetricsSettings(5000, Some("tcp.csv"))
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().metricsInterval(-1)
+  }
+
+  it should "configure blocking requests to run on virtual threads" in {
+    val protocol = TcpProtocolBuilder.tcp().virtualThreads(true).blockingThreads(50).protocol()
+    protocol.virtualThreads shouldBe true
+    protocol.blockingThreads shouldBe 50
+    TcpProtocolBuilder.tcp().protocol().virtualThreads shouldBe false
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().blockingThreads(0)
+  }
+
+  it should "select the transport of the non-blocking engine" in {
+    val protocol = TcpProtocolBuilder.tcp().nonBlocking(true).transport(TcpTransport.IoUring).reusePort(true).protocol()
+    protocol.transport shouldBe TcpTransport.IoUring
+    protocol.socket.reusePort shouldBe true
+    TcpProtocolBuilder.tcp().protocol().transport shouldBe TcpTransport.Gatling
+    an[NullPointerException] should be thrownBy TcpProtocolBuilder.tcp().transport(null)
+  }
+
+  it should "connect to a Unix socket instead of the host and port" in {
+    val protocol = TcpProtocolBuilder.tcp().unixSocket("/run/app.sock").protocol()
+    protocol.unixSocket shouldBe Some("/run/app.sock")
+    protocol.targetEndpoints shouldBe List(TcpEndpoint("localhost", 2222, unixSocket = Some("/run/app.sock")))
+    protocol.targetEndpoints.head.name shouldBe "unix:/run/app.sock"
+    an[NullPointerException] should be thrownBy TcpProtocolBuilder.tcp().unixSocket(null)
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().unixSocket("/run/app.sock").endpoint("node1", 2222).protocol()
+    an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().unixSocket("/run/app.sock").tls(true).protocol()
+  }
+
   it should "throw exception for invalid port number" in {
     an[IllegalArgumentException] should be thrownBy TcpProtocolBuilder.tcp().port(-1)
   }
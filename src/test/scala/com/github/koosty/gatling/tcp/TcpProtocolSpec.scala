@@ -33,6 +33,19 @@ class TcpProtocolSpec extends AnyFlatSpec with Matchers with MockitoSugar{
     noException should be thrownBy components.onExit(session)
   }
 
+  it should "close the connections a user left open on exit" in {
+    val serverSocket = new java.net.ServerSocket(0)
+    val components = TcpComponents(TcpProtocol("localhost", serverSocket.getLocalPort, 5000, 10000, keepAlive = true, reuseConnections = true))
+    val socket = new java.net.Socket("localhost", serverSocket.getLocalPort)
+    components.connections.register(1L, socket)
+
+    components.onExit(Session("tcp-test-scenario", userId = 1L, mockEventLoop))
+
+    socket.isClosed shouldBe true
+    components.connections.size shouldBe 0
+    serverSocket.close()
+  }
+
   "TcpProtocolKey" should "provide correct default values" in {
     val config = GatlingConfiguration.loadForTest()
     val defaultProtocol = TcpProtocol.TcpProtocolKey.defaultProtocolValue(config)
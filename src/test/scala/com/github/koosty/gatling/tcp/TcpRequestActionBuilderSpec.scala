@@ -9,11 +9,11 @@ class TcpRequestActionBuilderSpec extends AnyFlatSpec with Matchers with Mockito
   it should "store default parameters correctly" in {
     val builder = TcpRequestActionBuilder(
       requestName = "default-request",
-      message = Array[Byte](1, 2, 3)
+      message = TcpMessage(Array[Byte](1, 2, 3))
     )
 
     builder.requestName shouldBe "default-request"
-    builder.message shouldEqual Array[Byte](1, 2, 3)
+    builder.message.asInstanceOf[TcpMessage.Static].bytes shouldEqual Array[Byte](1, 2, 3)
     builder.addLengthHeader shouldBe false
     builder.reuseConnection shouldBe false
     builder.connectionKey shouldBe "default"
@@ -28,7 +28,7 @@ class TcpRequestActionBuilderSpec extends AnyFlatSpec with Matchers with Mockito
 
     val builder = TcpRequestActionBuilder(
       requestName = "custom-request",
-      message = Array[Byte](1, 2, 3),
+      message = TcpMessage(Array[Byte](1, 2, 3)),
       addLengthHeader = true,
       lengthHeaderType = LengthHeaderType.FOUR_BYTE_BIG_ENDIAN,
       validators = javaValidators,
@@ -51,7 +51,7 @@ class TcpRequestActionBuilderSpec extends AnyFlatSpec with Matchers with Mockito
 
     val builder = TcpRequestActionBuilder(
       requestName = "validator-test",
-      message = Array[Byte](1, 2, 3),
+      message = TcpMessage(Array[Byte](1, 2, 3)),
       validators = javaValidators
     )
 
@@ -65,4 +65,61 @@ class TcpRequestActionBuilderSpec extends AnyFlatSpec with Matchers with Mockito
     validator2.apply(Array[Byte](1, 2, 3)) shouldBe true
     validator2.apply(Array[Byte](1, 2)) shouldBe false
   }
+
+  it should "resolve the frame codec from the length header unless a custom codec is set" in {
+    val builder = TcpRequestActionBuilder.request("codec-test", Array[Byte](1, 2, 3))
+    val codec = FrameCodec.fixedLength(3)
+
+    builder.effectiveFrameCodec shouldBe None
+    builder.addLengthHeader(true).lengthHeaderType(LengthHeaderType.FOUR_BYTE_BIG_ENDIAN).effectiveFrameCodec shouldBe
+      Some(LengthHeaderType.FOUR_BYTE_BIG_ENDIAN.codec)
+    builder.addLengthHeader(true).frameCodec(codec).effectiveFrameCodec shouldBe Some(codec)
+  }
+
+  it should "override the maximum response size and disable storing responses" in {
+    val builder = TcpRequestActionBuilder.request("size-test", Array[Byte](1, 2, 3))
+
+    builder.maxResponseSize shouldBe None
+    builder.storeResponse shouldBe true
+    builder.maxResponseSize(64).maxResponseSize shouldBe Some(64)
+    builder.storeResponse(false).storeResponse shouldBe false
+    an[IllegalArgumentException] should be thrownBy builder.maxResponseSize(-1)
+  }
+
+  it should "send without awaiting a response unless the request is pipelined or checked" in {
+    val builder = TcpRequestActionBuilder.request("send-test", Array[Byte](1, 2, 3))
+    val components = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = false))
+    def build(builder: TcpRequestActionBuilder) = builder.newAction(components, null, null, null)
+
+    builder.expectResponse shouldBe true
+    build(builder.send()).expectResponse shouldBe false
+    an[IllegalArgumentException] should be thrownBy build(builder.send().validators(java.util.Arrays.asList[java.util.function.Function[Array[Byte], java.lang.Boolean]]((bytes: Array[Byte]) => bytes.nonEmpty)))
+    an[IllegalArgumentException] should be thrownBy build(builder.send().addLengthHeader(true).pipelined(_ => "id", _ => "id"))
+    an[IllegalArgumentException] should be thrownBy build(builder.send().check(TcpCheck.length()))
+  }
+
+  it should "run the validators before the checks" in {
+    val builder = TcpRequestActionBuilder.request("check-test", Array[Byte](1, 2, 3))
+      .validators(java.util.Arrays.asList[java.util.function.Function[Array[Byte], java.lang.Boolean]]((bytes: Array[Byte]) => bytes.nonEmpty))
+      .check(TcpCheck.length().is(1))
+      .check(TcpCheck.regex("x").saveAs("x"))
+    val components = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = false))
+
+    builder.checks should have size 2
+    val action = builder.newAction(components, null, null, null)
+    action.validators should have size 1
+    action.checks shouldBe builder.checks
+  }
+
+  it should "set the retry policy unless the request is pipelined" in {
+    val builder = TcpRequestActionBuilder.request("retry-test", Array[Byte](1, 2, 3))
+    val components = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = false))
+
+    builder.retryPolicy shouldBe TcpRetryPolicy()
+    val retried = builder.reconnectOnStale(true).retries(3, 200)
+    retried.newAction(components, null, null, null).retryPolicy shouldBe TcpRetryPolicy(reconnectOnStale = true, maxRetries = 3, backoff = 200)
+    an[IllegalArgumentException] should be thrownBy builder.retries(-1, 100)
+    an[IllegalArgumentException] should be thrownBy builder.retries(1, -100)
+    an[IllegalArgumentException] should be thrownBy retried.addLengthHeader(true).pipelined(_ => "id", _ => "id").newAction(components, null, null, null)
+  }
 }
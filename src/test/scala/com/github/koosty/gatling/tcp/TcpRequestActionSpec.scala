@@ -6,6 +6,8 @@ import io.gatling.commons.util.Clock
 import io.gatling.core.action.Action
 import io.gatling.core.session.Session
 import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
 import org.mockito.ArgumentMatchers._
 import org.mockito.Mockito._
 import org.mockito.invocation.InvocationOnMock
@@ -47,6 +49,21 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
       reuseConnections = true
     )
   }
+  // Helper to create TcpComponents
+  def createTcpComponents(host: String = "localhost", port: Int = 0): TcpComponents =
+    TcpComponents(createTcpProtocol(host, port))
+
+  /**
+   * Verifies the response logged for the request, started at the clock reading and ended after the
+   * measured response time.
+   */
+  def verifyLogged(statsEngine: StatsEngine, status: Status, message: Option[String], minResponseTime: Long = 0L): Unit =
+    verify(statsEngine).logResponse(
+      org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+      org.mockito.ArgumentMatchers.eq(requestName), org.mockito.ArgumentMatchers.eq(1000L),
+      longThat(_ >= 1000L + minResponseTime),
+      org.mockito.ArgumentMatchers.eq(status), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(message)
+    )
 
   behavior of "TcpRequestAction"
 
@@ -54,9 +71,8 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     val mockStatsEngine = mock[StatsEngine]
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
+      message = TcpMessage(testMessage),
+      components = createTcpComponents(),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -65,157 +81,6 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     action.name shouldBe requestName
   }
 
-  it should "create correct length header for TWO_BYTE_BIG_ENDIAN" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      addLengthHeader = true,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    // Use reflection to access private method for testing
-    val method = action.getClass.getDeclaredMethod("createLengthHeader", classOf[Int])
-    method.setAccessible(true)
-
-    val header = method.invoke(action, Integer.valueOf(256)).asInstanceOf[Array[Byte]]
-    header shouldBe Array[Byte](1, 0) // 256 in big endian: high byte = 1, low byte = 0
-  }
-
-  it should "create correct length header for TWO_BYTE_LITTLE_ENDIAN" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      addLengthHeader = true,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val method = action.getClass.getDeclaredMethod("createLengthHeader", classOf[Int])
-    method.setAccessible(true)
-
-    val header = method.invoke(action, Integer.valueOf(256)).asInstanceOf[Array[Byte]]
-    header shouldBe Array[Byte](0, 1) // 256 in little endian: low byte = 0, high byte = 1
-  }
-
-  it should "create correct length header for FOUR_BYTE_BIG_ENDIAN" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      addLengthHeader = true,
-      lengthHeaderType = LengthHeaderType.FOUR_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val method = action.getClass.getDeclaredMethod("createLengthHeader", classOf[Int])
-    method.setAccessible(true)
-
-    val header = method.invoke(action, Integer.valueOf(0x12345678)).asInstanceOf[Array[Byte]]
-    header shouldBe Array[Byte](0x12, 0x34, 0x56, 0x78)
-  }
-
-  it should "create correct length header for FOUR_BYTE_LITTLE_ENDIAN" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      addLengthHeader = true,
-      lengthHeaderType = LengthHeaderType.FOUR_BYTE_LITTLE_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val method = action.getClass.getDeclaredMethod("createLengthHeader", classOf[Int])
-    method.setAccessible(true)
-
-    val header = method.invoke(action, Integer.valueOf(0x12345678)).asInstanceOf[Array[Byte]]
-    header shouldBe Array[Byte](0x78, 0x56, 0x34, 0x12)
-  }
-
-  it should "read length from TWO_BYTE_BIG_ENDIAN header correctly" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val method = action.getClass.getDeclaredMethod("readLengthFromHeader", classOf[Array[Byte]])
-    method.setAccessible(true)
-
-    val length = method.invoke(action, Array[Byte](1, 0)).asInstanceOf[Int]
-    length shouldBe 256
-  }
-
-  it should "read length from TWO_BYTE_LITTLE_ENDIAN header correctly" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val action = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_LITTLE_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val method = action.getClass.getDeclaredMethod("readLengthFromHeader", classOf[Array[Byte]])
-    method.setAccessible(true)
-
-    val length = method.invoke(action, Array[Byte](0, 1)).asInstanceOf[Int]
-    length shouldBe 256
-  }
-
-  it should "return correct header size for different types" in {
-    val mockStatsEngine = mock[StatsEngine]
-    val twoByteAction = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val fourByteAction = TcpRequestAction(
-      requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.FOUR_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(),
-      statsEngine = mockStatsEngine,
-      clock = mockClock,
-      next = mockNextAction
-    )
-
-    val twoByteMethod = twoByteAction.getClass.getDeclaredMethod("getHeaderSize")
-    twoByteMethod.setAccessible(true)
-
-    val fourByteMethod = fourByteAction.getClass.getDeclaredMethod("getHeaderSize")
-    fourByteMethod.setAccessible(true)
-
-    twoByteMethod.invoke(twoByteAction).asInstanceOf[Int] shouldBe 2
-    fourByteMethod.invoke(fourByteAction).asInstanceOf[Int] shouldBe 4
-  }
-
   it should "successfully execute request without length header" in {
     val mockStatsEngine = mock[StatsEngine]
     // Setup mock server
@@ -248,9 +113,8 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(port = port),
+      message = TcpMessage(testMessage),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -263,16 +127,7 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     latch.await(2, TimeUnit.SECONDS) shouldBe true
 
     // Verify stats engine was called with OK status
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 2000L,
-      status = OK,
-      responseCode = None,
-      message = None
-    )
+    verifyLogged(mockStatsEngine, OK, None)
 
     // Verify next action was called
     verify(mockNextAction).!(any[Session])
@@ -318,10 +173,9 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      addLengthHeader = true,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = createTcpProtocol(port = port),
+      message = TcpMessage(testMessage),
+      frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -330,16 +184,7 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     action.execute(session)
     latch.await(2, TimeUnit.SECONDS) shouldBe true
 
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 2000L,
-      status = OK,
-      responseCode = None,
-      message = None
-    )
+    verifyLogged(mockStatsEngine, OK, None)
 
     serverSocket.close()
   }
@@ -373,10 +218,9 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+      message = TcpMessage(testMessage),
       validators = List(failingValidator),
-      protocol = createTcpProtocol(port = port),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -385,16 +229,7 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     action.execute(session)
     latch.await(2, TimeUnit.SECONDS) shouldBe true
 
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 2000L,
-      status = KO,
-      responseCode = None,
-      message = Some("Response validation failed")
-    )
+    verifyLogged(mockStatsEngine, KO, Some("Response validation failed"))
 
     serverSocket.close()
   }
@@ -405,16 +240,15 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
-      protocol = TcpProtocol(
+      message = TcpMessage(testMessage),
+      components = TcpComponents(TcpProtocol(
         host = "192.0.2.1", // Non-routable IP for timeout
         port = 12345,
         connectTimeout = 100,
         readTimeout = 100,
         keepAlive = false,
         reuseConnections = false
-      ),
+      )),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -422,16 +256,7 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     val session = createTestSession()
     action.execute(session)
 
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 1000L,
-      status = KO,
-      responseCode = None,
-      message = Some("Timeout")
-    )
+    verifyLogged(mockStatsEngine, KO, Some("Timeout"))
   }
 
   it should "handle validator exception" in {
@@ -463,10 +288,9 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+      message = TcpMessage(testMessage),
       validators = List(throwingValidator),
-      protocol = createTcpProtocol(port = port),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -476,16 +300,7 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     action.execute(session)
     latch.await(2, TimeUnit.SECONDS) shouldBe true
 
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 2000L,
-      status = KO,
-      responseCode = None,
-      message = Some("Validation error: Validation error")
-    )
+    verifyLogged(mockStatsEngine, KO, Some("Validation error: Validation error"))
 
     serverSocket.close()
   }
@@ -520,10 +335,9 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+      message = TcpMessage(testMessage),
       validators = List(validator1, validator2),
-      protocol = createTcpProtocol(port = port),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -533,20 +347,58 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
     action.execute(session)
     latch.await(2, TimeUnit.SECONDS) shouldBe true
 
-    verify(mockStatsEngine).logResponse(
-      scenario = "test-scenario",
-      groups = Nil,
-      requestName = requestName,
-      startTimestamp = 1000L,
-      endTimestamp = 2000L,
-      status = OK,
-      responseCode = None,
-      message = None
-    )
+    verifyLogged(mockStatsEngine, OK, None)
 
     serverSocket.close()
   }
 
+  it should "capture values with checks and report the first failed one" in {
+    val serverSocket = new ServerSocket(0)
+    val port = serverSocket.getLocalPort
+
+    Future {
+      Seq("OK ID=42", "KO").foreach { response =>
+        val clientSocket = serverSocket.accept()
+        clientSocket.getInputStream.read(new Array[Byte](1024))
+        clientSocket.getOutputStream.write(response.getBytes)
+        clientSocket.getOutputStream.flush()
+        clientSocket.close()
+      }
+    }
+
+    def execute(statsEngine: StatsEngine): Session = {
+      when(mockClock.nowMillis).thenReturn(1000L)
+      val nextAction = mock[Action]
+      TcpRequestAction(
+        requestName = requestName,
+        message = TcpMessage(testMessage),
+        checks = List(TcpCheck.string(0, 2).is("OK"), TcpCheck.regex("ID=(\\d+)").saveAs("id")),
+        components = createTcpComponents(port = port),
+        statsEngine = statsEngine,
+        clock = mockClock,
+        next = nextAction
+      ).execute(createTestSession())
+      val captor = org.mockito.ArgumentCaptor.forClass(classOf[Session])
+      verify(nextAction, org.mockito.Mockito.timeout(2000)).!(captor.capture())
+      captor.getValue
+    }
+
+    try {
+      val okStatsEngine = mock[StatsEngine]
+      execute(okStatsEngine)("id").as[String] shouldBe "42"
+      verifyLogged(okStatsEngine, OK, None)
+
+      val koStatsEngine = mock[StatsEngine]
+      val failed = execute(koStatsEngine)
+      failed.isFailed shouldBe true
+      failed.contains("id") shouldBe false
+      failed(s"$requestName.responseString").as[String] shouldBe "KO"
+      verifyLogged(koStatsEngine, KO, Some("string(0, 2): expected OK but found KO"))
+    } finally {
+      serverSocket.close()
+    }
+  }
+
   it should "handle connection reuse correctly" in {
     val mockStatsEngine = mock[StatsEngine]
     val serverSocket = new ServerSocket(0)
@@ -597,11 +449,10 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     val action = TcpRequestAction(
       requestName = requestName,
-      message = testMessage,
-      lengthHeaderType = LengthHeaderType.TWO_BYTE_BIG_ENDIAN,
+      message = TcpMessage(testMessage),
       reuseConnection = true,
       connectionKey = "test-connection",
-      protocol = createTcpProtocol(port = port),
+      components = createTcpComponents(port = port),
       statsEngine = mockStatsEngine,
       clock = mockClock,
       next = mockNextAction
@@ -632,5 +483,658 @@ class TcpRequestActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
 
     serverSocket.close()
   }
-}
 
+  it should "execute request with length header on the non-blocking engine" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val serverSocket = new ServerSocket(0)
+    val port = serverSocket.getLocalPort
+    val responseData = "Response".getBytes
+
+    when(mockClock.nowMillis).thenReturn(1000L, 2000L)
+
+    Future {
+      val clientSocket = serverSocket.accept()
+      val in = clientSocket.getInputStream
+      val out = clientSocket.getOutputStream
+
+      val headerBuffer = new Array[Byte](2)
+      in.readNBytes(headerBuffer, 0, 2)
+      val messageLength = ((headerBuffer(0) & 0xFF) << 8) | (headerBuffer(1) & 0xFF)
+      in.readNBytes(messageLength)
+
+      // Send header and payload in separate writes to exercise response accumulation
+      out.write(Array[Byte](0, responseData.length.toByte))
+      out.flush()
+      Thread.sleep(50)
+      out.write(responseData)
+      out.flush()
+
+      clientSocket.close()
+    }
+
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+      components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = true)),
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = mockNextAction
+    )
+    try {
+      action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+      eventually(timeout(Span(2, Seconds))) {
+        verifyLogged(mockStatsEngine, OK, None)
+      }
+    } finally {
+      serverSocket.close()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+
+  it should "report a timeout on the non-blocking engine when no response arrives" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val serverSocket = new ServerSocket(0)
+    val port = serverSocket.getLocalPort
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+
+    // Accept the connection but never answer, keeping the socket until the end of the test, as a
+    // GC would otherwise close the unreachable socket
+    val accepted = Future {
+      serverSocket.accept()
+    }
+
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      components = TcpComponents(createTcpProtocol(port = port).copy(readTimeout = 200, nonBlocking = true)),
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = mockNextAction
+    )
+    try {
+      action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+      eventually(timeout(Span(2, Seconds))) {
+        verifyLogged(mockStatsEngine, KO, Some("Timeout"), minResponseTime = 200L)
+      }
+    } finally {
+      accepted.foreach(_.close())
+      serverSocket.close()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+
+  it should "share pooled connections across virtual users" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val serverSocket = new ServerSocket(0)
+    val port = serverSocket.getLocalPort
+    val responseData = "Response".getBytes
+    val accepted = new java.util.concurrent.atomic.AtomicInteger
+
+    when(mockClock.nowMillis).thenReturn(1000L, 2000L, 3000L, 4000L)
+
+    Future {
+      val clientSocket = serverSocket.accept()
+      accepted.incrementAndGet()
+      val in = clientSocket.getInputStream
+      val out = clientSocket.getOutputStream
+      for (_ <- 1 to 2) {
+        in.read(new Array[Byte](1024))
+        out.write(responseData)
+        out.flush()
+      }
+    }
+
+    val components = TcpComponents(createTcpProtocol(port = port).copy(pool = TcpPoolSettings(enabled = true, maxConnectionsPerHost = 1)))
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      components = components,
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = mockNextAction
+    )
+    try {
+      action.execute(createTestSession(userId = 1))
+      action.execute(createTestSession(userId = 2))
+
+      verify(mockStatsEngine, times(2)).logResponse(
+        any[String], any[List[String]], any[String], any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(OK), any[Option[String]], any[Option[String]]
+      )
+      accepted.get shouldBe 1
+      components.socketPool.size(new java.net.InetSocketAddress("localhost", port)) shouldBe 1
+    } finally {
+      components.socketPool.close()
+      serverSocket.close()
+    }
+  }
+
+  it should "spread requests over the endpoints and report them per endpoint" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val first = new TcpTestServer(0)
+    val second = new TcpTestServer(0)
+    val closed = new ServerSocket(0)
+    val unreachablePort = closed.getLocalPort
+    closed.close()
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+
+    val protocol = createTcpProtocol().copy(endpoints = List(
+      TcpEndpoint("localhost", first.port),
+      TcpEndpoint("localhost", second.port),
+      TcpEndpoint("localhost", unreachablePort)
+    ))
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      components = TcpComponents(protocol),
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = mockNextAction
+    )
+    def verifyEndpoint(port: Int, status: Status, count: Int): Unit =
+      verify(mockStatsEngine, times(count)).logResponse(
+        any[String], any[List[String]], org.mockito.ArgumentMatchers.eq(s"$requestName@localhost:$port"), any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(status), any[Option[String]], any[Option[String]]
+      )
+    try {
+      (1 to 6).foreach(userId => action.execute(createTestSession(userId = userId)))
+
+      // The unreachable endpoint fails once, then is ejected and skipped
+      verifyEndpoint(unreachablePort, KO, 1)
+      verifyEndpoint(first.port, OK, 3)
+      verifyEndpoint(second.port, OK, 2)
+      verify(mockStatsEngine, times(5)).logResponse(
+        any[String], any[List[String]], org.mockito.ArgumentMatchers.eq(requestName), any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(OK), any[Option[String]], any[Option[String]]
+      )
+    } finally {
+      first.stop()
+      second.stop()
+    }
+  }
+
+  it should "enforce the endpoint connection limit on requests over kept connections" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val server = TcpStubServerBuilder.stubServer().otherwise(TcpStubResponse.echo().withLatency(TcpStubLatency.fixed(300))).start()
+    val sessions = new java.util.concurrent.LinkedBlockingQueue[Session]
+    val next = new Action {
+      override def name: String = "next"
+      override def execute(session: Session): Unit = sessions.put(session)
+    }
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+
+    val protocol = createTcpProtocol().copy(nonBlocking = true, endpoints = List(TcpEndpoint("localhost", server.port, maxConnections = 1)))
+    val components = TcpComponents(protocol)
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      reuseConnection = true,
+      components = components,
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = next
+    )
+    def sessionOf(userId: Long) = Session(scenario = "test-scenario", userId = userId, eventLoop = eventLoopGroup.next())
+    try {
+      // Each user opens its connection in turn, within the limit
+      action.execute(sessionOf(1))
+      val first = sessions.poll(5, TimeUnit.SECONDS)
+      action.execute(sessionOf(2))
+      val second = sessions.poll(5, TimeUnit.SECONDS)
+      List(first, second).map(_.isFailed) shouldBe List(false, false)
+
+      // Both connections are kept, but only one of them may exchange at once
+      action.execute(first)
+      action.execute(second)
+      val results = List(sessions.poll(5, TimeUnit.SECONDS), sessions.poll(5, TimeUnit.SECONDS))
+      results.map(_.isFailed).sorted shouldBe List(false, true)
+      verify(mockStatsEngine, times(1)).logResponse(
+        any[String], any[List[String]], any[String], any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(KO), any[Option[String]], org.mockito.ArgumentMatchers.eq(Some("The endpoint of the connection is at its connection limit"))
+      )
+      components.balancer.all.head.requestsInFlight shouldBe 0
+    } finally {
+      components.connections.closeAll()
+      server.stop()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+
+  it should "take connections opened when the simulation starts before opening new ones" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val server = new TcpTestServer(0)
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+
+    val components = TcpComponents(createTcpProtocol(port = server.port).copy(prewarmConnections = 2))
+    val address = new java.net.InetSocketAddress("localhost", server.port)
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(testMessage),
+      timingBreakdown = true,
+      components = components,
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = mockNextAction
+    )
+    try {
+      eventually(timeout(Span(5, Seconds))) {
+        components.socketPool.size(address) shouldBe 2
+      }
+      (1 to 3).foreach(userId => action.execute(createTestSession(userId = userId)))
+
+      components.socketPool.size(address) shouldBe 0
+      verify(mockStatsEngine, times(3)).logResponse(
+        any[String], any[List[String]], org.mockito.ArgumentMatchers.eq(requestName), any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(OK), any[Option[String]], any[Option[String]]
+      )
+      // Only the last request opened its own connection
+      verify(mockStatsEngine, times(1)).logResponse(
+        any[String], any[List[String]], org.mockito.ArgumentMatchers.eq(s"$requestName.connect"), any[Long], any[Long],
+        org.mockito.ArgumentMatchers.eq(OK), any[Option[String]], any[Option[String]]
+      )
+    } finally {
+      components.connections.closeAll()
+      components.socketPool.close()
+      server.stop()
+    }
+  }
+
+  it should "send template messages resolved from the session on both engines" in {
+    val template = TcpMessageTemplate.template().text("ID=").attribute("id").bytes(Array[Byte](0))
+    Seq(false, true).foreach { nonBlocking =>
+      val mockStatsEngine = mock[StatsEngine]
+      val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+      val serverSocket = new ServerSocket(0)
+      val port = serverSocket.getLocalPort
+      val received = new java.util.concurrent.atomic.AtomicReference[Array[Byte]]
+
+      when(mockClock.nowMillis).thenReturn(1000L, 2000L)
+
+      Future {
+        val clientSocket = serverSocket.accept()
+        val in = clientSocket.getInputStream
+        val out = clientSocket.getOutputStream
+        val header = in.readNBytes(2)
+        val request = in.readNBytes(((header(0) & 0xFF) << 8) | (header(1) & 0xFF))
+        received.set(header ++ request)
+        // Echo the request back
+        out.write(header ++ request)
+        out.flush()
+        clientSocket.close()
+      }
+
+      val action = TcpRequestAction(
+        requestName = requestName,
+        message = template.message,
+        frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+        components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = mockNextAction
+      )
+      try {
+        action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()).set("id", 42))
+
+        eventually(timeout(Span(2, Seconds))) {
+          verifyLogged(mockStatsEngine, OK, None)
+        }
+        received.get shouldBe Array[Byte](0, 6) ++ "ID=42".getBytes ++ Array[Byte](0)
+      } finally {
+        serverSocket.close()
+        eventLoopGroup.shutdownGracefully()
+      }
+    }
+  }
+
+  it should "split delimiter-terminated responses received in chunks on both engines" in {
+    Seq(false, true).foreach { nonBlocking =>
+      val mockStatsEngine = mock[StatsEngine]
+      val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+      val serverSocket = new ServerSocket(0)
+      val port = serverSocket.getLocalPort
+      val response = new java.util.concurrent.atomic.AtomicReference[Array[Byte]]
+      val nextAction = mock[Action]
+
+      when(mockClock.nowMillis).thenReturn(1000L, 2000L)
+      when(nextAction.!(any[Session])).thenAnswer((invocation: InvocationOnMock) =>
+        response.set(invocation.getArgument[Session](0)(s"$requestName.response").as[Array[Byte]])
+      )
+
+      Future {
+        val clientSocket = serverSocket.accept()
+        val in = clientSocket.getInputStream
+        val out = clientSocket.getOutputStream
+        while (in.read() != '\n') {}
+        out.write("hel".getBytes)
+        out.flush()
+        Thread.sleep(50)
+        out.write("lo\n".getBytes)
+        out.flush()
+        clientSocket.close()
+      }
+
+      val action = TcpRequestAction(
+        requestName = requestName,
+        message = TcpMessage(testMessage),
+        frameCodec = Some(FrameCodec.lines()),
+        components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = nextAction
+      )
+      try {
+        action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+        eventually(timeout(Span(2, Seconds))) {
+          response.get shouldBe "hello".getBytes
+        }
+      } finally {
+        serverSocket.close()
+        eventLoopGroup.shutdownGracefully()
+      }
+    }
+  }
+
+  it should "read unframed responses larger than 8KB sent in chunks on both engines" in {
+    val responseData = Array.tabulate[Byte](20000)(i => (i % 128).toByte)
+    Seq(false, true).foreach { nonBlocking =>
+      val mockStatsEngine = mock[StatsEngine]
+      val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+      val serverSocket = new ServerSocket(0)
+      val port = serverSocket.getLocalPort
+      val response = new java.util.concurrent.atomic.AtomicReference[Array[Byte]]
+      val nextAction = mock[Action]
+      val done = new CountDownLatch(1)
+
+      when(mockClock.nowMillis).thenReturn(1000L, 2000L)
+      when(nextAction.!(any[Session])).thenAnswer((invocation: InvocationOnMock) =>
+        response.set(invocation.getArgument[Session](0)(s"$requestName.response").as[Array[Byte]])
+      )
+
+      Future {
+        val clientSocket = serverSocket.accept()
+        clientSocket.getInputStream.read(new Array[Byte](1024))
+        val out = clientSocket.getOutputStream
+        responseData.grouped(5000).foreach { chunk =>
+          out.write(chunk)
+          out.flush()
+          Thread.sleep(10)
+        }
+        // Keep the connection open, the response is complete after the idle gap
+        done.await(2, TimeUnit.SECONDS)
+        clientSocket.close()
+      }
+
+      val action = TcpRequestAction(
+        requestName = requestName,
+        message = TcpMessage(testMessage),
+        responseCompletion = ResponseCompletion.idleGap(100),
+        components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = nextAction
+      )
+      try {
+        action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+        eventually(timeout(Span(2, Seconds))) {
+          response.get shouldBe responseData
+        }
+      } finally {
+        done.countDown()
+        serverSocket.close()
+        eventLoopGroup.shutdownGracefully()
+      }
+    }
+  }
+
+  it should "fail responses larger than the maximum size and leave them out of the session when not stored" in {
+    Seq(false, true).foreach { nonBlocking =>
+      Seq(4, 1024).foreach { maxResponseSize =>
+        val mockStatsEngine = mock[StatsEngine]
+        val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+        val serverSocket = new ServerSocket(0)
+        val port = serverSocket.getLocalPort
+        val result = new java.util.concurrent.atomic.AtomicReference[Session]
+        val nextAction = mock[Action]
+
+        when(mockClock.nowMillis).thenReturn(1000L, 2000L)
+        when(nextAction.!(any[Session])).thenAnswer((invocation: InvocationOnMock) =>
+          result.set(invocation.getArgument[Session](0))
+        )
+
+        Future {
+          val clientSocket = serverSocket.accept()
+          clientSocket.getInputStream.read(new Array[Byte](1024))
+          clientSocket.getOutputStream.write("Response".getBytes)
+          clientSocket.getOutputStream.flush()
+          clientSocket.close()
+        }
+
+        val action = TcpRequestAction(
+          requestName = requestName,
+          message = TcpMessage(testMessage),
+          responseCompletion = ResponseCompletion.peerClose(),
+          maxResponseSize = maxResponseSize,
+          storeResponse = false,
+          components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+          statsEngine = mockStatsEngine,
+          clock = mockClock,
+          next = nextAction
+        )
+        try {
+          action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+          eventually(timeout(Span(2, Seconds))) {
+            result.get should not be null
+          }
+          val session = result.get
+          session.isFailed shouldBe (maxResponseSize < 8)
+          session.contains(s"$requestName.response") shouldBe false
+          if (maxResponseSize >= 8) {
+            session(s"$requestName.bytesReceived").as[Int] shouldBe 8
+          }
+        } finally {
+          serverSocket.close()
+          eventLoopGroup.shutdownGracefully()
+        }
+      }
+    }
+  }
+
+  it should "report the connect, write and first byte phases on both engines" in {
+    Seq(false, true).foreach { nonBlocking =>
+      val mockStatsEngine = mock[StatsEngine]
+      val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+      val serverSocket = new ServerSocket(0)
+      val port = serverSocket.getLocalPort
+      val result = new java.util.concurrent.atomic.AtomicReference[Session]
+      val nextAction = mock[Action]
+
+      when(mockClock.nowMillis).thenReturn(1000L)
+      when(nextAction.!(any[Session])).thenAnswer((invocation: InvocationOnMock) =>
+        result.set(invocation.getArgument[Session](0))
+      )
+
+      Future {
+        val clientSocket = serverSocket.accept()
+        clientSocket.getInputStream.read(new Array[Byte](1024))
+        Thread.sleep(20)
+        clientSocket.getOutputStream.write(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec.encode("Response".getBytes))
+        clientSocket.getOutputStream.flush()
+        clientSocket.close()
+      }
+
+      val action = TcpRequestAction(
+        requestName = requestName,
+        message = TcpMessage(testMessage),
+        frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+        timingBreakdown = true,
+        components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = nextAction
+      )
+      try {
+        action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+        eventually(timeout(Span(2, Seconds))) {
+          result.get should not be null
+        }
+        verifyLogged(mockStatsEngine, OK, None, minResponseTime = 20L)
+        Seq("connect", "write", "firstByte").foreach { phase =>
+          verify(mockStatsEngine).logResponse(
+            org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+            org.mockito.ArgumentMatchers.eq(s"$requestName.$phase"), anyLong(), anyLong(),
+            org.mockito.ArgumentMatchers.eq(OK), any[Option[String]], any[Option[String]]
+          )
+        }
+        val timings = result.get.apply(s"$requestName.timings").as[TcpTimingBreakdown]
+        timings.connectMicros should be >= 0L
+        timings.writeMicros should be >= 0L
+        // The server's delay starts once the request arrives, which may be before the write is marked done
+        timings.writeMicros + timings.firstByteMicros should be >= 20000L
+        timings.responseMicros should be >= timings.connectMicros + timings.writeMicros + timings.firstByteMicros
+      } finally {
+        serverSocket.close()
+        eventLoopGroup.shutdownGracefully()
+      }
+    }
+  }
+
+  it should "fail the request when the message can't be resolved from the session" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val nextAction = mock[Action]
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+
+    val action = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessageTemplate.template().attribute("missing").message,
+      components = createTcpComponents(),
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = nextAction
+    )
+    action.execute(createTestSession())
+
+    verifyLogged(mockStatsEngine, KO, Some("Failed to resolve message: No attribute named 'missing' is defined"))
+    verify(nextAction).!(argThat[Session](_.isFailed))
+  }
+
+  it should "send requests without awaiting a response on both engines" in {
+    Seq(false, true).foreach { nonBlocking =>
+      val mockStatsEngine = mock[StatsEngine]
+      val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+      val serverSocket = new ServerSocket(0)
+      val port = serverSocket.getLocalPort
+      val received = new java.util.concurrent.CompletableFuture[String]
+
+      when(mockClock.nowMillis).thenReturn(1000L)
+
+      Future {
+        // Read the message and never answer
+        val clientSocket = serverSocket.accept()
+        val in = clientSocket.getInputStream
+        val header = in.readNBytes(2)
+        received.complete(new String(in.readNBytes(((header(0) & 0xFF) << 8) | (header(1) & 0xFF))))
+      }
+
+      val nextAction = mock[Action]
+      val action = TcpRequestAction(
+        requestName = requestName,
+        message = TcpMessage(testMessage),
+        frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+        expectResponse = false,
+        components = TcpComponents(createTcpProtocol(port = port).copy(nonBlocking = nonBlocking)),
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = nextAction
+      )
+      try {
+        action.execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+        eventually(timeout(Span(2, Seconds))) {
+          verifyLogged(mockStatsEngine, OK, None)
+          verify(nextAction).!(argThat[Session](session => !session.isFailed && session(s"$requestName.bytesSent").as[Int] == testMessage.length))
+        }
+        received.get(2, TimeUnit.SECONDS) shouldBe "Hello World"
+      } finally {
+        serverSocket.close()
+        eventLoopGroup.shutdownGracefully()
+      }
+    }
+  }
+
+  it should "match pipelined responses to their requests by correlation id" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val serverSocket = new ServerSocket(0)
+    val port = serverSocket.getLocalPort
+    val accepted = new java.util.concurrent.atomic.AtomicInteger
+    val responses = new java.util.concurrent.ConcurrentHashMap[Long, String]
+    val nextAction = mock[Action]
+
+    when(mockClock.nowMillis).thenReturn(1000L)
+    when(nextAction.!(any[Session])).thenAnswer((invocation: InvocationOnMock) => {
+      val session = invocation.getArgument[Session](0)
+      responses.put(session.userId, new String(session(s"$requestName.response").as[Array[Byte]]))
+    })
+
+    Future {
+      val clientSocket = serverSocket.accept()
+      accepted.incrementAndGet()
+      val in = clientSocket.getInputStream
+      val out = clientSocket.getOutputStream
+      // Read both requests before answering them in reverse order
+      val requests = (1 to 2).map { _ =>
+        val header = in.readNBytes(2)
+        new String(in.readNBytes(((header(0) & 0xFF) << 8) | (header(1) & 0xFF)))
+      }
+      requests.reverse.foreach { request =>
+        val response = s"$request-OK".getBytes
+        out.write(Array[Byte](0, response.length.toByte))
+        out.write(response)
+      }
+      out.flush()
+    }
+
+    val components = TcpComponents(createTcpProtocol(port = port))
+    def pipelinedAction(message: String) = TcpRequestAction(
+      requestName = requestName,
+      message = TcpMessage(message.getBytes),
+      frameCodec = Some(LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec),
+      pipelining = Some(TcpPipelining(bytes => new String(bytes).take(2), bytes => new String(bytes).take(2))),
+      components = components,
+      statsEngine = mockStatsEngine,
+      clock = mockClock,
+      next = nextAction
+    )
+
+    try {
+      val eventLoop = eventLoopGroup.next()
+      pipelinedAction("A1").execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoop))
+      pipelinedAction("B2").execute(Session(scenario = "test-scenario", userId = 2, eventLoop = eventLoop))
+
+      eventually(timeout(Span(2, Seconds))) {
+        responses.get(1L) shouldBe "A1-OK"
+        responses.get(2L) shouldBe "B2-OK"
+      }
+      accepted.get shouldBe 1
+    } finally {
+      components.multiplexer.close()
+      serverSocket.close()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.stats.{KO, OK, Status}
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.ArgumentMatchers._
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.io.{DataInputStream, DataOutputStream, IOException}
+import java.net.{ConnectException, ServerSocket, SocketTimeoutException}
+import java.nio.ByteOrder
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+import scala.util.Using
+
+class TcpRetryPolicySpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession() = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next())
+
+  // Answers a single framed request on each connection, then closes it like an idle timeout would
+  private val server = new ServerSocket(0)
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def beforeAll(): Unit = {
+    val acceptor = new Thread(() =>
+      while (!server.isClosed) {
+        try {
+          Using.resource(server.accept()) { socket =>
+            val in = new DataInputStream(socket.getInputStream)
+            val out = new DataOutputStream(socket.getOutputStream)
+            val request = new Array[Byte](in.readUnsignedShort())
+            in.readFully(request)
+            out.writeShort(request.length)
+            out.write(request)
+            out.flush()
+          }
+        } catch {
+          case _: IOException => // Closed
+        }
+      }
+    )
+    acceptor.setDaemon(true)
+    acceptor.start()
+  }
+
+  override def afterAll(): Unit = {
+    server.close()
+    eventLoopGroup.shutdownGracefully()
+  }
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def nextSession(): Session = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private def protocol(port: Int, nonBlocking: Boolean = false) =
+    TcpProtocol("localhost", port, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking)
+
+  private def request(components: TcpComponents, statsEngine: StatsEngine, retryPolicy: TcpRetryPolicy, capture: Action) =
+    TcpRequestAction(
+      requestName = "retried",
+      message = TcpMessage("PING".getBytes),
+      frameCodec = Some(FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)),
+      reuseConnection = true,
+      retryPolicy = retryPolicy,
+      components = components,
+      statsEngine = statsEngine,
+      clock = mockClock,
+      next = capture
+    )
+
+  private def verifyLogged(statsEngine: StatsEngine, requestName: String, status: Status, times: Int): Unit =
+    verify(statsEngine, org.mockito.Mockito.times(times)).logResponse(
+      org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+      org.mockito.ArgumentMatchers.eq(requestName), anyLong, anyLong,
+      org.mockito.ArgumentMatchers.eq(status), org.mockito.ArgumentMatchers.eq(None), any[Option[String]]
+    )
+
+  behavior of "TcpRetryPolicy"
+
+  it should "reconnect once on a stale connection, then retry with a doubling backoff" in {
+    val policy = TcpRetryPolicy(reconnectOnStale = true, maxRetries = 2, backoff = 50)
+    val closed = new TcpConnectionClosedException("Connection closed before receiving complete response")
+
+    val reconnect = policy.recover(TcpRetryPolicy.Attempt(), closed, stale = true)
+    reconnect shouldBe Some(TcpRetryPolicy.Reconnect(TcpRetryPolicy.Attempt(reconnected = true)))
+    val first = policy.recover(reconnect.get.attempt, closed, stale = true)
+    first shouldBe Some(TcpRetryPolicy.Retry(TcpRetryPolicy.Attempt(1, reconnected = true), 50))
+    val second = policy.recover(first.get.attempt, new SocketTimeoutException("Read timed out"), stale = false)
+    second shouldBe Some(TcpRetryPolicy.Retry(TcpRetryPolicy.Attempt(2, reconnected = true), 100))
+    policy.recover(second.get.attempt, new ConnectException("Connection refused"), stale = false) shouldBe None
+  }
+
+  it should "only recover from failures of the connection" in {
+    val policy = TcpRetryPolicy(reconnectOnStale = true, maxRetries = 3)
+
+    policy.recover(TcpRetryPolicy.Attempt(), new IOException("Response exceeds 4 bytes"), stale = true) shouldBe None
+    policy.recover(TcpRetryPolicy.Attempt(), new IllegalStateException("All endpoints are at their connection limit"), stale = false) shouldBe None
+    TcpRetryPolicy().recover(TcpRetryPolicy.Attempt(), new ConnectException("Connection refused"), stale = false) shouldBe None
+    TcpRetryPolicy().enabled shouldBe false
+  }
+
+  it should "not take a timeout on a reused connection for a stale connection" in {
+    val timeout = new SocketTimeoutException("Read timed out")
+
+    TcpRetryPolicy(reconnectOnStale = true).recover(TcpRetryPolicy.Attempt(), timeout, stale = true) shouldBe None
+    TcpRetryPolicy(reconnectOnStale = true, maxRetries = 1, backoff = 50).recover(TcpRetryPolicy.Attempt(), timeout, stale = true) shouldBe
+      Some(TcpRetryPolicy.Retry(TcpRetryPolicy.Attempt(1), 50))
+  }
+
+  behavior of "TcpRequestAction with a retry policy"
+
+  it should "send the request again on a new connection when the reused one was closed by the server" in {
+    val statsEngine = mock[StatsEngine]
+    val components = TcpComponents(protocol(server.getLocalPort))
+    val capture = new CapturingAction
+    val action = request(components, statsEngine, TcpRetryPolicy(reconnectOnStale = true), capture)
+    try {
+      action.execute(newSession())
+      val first = capture.nextSession()
+      first.isFailed shouldBe false
+      Thread.sleep(100) // Lets the server close the connection kept in the session
+
+      action.execute(first)
+
+      capture.nextSession().isFailed shouldBe false
+      verifyLogged(statsEngine, "retried", OK, times = 2)
+      components.metrics.snapshot().reconnects shouldBe 1
+      components.metrics.snapshot().inFlight shouldBe 0
+    } finally {
+      components.connections.closeAll()
+    }
+  }
+
+  it should "fail the request on a stale connection without the policy" in {
+    val components = TcpComponents(protocol(server.getLocalPort))
+    val capture = new CapturingAction
+    val action = request(components, mock[StatsEngine], TcpRetryPolicy(), capture)
+    try {
+      action.execute(newSession())
+      val first = capture.nextSession()
+      Thread.sleep(100)
+
+      action.execute(first)
+
+      capture.nextSession().isFailed shouldBe true
+      components.metrics.snapshot().reconnects shouldBe 0
+    } finally {
+      components.connections.closeAll()
+    }
+  }
+
+  it should "report a request a reused connection never answers as a timeout on both engines" in {
+    // Answers the first request of each connection, then reads the next ones without answering
+    val stuck = new ServerSocket(0)
+    val acceptor = new Thread(() =>
+      while (!stuck.isClosed) {
+        try {
+          val socket = stuck.accept()
+          new Thread(() =>
+            Using.resource(socket) { socket =>
+              val in = new DataInputStream(socket.getInputStream)
+              val out = new DataOutputStream(socket.getOutputStream)
+              val request = new Array[Byte](in.readUnsignedShort())
+              in.readFully(request)
+              out.writeShort(request.length)
+              out.write(request)
+              out.flush()
+              while (in.read() != -1) {}
+            }
+          ).start()
+        } catch {
+          case _: IOException => // Closed
+        }
+      }
+    )
+    acceptor.setDaemon(true)
+    acceptor.start()
+    try {
+      Seq(false, true).foreach { nonBlocking =>
+        val statsEngine = mock[StatsEngine]
+        val components = TcpComponents(TcpProtocol("localhost", stuck.getLocalPort, 2000, 300, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking))
+        val capture = new CapturingAction
+        val action = request(components, statsEngine, TcpRetryPolicy(reconnectOnStale = true), capture)
+        try {
+          action.execute(newSession())
+          val first = capture.nextSession()
+          first.isFailed shouldBe false
+
+          action.execute(first)
+
+          capture.nextSession().isFailed shouldBe true
+          verify(statsEngine).logResponse(
+            org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+            org.mockito.ArgumentMatchers.eq("retried"), anyLong, anyLong,
+            org.mockito.ArgumentMatchers.eq(KO), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(Some("Timeout"))
+          )
+          components.metrics.snapshot().reconnects shouldBe 0
+        } finally {
+          components.connections.closeAll()
+        }
+      }
+    } finally {
+      stuck.close()
+    }
+  }
+
+  it should "retry failed connections on both engines and report each failed attempt" in {
+    val closedPort = { val socket = new ServerSocket(0); socket.close(); socket.getLocalPort }
+    Seq(false, true).foreach { nonBlocking =>
+      val statsEngine = mock[StatsEngine]
+      val components = TcpComponents(protocol(closedPort, nonBlocking))
+      val capture = new CapturingAction
+
+      request(components, statsEngine, TcpRetryPolicy(maxRetries = 2, backoff = 10), capture).execute(newSession())
+
+      capture.nextSession().isFailed shouldBe true
+      verifyLogged(statsEngine, "retried.retry", KO, times = 2)
+      verifyLogged(statsEngine, "retried", KO, times = 1)
+      components.metrics.snapshot() shouldBe TcpMetrics.Snapshot(0, 0, 0, 0, failed = 3, inFlight = 0, retries = 2)
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.koosty.gatling.tcp
+
+import io.netty.channel.socket.SocketChannel
+import io.netty.channel.socket.nio.NioChannelOption
+import io.netty.channel.{ChannelOption, MultiThreadIoEventLoopGroup}
+import io.netty.channel.nio.NioIoHandler
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.net.{InetAddress, InetSocketAddress, ServerSocket, StandardSocketOptions}
+
+class TcpSocketSettingsSpec extends AnyFlatSpec with Matchers with BeforeAndAfterAll {
+
+  private val server = new ServerSocket(0, 50, InetAddress.getByName("0.0.0.0"))
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+
+  override def afterAll(): Unit = {
+    server.close()
+    eventLoopGroup.shutdownGracefully()
+  }
+
+  private val settings = TcpSocketSettings(tcpNoDelay = true, receiveBufferSize = 131072, linger = 0, reuseAddress = true,
+    reusePort = true, localAddresses = List("127.0.0.1", "127.0.0.2"))
+
+  private def components(nonBlocking: Boolean) =
+    TcpComponents(TcpProtocol("127.0.0.1", server.getLocalPort, 2000, 2000, keepAlive = false, reuseConnections = true,
+      nonBlocking = nonBlocking, socket = settings))
+
+  behavior of "TcpLocalAddresses"
+
+  it should "hand out the local addresses in turn" in {
+    val addresses = new TcpLocalAddresses(List("127.0.0.1", "127.0.0.2"))
+
+    Seq.fill(4)(addresses.next().get.getAddress.getHostAddress) shouldBe Seq("127.0.0.1", "127.0.0.2", "127.0.0.1", "127.0.0.2")
+    new TcpLocalAddresses(Nil).next() shouldBe None
+  }
+
+  behavior of "TcpSocketSettings"
+
+  it should "configure blocking sockets and bind them to the local addresses in turn" in {
+    val tcp = components(nonBlocking = false)
+    val endpoint = tcp.balancer.all.head
+    val sockets = Seq.fill(2)(tcp.openSocket(endpoint.address(), endpoint))
+    try {
+      sockets.map(_.getLocalAddress.getHostAddress) shouldBe Seq("127.0.0.1", "127.0.0.2")
+      sockets.foreach { socket =>
+        socket.getTcpNoDelay shouldBe true
+        socket.getSoLinger shouldBe 0
+        socket.getReuseAddress shouldBe true
+        socket.getOption(StandardSocketOptions.SO_REUSEPORT) shouldBe true
+        socket.getReceiveBufferSize should be >= 131072
+      }
+    } finally {
+      sockets.foreach(_.close())
+    }
+  }
+
+  it should "configure channels and bind them to the local addresses in turn" in {
+    val tcp = components(nonBlocking = true)
+    val address = new InetSocketAddress("127.0.0.1", server.getLocalPort)
+    val channels = Seq.fill(2)(tcp.nettyClient.connect(eventLoopGroup.next(), address).sync().channel.asInstanceOf[SocketChannel])
+    try {
+      channels.map(_.localAddress.getAddress.getHostAddress) shouldBe Seq("127.0.0.1", "127.0.0.2")
+      channels.foreach { channel =>
+        channel.config.getOption(ChannelOption.TCP_NODELAY) shouldBe true
+        channel.config.getOption(ChannelOption.SO_LINGER) shouldBe 0
+        channel.config.getOption(NioChannelOption.of(StandardSocketOptions.SO_REUSEPORT)) shouldBe true
+        channel.config.getOption(ChannelOption.SO_RCVBUF).intValue should be >= 131072
+      }
+    } finally {
+      channels.foreach(_.close().sync())
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import org.mockito.Mockito._
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.io.{DataInputStream, DataOutputStream}
+import java.net.{Socket, SocketTimeoutException}
+import java.nio.ByteOrder
+import java.util.concurrent.{Callable, Executors, ThreadLocalRandom, TimeUnit}
+import scala.jdk.CollectionConverters._
+
+class TcpStubServerSpec extends AnyFlatSpec with Matchers with MockitoSugar {
+
+  private val codec = FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)
+
+  private def withServer(builder: TcpStubServerBuilder)(test: TcpStubServer => Unit): Unit = {
+    val server = builder.start()
+    try test(server) finally server.stop()
+  }
+
+  private def connect(server: TcpStubServer): Socket = {
+    val socket = new Socket("localhost", server.port)
+    socket.setSoTimeout(2000)
+    socket
+  }
+
+  private def send(socket: Socket, payload: String): Unit = {
+    socket.getOutputStream.write(codec.encode(payload.getBytes))
+    socket.getOutputStream.flush()
+  }
+
+  private def receive(socket: Socket): String = {
+    val in = new DataInputStream(socket.getInputStream)
+    val payload = new Array[Byte](in.readUnsignedShort())
+    in.readFully(payload)
+    new String(payload)
+  }
+
+  behavior of "TcpStubServer"
+
+  it should "echo framed requests and count their bytes and frames" in {
+    withServer(TcpStubServerBuilder.stubServer(codec).workers(2)) { server =>
+      val socket = connect(server)
+      try {
+        // Both frames in a single write, answered in order
+        val out = new DataOutputStream(socket.getOutputStream)
+        out.write(codec.encode("ONE".getBytes) ++ codec.encode("TWO".getBytes))
+        out.flush()
+        receive(socket) shouldBe "ONE"
+        receive(socket) shouldBe "TWO"
+      } finally {
+        socket.close()
+      }
+      server.connectionsAccepted shouldBe 1
+      server.framesReceived shouldBe 2
+      server.bytesReceived shouldBe 10
+      server.bytesSent shouldBe 10
+    }
+  }
+
+  it should "answer with the first matching rule, or the default response" in {
+    val builder = TcpStubServerBuilder.stubServer(codec)
+      .when("LOGIN".getBytes, TcpStubResponse.reply("OK".getBytes))
+      .when((payload: Array[Byte]) => payload.length > 10, TcpStubResponse.reply((payload: Array[Byte]) => payload.take(4)))
+      .otherwise(TcpStubResponse.reply("UNKNOWN".getBytes))
+    withServer(builder) { server =>
+      val socket = connect(server)
+      try {
+        send(socket, "LOGIN bob")
+        receive(socket) shouldBe "OK"
+        send(socket, "A very long request")
+        receive(socket) shouldBe "A ve"
+        send(socket, "PING")
+        receive(socket) shouldBe "UNKNOWN"
+      } finally {
+        socket.close()
+      }
+    }
+  }
+
+  it should "take the bytes of each read as a request without a codec" in {
+    withServer(TcpStubServerBuilder.stubServer().otherwise(TcpStubResponse.reply((payload: Array[Byte]) => payload.reverse))) { server =>
+      val socket = connect(server)
+      try {
+        socket.getOutputStream.write("ABC".getBytes)
+        val response = new Array[Byte](3)
+        new DataInputStream(socket.getInputStream).readFully(response)
+        new String(response) shouldBe "CBA"
+      } finally {
+        socket.close()
+      }
+      server.framesReceived shouldBe 1
+    }
+  }
+
+  it should "answer after the latency, without delaying other connections" in {
+    val builder = TcpStubServerBuilder.stubServer(codec).workers(1)
+      .when("SLOW".getBytes, TcpStubResponse.echo().withLatency(TcpStubLatency.fixed(300)))
+    withServer(builder) { server =>
+      val slow = connect(server)
+      val fast = connect(server)
+      try {
+        val start = System.nanoTime()
+        send(slow, "SLOW")
+        send(fast, "FAST")
+        receive(fast) shouldBe "FAST"
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) should be < 300L
+        receive(slow) shouldBe "SLOW"
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) should be >= 300L
+      } finally {
+        slow.close()
+        fast.close()
+      }
+    }
+  }
+
+  it should "write answers in chunks, down to a byte at a time" in {
+    withServer(TcpStubServerBuilder.stubServer(codec).otherwise(TcpStubResponse.echo().slowLoris(50))) { server =>
+      val socket = connect(server)
+      try {
+        val start = System.nanoTime()
+        send(socket, "SLOW")
+        receive(socket) shouldBe "SLOW"
+        // 6 bytes with the header, 5 delays between them
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) should be >= 250L
+      } finally {
+        socket.close()
+      }
+    }
+  }
+
+  it should "drop connections, truncate answers or keep silent" in {
+    val builder = TcpStubServerBuilder.stubServer(codec)
+      .when("DROP".getBytes, TcpStubResponse.drop())
+      .when("HALF".getBytes, TcpStubResponse.echo().truncateAt(3))
+      .when("MUTE".getBytes, TcpStubResponse.silence())
+    withServer(builder) { server =>
+      val dropped = connect(server)
+      val truncated = connect(server)
+      val muted = connect(server)
+      try {
+        send(dropped, "DROP")
+        dropped.getInputStream.read() shouldBe -1
+
+        send(truncated, "HALF")
+        truncated.getInputStream.readAllBytes().length shouldBe 3
+
+        muted.setSoTimeout(200)
+        send(muted, "MUTE")
+        a[SocketTimeoutException] should be thrownBy muted.getInputStream.read()
+      } finally {
+        List(dropped, truncated, muted).foreach(_.close())
+      }
+      server.connectionsDropped shouldBe 2
+    }
+  }
+
+  it should "close the connection of a failing rule and keep serving the next ones" in {
+    val builder = TcpStubServerBuilder.stubServer(codec)
+      .when((payload: Array[Byte]) => new String(payload) == "BOOM" && (throw new IllegalStateException("Broken rule")), TcpStubResponse.reply("NEVER".getBytes))
+    // A single worker serves every connection
+    withServer(builder.workers(1)) { server =>
+      val failing = connect(server)
+      try {
+        send(failing, "BOOM")
+        failing.getInputStream.read() shouldBe -1
+      } finally {
+        failing.close()
+      }
+      server.connectionsDropped shouldBe 1
+
+      (1 to 3).foreach { i =>
+        val socket = connect(server)
+        try {
+          send(socket, s"PING-$i")
+          receive(socket) shouldBe s"PING-$i"
+        } finally {
+          socket.close()
+        }
+      }
+      server.connectionsAccepted shouldBe 4
+    }
+  }
+
+  it should "serve many connections at once on a few workers" in {
+    withServer(TcpStubServerBuilder.stubServer(codec).workers(2).otherwise(TcpStubResponse.echo().withLatency(TcpStubLatency.fixed(100)))) { server =>
+      val clients = Executors.newFixedThreadPool(200)
+      try {
+        val start = System.nanoTime()
+        val echoes = clients.invokeAll((1 to 200).map { i =>
+          (() => {
+            val socket = connect(server)
+            try {
+              send(socket, s"REQ$i")
+              receive(socket)
+            } finally {
+              socket.close()
+            }
+          }): Callable[String]
+        }.asJava).asScala.map(_.get())
+        echoes.toSet shouldBe (1 to 200).map(i => s"REQ$i").toSet
+        // Answers wait on timers, not on threads: the connections don't queue behind each other
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) should be < 5000L
+      } finally {
+        clients.shutdownNow()
+      }
+      server.connectionsAccepted shouldBe 200
+      server.framesReceived shouldBe 200
+    }
+  }
+
+  it should "fail the plugin's requests on dropped connections" in {
+    val clock = mock[Clock]
+    when(clock.nowMillis).thenReturn(1000L)
+    withServer(TcpStubServerBuilder.stubServer(codec).otherwise(TcpStubResponse.drop())) { server =>
+      val next = mock[Action]
+      TcpRequestAction(
+        requestName = "dropped",
+        message = TcpMessage("PING".getBytes),
+        frameCodec = Some(codec),
+        components = TcpComponents(TcpProtocol("localhost", server.port, 1000, 1000, keepAlive = false, reuseConnections = false)),
+        statsEngine = mock[StatsEngine],
+        clock = clock,
+        next = next
+      ).execute(Session(scenario = "test-scenario", userId = 1, eventLoop = null))
+      val captor = org.mockito.ArgumentCaptor.forClass(classOf[Session])
+      verify(next, timeout(2000)).!(captor.capture())
+      captor.getValue.isFailed shouldBe true
+      server.connectionsDropped shouldBe 1
+    }
+  }
+
+  it should "reject invalid settings" in {
+    an[IllegalArgumentException] should be thrownBy TcpStubServerBuilder.stubServer().workers(0)
+    an[IllegalArgumentException] should be thrownBy TcpStubServerBuilder.stubServer().port(-1)
+    an[IllegalArgumentException] should be thrownBy TcpStubResponse.echo().withChunks(0, 10)
+    an[IllegalArgumentException] should be thrownBy TcpStubResponse.echo().withDropRate(1.5)
+    an[NullPointerException] should be thrownBy TcpStubServerBuilder.stubServer().otherwise(null)
+  }
+
+  behavior of "TcpStubLatency"
+
+  it should "draw latencies from their distribution" in {
+    val random = ThreadLocalRandom.current()
+    def millis(latency: TcpStubLatency) = Seq.fill(10000)(TimeUnit.NANOSECONDS.toMicros(latency.nextNanos(random)) / 1000.0)
+
+    millis(TcpStubLatency.zero()).max shouldBe 0.0
+    millis(TcpStubLatency.fixed(20)).distinct shouldBe Seq(20.0)
+    val uniform = millis(TcpStubLatency.uniform(10, 20))
+    uniform.min should be >= 10.0
+    uniform.max should be <= 20.0
+    millis(TcpStubLatency.exponential(10)).sum / 10000 shouldBe 10.0 +- 0.5
+    val normal = millis(TcpStubLatency.normal(10, 2))
+    normal.sum / 10000 shouldBe 10.0 +- 0.2
+    normal.min should be >= 0.0
+
+    an[IllegalArgumentException] should be thrownBy TcpStubLatency.uniform(20, 10)
+    an[IllegalArgumentException] should be thrownBy TcpStubLatency.exponential(0)
+  }
+}
@@ -0,0 +1,139 @@
+package com.github.koosty.gatling.tcp
+
+import com.github.koosty.gatling.tcp.javaapi.TcpRequestActionBuilder.LengthHeaderType
+import io.gatling.commons.stats.{KO, OK}
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.ArgumentMatchers._
+import org.mockito.Mockito._
+import org.scalatest.concurrent.Eventually.{eventually, timeout}
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.time.{Seconds, Span}
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.net.ServerSocket
+import java.util.concurrent.{CountDownLatch, LinkedBlockingQueue, TimeUnit}
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+
+class TcpSubscribeActionSpec extends AnyFlatSpec with Matchers with MockitoSugar {
+
+  val codec: FrameCodec = LengthHeaderType.TWO_BYTE_BIG_ENDIAN.codec
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def nextSession(): Session = sessions.poll(2, TimeUnit.SECONDS)
+  }
+
+  behavior of "TcpSubscribeAction"
+
+  it should "report the pushed frames it accepts with their latency and leave the others to awaits" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+    val serverSocket = new ServerSocket(0)
+    val subscribed = new CountDownLatch(1)
+
+    // Kept until the end of the test, as a GC would otherwise close the unreachable socket
+    val accepted = Future {
+      val clientSocket = serverSocket.accept()
+      val in = clientSocket.getInputStream
+      val out = clientSocket.getOutputStream
+      val header = in.readNBytes(2)
+      in.readNBytes(((header(0) & 0xFF) << 8) | (header(1) & 0xFF))
+      out.write(codec.encode("SUBSCRIBED".getBytes))
+      out.flush()
+      subscribed.await(2, TimeUnit.SECONDS)
+      Seq("TICK:900", "HB", "TICK:950", "TICK:oops", "TICK:0960").foreach(frame => out.write(codec.encode(frame.getBytes)))
+      out.flush()
+      clientSocket
+    }
+
+    val components = TcpComponents(TcpProtocol("localhost", serverSocket.getLocalPort, 1000, 1000, keepAlive = false,
+      reuseConnections = true, nonBlocking = true))
+    val capture = new CapturingAction
+
+    try {
+      TcpRequestAction(
+        requestName = "subscribe",
+        message = TcpMessage("SUBSCRIBE".getBytes),
+        frameCodec = Some(codec),
+        reuseConnection = true,
+        components = components,
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = capture
+      ).execute(Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next()))
+
+      TcpSubscribeAction(
+        requestName = "ticks",
+        frameCodec = codec,
+        filter = new String(_).startsWith("TICK"),
+        sentMillis = Some(frame => new String(frame).stripPrefix("TICK:").toLong),
+        checks = List(TcpCheck.length().validate("short", _ < 9)),
+        components = components,
+        statsEngine = mockStatsEngine,
+        clock = mockClock,
+        next = capture
+      ).execute(capture.nextSession())
+      val session = capture.nextSession()
+      session.isFailed shouldBe false
+      subscribed.countDown()
+
+      eventually(timeout(Span(2, Seconds))) {
+        Seq(900L, 950L).foreach { sent =>
+          verify(mockStatsEngine).logResponse(
+            org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+            org.mockito.ArgumentMatchers.eq("ticks"), org.mockito.ArgumentMatchers.eq(sent), org.mockito.ArgumentMatchers.eq(1000L),
+            org.mockito.ArgumentMatchers.eq(OK), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(None)
+          )
+        }
+        verify(mockStatsEngine).logResponse(
+          org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+          org.mockito.ArgumentMatchers.eq("ticks"), anyLong, anyLong,
+          org.mockito.ArgumentMatchers.eq(KO), org.mockito.ArgumentMatchers.eq(None), argThat[Option[String]](_.exists(_.startsWith("Failed to extract the sent time")))
+        )
+        verify(mockStatsEngine).logResponse(
+          org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+          org.mockito.ArgumentMatchers.eq("ticks"), org.mockito.ArgumentMatchers.eq(960L), org.mockito.ArgumentMatchers.eq(1000L),
+          org.mockito.ArgumentMatchers.eq(KO), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(Some("length: short failed for 9"))
+        )
+      }
+
+      // The heartbeat isn't part of the subscription, and waits for an await
+      TcpAwaitAction("heartbeat", new String(_) == "HB", codec, timeout = 1000, components = components,
+        statsEngine = mockStatsEngine, clock = mockClock, next = capture).execute(session)
+      new String(capture.nextSession()("heartbeat.response").as[Array[Byte]]) shouldBe "HB"
+    } finally {
+      components.connections.closeAll()
+      accepted.foreach(_.close())
+      serverSocket.close()
+      eventLoopGroup.shutdownGracefully()
+    }
+  }
+
+  it should "fail when there is no connection to subscribe to" in {
+    val mockStatsEngine = mock[StatsEngine]
+    val nextAction = mock[Action]
+    val components = TcpComponents(TcpProtocol("localhost", 0, 1000, 1000, keepAlive = false, reuseConnections = true, nonBlocking = true))
+
+    TcpSubscribeAction("orphan", codec, components = components, statsEngine = mockStatsEngine, clock = mockClock, next = nextAction)
+      .execute(Session(scenario = "test-scenario", userId = 1, eventLoop = null))
+
+    verify(nextAction).!(argThat[Session](_.isFailed))
+    verify(mockStatsEngine).logResponse(
+      org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+      org.mockito.ArgumentMatchers.eq("orphan"), anyLong, anyLong,
+      org.mockito.ArgumentMatchers.eq(KO), org.mockito.ArgumentMatchers.eq(None), org.mockito.ArgumentMatchers.eq(Some("No open connection default to subscribe to"))
+    )
+  }
+}
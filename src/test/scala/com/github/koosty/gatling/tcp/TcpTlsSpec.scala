@@ -0,0 +1,192 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.stats.{KO, OK, Status}
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.MultiThreadIoEventLoopGroup
+import io.netty.channel.nio.NioIoHandler
+import org.mockito.ArgumentMatchers._
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.net.{InetAddress, InetSocketAddress, Socket}
+import java.nio.file.{Files, Path, Paths}
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+import javax.net.ssl.{KeyManagerFactory, SSLContext, SSLServerSocket, SSLSocket}
+import scala.util.Using
+
+class TcpTlsSpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val password = "changeit"
+  private val directory: Path = Files.createTempDirectory("tcp-tls")
+  private val keyStorePath: Path = directory.resolve("localhost.p12")
+  private var server: SSLServerSocket = _
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession() = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def nextSession(): Session = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  override def beforeAll(): Unit = {
+    // Self-signed certificate for localhost, generated with the JDK's keytool
+    val keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString
+    val process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-groupname", "secp256r1",
+      "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12",
+      "-keystore", keyStorePath.toString, "-storepass", password, "-keypass", password)
+      .inheritIO().start()
+    process.waitFor(30, TimeUnit.SECONDS) shouldBe true
+    process.exitValue() shouldBe 0
+
+    val keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm)
+    keyManagers.init(TcpKeyStore(keyStorePath.toString, password).load(), password.toCharArray)
+    val context = SSLContext.getInstance("TLS")
+    context.init(keyManagers.getKeyManagers, null, null)
+    server = context.getServerSocketFactory.createServerSocket(0).asInstanceOf[SSLServerSocket]
+
+    // Echoes what each connection receives, until it's closed
+    val acceptor = new Thread(() =>
+      while (!server.isClosed) {
+        try {
+          val socket = server.accept()
+          val handler = new Thread(() =>
+            try {
+              Using.resource(socket) { socket =>
+                val buffer = new Array[Byte](1024)
+                var read = socket.getInputStream.read(buffer)
+                while (read > 0) {
+                  socket.getOutputStream.write(buffer, 0, read)
+                  socket.getOutputStream.flush()
+                  read = socket.getInputStream.read(buffer)
+                }
+              }
+            } catch {
+              case _: Exception => // Rejected by the client
+            }
+          )
+          handler.setDaemon(true)
+          handler.start()
+        } catch {
+          case _: Exception => // Closed
+        }
+      }
+    )
+    acceptor.setDaemon(true)
+    acceptor.start()
+  }
+
+  override def afterAll(): Unit = {
+    server.close()
+    eventLoopGroup.shutdownGracefully()
+    Files.deleteIfExists(keyStorePath)
+    Files.deleteIfExists(directory)
+  }
+
+  private def trusted = TcpTlsSettings(enabled = true, trustStore = Some(TcpKeyStore(keyStorePath.toString, password)))
+
+  private def protocol(tls: TcpTlsSettings, nonBlocking: Boolean = false) =
+    TcpProtocol("localhost", server.getLocalPort, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking, tls = tls)
+
+  private def verifyLogged(statsEngine: StatsEngine, requestName: String, status: Status): Unit =
+    verify(statsEngine).logResponse(
+      org.mockito.ArgumentMatchers.eq("test-scenario"), org.mockito.ArgumentMatchers.eq(Nil),
+      org.mockito.ArgumentMatchers.eq(requestName), anyLong, anyLong,
+      org.mockito.ArgumentMatchers.eq(status), org.mockito.ArgumentMatchers.eq(None), any[Option[String]]
+    )
+
+  /** Runs a request echoed by the server, and returns the session it passed on. */
+  private def echo(components: TcpComponents, statsEngine: StatsEngine, session: Session): Session = {
+    val capture = new CapturingAction
+    TcpRequestAction(
+      requestName = "secured",
+      message = TcpMessage("PING".getBytes),
+      timingBreakdown = true,
+      components = components,
+      statsEngine = statsEngine,
+      clock = mockClock,
+      next = capture
+    ).execute(session)
+    capture.nextSession()
+  }
+
+  behavior of "TLS"
+
+  it should "secure blocking requests and report the handshake" in {
+    val statsEngine = mock[StatsEngine]
+    val components = TcpComponents(protocol(trusted))
+    try {
+      val session = echo(components, statsEngine, newSession())
+
+      session.isFailed shouldBe false
+      new String(session("secured.response").as[Array[Byte]]) shouldBe "PING"
+      session("secured.timings").as[TcpTimingBreakdown].handshakeMicros should be > 0L
+      verifyLogged(statsEngine, "secured", OK)
+      verifyLogged(statsEngine, "secured.handshake", OK)
+      // The handshake and the records count on the wire, not only the payload
+      components.metrics.snapshot().bytesWritten should be > 100L
+    } finally {
+      components.connections.closeAll()
+    }
+  }
+
+  it should "secure non-blocking requests and report the handshake" in {
+    val statsEngine = mock[StatsEngine]
+    val components = TcpComponents(protocol(trusted, nonBlocking = true))
+    try {
+      val session = echo(components, statsEngine, newSession())
+
+      session.isFailed shouldBe false
+      new String(session("secured.response").as[Array[Byte]]) shouldBe "PING"
+      session("secured.timings").as[TcpTimingBreakdown].handshakeMicros should be > 0L
+      verifyLogged(statsEngine, "secured.handshake", OK)
+    } finally {
+      components.connections.closeAll()
+    }
+  }
+
+  it should "fail on untrusted certificates unless all are trusted" in {
+    val statsEngine = mock[StatsEngine]
+    val untrusted = TcpComponents(protocol(TcpTlsSettings(enabled = true)))
+    echo(untrusted, statsEngine, newSession()).isFailed shouldBe true
+    verifyLogged(statsEngine, "secured", KO)
+
+    val trustAll = TcpComponents(protocol(TcpTlsSettings(enabled = true, trustAll = true)))
+    try {
+      echo(trustAll, mock[StatsEngine], newSession()).isFailed shouldBe false
+    } finally {
+      trustAll.connections.closeAll()
+    }
+  }
+
+  it should "verify the hostname unless disabled" in {
+    // The certificate is issued for localhost, not for the name the address is known by
+    val renamed = new InetSocketAddress(InetAddress.getByAddress("other.example", Array[Byte](127, 0, 0, 1)), server.getLocalPort)
+
+    an[Exception] should be thrownBy new TcpTls(trusted).secure(new Socket("127.0.0.1", renamed.getPort), renamed)
+    Using.resource(new TcpTls(trusted.copy(hostnameVerification = false)).secure(new Socket("127.0.0.1", renamed.getPort), renamed)) {
+      _.getSession.isValid shouldBe true
+    }
+  }
+
+  it should "resume sessions across connections sharing the context" in {
+    val tls = new TcpTls(trusted.copy(protocols = List("TLSv1.2")))
+    val address = new InetSocketAddress("localhost", server.getLocalPort)
+    def sessionId(): Seq[Byte] = Using.resource(tls.secure(new Socket("localhost", address.getPort), address)) { socket: SSLSocket =>
+      socket.getSession.getId.toSeq
+    }
+
+    sessionId() shouldBe sessionId()
+  }
+}
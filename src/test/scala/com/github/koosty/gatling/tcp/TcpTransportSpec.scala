@@ -0,0 +1,104 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.channel.epoll.EpollSocketChannel
+import io.netty.channel.nio.NioIoHandler
+import io.netty.channel.socket.nio.NioSocketChannel
+import io.netty.channel.uring.IoUringSocketChannel
+import io.netty.channel.{Channel, MultiThreadIoEventLoopGroup}
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.nio.ByteOrder
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+class TcpTransportSpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val server = new TcpTestServer(0)
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession() = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def afterAll(): Unit = {
+    server.stop()
+    eventLoopGroup.shutdownGracefully()
+  }
+
+  /** Collects the sessions passed to the next action, and whether they came back on their event loop. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[(Session, Boolean)]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put((session, session.eventLoop.inEventLoop))
+    def next(): (Session, Boolean) = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private def components(transport: TcpTransport) =
+    TcpComponents(TcpProtocol("localhost", server.port, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = true,
+      socket = TcpSocketSettings(reusePort = true), transport = transport))
+
+  /** Runs a framed request echoed by the server, and returns the channel kept in the session. */
+  private def echo(components: TcpComponents): Channel = {
+    val capture = new CapturingAction
+    TcpRequestAction(
+      requestName = "native",
+      message = TcpMessage("PING".getBytes),
+      frameCodec = Some(FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)),
+      reuseConnection = true,
+      components = components,
+      statsEngine = mock[StatsEngine],
+      clock = mockClock,
+      next = capture
+    ).execute(newSession())
+    val (session, onEventLoop) = capture.next()
+    session.isFailed shouldBe false
+    onEventLoop shouldBe true
+    session(TcpRequestAction.connectionAttribute("default")).as[Channel]
+  }
+
+  behavior of "TcpTransport"
+
+  it should "fall back from io_uring to epoll, and from epoll to Gatling's transport" in {
+    TcpTransport.available(TcpTransport.Gatling) shouldBe None
+    TcpTransport.available(TcpTransport.Epoll) shouldBe Option.when(TcpTransport.loaded(TcpTransport.Epoll))(TcpTransport.Epoll)
+    TcpTransport.available(TcpTransport.IoUring) shouldBe
+      (if (TcpTransport.loaded(TcpTransport.IoUring)) Some(TcpTransport.IoUring) else TcpTransport.available(TcpTransport.Epoll))
+  }
+
+  it should "keep the channels on the event loops of the virtual users by default" in {
+    val tcp = components(TcpTransport.Gatling)
+    try {
+      val channel = echo(tcp)
+      channel shouldBe a[NioSocketChannel]
+      channel.eventLoop shouldBe eventLoopGroup.next()
+    } finally {
+      tcp.connections.closeAll()
+    }
+  }
+
+  Seq(TcpTransport.Epoll -> classOf[EpollSocketChannel], TcpTransport.IoUring -> classOf[IoUringSocketChannel]).foreach { case (transport, channelClass) =>
+    it should s"run the channels on native event loops with $transport" in {
+      assume(TcpTransport.loaded(transport), s"$transport isn't available on this host")
+      val tcp = components(transport)
+      try {
+        val channel = echo(tcp)
+        channel.getClass shouldBe channelClass
+        channel.eventLoop.parent should not be theSameInstanceAs(eventLoopGroup)
+        channel.alloc shouldBe PooledByteBufAllocator.DEFAULT
+        if (transport == TcpTransport.Epoll) channel.config.getOption(NettyTcpClient.EpollReusePort) shouldBe 1
+        tcp.metrics.snapshot().bytesRead shouldBe 6
+      } finally {
+        tcp.connections.closeAll()
+        tcp.nettyClient.close()
+      }
+    }
+  }
+}
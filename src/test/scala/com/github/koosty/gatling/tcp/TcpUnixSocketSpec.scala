@@ -0,0 +1,156 @@
+package com.github.koosty.gatling.tcp
+
+import io.gatling.commons.stats.KO
+import io.gatling.commons.util.Clock
+import io.gatling.core.action.Action
+import io.gatling.core.session.Session
+import io.gatling.core.stats.StatsEngine
+import io.netty.channel.epoll.EpollDomainSocketChannel
+import io.netty.channel.nio.NioIoHandler
+import io.netty.channel.socket.nio.NioDomainSocketChannel
+import io.netty.channel.{Channel, MultiThreadIoEventLoopGroup}
+import org.mockito.ArgumentMatchers.{any, anyLong, eq => eqTo}
+import org.mockito.Mockito._
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.mockito.MockitoSugar
+
+import java.net.Socket
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+class TcpUnixSocketSpec extends AnyFlatSpec with Matchers with MockitoSugar with BeforeAndAfterAll {
+
+  private val directory = Files.createTempDirectory("tcp-unix")
+  private val path = directory.resolve("echo.sock")
+  private val server = new TcpTestServer(TcpUnixSocket.address(path.toString))
+  private val eventLoopGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory())
+  private def newSession() = Session(scenario = "test-scenario", userId = 1, eventLoop = eventLoopGroup.next())
+
+  val mockClock: Clock = mock[Clock]
+  when(mockClock.nowMillis).thenReturn(1000L)
+
+  override def afterAll(): Unit = {
+    server.stop()
+    eventLoopGroup.shutdownGracefully()
+    Files.deleteIfExists(path)
+    Files.deleteIfExists(directory)
+  }
+
+  /** Collects the sessions passed to the next action. */
+  class CapturingAction extends Action {
+    val sessions = new LinkedBlockingQueue[Session]
+    override def name: String = "capture"
+    override def execute(session: Session): Unit = sessions.put(session)
+    def next(): Session = sessions.poll(5, TimeUnit.SECONDS)
+  }
+
+  private def components(nonBlocking: Boolean, transport: TcpTransport = TcpTransport.Gatling) =
+    TcpComponents(TcpProtocol("localhost", 2222, 2000, 2000, keepAlive = false, reuseConnections = true, nonBlocking = nonBlocking,
+      transport = transport, unixSocket = Some(path.toString)))
+
+  /** Runs a request echoed by the server on the connection kept in the session, and returns the next session. */
+  private def echo(components: TcpComponents, session: Session, frameCodec: Option[FrameCodec] = Some(FrameCodec.lengthField(2, ByteOrder.BIG_ENDIAN)),
+                   statsEngine: StatsEngine = mock[StatsEngine]): Session = {
+    val capture = new CapturingAction
+    TcpRequestAction(
+      requestName = "unix",
+      message = TcpMessage("PING".getBytes),
+      frameCodec = frameCodec,
+      reuseConnection = true,
+      components = components,
+      statsEngine = statsEngine,
+      clock = mockClock,
+      next = capture
+    ).execute(session)
+    capture.next()
+  }
+
+  private def channelOf(session: Session): Channel = session(TcpRequestAction.connectionAttribute("default")).as[Channel]
+
+  behavior of "TcpUnixSocket"
+
+  it should "exchange framed requests over one blocking connection" in {
+    val tcp = components(nonBlocking = false)
+    try {
+      val first = echo(tcp, newSession())
+      first.isFailed shouldBe false
+      first("unix.response").as[Array[Byte]] shouldBe "PING".getBytes
+      val second = echo(tcp, first)
+      second.isFailed shouldBe false
+      second(TcpRequestAction.connectionAttribute("default")).as[Socket] should be theSameInstanceAs
+        first(TcpRequestAction.connectionAttribute("default")).as[Socket]
+
+      tcp.metrics.connectionsOpened.sum shouldBe 1
+      tcp.metrics.bytesWritten.sum shouldBe 12
+      tcp.metrics.bytesRead.sum shouldBe 12
+    } finally {
+      tcp.connections.closeAll()
+    }
+  }
+
+  it should "complete unframed responses after the idle gap" in {
+    val tcp = components(nonBlocking = false)
+    try {
+      val session = echo(tcp, newSession(), frameCodec = None)
+      session.isFailed shouldBe false
+      session("unix.response").as[Array[Byte]] shouldBe "PING".getBytes
+    } finally {
+      tcp.connections.closeAll()
+    }
+  }
+
+  it should "time out blocking reads" in {
+    val tcp = TcpComponents(components(nonBlocking = false).protocol.copy(readTimeout = 200))
+    val statsEngine = mock[StatsEngine]
+    try {
+      val capture = new CapturingAction
+      TcpRequestAction(
+        requestName = "unix",
+        message = TcpMessage("PING".getBytes),
+        responseCompletion = ResponseCompletion.terminator("\n".getBytes),
+        components = tcp,
+        statsEngine = statsEngine,
+        clock = mockClock,
+        next = capture
+      ).execute(newSession())
+      capture.next().isFailed shouldBe true
+      verify(statsEngine).logResponse(any(), any(), eqTo("unix"), anyLong(), anyLong(), eqTo(KO), any(), eqTo(Some("Timeout")))
+    } finally {
+      tcp.connections.closeAll()
+    }
+  }
+
+  it should "exchange requests over domain socket channels on the non-blocking engine" in {
+    val tcp = components(nonBlocking = true)
+    try {
+      val first = echo(tcp, newSession())
+      first.isFailed shouldBe false
+      channelOf(first) shouldBe a[NioDomainSocketChannel]
+      val second = echo(tcp, first)
+      second.isFailed shouldBe false
+      channelOf(second) should be theSameInstanceAs channelOf(first)
+      tcp.metrics.connectionsOpened.sum shouldBe 1
+    } finally {
+      tcp.connections.closeAll()
+      tcp.nettyClient.close()
+    }
+  }
+
+  it should "run domain socket channels on epoll, in place of io_uring" in {
+    assume(TcpTransport.loaded(TcpTransport.Epoll), "epoll isn't available on this host")
+    for (transport <- List(TcpTransport.Epoll, TcpTransport.IoUring)) {
+      val tcp = components(nonBlocking = true, transport)
+      try {
+        val session = echo(tcp, newSession())
+        session.isFailed shouldBe false
+        channelOf(session) shouldBe an[EpollDomainSocketChannel]
+      } finally {
+        tcp.connections.closeAll()
+        tcp.nettyClient.close()
+      }
+    }
+  }
+}